@@ -9,12 +9,14 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.geoserver.platform.ExtensionPriority;
+import org.geoserver.platform.util.VirtualThreads;
 import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.wps.WPSException;
 import org.geoserver.wps.process.GeoServerProcessors;
@@ -54,7 +56,9 @@ public class DefaultProcessManager
                             maxAsynchronousProcesses,
                             0L,
                             TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue<>());
+                            new LinkedBlockingQueue<>(),
+                            VirtualThreads.factory(
+                                    "wps-asynch-", Executors.defaultThreadFactory()));
         } else {
             // JDK 11 checks the relation between core and max pool size on each set,
             // need to lower core pool size before changing max
@@ -75,7 +79,9 @@ public class DefaultProcessManager
                             maxSynchronousProcesses,
                             0L,
                             TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue<>());
+                            new LinkedBlockingQueue<>(),
+                            VirtualThreads.factory(
+                                    "wps-synch-", Executors.defaultThreadFactory()));
         } else {
             // JDK 11 checks the relation between core and max pool size on each set,
             // need to lower core pool size before changing max
@@ -6,6 +6,7 @@ package org.geoserver.gwc.seed;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import org.geoserver.platform.util.VirtualThreads;
 import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geowebcache.seed.SeederThreadPoolExecutor;
 
@@ -17,7 +18,7 @@ import org.geowebcache.seed.SeederThreadPoolExecutor;
  * <p>Will perform thread locals transfer using Spring registered {@link
  * org.geoserver.threadlocals.ThreadLocalTransfer} when starting a new task, and will clean up
  * thread locals after completing that task. Otherwise, behaves the same as {@link
- * SeederThreadPoolExecutor}.
+ * SeederThreadPoolExecutor}, using virtual threads if {@link VirtualThreads#isEnabled() enabled}.
  *
  * <p>Only intended for use as a thread pool for Integrated GWC seeding tasks.
  */
@@ -25,6 +26,7 @@ public class SeederThreadLocalTransferExecutor extends SeederThreadPoolExecutor
 
     public SeederThreadLocalTransferExecutor(int corePoolSize, int maxPoolSize) {
         super(corePoolSize, maxPoolSize);
+        setThreadFactory(VirtualThreads.factory("gwc-seed-", getThreadFactory()));
     }
 
     /** Copied from {@link org.geoserver.wms.ThreadLocalTransferExecutor} */
@@ -0,0 +1,111 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage statistics of one of the {@link ResourcePool} caches.
+ *
+ * @see ResourcePool#getCacheStatistics()
+ */
+public class ResourceCacheStatistics {
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong loads = new AtomicLong();
+
+    final AtomicLong loadTime = new AtomicLong();
+
+    final AtomicLong evictions = new AtomicLong();
+
+    final AtomicLong idleEvictions = new AtomicLong();
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordLoad(long nanos) {
+        loads.incrementAndGet();
+        loadTime.addAndGet(nanos);
+    }
+
+    void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    void recordIdleEviction() {
+        idleEvictions.incrementAndGet();
+    }
+
+    /** Number of lookups that found the resource in the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that did not find the resource in the cache. Lookups repeated while holding
+     * the cache lock, before loading the resource, are counted too.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Ratio between hits and total lookups, or 0 if no lookup has been made yet */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : ((double) h) / total;
+    }
+
+    /** Number of resources created and added to the cache */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /** Total time spent creating resources, in nanoseconds */
+    public long getLoadTime() {
+        return loadTime.get();
+    }
+
+    /** Average time spent creating a resource, in nanoseconds */
+    public long getAverageLoadTime() {
+        long count = loads.get();
+        return count == 0 ? 0 : loadTime.get() / count;
+    }
+
+    /** Number of resources evicted by the garbage collector due to memory pressure */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** Number of resources evicted because they were not used for longer than the idle timeout */
+    public long getIdleEvictions() {
+        return idleEvictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStatistics [hits="
+                + hits
+                + ", misses="
+                + misses
+                + ", loads="
+                + loads
+                + ", loadTime="
+                + loadTime
+                + "ns, evictions="
+                + evictions
+                + ", idleEvictions="
+                + idleEvictions
+                + "]";
+    }
+}
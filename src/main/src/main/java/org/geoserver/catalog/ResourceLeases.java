@@ -0,0 +1,128 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Keeps the data stores and coverage readers looked up in the {@link ResourcePool} from being
+ * evicted for being idle while still in use. Every cache entry looked up while a scope is open on
+ * the current thread is leased until the scope is closed.
+ *
+ * <p>Scopes are opened for each HTTP request, and transferred to the threads working on behalf of
+ * the request along with the other thread locals. Code accessing the resource pool outside of a
+ * request, for longer than the idle timeouts, should open its own scope:
+ *
+ * <pre>{@code
+ * try (ResourceLeases leases = ResourceLeases.open()) {
+ *     DataAccess store = resourcePool.getDataStore(info);
+ *     ...
+ * }
+ * }</pre>
+ */
+public final class ResourceLeases implements AutoCloseable {
+
+    static final Logger LOGGER = Logging.getLogger(ResourceLeases.class);
+
+    /** The scope of the current thread, if any, public to allow transferring it to other threads */
+    public static final ThreadLocal<ResourceLeases> LEASES = new ThreadLocal<>();
+
+    /** The release action of each lease taken in this scope */
+    private final Map<Lease, Runnable> leases = new LinkedHashMap<>();
+
+    /** True if this scope is nested in another one, and leaves the leases to it */
+    private final boolean nested;
+
+    private boolean closed;
+
+    private ResourceLeases(boolean nested) {
+        this.nested = nested;
+    }
+
+    /** Opens a scope on the current thread, or joins the one already open */
+    public static ResourceLeases open() {
+        if (LEASES.get() != null) {
+            return new ResourceLeases(true);
+        }
+        ResourceLeases leases = new ResourceLeases(false);
+        LEASES.set(leases);
+        return leases;
+    }
+
+    /** Returns the scope open on the current thread, or null if none */
+    static ResourceLeases current() {
+        return LEASES.get();
+    }
+
+    /**
+     * Leases the key of the given cache, unless already leased in this scope
+     *
+     * @param cache The cache owning the key, compared by identity
+     * @param key The leased key
+     * @param acquire Marks the key as in use, run only if the key was not leased yet
+     * @param release Marks the key as no longer in use, run when the scope is closed
+     */
+    synchronized void lease(Object cache, Object key, Runnable acquire, Runnable release) {
+        Lease lease = new Lease(cache, key);
+        if (!closed && !leases.containsKey(lease)) {
+            acquire.run();
+            leases.put(lease, release);
+        }
+    }
+
+    /** Closes the scope, releasing all the leases taken in it */
+    @Override
+    public void close() {
+        if (nested) {
+            return;
+        }
+        if (LEASES.get() == this) {
+            LEASES.remove();
+        }
+        List<Runnable> releases;
+        synchronized (this) {
+            closed = true;
+            releases = new ArrayList<>(leases.values());
+            leases.clear();
+        }
+        for (Runnable release : releases) {
+            try {
+                release.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to release resource lease", e);
+            }
+        }
+    }
+
+    /** A key in a cache */
+    private static final class Lease {
+        final Object cache;
+
+        final Object key;
+
+        Lease(Object cache, Object key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Lease)) return false;
+            Lease other = (Lease) o;
+            return cache == other.cache && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(cache) * 31 + key.hashCode();
+        }
+    }
+}
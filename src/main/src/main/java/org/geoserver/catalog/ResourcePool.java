@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.URL;
@@ -26,14 +27,21 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.measure.Unit;
@@ -159,6 +167,10 @@ import si.uom.SI;
  *   <li>{@link #sldCache}
  *   <li>{@link #styleCache}
  *
+ * <p>Usage statistics for the main caches are available via {@link #getCacheStatistics()}. Data
+ * stores and coverage readers that are not used for a configurable amount of time can be evicted
+ * and disposed, see {@link #DATASTORE_IDLE_TIMEOUT} and {@link #COVERAGE_READER_IDLE_TIMEOUT}.
+ *
  * @author Justin Deoliveira, Boundless
  */
 public class ResourcePool {
@@ -199,6 +211,35 @@ public class ResourcePool {
     /** Default number of hard references */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
 
+    /**
+     * System property with the number of seconds after which an unused data store gets disposed.
+     * Not set, or zero, means unused data stores are kept until evicted by memory pressure or
+     * catalog changes.
+     */
+    public static final String DATASTORE_IDLE_TIMEOUT = "GEOSERVER_DATASTORE_IDLE_TIMEOUT";
+
+    /**
+     * System property with the number of seconds after which an unused coverage reader gets
+     * disposed. Not set, or zero, means unused readers are kept until evicted by memory pressure or
+     * catalog changes.
+     */
+    public static final String COVERAGE_READER_IDLE_TIMEOUT =
+            "GEOSERVER_COVERAGE_READER_IDLE_TIMEOUT";
+
+    /** Maximum interval between two checks for idle cache entries, in milliseconds */
+    static final long IDLE_CHECK_INTERVAL = 10000;
+
+    /** Runs the idle entries eviction of all the pools, started on first use */
+    static ScheduledExecutorService idleEvictionExecutor;
+
+    /**
+     * The idle entries eviction of this pool, scheduled when the first entry subject to an idle
+     * timeout gets cached, and cancelled when the caches are flushed
+     */
+    ScheduledFuture<?> idleEviction;
+
+    final Object idleEvictionLock = new Object();
+
     Catalog catalog;
     Map<String, CoordinateReferenceSystem> crsCache;
     DataStoreCache dataStoreCache;
@@ -209,6 +250,12 @@ public class ResourcePool {
     Map<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderCache;
     Map<StyleInfo, StyledLayerDescriptor> sldCache;
     Map<StyleInfo, Style> styleCache;
+    final ResourceCacheStatistics crsStatistics = new ResourceCacheStatistics();
+    final ResourceCacheStatistics dataStoreStatistics = new ResourceCacheStatistics();
+    final ResourceCacheStatistics featureTypeStatistics = new ResourceCacheStatistics();
+    final ResourceCacheStatistics coverageReaderStatistics = new ResourceCacheStatistics();
+    final ResourceCacheStatistics sldStatistics = new ResourceCacheStatistics();
+    final ResourceCacheStatistics styleStatistics = new ResourceCacheStatistics();
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
     CatalogRepository repository;
@@ -231,10 +278,18 @@ public class ResourcePool {
     protected ResourcePool() {
         crsCache = createCrsCache();
         dataStoreCache = createDataStoreCache();
+        dataStoreCache.statistics = dataStoreStatistics;
+        dataStoreCache.setIdleTimeout(getIdleTimeout(DATASTORE_IDLE_TIMEOUT));
         featureTypeCache = createFeatureTypeCache(FEATURETYPE_CACHE_SIZE_DEFAULT);
+        bindStatistics(featureTypeCache, featureTypeStatistics);
 
         featureTypeAttributeCache = createFeatureTypeAttributeCache(FEATURETYPE_CACHE_SIZE_DEFAULT);
         hintCoverageReaderCache = createHintCoverageReaderCache();
+        bindStatistics(hintCoverageReaderCache, coverageReaderStatistics);
+        if (hintCoverageReaderCache instanceof CatalogResourceCache) {
+            ((CatalogResourceCache<?, ?>) hintCoverageReaderCache)
+                    .setIdleTimeout(getIdleTimeout(COVERAGE_READER_IDLE_TIMEOUT));
+        }
 
         wmsCache = createWmsCache();
         wmtsCache = createWmtsCache();
@@ -244,6 +299,98 @@ public class ResourcePool {
         listeners = new CopyOnWriteArrayList<>();
     }
 
+    /**
+     * Starts checking for idle data stores and coverage readers in background, unless already
+     * doing so. Called when an entry subject to an idle timeout gets cached.
+     */
+    void scheduleIdleEviction() {
+        synchronized (idleEvictionLock) {
+            if (idleEviction != null) {
+                return;
+            }
+            long interval = IDLE_CHECK_INTERVAL;
+            for (CatalogResourceCache<?, ?> cache : getIdleCaches()) {
+                if (cache.idleTimeout > 0) {
+                    interval = Math.min(interval, cache.idleTimeout);
+                }
+            }
+            IdleEvictionTask task = new IdleEvictionTask(this);
+            ScheduledExecutorService executor = getIdleEvictionExecutor();
+            idleEviction =
+                    executor.scheduleWithFixedDelay(
+                            task, interval, interval, TimeUnit.MILLISECONDS);
+            task.future = idleEviction;
+        }
+    }
+
+    /** Stops the idle entries eviction, it's scheduled again when new entries get cached */
+    void cancelIdleEviction() {
+        synchronized (idleEvictionLock) {
+            if (idleEviction != null) {
+                idleEviction.cancel(false);
+                idleEviction = null;
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getIdleEvictionExecutor() {
+        if (idleEvictionExecutor == null) {
+            idleEvictionExecutor =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread thread = new Thread(r, "gs-resource-pool-eviction");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+        }
+        return idleEvictionExecutor;
+    }
+
+    /**
+     * Evicts the idle entries of a pool. Does not keep the pool from being garbage collected, the
+     * task cancels itself once the pool is gone.
+     */
+    static class IdleEvictionTask implements Runnable {
+
+        final WeakReference<ResourcePool> pool;
+
+        volatile ScheduledFuture<?> future;
+
+        IdleEvictionTask(ResourcePool pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        @Override
+        public void run() {
+            ResourcePool p = pool.get();
+            if (p != null) {
+                p.evictIdle();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /** Evicts the data stores and coverage readers that have been idle for too long */
+    void evictIdle() {
+        for (CatalogResourceCache<?, ?> cache : getIdleCaches()) {
+            try {
+                cache.evictIdle();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to evict idle cache entries", e);
+            }
+        }
+    }
+
+    private List<CatalogResourceCache<?, ?>> getIdleCaches() {
+        List<CatalogResourceCache<?, ?>> caches = new ArrayList<>();
+        caches.add(dataStoreCache);
+        if (hintCoverageReaderCache instanceof CatalogResourceCache) {
+            caches.add((CatalogResourceCache<?, ?>) hintCoverageReaderCache);
+        }
+        return caches;
+    }
+
     /**
      * Creates the resource pool.
      *
@@ -259,6 +406,62 @@ public class ResourcePool {
         return catalog;
     }
 
+    /** Reads an idle timeout from the given system property, in seconds, returns milliseconds */
+    static long getIdleTimeout(String property) {
+        String value = GeoServerExtensions.getProperty(property);
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + property + ": " + value + ", ignoring it");
+            }
+        }
+        return 0;
+    }
+
+    /** Lets the cache report evictions in the given statistics, if it's a resource cache */
+    private static void bindStatistics(Map<?, ?> cache, ResourceCacheStatistics statistics) {
+        if (cache instanceof CatalogResourceCache) {
+            ((CatalogResourceCache<?, ?>) cache).statistics = statistics;
+        }
+    }
+
+    /**
+     * Returns the last access time of the data stores and coverage readers currently cached, keyed
+     * by store id
+     */
+    Map<String, Long> getStoreUsage() {
+        Map<String, Long> usage = new HashMap<>(dataStoreCache.lastAccess.size());
+        dataStoreCache.lastAccess.forEach(
+                (key, time) -> usage.merge((String) key, time, Math::max));
+        if (hintCoverageReaderCache instanceof CatalogResourceCache) {
+            ((CatalogResourceCache<?, ?>) hintCoverageReaderCache)
+                    .lastAccess.forEach(
+                            (key, time) -> {
+                                String id = ((CoverageHintReaderKey) key).id;
+                                if (id != null) {
+                                    usage.merge(id, time, Math::max);
+                                }
+                            });
+        }
+        return usage;
+    }
+
+    /**
+     * Returns the usage statistics of the main caches, keyed by cache name: {@code crs}, {@code
+     * dataStore}, {@code featureType}, {@code coverageReader}, {@code sld} and {@code style}
+     */
+    public Map<String, ResourceCacheStatistics> getCacheStatistics() {
+        Map<String, ResourceCacheStatistics> result = new LinkedHashMap<>();
+        result.put("crs", crsStatistics);
+        result.put("dataStore", dataStoreStatistics);
+        result.put("featureType", featureTypeStatistics);
+        result.put("coverageReader", coverageReaderStatistics);
+        result.put("sld", sldStatistics);
+        result.put("style", styleStatistics);
+        return Collections.unmodifiableMap(result);
+    }
+
     public void setCatalog(Catalog catalog) {
         this.catalog = catalog;
         this.repository = new CatalogRepository(catalog);
@@ -408,6 +611,7 @@ public class ResourcePool {
         synchronized (this) {
             featureTypeCache.clear();
             featureTypeCache = createFeatureTypeCache(featureTypeCacheSize);
+            bindStatistics(featureTypeCache, featureTypeStatistics);
             featureTypeAttributeCache.clear();
             featureTypeAttributeCache = createFeatureTypeAttributeCache(featureTypeCacheSize);
         }
@@ -472,13 +676,18 @@ public class ResourcePool {
         if (srsName == null) return null;
 
         CoordinateReferenceSystem crs = crsCache.get(srsName);
-        if (crs == null) {
+        if (crs != null) {
+            crsStatistics.recordHit();
+        } else {
+            crsStatistics.recordMiss();
             synchronized (crsCache) {
                 crs = crsCache.get(srsName);
                 if (crs == null) {
                     try {
+                        long start = System.nanoTime();
                         crs = CRS.decode(srsName);
                         crsCache.put(srsName, crs);
+                        crsStatistics.recordLoad(System.nanoTime() - start);
                     } catch (Exception e) {
                         throw (IOException) new IOException().initCause(e);
                     }
@@ -538,10 +747,14 @@ public class ResourcePool {
         try {
             String id = info.getId();
             dataStore = dataStoreCache.get(id);
-            if (dataStore == null) {
+            if (dataStore != null) {
+                dataStoreStatistics.recordHit();
+            } else {
+                dataStoreStatistics.recordMiss();
                 synchronized (dataStoreCache) {
                     dataStore = dataStoreCache.get(id);
                     if (dataStore == null) {
+                        long start = System.nanoTime();
                         // create data store
                         Map<String, Serializable> connectionParameters =
                                 expandedStore.getConnectionParameters();
@@ -644,6 +857,7 @@ public class ResourcePool {
                         // harmful, NPE when trying to dispose of them)
                         if (id != null) {
                             dataStoreCache.put(id, dataStore);
+                            dataStoreStatistics.recordLoad(System.nanoTime() - start);
                         }
                     }
                 }
@@ -942,10 +1156,14 @@ public class ResourcePool {
             throws IOException {
         String key = getFeatureTypeInfoKey(info, handleProjectionPolicy);
         FeatureType ft = featureTypeCache.get(key);
-        if (ft == null) {
+        if (ft != null) {
+            featureTypeStatistics.recordHit();
+        } else {
+            featureTypeStatistics.recordMiss();
             synchronized (featureTypeCache) {
                 ft = featureTypeCache.get(key);
                 if (ft == null) {
+                    long start = System.nanoTime();
 
                     // grab the underlying feature type
                     DataAccess<? extends FeatureType, ? extends Feature> dataAccess =
@@ -959,6 +1177,7 @@ public class ResourcePool {
                     ft = buildFeatureType(info, handleProjectionPolicy, ft);
 
                     featureTypeCache.put(key, ft);
+                    featureTypeStatistics.recordLoad(System.nanoTime() - start);
                 }
             }
         }
@@ -1552,12 +1771,16 @@ public class ResourcePool {
         GridCoverageReader reader = hintCoverageReaderCache.get(key);
 
         // if not found in cache, create it
-        if (reader == null) {
+        if (reader != null) {
+            coverageReaderStatistics.recordHit();
+        } else {
+            coverageReaderStatistics.recordMiss();
             synchronized (hintCoverageReaderCache) {
                 if (key != null) {
                     reader = hintCoverageReaderCache.get(key);
                 }
                 if (reader == null) {
+                    long start = System.nanoTime();
                     /////////////////////////////////////////////////////////
                     //
                     // Getting coverage reader using the format and the real path.
@@ -1578,6 +1801,7 @@ public class ResourcePool {
                     }
                     if (key != null) {
                         hintCoverageReaderCache.put((CoverageHintReaderKey) key, reader);
+                        coverageReaderStatistics.recordLoad(System.nanoTime() - start);
                     }
                 }
             }
@@ -2021,13 +2245,18 @@ public class ResourcePool {
      */
     public StyledLayerDescriptor getSld(final StyleInfo info) throws IOException {
         StyledLayerDescriptor sld = sldCache.get(info);
-        if (sld == null) {
+        if (sld != null) {
+            sldStatistics.recordHit();
+        } else {
+            sldStatistics.recordMiss();
             synchronized (sldCache) {
                 sld = sldCache.get(info);
                 if (sld == null) {
+                    long start = System.nanoTime();
                     sld = dataDir().parsedSld(info);
 
                     sldCache.put(info, sld);
+                    sldStatistics.recordLoad(System.nanoTime() - start);
 
                     final Resource styleResource = dataDir().style(info);
                     styleResource.addListener(
@@ -2057,10 +2286,14 @@ public class ResourcePool {
      */
     public Style getStyle(final StyleInfo info) throws IOException {
         Style style = styleCache.get(info);
-        if (style == null) {
+        if (style != null) {
+            styleStatistics.recordHit();
+        } else {
+            styleStatistics.recordMiss();
             synchronized (styleCache) {
                 style = styleCache.get(info);
                 if (style == null) {
+                    long start = System.nanoTime();
                     style = dataDir().parsedStyle(info);
 
                     if (style == null) {
@@ -2074,6 +2307,7 @@ public class ResourcePool {
                     // remove this when wms works off style info
                     style.setName(info.getName());
                     styleCache.put(info, style);
+                    styleStatistics.recordLoad(System.nanoTime() - start);
 
                     final Resource styleResource = dataDir().style(info);
                     styleResource.addListener(
@@ -2223,8 +2457,13 @@ public class ResourcePool {
         return new GeoServerDataDirectory(catalog.getResourceLoader());
     }
 
-    /** Disposes all cached resources. */
+    /**
+     * Disposes all cached resources. The pool can still be used afterwards, the idle entries
+     * eviction starts again as soon as new data stores or coverage readers are cached.
+     */
     public void dispose() {
+        // nothing to evict until new entries are cached
+        cancelIdleEviction();
         crsCache.clear();
         dataStoreCache.clear();
         featureTypeCache.clear();
@@ -2246,18 +2485,131 @@ public class ResourcePool {
      */
     abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
 
+        /** Statistics receiving the eviction counts, if any */
+        ResourceCacheStatistics statistics;
+
+        /** Time after which an unused entry gets evicted, in milliseconds, 0 means no limit */
+        volatile long idleTimeout;
+
+        /** Last access time of each entry */
+        final Map<Object, Long> lastAccess = new ConcurrentHashMap<>();
+
+        /** Number of open {@link ResourceLeases} scopes using each entry */
+        final Map<Object, Integer> leases = new ConcurrentHashMap<>();
+
+        /** The clock used to track the entries access time, replaceable for testing */
+        LongSupplier clock = System::currentTimeMillis;
+
         public CatalogResourceCache() {
             this(100);
         }
 
         public CatalogResourceCache(int hardReferences) {
             super(hardReferences);
-            super.cleaner = (ValueCleaner<K, V>) (key, object) -> dispose(key, object);
+            super.cleaner =
+                    (ValueCleaner<K, V>)
+                            (key, object) -> {
+                                lastAccess.remove(key);
+                                if (statistics != null) {
+                                    statistics.recordEviction();
+                                }
+                                dispose(key, object);
+                            };
+        }
+
+        /** Sets the time after which unused entries are evicted, in milliseconds, 0 for no limit */
+        void setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        @Override
+        public V get(Object key) {
+            V object;
+            if (idleTimeout > 0) {
+                // lease before looking up, under the lock the eviction runs with, so that the
+                // entry returned cannot be disposed as idle while in use
+                synchronized (this) {
+                    lease(key);
+                    object = super.get(key);
+                }
+            } else {
+                object = super.get(key);
+            }
+            if (object != null) {
+                touch(key);
+            }
+            return object;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            V previous;
+            if (idleTimeout > 0) {
+                synchronized (this) {
+                    lease(key);
+                    previous = super.put(key, value);
+                }
+                scheduleIdleEviction();
+            } else {
+                previous = super.put(key, value);
+            }
+            touch(key);
+            return previous;
+        }
+
+        private void touch(Object key) {
+            lastAccess.put(key, clock.getAsLong());
+        }
+
+        /** Marks the entry as in use until the current {@link ResourceLeases} scope is closed */
+        private void lease(Object key) {
+            ResourceLeases scope = ResourceLeases.current();
+            if (scope != null && key != null) {
+                scope.lease(
+                        this,
+                        key,
+                        () -> leases.merge(key, 1, Integer::sum),
+                        () -> release(key));
+            }
+        }
+
+        private void release(Object key) {
+            leases.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+            // the idle time starts when the entry stops being used
+            lastAccess.computeIfPresent(key, (k, time) -> clock.getAsLong());
+        }
+
+        /**
+         * Evicts the entries that have not been accessed for longer than the idle timeout, and are
+         * not in use by any {@link ResourceLeases} scope. Runs under the cache lock, the same used
+         * to look up and load the entries.
+         */
+        void evictIdle() {
+            long timeout = idleTimeout;
+            if (timeout <= 0) {
+                return;
+            }
+            synchronized (this) {
+                long now = clock.getAsLong();
+                for (Map.Entry<Object, Long> entry : lastAccess.entrySet()) {
+                    Object key = entry.getKey();
+                    if (now - entry.getValue() <= timeout || leases.containsKey(key)) {
+                        continue;
+                    }
+                    if (remove(key) != null) {
+                        LOGGER.fine(() -> "Evicted idle cache entry " + key);
+                        if (statistics != null) {
+                            statistics.recordIdleEviction();
+                        }
+                    }
+                }
+            }
         }
 
         @Override
         @SuppressWarnings("unchecked")
         public V remove(Object key) {
+            lastAccess.remove(key);
             V object = super.remove(key);
             if (object != null) {
                 dispose((K) key, object);
@@ -2268,6 +2620,7 @@ public class ResourcePool {
         @Override
         @SuppressWarnings("unchecked")
         public void clear() {
+            lastAccess.clear();
             for (Entry entry : entrySet()) {
                 try {
                     dispose((K) entry.getKey(), (V) entry.getValue());
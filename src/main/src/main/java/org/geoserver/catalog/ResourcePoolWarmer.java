@@ -0,0 +1,314 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerReinitializer;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Opens data stores and coverage readers in the background, so that the first requests hitting
+ * them after a startup, reload, reset or store modification do not pay the connection and
+ * indexing costs.
+ *
+ * <p>Only the stores that have actually been used are warmed up, most recently used first. The
+ * usage is sampled from the {@link ResourcePool} caches and persisted in the data directory, so
+ * that it survives restarts.
+ *
+ * <p>The warm up is disabled by default, and can be enabled setting the {@link #WARMUP_KEY} system
+ * property to true. The number of threads opening stores and the maximum number of stores opened
+ * at startup can be controlled with {@link #WARMUP_THREADS_KEY} and {@link #WARMUP_MAX_KEY}.
+ *
+ * <p>Stores are looked up in the raw catalog, the warm up runs in background threads that have no
+ * authentication attached, the secured catalog would hide them.
+ */
+public class ResourcePoolWarmer
+        implements GeoServerReinitializer, GeoServerLifecycleHandler, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(ResourcePoolWarmer.class);
+
+    /** System property enabling the warm up */
+    public static final String WARMUP_KEY = "GEOSERVER_RESOURCE_WARMUP";
+
+    /** System property setting the number of threads used to open stores */
+    public static final String WARMUP_THREADS_KEY = "GEOSERVER_RESOURCE_WARMUP_THREADS";
+
+    /** System property setting the maximum number of stores opened at startup */
+    public static final String WARMUP_MAX_KEY = "GEOSERVER_RESOURCE_WARMUP_MAX";
+
+    /** File, in the data directory, where the store usage is persisted */
+    static final String USAGE_FILE = "resource-pool-usage.properties";
+
+    /** Delay before a modified store is opened again, coalesces repeated modifications */
+    static final long REFRESH_DELAY_MS = 1000;
+
+    /** Interval between two usage samples */
+    static final long SAMPLE_INTERVAL_MINUTES = 5;
+
+    final boolean enabled;
+
+    final int maxStores;
+
+    /** Last usage time of each store, by id */
+    final Map<String, Long> usage = new ConcurrentHashMap<>();
+
+    /** Stores already scheduled for warm up */
+    final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    final Catalog catalog;
+
+    ScheduledExecutorService executor;
+
+    public ResourcePoolWarmer(Catalog rawCatalog) {
+        this(
+                rawCatalog,
+                Boolean.parseBoolean(GeoServerExtensions.getProperty(WARMUP_KEY)),
+                getIntProperty(WARMUP_MAX_KEY, 1000));
+    }
+
+    ResourcePoolWarmer(Catalog rawCatalog, boolean enabled, int maxStores) {
+        this.catalog = rawCatalog;
+        this.enabled = enabled;
+        this.maxStores = maxStores;
+    }
+
+    static int getIntProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + key + ": " + value + ", using default");
+            }
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public synchronized void initialize(GeoServer geoServer) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        if (executor == null) {
+            CustomizableThreadFactory threadFactory =
+                    new CustomizableThreadFactory("ResourcePoolWarmer-");
+            threadFactory.setDaemon(true);
+            threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+            executor =
+                    new ScheduledThreadPoolExecutor(
+                            Math.max(1, getIntProperty(WARMUP_THREADS_KEY, 2)), threadFactory);
+            executor.scheduleWithFixedDelay(
+                    this::sampleAndSave,
+                    SAMPLE_INTERVAL_MINUTES,
+                    SAMPLE_INTERVAL_MINUTES,
+                    TimeUnit.MINUTES);
+            loadUsage();
+        }
+        catalog.removeListeners(RefreshListener.class);
+        catalog.addListener(new RefreshListener());
+
+        warmRecentlyUsed();
+    }
+
+    /** Schedules the warm up of the most recently used stores */
+    void warmRecentlyUsed() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(usage.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        int count = 0;
+        for (Map.Entry<String, Long> entry : entries) {
+            if (count >= maxStores) {
+                break;
+            }
+            StoreInfo store = catalog.getStore(entry.getKey(), StoreInfo.class);
+            if (store == null) {
+                // store got removed in the meantime
+                usage.remove(entry.getKey());
+            } else if (schedule(store, 0)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            LOGGER.info("Warming up " + count + " data stores and coverage readers");
+        }
+    }
+
+    /** Schedules the store for opening, returns true if the store is supported and enabled */
+    boolean schedule(StoreInfo store, long delayMs) {
+        if (!store.isEnabled()
+                || !(store instanceof DataStoreInfo || store instanceof CoverageStoreInfo)) {
+            return false;
+        }
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null && pending.add(store.getId())) {
+            executor.schedule(() -> warm(store.getId()), delayMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    void warm(String id) {
+        pending.remove(id);
+        // look up again, might have been removed or disabled in the meantime
+        StoreInfo store = catalog.getStore(id, StoreInfo.class);
+        if (store == null || !store.isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            ResourcePool pool = catalog.getResourcePool();
+            if (store instanceof DataStoreInfo) {
+                pool.getDataStore((DataStoreInfo) store);
+            } else if (store instanceof CoverageStoreInfo) {
+                pool.getGridCoverageReader((CoverageStoreInfo) store, null);
+            }
+            LOGGER.fine(
+                    () ->
+                            "Warmed up store '"
+                                    + store.getName()
+                                    + "' in "
+                                    + (System.currentTimeMillis() - start)
+                                    + "ms");
+        } catch (Exception e) {
+            // the first request will report the error
+            LOGGER.log(Level.FINE, "Failed to warm up store '" + store.getName() + "'", e);
+        }
+    }
+
+    /** Collects the usage recorded by the resource pool caches */
+    void sample() {
+        Map<String, Long> poolUsage = catalog.getResourcePool().getStoreUsage();
+        poolUsage.forEach((id, time) -> usage.merge(id, time, Math::max));
+    }
+
+    void sampleAndSave() {
+        try {
+            sample();
+            saveUsage();
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to save the resource pool usage", e);
+        }
+    }
+
+    Resource getUsageResource() {
+        return catalog.getResourceLoader().get(USAGE_FILE);
+    }
+
+    void loadUsage() {
+        Resource resource = getUsageResource();
+        if (!Resources.exists(resource)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = resource.in()) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the resource pool usage", e);
+            return;
+        }
+        for (String id : properties.stringPropertyNames()) {
+            try {
+                usage.merge(id, Long.parseLong(properties.getProperty(id)), Math::max);
+            } catch (NumberFormatException e) {
+                LOGGER.fine("Skipping invalid usage entry for " + id);
+            }
+        }
+    }
+
+    void saveUsage() throws IOException {
+        Properties properties = new Properties();
+        usage.forEach((id, time) -> properties.setProperty(id, String.valueOf(time)));
+        try (OutputStream out = getUsageResource().out()) {
+            properties.store(out, "Last usage time of the data stores and coverage readers");
+        }
+    }
+
+    @Override
+    public void onReset() {
+        // the resource pool has just been emptied, open again what was in use
+        if (executor != null) {
+            warmRecentlyUsed();
+        }
+    }
+
+    @Override
+    public void onDispose() {}
+
+    @Override
+    public void beforeReload() {
+        // the caches are about to be emptied, grab the latest usage
+        if (executor != null) {
+            sample();
+        }
+    }
+
+    @Override
+    public void onReload() {}
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            sampleAndSave();
+        }
+    }
+
+    /** Opens again the stores modified in the catalog, once the resource pool cleared them */
+    class RefreshListener implements CatalogListener {
+
+        @Override
+        public void handleAddEvent(CatalogAddEvent event) {}
+
+        @Override
+        public void handleRemoveEvent(CatalogRemoveEvent event) {
+            usage.remove(event.getSource().getId());
+        }
+
+        @Override
+        public void handleModifyEvent(CatalogModifyEvent event) {
+            if (event.getSource() instanceof StoreInfo) {
+                // the store is going to be cleared from the pool, record its usage first
+                sample();
+            }
+        }
+
+        @Override
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+            CatalogInfo source = event.getSource();
+            // only refresh the stores that are actually in use
+            if (source instanceof StoreInfo && usage.containsKey(source.getId())) {
+                schedule((StoreInfo) source, REFRESH_DELAY_MS);
+            }
+        }
+
+        @Override
+        public void reloaded() {}
+    }
+}
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -112,6 +113,12 @@ public class CatalogImpl implements Catalog {
     /** extended validation switch */
     protected boolean extendedValidation = true;
 
+    /** Version of the catalog contents, incremented on every change */
+    protected final AtomicLong contentsVersion = new AtomicLong();
+
+    /** The last read snapshot built, see {@link #getReadSnapshot()} */
+    protected volatile CatalogReadSnapshot readSnapshot;
+
     public CatalogImpl() {
         facade = new DefaultCatalogFacade(this);
         // wrap the default catalog facade with the facade capable of handling isolated workspaces
@@ -144,6 +151,44 @@ public class CatalogImpl implements Catalog {
         return GeoServerExtensions.extensions(CatalogValidator.class);
     }
 
+    /**
+     * Returns an immutable snapshot of the catalog contents, that read only code paths can share
+     * without locking nor proxies, see {@link CatalogReadSnapshot}. The snapshot is built on first
+     * use after each change to the catalog, so that a batch of changes is not paid for object by
+     * object, and then returned as is until the next change.
+     *
+     * @throws UnsupportedOperationException if the catalog does not use the default, in memory,
+     *     catalog facade
+     */
+    public CatalogReadSnapshot getReadSnapshot() {
+        CatalogReadSnapshot snapshot = readSnapshot;
+        if (snapshot != null && snapshot.getVersion() == contentsVersion.get()) {
+            return snapshot;
+        }
+        synchronized (contentsVersion) {
+            // the version is read before the contents, a change in the meantime invalidates it
+            long version = contentsVersion.get();
+            snapshot = readSnapshot;
+            if (snapshot == null || snapshot.getVersion() != version) {
+                snapshot = new CatalogReadSnapshot(version, getDefaultFacade());
+                readSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    private DefaultCatalogFacade getDefaultFacade() {
+        CatalogFacade unwrapped = ProxyUtils.unwrap(facade, LockingCatalogFacade.class);
+        if (unwrapped instanceof IsolatedCatalogFacade) {
+            unwrapped = ((IsolatedCatalogFacade) unwrapped).getFacade();
+        }
+        if (!(unwrapped instanceof DefaultCatalogFacade)) {
+            throw new UnsupportedOperationException(
+                    "Read snapshots are not supported by " + unwrapped.getClass().getName());
+        }
+        return (DefaultCatalogFacade) unwrapped;
+    }
+
     public void setFacade(CatalogFacade facade) {
         final GeoServerConfigurationLock configurationLock =
                 GeoServerExtensions.bean(GeoServerConfigurationLock.class);
@@ -1798,6 +1843,7 @@ public class CatalogImpl implements Catalog {
     public void dispose() {
         if (resourcePool != null) resourcePool.dispose();
         facade.dispose();
+        contentsVersion.incrementAndGet();
     }
 
     protected void added(CatalogInfo object) {
@@ -1865,6 +1911,8 @@ public class CatalogImpl implements Catalog {
     }
 
     protected void event(CatalogEvent event) {
+        // the contents changed, or are about to, the read snapshot has to be built again
+        contentsVersion.incrementAndGet();
         CatalogException toThrow = null;
 
         for (CatalogListener listener : listeners) {
@@ -2144,6 +2192,7 @@ public class CatalogImpl implements Catalog {
 
     public void sync(CatalogImpl other) {
         other.facade.syncTo(facade);
+        contentsVersion.incrementAndGet();
         listeners = other.listeners;
 
         if (resourcePool != other.resourcePool) {
@@ -8,8 +8,10 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.Function;
@@ -29,6 +31,10 @@ import org.opengis.feature.type.Name;
  * <p>The lookups by predicate have been tested and optimized for performance, in particular the
  * current for loops turned out to be significantly faster than building and returning streams
  *
+ * <p>Secondary indexes can be registered on commonly filtered properties (see {@link
+ * #addIndex(String, Class, Function)}), the {@link IndexedQueryPlanner} uses them to turn filters
+ * into direct lookups instead of full scans.
+ *
  * @param <T>
  */
 class CatalogInfoLookup<T extends CatalogInfo> {
@@ -37,6 +43,8 @@ class CatalogInfoLookup<T extends CatalogInfo> {
     ConcurrentHashMap<Class<T>, Map<String, T>> idMultiMap = new ConcurrentHashMap<>();
     ConcurrentHashMap<Class<T>, Map<Name, T>> nameMultiMap = new ConcurrentHashMap<>();
     Function<T, Name> nameMapper;
+    /** Secondary indexes, keyed by the property name they index */
+    ConcurrentHashMap<String, PropertyIndex<T>> indexes = new ConcurrentHashMap<>();
     static final Predicate<?> TRUE = x -> true;
 
     /** Returns {@link CatalogInfoLookup#TRUE} in a type-safe way */
@@ -49,6 +57,24 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         this.nameMapper = nameMapper;
     }
 
+    /**
+     * Registers a secondary index on the given property. The key extractor must return the value the
+     * property would evaluate to in a filter (null values are supported), the key type is used to
+     * convert the filter literals before looking up the index.
+     *
+     * <p>Indexes must be registered before any value is added to the lookup.
+     */
+    public CatalogInfoLookup<T> addIndex(
+            String property, Class<?> keyType, Function<T, Object> keyExtractor) {
+        indexes.put(property, new PropertyIndex<>(keyType, keyExtractor));
+        return this;
+    }
+
+    /** Returns the index for the given property, or null if the property is not indexed */
+    PropertyIndex<T> getIndex(String property) {
+        return indexes.get(property);
+    }
+
     @SuppressWarnings("unchecked")
     <K> Map<K, T> getMapForValue(ConcurrentHashMap<Class<T>, Map<K, T>> maps, T value) {
         Class<T> vc;
@@ -89,6 +115,9 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Name name = nameMapper.apply(value);
         nameMap.put(name, value);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
+        for (PropertyIndex<T> index : indexes.values()) {
+            index.add(value);
+        }
         return idMap.put(value.getId(), value);
     }
 
@@ -105,6 +134,9 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Name name = nameMapper.apply(value);
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         nameMap.remove(name);
+        for (PropertyIndex<T> index : indexes.values()) {
+            index.remove(value.getId());
+        }
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
         return idMap.remove(value.getId());
     }
@@ -124,9 +156,30 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         }
     }
 
+    /**
+     * Updates the secondary indexes for the value with the given identifier. Must be called once the
+     * modification proxy has been committed, as the keys are extracted from the actual value.
+     */
+    public void reindex(String id) {
+        if (indexes.isEmpty() || id == null) {
+            return;
+        }
+        CatalogInfo value = findById(id, CatalogInfo.class);
+        if (value != null) {
+            @SuppressWarnings("unchecked")
+            T t = (T) value;
+            for (PropertyIndex<T> index : indexes.values()) {
+                index.reindex(t);
+            }
+        }
+    }
+
     public void clear() {
         idMultiMap.clear();
         nameMultiMap.clear();
+        for (PropertyIndex<T> index : indexes.values()) {
+            index.clear();
+        }
     }
 
     /**
@@ -157,6 +210,26 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         return result;
     }
 
+    /**
+     * Looks up objects by class and matching predicate, among the given candidates (usually coming
+     * from a secondary index lookup)
+     */
+    <U extends CatalogInfo> List<U> list(
+            Class<U> clazz, Collection<T> candidates, Predicate<U> predicate) {
+        ArrayList<U> result = new ArrayList<>();
+        for (T v : candidates) {
+            if (clazz.isInstance(v)) {
+                @SuppressWarnings("unchecked")
+                final U u = (U) v;
+                if (predicate == TRUE || predicate.test(u)) {
+                    result.add(u);
+                }
+            }
+        }
+
+        return result;
+    }
+
     /** Looks up a CatalogInfo by class and identifier */
     public <U extends CatalogInfo> U findById(String id, Class<U> clazz) {
         for (Class<T> key : idMultiMap.keySet()) {
@@ -246,4 +319,74 @@ class CatalogInfoLookup<T extends CatalogInfo> {
 
         return this;
     }
+
+    /**
+     * A secondary index on a single valued property, mapping each property value to the catalog
+     * objects having it. Objects are kept sorted by id in each bucket to get a stable output.
+     */
+    static final class PropertyIndex<T extends CatalogInfo> {
+
+        /** Placeholder for null values, the concurrent maps do not support null keys */
+        static final Object NULL_KEY = new Object();
+
+        final Class<?> keyType;
+
+        final Function<T, Object> keyExtractor;
+
+        /** The values, grouped by key */
+        final Map<Object, Map<String, T>> buckets = new ConcurrentHashMap<>();
+
+        /** The key each value is currently indexed under, by value id */
+        final Map<String, Object> keys = new ConcurrentHashMap<>();
+
+        PropertyIndex(Class<?> keyType, Function<T, Object> keyExtractor) {
+            this.keyType = keyType;
+            this.keyExtractor = keyExtractor;
+        }
+
+        Object key(T value) {
+            Object key = keyExtractor.apply(value);
+            return key == null ? NULL_KEY : key;
+        }
+
+        void add(T value) {
+            remove(value.getId());
+            Object key = key(value);
+            keys.put(value.getId(), key);
+            buckets.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>())
+                    .put(value.getId(), value);
+        }
+
+        void remove(String id) {
+            Object key = keys.remove(id);
+            if (key != null) {
+                Map<String, T> bucket = buckets.get(key);
+                if (bucket != null) {
+                    bucket.remove(id);
+                }
+            }
+        }
+
+        void reindex(T value) {
+            Object oldKey = keys.get(value.getId());
+            if (!Objects.equals(oldKey, key(value))) {
+                remove(value.getId());
+                add(value);
+            }
+        }
+
+        /** Returns the values indexed under the given key, null is a valid key */
+        Collection<T> get(Object key) {
+            Map<String, T> bucket = buckets.get(key == null ? NULL_KEY : key);
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            return bucket.values();
+        }
+
+        void clear() {
+            buckets.clear();
+            keys.clear();
+        }
+    }
 }
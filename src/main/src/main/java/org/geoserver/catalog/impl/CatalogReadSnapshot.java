@@ -0,0 +1,227 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geotools.feature.NameImpl;
+import org.opengis.feature.type.Name;
+
+/**
+ * Immutable, versioned view of the contents of a {@link CatalogImpl}, for the read only code paths
+ * looking up catalog objects at high rates, such as the OWS requests.
+ *
+ * <p>The regular catalog lookups go through the facade locking, and wrap every returned object in
+ * a {@link ModificationProxy} so that it can be modified and saved back. The snapshot instead
+ * hands out the objects held by the catalog, without proxies nor locking, lookups are plain reads
+ * of maps that never change once the snapshot is built. The returned objects must not be
+ * modified, code willing to modify them has to look them up in the catalog.
+ *
+ * <p>Snapshots are obtained from {@link CatalogImpl#getReadSnapshot()}, which builds a new one,
+ * with a higher version, on first use after each change to the catalog contents. A snapshot keeps
+ * the set of objects, and the names they are found by, it had when built, while the objects
+ * themselves are shared with the catalog, and reflect the changes committed to them afterwards.
+ *
+ * <p>The snapshot works on the raw catalog contents, it does not perform any security check, nor
+ * does it hide the isolated workspaces outside of their virtual services.
+ */
+public final class CatalogReadSnapshot {
+
+    final long version;
+
+    final WorkspaceInfo defaultWorkspace;
+
+    final NamespaceInfo defaultNamespace;
+
+    /** The objects by id, grouped by catalog object type */
+    final Map<Class<? extends CatalogInfo>, Map<String, CatalogInfo>> ids = new LinkedHashMap<>();
+
+    final Map<Name, WorkspaceInfo> workspaces;
+
+    final Map<Name, NamespaceInfo> namespaces;
+
+    final Map<Name, StoreInfo> stores;
+
+    final Map<Name, ResourceInfo> resources;
+
+    final Map<Name, LayerInfo> layers;
+
+    /** Layers by resource name, regardless of the namespace, first one wins */
+    final Map<String, LayerInfo> layersByLocalName = new HashMap<>();
+
+    final Map<Name, LayerGroupInfo> layerGroups;
+
+    final Map<Name, StyleInfo> styles;
+
+    final List<LayerInfo> layerList;
+
+    final List<LayerGroupInfo> layerGroupList;
+
+    CatalogReadSnapshot(long version, DefaultCatalogFacade facade) {
+        this.version = version;
+        this.defaultWorkspace = ModificationProxy.unwrap(facade.defaultWorkspace);
+        this.defaultNamespace = ModificationProxy.unwrap(facade.defaultNamespace);
+        this.workspaces =
+                index(
+                        WorkspaceInfo.class,
+                        facade.workspaces.values(),
+                        DefaultCatalogFacade.WORKSPACE_NAME_MAPPER);
+        this.namespaces =
+                index(
+                        NamespaceInfo.class,
+                        facade.namespaces.values(),
+                        DefaultCatalogFacade.NAMESPACE_NAME_MAPPER);
+        this.stores =
+                index(
+                        StoreInfo.class,
+                        facade.stores.values(),
+                        DefaultCatalogFacade.STORE_NAME_MAPPER);
+        this.resources =
+                index(
+                        ResourceInfo.class,
+                        facade.resources.values(),
+                        DefaultCatalogFacade.RESOURCE_NAME_MAPPER);
+        this.layers =
+                index(
+                        LayerInfo.class,
+                        facade.layers.values(),
+                        DefaultCatalogFacade.LAYER_NAME_MAPPER);
+        this.layerGroups =
+                index(
+                        LayerGroupInfo.class,
+                        facade.layerGroups.values(),
+                        DefaultCatalogFacade.LAYERGROUP_NAME_MAPPER);
+        this.styles =
+                index(
+                        StyleInfo.class,
+                        facade.styles.values(),
+                        DefaultCatalogFacade.STYLE_NAME_MAPPER);
+        this.layerList = list(layers);
+        this.layerGroupList = list(layerGroups);
+        for (LayerInfo layer : layerList) {
+            layersByLocalName.putIfAbsent(layer.getResource().getName(), layer);
+        }
+    }
+
+    private <T extends CatalogInfo> Map<Name, T> index(
+            Class<T> type, Collection<T> values, Function<T, Name> nameMapper) {
+        Map<String, CatalogInfo> byId = new HashMap<>();
+        Map<Name, T> byName = new LinkedHashMap<>();
+        for (T value : values) {
+            byId.put(value.getId(), value);
+            byName.putIfAbsent(nameMapper.apply(value), value);
+        }
+        ids.put(type, byId);
+        return byName;
+    }
+
+    private static <T> List<T> list(Map<Name, T> index) {
+        return Collections.unmodifiableList(new ArrayList<>(index.values()));
+    }
+
+    /** The version of the catalog contents this snapshot was built from */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns the object with the given id and type, or null if not found */
+    public <T extends CatalogInfo> T getById(String id, Class<T> clazz) {
+        for (Map.Entry<Class<? extends CatalogInfo>, Map<String, CatalogInfo>> entry :
+                ids.entrySet()) {
+            Class<? extends CatalogInfo> type = entry.getKey();
+            if (type.isAssignableFrom(clazz) || clazz.isAssignableFrom(type)) {
+                CatalogInfo info = entry.getValue().get(id);
+                if (clazz.isInstance(info)) {
+                    return clazz.cast(info);
+                }
+            }
+        }
+        return null;
+    }
+
+    public WorkspaceInfo getDefaultWorkspace() {
+        return defaultWorkspace;
+    }
+
+    public NamespaceInfo getDefaultNamespace() {
+        return defaultNamespace;
+    }
+
+    public WorkspaceInfo getWorkspaceByName(String name) {
+        return workspaces.get(new NameImpl(name));
+    }
+
+    public NamespaceInfo getNamespaceByPrefix(String prefix) {
+        return namespaces.get(new NameImpl(prefix));
+    }
+
+    public <T extends StoreInfo> T getStoreByName(
+            WorkspaceInfo workspace, String name, Class<T> clazz) {
+        return filter(stores.get(new NameImpl(workspace.getId(), name)), clazz);
+    }
+
+    public <T extends ResourceInfo> T getResourceByName(
+            NamespaceInfo namespace, String name, Class<T> clazz) {
+        return filter(resources.get(new NameImpl(namespace.getId(), name)), clazz);
+    }
+
+    /** Returns the layer publishing the resource with the given name in the given namespace */
+    public LayerInfo getLayerByName(NamespaceInfo namespace, String name) {
+        return layers.get(new NameImpl(namespace.getId(), name));
+    }
+
+    /**
+     * Returns the layer with the given name, either prefixed, or looked up in the default
+     * namespace first, and then in any namespace, like {@link CatalogImpl#getLayerByName(String)}
+     */
+    public LayerInfo getLayerByName(String name) {
+        int colon = name.indexOf(':');
+        if (colon != -1) {
+            NamespaceInfo namespace = getNamespaceByPrefix(name.substring(0, colon));
+            return namespace == null ? null : getLayerByName(namespace, name.substring(colon + 1));
+        }
+        LayerInfo result = null;
+        if (defaultNamespace != null) {
+            result = getLayerByName(defaultNamespace, name);
+        }
+        return result != null ? result : layersByLocalName.get(name);
+    }
+
+    /** Returns the layer group with the given name, in the given workspace or global if null */
+    public LayerGroupInfo getLayerGroupByName(WorkspaceInfo workspace, String name) {
+        return layerGroups.get(new NameImpl(workspace != null ? workspace.getId() : null, name));
+    }
+
+    /** Returns the style with the given name, in the given workspace or global if null */
+    public StyleInfo getStyleByName(WorkspaceInfo workspace, String name) {
+        return styles.get(new NameImpl(workspace != null ? workspace.getId() : null, name));
+    }
+
+    public List<LayerInfo> getLayers() {
+        return layerList;
+    }
+
+    public List<LayerGroupInfo> getLayerGroups() {
+        return layerGroupList;
+    }
+
+    private static <T> T filter(Object info, Class<T> clazz) {
+        return clazz.isInstance(info) ? clazz.cast(info) : null;
+    }
+}
@@ -11,6 +11,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -31,6 +32,7 @@ import org.geoserver.catalog.LockingCatalogFacade;
 import org.geoserver.catalog.MapInfo;
 import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.PublishedType;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
@@ -91,10 +93,18 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                             s.getWorkspace() != null ? s.getWorkspace().getId() : null,
                             s.getName());
 
+    /** Extracts the identifier of a referenced catalog object, used to build secondary indexes */
+    static String id(CatalogInfo info) {
+        return info == null ? null : info.getId();
+    }
+
     static final class LayerInfoLookup extends CatalogInfoLookup<LayerInfo> {
 
         public LayerInfoLookup() {
             super(LAYER_NAME_MAPPER);
+            addIndex("resource.id", String.class, l -> id(l.getResource()));
+            addIndex("defaultStyle.id", String.class, l -> id(l.getDefaultStyle()));
+            addIndex("type", PublishedType.class, l -> l.getType());
         }
 
         public void update(ResourceInfo proxiedValue) {
@@ -122,14 +132,20 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     /** Contains the stores keyed by implementation class */
-    protected CatalogInfoLookup<StoreInfo> stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+    protected CatalogInfoLookup<StoreInfo> stores =
+            new CatalogInfoLookup<>(STORE_NAME_MAPPER)
+                    .addIndex("workspace.id", String.class, s -> id(s.getWorkspace()));
 
     /** The default store keyed by workspace id */
     protected Map<String, DataStoreInfo> defaultStores = new ConcurrentHashMap<>();
 
     /** resources */
     protected CatalogInfoLookup<ResourceInfo> resources =
-            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER)
+                    .addIndex("namespace.id", String.class, r -> id(r.getNamespace()))
+                    .addIndex("store.id", String.class, r -> id(r.getStore()))
+                    .addIndex("enabled", Boolean.class, r -> r.isEnabled())
+                    .addIndex("advertised", Boolean.class, r -> r.isAdvertised());
 
     /** The default namespace */
     protected volatile NamespaceInfo defaultNamespace;
@@ -153,10 +169,13 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
     /** layer groups */
     protected CatalogInfoLookup<LayerGroupInfo> layerGroups =
-            new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+            new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER)
+                    .addIndex("workspace.id", String.class, lg -> id(lg.getWorkspace()));
 
     /** styles */
-    protected CatalogInfoLookup<StyleInfo> styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+    protected CatalogInfoLookup<StyleInfo> styles =
+            new CatalogInfoLookup<>(STYLE_NAME_MAPPER)
+                    .addIndex("workspace.id", String.class, s -> id(s.getWorkspace()));
 
     /** the catalog */
     private CatalogImpl catalog;
@@ -206,6 +225,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(store, propertyNames, oldValues, newValues);
         stores.update(store);
         commitProxy(store);
+        stores.reindex(store.getId());
         afterSaved(store, propertyNames, oldValues, newValues);
     }
 
@@ -326,6 +346,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         resources.update(resource);
         layers.update(resource);
         commitProxy(resource);
+        resources.reindex(resource.getId());
         afterSaved(resource, propertyNames, oldValues, newValues);
     }
 
@@ -440,6 +461,9 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(layer, propertyNames, oldValues, newValues);
         layers.update(layer);
         commitProxy(layer);
+        layers.reindex(layer.getId());
+        // nested changes to the resource are committed along with the layer
+        resources.reindex(id(layer.getResource()));
         afterSaved(layer, propertyNames, oldValues, newValues);
     }
 
@@ -599,6 +623,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(layerGroup, propertyNames, oldValues, newValues);
         layerGroups.update(layerGroup);
         commitProxy(layerGroup);
+        layerGroups.reindex(layerGroup.getId());
         afterSaved(layerGroup, propertyNames, oldValues, newValues);
     }
 
@@ -881,6 +906,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(style, propertyNames, oldValues, newValues);
         styles.update(style);
         commitProxy(style);
+        styles.reindex(style.getId());
         afterSaved(style, propertyNames, oldValues, newValues);
     }
 
@@ -1091,7 +1117,8 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
     @Override
     public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
-        return Iterables.size(iterable(of, filter, null));
+        // no need to wrap the matches in modification proxies just to count them
+        return query(of, filter).size();
     }
 
     /**
@@ -1145,7 +1172,13 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             }
         }
 
-        Iterable<T> iterable = iterable(of, filter, sortOrder);
+        // when sorting only the first offset + count items need to be fully ordered
+        int limit = -1;
+        if (count != null && count.intValue() >= 0) {
+            long last = (long) count.intValue() + (offset == null ? 0 : Math.max(0, offset));
+            limit = (int) Math.min(Integer.MAX_VALUE, last);
+        }
+        Iterable<T> iterable = iterable(of, filter, sortOrder, limit);
 
         if (offset != null && offset.intValue() > 0) {
             iterable = Iterables.skip(iterable, offset.intValue());
@@ -1160,47 +1193,125 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         return new CloseableIteratorAdapter<>(iterator);
     }
 
-    @SuppressWarnings("unchecked")
     public <T extends CatalogInfo> Iterable<T> iterable(
             final Class<T> of, final Filter filter, final SortBy[] sortByList) {
+        return iterable(of, filter, sortByList, -1);
+    }
+
+    /**
+     * Returns the objects matching the filter, sorted. If a limit is provided, only the first
+     * {@code limit} items are returned
+     */
+    private <T extends CatalogInfo> Iterable<T> iterable(
+            final Class<T> of, final Filter filter, final SortBy[] sortByList, int limit) {
+        List<T> all = query(of, filter);
+
+        if (null != sortByList && sortByList.length > 0) {
+            all = sort(all, sortByList, limit);
+        }
+
+        return ModificationProxy.createList(all, of);
+    }
+
+    /** Returns the (unwrapped) objects matching the filter, using the secondary indexes if possible */
+    @SuppressWarnings("unchecked")
+    private <T extends CatalogInfo> List<T> query(final Class<T> of, final Filter filter) {
         List<T> all;
 
         if (NamespaceInfo.class.isAssignableFrom(of)) {
-            all = namespaces.list(of, toPredicate(filter));
+            all = query(namespaces, of, filter);
         } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
-            all = workspaces.list(of, toPredicate(filter));
+            all = query(workspaces, of, filter);
         } else if (StoreInfo.class.isAssignableFrom(of)) {
-            all = stores.list(of, toPredicate(filter));
+            all = query(stores, of, filter);
         } else if (ResourceInfo.class.isAssignableFrom(of)) {
-            all = resources.list(of, toPredicate(filter));
+            all = query(resources, of, filter);
         } else if (LayerInfo.class.isAssignableFrom(of)) {
-            all = layers.list(of, toPredicate(filter));
+            all = query(layers, of, filter);
         } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
-            all = layerGroups.list(of, toPredicate(filter));
+            all = query(layerGroups, of, filter);
         } else if (PublishedInfo.class.isAssignableFrom(of)) {
             all = new ArrayList<>();
-            all.addAll((List<T>) layers.list(LayerInfo.class, toPredicate(filter)));
-            all.addAll((List<T>) layerGroups.list(LayerGroupInfo.class, toPredicate(filter)));
+            all.addAll((List<T>) query(layers, LayerInfo.class, filter));
+            all.addAll((List<T>) query(layerGroups, LayerGroupInfo.class, filter));
         } else if (StyleInfo.class.isAssignableFrom(of)) {
-            all = styles.list(of, toPredicate(filter));
+            all = query(styles, of, filter);
         } else if (MapInfo.class.isAssignableFrom(of)) {
             all = (List<T>) new ArrayList<>(maps);
         } else {
             throw new IllegalArgumentException("Unknown type: " + of);
         }
 
-        if (null != sortByList) {
-            for (int i = sortByList.length - 1; i >= 0; i--) {
-                SortBy sortBy = sortByList[i];
-                Ordering<Object> ordering = Ordering.from(comparator(sortBy));
-                if (SortOrder.DESCENDING.equals(sortBy.getSortOrder())) {
-                    ordering = ordering.reverse();
-                }
-                all = ordering.sortedCopy(all);
+        return all;
+    }
+
+    private <T extends CatalogInfo, U extends CatalogInfo> List<U> query(
+            CatalogInfoLookup<T> lookup, Class<U> of, Filter filter) {
+        Collection<T> candidates = IndexedQueryPlanner.candidates(lookup, filter);
+        if (candidates == null) {
+            return lookup.list(of, toPredicate(filter));
+        }
+        // the indexes only narrow down the search, the filter still needs to be evaluated
+        return lookup.list(of, candidates, toPredicate(filter));
+    }
+
+    /**
+     * Sorts the objects, extracting the sort keys just once per object, as reflective property
+     * access is the most expensive part of the comparison. If a limit is provided, only the first
+     * {@code limit} objects are returned.
+     */
+    private <T> List<T> sort(List<T> values, SortBy[] sortByList, int limit) {
+        String[] properties = new String[sortByList.length];
+        for (int i = 0; i < sortByList.length; i++) {
+            properties[i] = sortByList[i].getPropertyName().getPropertyName();
+        }
+        List<SortEntry<T>> entries = new ArrayList<>(values.size());
+        for (T value : values) {
+            Object[] keys = new Object[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                keys[i] = OwsUtils.get(value, properties[i]);
             }
+            entries.add(new SortEntry<>(keys, value, entries.size()));
         }
 
-        return ModificationProxy.createList(all, of);
+        Comparator<SortEntry<T>> comparator = null;
+        for (int i = 0; i < sortByList.length; i++) {
+            final int idx = i;
+            Comparator<SortEntry<T>> c = (e1, e2) -> compare(e1.keys[idx], e2.keys[idx]);
+            if (SortOrder.DESCENDING.equals(sortByList[i].getSortOrder())) {
+                c = c.reversed();
+            }
+            comparator = comparator == null ? c : comparator.thenComparing(c);
+        }
+        // keep the sort stable, equal objects are returned in their original order
+        comparator = comparator.thenComparingInt(e -> e.position);
+
+        List<SortEntry<T>> sorted;
+        if (limit >= 0 && limit < entries.size()) {
+            sorted = Ordering.from(comparator).leastOf(entries, limit);
+        } else {
+            entries.sort(comparator);
+            sorted = entries;
+        }
+
+        List<T> result = new ArrayList<>(sorted.size());
+        for (SortEntry<T> entry : sorted) {
+            result.add(entry.value);
+        }
+        return result;
+    }
+
+    /** An object along with its pre-extracted sort keys */
+    private static final class SortEntry<T> {
+        final Object[] keys;
+        final T value;
+        final int position;
+
+        SortEntry(Object[] keys, T value, int position) {
+            this.keys = keys;
+            this.value = value;
+            this.position = position;
+        }
     }
 
     private <T> Predicate<T> toPredicate(Filter filter) {
@@ -1212,22 +1323,18 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     @SuppressWarnings("unchecked")
-    private Comparator<Object> comparator(final SortBy sortOrder) {
-        return (o1, o2) -> {
-            Object v1 = OwsUtils.get(o1, sortOrder.getPropertyName().getPropertyName());
-            Object v2 = OwsUtils.get(o2, sortOrder.getPropertyName().getPropertyName());
-            if (v1 == null) {
-                if (v2 == null) {
-                    return 0;
-                } else {
-                    return -1;
-                }
-            } else if (v2 == null) {
-                return 1;
+    private static int compare(Object v1, Object v2) {
+        if (v1 == null) {
+            if (v2 == null) {
+                return 0;
+            } else {
+                return -1;
             }
-            Comparable c1 = (Comparable) v1;
-            Comparable c2 = (Comparable) v2;
-            return c1.compareTo(c2);
-        };
+        } else if (v2 == null) {
+            return 1;
+        }
+        Comparable c1 = (Comparable) v1;
+        Comparable c2 = (Comparable) v2;
+        return c1.compareTo(c2);
     }
 }
@@ -0,0 +1,129 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.impl.CatalogInfoLookup.PropertyIndex;
+import org.geotools.util.Converters;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Turns catalog filters into lookups against the secondary indexes of a {@link CatalogInfoLookup}.
+ *
+ * <p>The planner only computes a superset of the objects matching the filter, the caller is still
+ * expected to evaluate the full filter against the returned candidates. The following filters are
+ * supported:
+ *
+ * <ul>
+ *   <li>{@link PropertyIsEqualTo} between an indexed property and a literal. Comparing a reference
+ *       property (e.g. {@code workspace}) with a {@link CatalogInfo} literal uses the index on its
+ *       identifier (e.g. {@code workspace.id}), if any
+ *   <li>{@link PropertyIsNull} on an indexed property
+ *   <li>{@link And}, using the most selective of its indexable children
+ *   <li>{@link Or}, as the union of its children, provided all of them are indexable
+ * </ul>
+ */
+final class IndexedQueryPlanner {
+
+    private IndexedQueryPlanner() {}
+
+    /**
+     * Returns the candidates for the given filter, or null if the filter cannot be answered using
+     * the lookup indexes, and a full scan is needed
+     */
+    static <T extends CatalogInfo> Collection<T> candidates(
+            CatalogInfoLookup<T> lookup, Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE || lookup.indexes.isEmpty()) {
+            return null;
+        } else if (filter == Filter.EXCLUDE) {
+            return Collections.emptyList();
+        } else if (filter instanceof PropertyIsEqualTo) {
+            return equalTo(lookup, (PropertyIsEqualTo) filter);
+        } else if (filter instanceof PropertyIsNull) {
+            Expression expression = ((PropertyIsNull) filter).getExpression();
+            PropertyIndex<T> index = getIndex(lookup, expression);
+            return index == null ? null : index.get(null);
+        } else if (filter instanceof And) {
+            Collection<T> best = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                Collection<T> candidates = candidates(lookup, child);
+                if (candidates != null && (best == null || candidates.size() < best.size())) {
+                    best = candidates;
+                    if (best.isEmpty()) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        } else if (filter instanceof Or) {
+            Map<String, T> union = new LinkedHashMap<>();
+            for (Filter child : ((Or) filter).getChildren()) {
+                Collection<T> candidates = candidates(lookup, child);
+                if (candidates == null) {
+                    return null;
+                }
+                for (T candidate : candidates) {
+                    union.put(candidate.getId(), candidate);
+                }
+            }
+            return union.values();
+        }
+
+        return null;
+    }
+
+    private static <T extends CatalogInfo> Collection<T> equalTo(
+            CatalogInfoLookup<T> lookup, PropertyIsEqualTo filter) {
+        Expression property = filter.getExpression1();
+        Expression literal = filter.getExpression2();
+        if (literal instanceof PropertyName && property instanceof Literal) {
+            property = filter.getExpression2();
+            literal = filter.getExpression1();
+        }
+        if (!(property instanceof PropertyName) || !(literal instanceof Literal)) {
+            return null;
+        }
+        Object value = ((Literal) literal).getValue();
+        if (value == null || (value instanceof String && !filter.isMatchingCase())) {
+            return null;
+        }
+
+        PropertyIndex<T> index = getIndex(lookup, property);
+        if (index == null && value instanceof CatalogInfo) {
+            // comparing against a catalog object, equality implies the same identifier
+            String name = ((PropertyName) property).getPropertyName();
+            index = lookup.getIndex(name + ".id");
+            value = ((CatalogInfo) value).getId();
+        }
+        if (index == null) {
+            return null;
+        }
+        Object key = Converters.convert(value, index.keyType);
+        if (key == null) {
+            // cannot tell how the filter would compare the values, fall back on a scan
+            return null;
+        }
+        return index.get(key);
+    }
+
+    private static <T extends CatalogInfo> PropertyIndex<T> getIndex(
+            CatalogInfoLookup<T> lookup, Expression expression) {
+        if (expression instanceof PropertyName) {
+            return lookup.getIndex(((PropertyName) expression).getPropertyName());
+        }
+        return null;
+    }
+}
@@ -45,6 +45,11 @@ final class IsolatedCatalogFacade implements CatalogFacade {
         this.facade = facade;
     }
 
+    /** The wrapped catalog facade */
+    CatalogFacade getFacade() {
+        return facade;
+    }
+
     @Override
     public Catalog getCatalog() {
         return facade.getCatalog();
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.UnaryOperator;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
@@ -78,11 +79,10 @@ public class ModificationProxy implements WrappingProxy, Serializable {
     @SuppressWarnings("unchecked") // lots of generic behavior, cannot use params
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 
-        String property = null;
-        if ((method.getName().startsWith("get") || method.getName().startsWith("is"))
-                && method.getParameterCount() == 0) {
+        PropertyMethod pm = PropertyMethod.of(method);
+        String property = pm.property;
+        if (pm.getter) {
             // intercept getter to check the dirty property set
-            property = method.getName().substring(method.getName().startsWith("get") ? 3 : 2);
             if (properties != null && properties().containsKey(property)) {
                 // return the previously set object
                 return properties().get(property);
@@ -117,9 +117,8 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                 }
             }
         }
-        if (method.getName().startsWith("set") && args.length == 1) {
+        if (pm.setter) {
             // intercept setter and put new value in list
-            property = method.getName().substring(3);
             properties().put(property, args[0]);
 
             return null;
@@ -590,6 +589,45 @@ public class ModificationProxy implements WrappingProxy, Serializable {
         }
     }
 
+    /**
+     * Caches the getter/setter nature of the proxied methods along with the property name, to avoid
+     * parsing the method names over and over on each invocation
+     */
+    static final class PropertyMethod {
+
+        static final Map<Method, PropertyMethod> CACHE = new ConcurrentHashMap<>();
+
+        final boolean getter;
+
+        final boolean setter;
+
+        final String property;
+
+        private PropertyMethod(Method method) {
+            String name = method.getName();
+            this.getter =
+                    (name.startsWith("get") || name.startsWith("is"))
+                            && method.getParameterCount() == 0;
+            this.setter = name.startsWith("set") && method.getParameterCount() == 1;
+            if (getter) {
+                this.property = name.substring(name.startsWith("get") ? 3 : 2);
+            } else if (setter) {
+                this.property = name.substring(3);
+            } else {
+                this.property = null;
+            }
+        }
+
+        static PropertyMethod of(Method method) {
+            PropertyMethod pm = CACHE.get(method);
+            if (pm == null) {
+                pm = new PropertyMethod(method);
+                CACHE.put(method, pm);
+            }
+            return pm;
+        }
+    }
+
     static class list<T> extends ProxyList<T> implements List<T> {
 
         list(List<T> list, Class<T> clazz) {
@@ -7,6 +7,7 @@ package org.geoserver.catalog.impl;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -22,7 +23,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ProxyUtils {
 
     /** Avoids the cost of looking up over and over the same proxy class */
-    static final Map<ProxyClassConstructorKey, Constructor> PROXY_CLASS_CACHE =
+    static final Map<ProxyClassConstructorKey, Constructor<?>> PROXY_CLASS_CACHE =
             new ConcurrentHashMap<>();
 
     static final class ProxyClassConstructorKey {
@@ -82,37 +83,61 @@ public class ProxyUtils {
      */
     public static <T> T createProxy(T proxyObject, Class<? extends T> clazz, InvocationHandler h) {
         try {
-            // proxy all interfaces implemented by the source object
-            List<Class<?>> proxyInterfaces = Arrays.asList(proxyObject.getClass().getInterfaces());
-
-            // ensure that the specified class is included
-            boolean add = true;
-            for (Class<?> interfce : proxyObject.getClass().getInterfaces()) {
-                if (clazz.isAssignableFrom(interfce)) {
-                    add = false;
-                    break;
-                }
-            }
-            if (add) {
-                // make the list mutable (Arrays.asList is not) and then add the extra
-                // interfaces
-                proxyInterfaces = new ArrayList<>(proxyInterfaces);
-                proxyInterfaces.add(clazz);
+            ProxyClassConstructorKey key =
+                    new ProxyClassConstructorKey(proxyObject.getClass(), clazz);
+            Constructor<?> constructor = PROXY_CLASS_CACHE.get(key);
+            if (constructor == null) {
+                constructor = getProxyConstructor(proxyObject, clazz);
+                PROXY_CLASS_CACHE.put(key, constructor);
             }
 
             @SuppressWarnings("unchecked")
-            T instance =
-                    (T)
-                            Proxy.newProxyInstance(
-                                    clazz.getClassLoader(),
-                                    proxyInterfaces.toArray(new Class[proxyInterfaces.size()]),
-                                    h);
+            T instance = (T) constructor.newInstance(h);
             return instance;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Builds the proxy class for the given object and explicit interface, and returns its
+     * constructor
+     */
+    private static Constructor<?> getProxyConstructor(Object proxyObject, Class<?> clazz)
+            throws NoSuchMethodException {
+        // proxy all interfaces implemented by the source object
+        List<Class<?>> proxyInterfaces = Arrays.asList(proxyObject.getClass().getInterfaces());
+
+        // ensure that the specified class is included
+        boolean add = true;
+        for (Class<?> interfce : proxyObject.getClass().getInterfaces()) {
+            if (clazz.isAssignableFrom(interfce)) {
+                add = false;
+                break;
+            }
+        }
+        if (add) {
+            // make the list mutable (Arrays.asList is not) and then add the extra
+            // interfaces
+            proxyInterfaces = new ArrayList<>(proxyInterfaces);
+            proxyInterfaces.add(clazz);
+        }
+
+        // the proxy class is generated once and cached by the JDK, creating a throwaway
+        // instance is the simplest non deprecated way to get hold of it
+        Object sample =
+                Proxy.newProxyInstance(
+                        clazz.getClassLoader(),
+                        proxyInterfaces.toArray(new Class[proxyInterfaces.size()]),
+                        (proxy, method, args) -> null);
+        Constructor<?> constructor = sample.getClass().getConstructor(InvocationHandler.class);
+        if (!Modifier.isPublic(sample.getClass().getModifiers())) {
+            // proxies of non public interfaces are package private
+            constructor.setAccessible(true);
+        }
+        return constructor;
+    }
+
     /**
      * Unwraps a proxy returning the underlying object, if one exists.
      *
@@ -0,0 +1,587 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.AccessLimits;
+import org.geoserver.security.WrapperPolicy;
+import org.geoserver.security.decorators.SecuredCoverageInfo;
+import org.geoserver.security.decorators.SecuredFeatureTypeInfo;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.util.Converters;
+import org.geotools.util.factory.GeoTools;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Keeps the domain of the layer dimensions in memory, so that capabilities documents, dimension
+ * default values and nearest match lookups do not need to scan the data at each request.
+ *
+ * <p>Domains are loaded on first access and then kept until the resource or its store are modified
+ * in the catalog. Feature type domains are also updated by the WFS transactions, while coverage
+ * domains are dropped when granules are harvested or removed through the REST API. Changes made to
+ * the data outside of GeoServer are not noticed, the domains are rebuilt after a reset, or after
+ * saving the resource.
+ *
+ * <p>Resources secured by the {@link org.geoserver.security.SecureCatalogImpl} load their domains
+ * with the access limits of the current user applied, so the domains are cached separately for
+ * each distinct set of access limits, with the unrestricted users sharing the same domains. As
+ * the number of distinct limits is not bounded, the restricted domains are kept in a cache holding
+ * at most {@code GEOSERVER_DIMENSION_INDEX_RESTRICTED_VALUES} values overall (one million by
+ * default), the least recently used ones are dropped when the limit is exceeded.
+ *
+ * <p>The index is disabled by default, it can be enabled by setting the {@code
+ * GEOSERVER_DIMENSION_INDEX} system, environment or servlet context variable to true.
+ */
+public class DimensionDomainIndex implements CatalogListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(DimensionDomainIndex.class);
+
+    static final String ENABLED_KEY = "GEOSERVER_DIMENSION_INDEX";
+
+    static final String RESTRICTED_VALUES_KEY = "GEOSERVER_DIMENSION_INDEX_RESTRICTED_VALUES";
+
+    static final long DEFAULT_RESTRICTED_VALUES = 1_000_000;
+
+    /** Loads the full domain of a dimension */
+    @FunctionalInterface
+    public interface DomainLoader {
+        Collection<?> load() throws IOException;
+    }
+
+    /** Returns the index, if available and enabled, or null otherwise */
+    public static DimensionDomainIndex get() {
+        DimensionDomainIndex index = GeoServerExtensions.bean(DimensionDomainIndex.class);
+        return index != null && index.isEnabled() ? index : null;
+    }
+
+    /** The unrestricted domains, bounded by the number of dimensions in the catalog */
+    final Map<DomainKey, Domain> domains = new ConcurrentHashMap<>();
+
+    /** The domains loaded with access limits, weighted by their number of values */
+    final Cache<DomainKey, Domain> restrictedDomains;
+
+    /**
+     * Modification counts of resources and stores, used to avoid caching domains whose load
+     * started before a modification
+     */
+    final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    /** Incremented each time the whole index is cleared */
+    final AtomicLong clears = new AtomicLong();
+
+    boolean enabled;
+
+    public DimensionDomainIndex(Catalog catalog) {
+        this(catalog, getMaxRestrictedValues());
+    }
+
+    DimensionDomainIndex(Catalog catalog, long maxRestrictedValues) {
+        this.enabled = Boolean.parseBoolean(GeoServerExtensions.getProperty(ENABLED_KEY));
+        this.restrictedDomains =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxRestrictedValues)
+                        .weigher((DomainKey k, Domain d) -> d.size() + 1)
+                        .build();
+        catalog.addListener(this);
+    }
+
+    private static long getMaxRestrictedValues() {
+        String value = GeoServerExtensions.getProperty(RESTRICTED_VALUES_KEY);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning(
+                        "Invalid value for "
+                                + RESTRICTED_VALUES_KEY
+                                + ": "
+                                + value
+                                + ", using the default");
+            }
+        }
+        return DEFAULT_RESTRICTED_VALUES;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables/disables the index, the domains are dropped when disabling it */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the domain of the given feature type attribute, loading its unique values on first
+     * access
+     */
+    public Domain getAttributeDomain(FeatureTypeInfo typeInfo, String attribute)
+            throws IOException {
+        return getDomain(
+                typeInfo,
+                attribute,
+                () -> {
+                    FeatureSource<?, ?> source =
+                            typeInfo.getFeatureSource(null, GeoTools.getDefaultHints());
+                    Query query = new Query(source.getSchema().getName().getLocalPart());
+                    query.setPropertyNames(Arrays.asList(attribute));
+                    UniqueVisitor visitor = new UniqueVisitor(attribute);
+                    source.getFeatures(query).accepts(visitor, null);
+                    return visitor.getUnique();
+                });
+    }
+
+    /**
+     * Returns the domain with the given name, loading it on first access. If the loader returns a
+     * {@link SortedSet} the domain will use the same ordering.
+     *
+     * @param resource The resource the domain belongs to
+     * @param name The domain name, unique within the resource
+     * @param loader Loads the full domain
+     */
+    public Domain getDomain(ResourceInfo resource, String name, DomainLoader loader)
+            throws IOException {
+        StoreInfo store = resource.getStore();
+        DomainKey key =
+                new DomainKey(
+                        resource.getId(),
+                        store != null ? store.getId() : null,
+                        name,
+                        getAccessLimits(resource));
+        Map<DomainKey, Domain> cache = getCache(key);
+        Domain domain = cache.get(key);
+        if (domain != null) {
+            return domain;
+        }
+
+        long clearCount = clears.get();
+        long resourceVersion = getVersion(key.resourceId);
+        long storeVersion = getVersion(key.storeId);
+        domain = new Domain(loader.load());
+        if (clearCount == clears.get()
+                && resourceVersion == getVersion(key.resourceId)
+                && storeVersion == getVersion(key.storeId)) {
+            Domain previous = cache.putIfAbsent(key, domain);
+            if (previous != null) {
+                domain = previous;
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Loaded " + domain.size() + " values for " + key);
+        }
+        return domain;
+    }
+
+    /**
+     * Returns the access limits of a resource secured by the {@link
+     * org.geoserver.security.SecureCatalogImpl}, or null if the resource is not secured, or has no
+     * limits
+     */
+    static AccessLimits getAccessLimits(ResourceInfo resource) {
+        WrapperPolicy policy = null;
+        if (resource instanceof SecuredFeatureTypeInfo) {
+            policy = ((SecuredFeatureTypeInfo) resource).getWrapperPolicy();
+        } else if (resource instanceof SecuredCoverageInfo) {
+            policy = ((SecuredCoverageInfo) resource).getWrapperPolicy();
+        }
+        return policy != null ? policy.getLimits() : null;
+    }
+
+    /** Returns the map holding the domains with the given key */
+    private Map<DomainKey, Domain> getCache(DomainKey key) {
+        return key.limits == null ? domains : restrictedDomains.asMap();
+    }
+
+    private long getVersion(String id) {
+        return id == null ? 0 : versions.getOrDefault(id, 0L);
+    }
+
+    private void bumpVersion(String id) {
+        if (id != null) {
+            versions.merge(id, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Adds values to a domain of the given resource, if already loaded, otherwise does nothing, the
+     * values will be found when the domain gets loaded
+     */
+    public void addValues(ResourceInfo resource, String name, Collection<?> values) {
+        // loads running concurrently might miss the new values
+        String id = resource.getId();
+        bumpVersion(id);
+        for (Map.Entry<DomainKey, Domain> entry : domains.entrySet()) {
+            DomainKey key = entry.getKey();
+            if (key.resourceId.equals(id) && key.name.equals(name)) {
+                entry.getValue().addAll(values);
+            }
+        }
+        // cannot tell if the values are visible with the access limits, reload
+        restrictedDomains
+                .asMap()
+                .keySet()
+                .removeIf(k -> k.resourceId.equals(id) && k.name.equals(name));
+    }
+
+    /** Drops all the domains of the given resource */
+    public void invalidate(ResourceInfo resource) {
+        String id = resource.getId();
+        bumpVersion(id);
+        domains.keySet().removeIf(k -> k.resourceId.equals(id));
+        restrictedDomains.asMap().keySet().removeIf(k -> k.resourceId.equals(id));
+    }
+
+    /** Drops all the domains of the resources in the given store */
+    public void invalidate(StoreInfo store) {
+        String id = store.getId();
+        bumpVersion(id);
+        domains.keySet().removeIf(k -> Objects.equals(k.storeId, id));
+        restrictedDomains.asMap().keySet().removeIf(k -> Objects.equals(k.storeId, id));
+    }
+
+    /** Drops all the domains */
+    public void clear() {
+        clears.incrementAndGet();
+        domains.clear();
+        restrictedDomains.invalidateAll();
+    }
+
+    /**
+     * Returns the names of the attributes the feature type dimensions are built from, the ones
+     * {@link #getAttributeDomain(FeatureTypeInfo, String)} can be called for
+     */
+    public static Set<String> getDimensionAttributes(FeatureTypeInfo typeInfo) {
+        Set<String> attributes = new HashSet<>();
+        for (Serializable value : typeInfo.getMetadata().values()) {
+            if (value instanceof DimensionInfo) {
+                DimensionInfo dimension = (DimensionInfo) value;
+                if (dimension.isEnabled() && dimension.getAttribute() != null) {
+                    attributes.add(dimension.getAttribute());
+                }
+            }
+        }
+        return attributes;
+    }
+
+    private void invalidate(CatalogInfo info) {
+        if (info instanceof ResourceInfo) {
+            invalidate((ResourceInfo) info);
+        } else if (info instanceof StoreInfo) {
+            invalidate((StoreInfo) info);
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        // nothing to do, the domains are loaded lazily
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the change to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    /** The sorted values of a dimension domain */
+    public static class Domain {
+
+        final NavigableSet<Object> values;
+
+        final Comparator<? super Object> comparator;
+
+        /** The regular interval between the values, or null if not computed yet */
+        volatile Resolution resolution;
+
+        @SuppressWarnings("unchecked")
+        Domain(Collection<?> values) {
+            this.comparator =
+                    values instanceof SortedSet
+                            ? ((SortedSet<Object>) values).comparator()
+                            : null;
+            this.values = new ConcurrentSkipListSet<>(comparator);
+            addAll(values);
+        }
+
+        void addAll(Collection<?> newValues) {
+            Class<?> target = values.isEmpty() ? null : values.first().getClass();
+            for (Object value : newValues) {
+                if (value == null) {
+                    continue;
+                }
+                // values coming from different sources might use different, non comparable,
+                // classes (e.g., Integer and Long)
+                if (target != null && comparator == null && !target.isInstance(value)) {
+                    Object converted = Converters.convert(value, target);
+                    value = converted != null ? converted : value;
+                }
+                values.add(value);
+            }
+            resolution = null;
+        }
+
+        /** Returns the number of values in the domain */
+        public int size() {
+            return values.size();
+        }
+
+        /** Returns true if the domain has no values */
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        /** The domain values, sorted. The set is a read only view of the domain */
+        public NavigableSet<Object> getValues() {
+            return Collections.unmodifiableNavigableSet(values);
+        }
+
+        /** Returns a copy of the domain values */
+        public TreeSet<Object> toTreeSet() {
+            TreeSet<Object> result = new TreeSet<>(comparator);
+            result.addAll(values);
+            return result;
+        }
+
+        /** The smallest value, or null if the domain is empty */
+        public Object getMin() {
+            return values.isEmpty() ? null : values.first();
+        }
+
+        /** The largest value, or null if the domain is empty */
+        public Object getMax() {
+            return values.isEmpty() ? null : values.last();
+        }
+
+        /**
+         * Returns the interval between consecutive values, in milliseconds for dates, if the domain
+         * has at least three values, all regularly spaced. Returns null otherwise.
+         */
+        public Double getResolution() {
+            Resolution result = resolution;
+            if (result == null) {
+                result = new Resolution(computeResolution());
+                resolution = result;
+            }
+            return result.value;
+        }
+
+        private Double computeResolution() {
+            if (values.size() < 3) {
+                return null;
+            }
+            Iterator<Object> it = values.iterator();
+            Double previous = toDouble(it.next());
+            Double step = null;
+            while (it.hasNext()) {
+                Double current = toDouble(it.next());
+                if (previous == null || current == null) {
+                    return null;
+                }
+                double delta = current - previous;
+                if (step == null) {
+                    step = delta;
+                } else if (Math.abs(delta - step) > Math.abs(step) * 1e-9) {
+                    return null;
+                }
+                previous = current;
+            }
+            return step;
+        }
+
+        /**
+         * Returns the domain value closest to the given one, the lowest one in case of ties, or
+         * null if the domain is empty or the values are neither dates nor numbers
+         */
+        public Object getNearest(Object target) {
+            return getNearest(target, null, null);
+        }
+
+        /**
+         * Returns the domain value closest to the given one, among the ones between the given
+         * bounds, the lowest one in case of ties. Returns null if there is no value between the
+         * bounds, or the values are neither dates nor numbers.
+         *
+         * @param target The reference value, must be between the bounds
+         * @param lower The lower bound, inclusive, or null if unbounded
+         * @param upper The upper bound, inclusive, or null if unbounded
+         */
+        public Object getNearest(Object target, Object lower, Object upper) {
+            Double reference = toDouble(target);
+            if (reference == null || values.isEmpty() || toDouble(values.first()) == null) {
+                return null;
+            }
+            Object key = target;
+            Class<?> valueClass = values.first().getClass();
+            if (comparator == null && !valueClass.isInstance(target)) {
+                key = Converters.convert(target, valueClass);
+            }
+            List<Object> candidates;
+            if (key == null) {
+                // lossy conversion refused (e.g., 3.2 to an integer), scan the whole domain
+                candidates = new ArrayList<>(values);
+            } else {
+                // the converted key might have lost precision, check the neighbours too
+                candidates = new ArrayList<>(4);
+                Object floor = values.floor(key);
+                if (floor != null) {
+                    candidates.add(floor);
+                    candidates.add(values.lower(floor));
+                    candidates.add(values.higher(floor));
+                }
+                candidates.add(values.ceiling(key));
+            }
+            Double min = toDouble(lower);
+            Double max = toDouble(upper);
+            Object nearest = null;
+            double distance = Double.POSITIVE_INFINITY;
+            for (Object candidate : candidates) {
+                Double value = toDouble(candidate);
+                if (value == null
+                        || (min != null && value < min)
+                        || (max != null && value > max)) {
+                    continue;
+                }
+                double d = Math.abs(value - reference);
+                if (d < distance || (d == distance && value < toDouble(nearest))) {
+                    nearest = candidate;
+                    distance = d;
+                }
+            }
+            return nearest;
+        }
+
+        private static Double toDouble(Object value) {
+            if (value instanceof Date) {
+                return (double) ((Date) value).getTime();
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return null;
+        }
+    }
+
+    /** Holder for a lazily computed, possibly null, resolution */
+    static final class Resolution {
+        final Double value;
+
+        Resolution(Double value) {
+            this.value = value;
+        }
+    }
+
+    static final class DomainKey {
+
+        final String resourceId;
+
+        final String storeId;
+
+        final String name;
+
+        /** The access limits the domain was loaded with, null if unrestricted */
+        final AccessLimits limits;
+
+        DomainKey(String resourceId, String storeId, String name, AccessLimits limits) {
+            this.resourceId = resourceId;
+            this.storeId = storeId;
+            this.name = name;
+            this.limits = limits;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DomainKey)) return false;
+            DomainKey other = (DomainKey) o;
+            return resourceId.equals(other.resourceId)
+                    && Objects.equals(storeId, other.storeId)
+                    && name.equals(other.name)
+                    && Objects.equals(limits, other.limits);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resourceId, storeId, name, limits);
+        }
+
+        @Override
+        public String toString() {
+            return "DomainKey[" + resourceId + ", " + name + "]";
+        }
+    }
+}
@@ -0,0 +1,725 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.LocalPublished;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.ProxifyingURLMangler;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.util.logging.Logging;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the GetCapabilities documents, so that large catalogs do not need to be scanned again at
+ * each request.
+ *
+ * <p>Documents are cached per service, version, virtual service, name and role set of the current
+ * user, request parameters and proxy related headers. The user name is part of the key since
+ * resource access managers can grant different access to users sharing the same roles. Only GET
+ * requests are cached. Catalog and configuration changes evict the documents they can affect:
+ * changes to workspace specific objects only evict the documents of that workspace virtual
+ * services, along with the global ones, while changes to global objects evict everything. The
+ * update sequence increments caused by changes unrelated to a cached document do not evict it,
+ * which means different documents can advertise different update sequence values.
+ *
+ * <p>Cached documents are served with an {@code ETag} header, requests with a matching {@code
+ * If-None-Match} get back a 304. Documents can also be kept gzipped in memory, and sent as such to
+ * clients accepting that encoding.
+ *
+ * <p>Changes in the data security rules are detected when using the default resource access
+ * manager. When using other security subsystems, or when the documents depend on configuration
+ * that does not generate catalog events (e.g. gridsets in WMTS) use {@link #clear()}, or a
+ * GeoServer reset, to get the documents rebuilt.
+ *
+ * <p>The cache is disabled by default, it's configured using the following system, environment or
+ * servlet context variables:
+ *
+ * <ul>
+ *   <li>{@code GEOSERVER_CAPABILITIES_CACHE}: enables the cache when set to true
+ *   <li>{@code GEOSERVER_CAPABILITIES_CACHE_SERVICES}: comma separated list of the cached services,
+ *       defaults to {@code WMS,WFS,WCS,WMTS}
+ *   <li>{@code GEOSERVER_CAPABILITIES_CACHE_SIZE}: the maximum size of the cached documents, in
+ *       megabytes, defaults to 64
+ *   <li>{@code GEOSERVER_CAPABILITIES_CACHE_GZIP}: keeps a gzipped copy of each document, defaults
+ *       to true
+ * </ul>
+ */
+public class CapabilitiesCacheCallback extends AbstractDispatcherCallback
+        implements CatalogListener, ConfigurationListener, GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesCacheCallback.class);
+
+    static final String ENABLED_KEY = "GEOSERVER_CAPABILITIES_CACHE";
+
+    static final String SERVICES_KEY = "GEOSERVER_CAPABILITIES_CACHE_SERVICES";
+
+    static final String SIZE_KEY = "GEOSERVER_CAPABILITIES_CACHE_SIZE";
+
+    static final String GZIP_KEY = "GEOSERVER_CAPABILITIES_CACHE_GZIP";
+
+    static final String DEFAULT_SERVICES = "WMS,WFS,WCS,WMTS";
+
+    static final long DEFAULT_SIZE_MB = 64;
+
+    static final String GET_CAPABILITIES = "GetCapabilities";
+
+    Catalog catalog;
+
+    boolean enabled;
+
+    boolean gzip;
+
+    List<String> services;
+
+    Cache<Key, Document> documents;
+
+    /**
+     * Incremented at each eviction, used to avoid caching documents whose generation started
+     * before a configuration change
+     */
+    final AtomicLong generation = new AtomicLong();
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    public CapabilitiesCacheCallback(GeoServer gs) {
+        this.catalog = gs.getCatalog();
+        this.enabled = Boolean.parseBoolean(GeoServerExtensions.getProperty(ENABLED_KEY));
+        String gzipValue = GeoServerExtensions.getProperty(GZIP_KEY);
+        this.gzip = gzipValue == null || Boolean.parseBoolean(gzipValue);
+        String servicesValue = GeoServerExtensions.getProperty(SERVICES_KEY);
+        setServices(servicesValue != null ? servicesValue : DEFAULT_SERVICES);
+        long size = DEFAULT_SIZE_MB;
+        String sizeValue = GeoServerExtensions.getProperty(SIZE_KEY);
+        if (sizeValue != null) {
+            try {
+                size = Long.parseLong(sizeValue.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning(
+                        "Invalid value for " + SIZE_KEY + ": " + sizeValue + ", using the default");
+            }
+        }
+        this.documents =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(size * 1024 * 1024)
+                        .weigher((Key k, Document d) -> d.size())
+                        .build();
+
+        catalog.addListener(this);
+        gs.addListener(this);
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Capabilities document cache enabled: " + enabled);
+        }
+    }
+
+    /** Returns true if the capabilities documents are getting cached */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables/disables the cache, the cached documents are dropped when disabling it */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /** Sets the comma separated list of services whose capabilities are cached */
+    public void setServices(String services) {
+        List<String> result = new ArrayList<>();
+        for (String service : services.split(",")) {
+            if (!service.trim().isEmpty()) {
+                result.add(service.trim().toUpperCase(Locale.ENGLISH));
+            }
+        }
+        this.services = result;
+    }
+
+    /** Drops all the cached documents */
+    public void clear() {
+        evictIf(k -> true);
+    }
+
+    /** Number of requests served from the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Number of cacheable requests that had to build the document */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public Response responseDispatched(
+            Request request, Operation operation, Object result, Response response) {
+        Key key = getKey(request);
+        if (key == null) {
+            return response;
+        }
+
+        Document document = documents.getIfPresent(key);
+        if (document != null && document.securityStamp != getSecurityStamp()) {
+            documents.invalidate(key);
+            document = null;
+        }
+        if (document == null) {
+            misses.incrementAndGet();
+            return new CachingResponse(response, key, generation.get(), getSecurityStamp());
+        }
+
+        hits.incrementAndGet();
+        String match = request.getHttpRequest().getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (match != null && matches(match, document.etag)) {
+            throw new HttpErrorCodeException(304);
+        }
+        return new CachedResponse(response, document, acceptsGzip(request.getHttpRequest()));
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*") || t.equals(etag) || t.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return encoding != null && encoding.toLowerCase(Locale.ENGLISH).contains("gzip");
+    }
+
+    /** Returns the cache key for the request, or null if the request cannot be cached */
+    Key getKey(Request request) {
+        if (!enabled
+                || !GET_CAPABILITIES.equalsIgnoreCase(request.getRequest())
+                || !request.isGet()
+                || request.isSOAP()
+                || request.getService() == null
+                || !services.contains(request.getService().toUpperCase(Locale.ENGLISH))) {
+            return null;
+        }
+
+        WorkspaceInfo ws = LocalWorkspace.get();
+        PublishedInfo published = LocalPublished.get();
+        Map<String, String> parameters = new TreeMap<>();
+        if (request.getRawKvp() != null) {
+            for (Map.Entry<String, Object> entry : request.getRawKvp().entrySet()) {
+                Object value = entry.getValue();
+                parameters.put(
+                        entry.getKey().toUpperCase(Locale.ENGLISH),
+                        value instanceof Object[]
+                                ? Arrays.toString((Object[]) value)
+                                : String.valueOf(value));
+            }
+        }
+        // the base URL, and thus the proxy headers, end up in the document
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        List<String> location = new ArrayList<>();
+        location.add(String.valueOf(httpRequest.getRequestURL()));
+        for (ProxifyingURLMangler.Headers header : ProxifyingURLMangler.Headers.values()) {
+            if (header != ProxifyingURLMangler.Headers.FORWARDED_FOR) {
+                location.add(httpRequest.getHeader(header.asString()));
+            }
+        }
+
+        return new Key(
+                request.getService().toUpperCase(Locale.ENGLISH),
+                request.getVersion(),
+                ws != null ? ws.getName() : null,
+                published != null ? published.prefixedName() : null,
+                getUserName(),
+                getRoles(),
+                parameters,
+                location);
+    }
+
+    private static String getUserName() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null ? auth.getName() : null;
+    }
+
+    private static List<String> getRoles() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getAuthorities() == null) {
+            return Collections.emptyList();
+        }
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Collections.sort(roles);
+        return roles;
+    }
+
+    /** Returns a value that changes when the data security rules change */
+    private static long getSecurityStamp() {
+        DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+        if (dao == null) {
+            return 0;
+        }
+        // checks the property file, reloading the rules if needed
+        dao.getRules();
+        return dao.getLastModified();
+    }
+
+    void store(Key key, long startGeneration, Document document) {
+        synchronized (generation) {
+            // do not cache a document that might have been built with outdated configuration
+            if (generation.get() == startGeneration) {
+                documents.put(key, document);
+            }
+        }
+    }
+
+    void evictIf(Predicate<Key> filter) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            documents.asMap().keySet().removeIf(filter);
+        }
+    }
+
+    /**
+     * Evicts the documents of the given workspace virtual services and the global ones, or all of
+     * them if the workspace is null. Documents of the excluded service are retained.
+     */
+    void evictWorkspace(String workspace, String excludedService) {
+        evictIf(
+                k ->
+                        (workspace == null || k.workspace == null || workspace.equals(k.workspace))
+                                && !k.service.equals(excludedService));
+    }
+
+    void evict(CatalogInfo info) {
+        WorkspaceInfo ws = getWorkspace(info);
+        String workspace = ws != null ? ws.getName() : null;
+        if (info instanceof NamespaceInfo) {
+            workspace = ((NamespaceInfo) info).getPrefix();
+        }
+        // vector and raster data are not advertised by WCS and WFS respectively
+        String excluded = null;
+        if (info instanceof FeatureTypeInfo) {
+            excluded = "WCS";
+        } else if (info instanceof CoverageInfo) {
+            excluded = "WFS";
+        }
+        evictWorkspace(workspace, excluded);
+    }
+
+    /** The workspace the object is contained in, or null if global */
+    static WorkspaceInfo getWorkspace(CatalogInfo info) {
+        if (info instanceof WorkspaceInfo) {
+            return (WorkspaceInfo) info;
+        } else if (info instanceof StoreInfo) {
+            return ((StoreInfo) info).getWorkspace();
+        } else if (info instanceof ResourceInfo) {
+            StoreInfo store = ((ResourceInfo) info).getStore();
+            return store != null ? store.getWorkspace() : null;
+        } else if (info instanceof LayerInfo) {
+            return getWorkspace(((LayerInfo) info).getResource());
+        } else if (info instanceof LayerGroupInfo) {
+            return ((LayerGroupInfo) info).getWorkspace();
+        } else if (info instanceof StyleInfo) {
+            return ((StyleInfo) info).getWorkspace();
+        }
+        return null;
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        evict(event.getSource());
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        evict(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // evict before the change too, requests running concurrently might see it
+        evict(event.getSource());
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        evict(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void handleGlobalChange(
+            GeoServerInfo global,
+            List<String> propertyNames,
+            List<Object> oldValues,
+            List<Object> newValues) {
+        // the update sequence is bumped by any other change, handled on its own
+        if (!propertyNames.equals(Collections.singletonList("updateSequence"))) {
+            clear();
+        }
+    }
+
+    @Override
+    public void handlePostGlobalChange(GeoServerInfo global) {
+        // handled in the pre-change event, that has the list of modified properties
+    }
+
+    @Override
+    public void handleSettingsAdded(SettingsInfo settings) {
+        evictSettings(settings);
+    }
+
+    @Override
+    public void handleSettingsModified(
+            SettingsInfo settings,
+            List<String> propertyNames,
+            List<Object> oldValues,
+            List<Object> newValues) {
+        evictSettings(settings);
+    }
+
+    @Override
+    public void handleSettingsPostModified(SettingsInfo settings) {
+        evictSettings(settings);
+    }
+
+    @Override
+    public void handleSettingsRemoved(SettingsInfo settings) {
+        evictSettings(settings);
+    }
+
+    private void evictSettings(SettingsInfo settings) {
+        WorkspaceInfo ws = settings.getWorkspace();
+        evictWorkspace(ws != null ? ws.getName() : null, null);
+    }
+
+    @Override
+    public void handleLoggingChange(
+            LoggingInfo logging,
+            List<String> propertyNames,
+            List<Object> oldValues,
+            List<Object> newValues) {
+        // not part of the capabilities
+    }
+
+    @Override
+    public void handlePostLoggingChange(LoggingInfo logging) {
+        // not part of the capabilities
+    }
+
+    @Override
+    public void handleServiceChange(
+            ServiceInfo service,
+            List<String> propertyNames,
+            List<Object> oldValues,
+            List<Object> newValues) {
+        evictService(service);
+    }
+
+    @Override
+    public void handlePostServiceChange(ServiceInfo service) {
+        evictService(service);
+    }
+
+    @Override
+    public void handleServiceRemove(ServiceInfo service) {
+        evictService(service);
+    }
+
+    private void evictService(ServiceInfo service) {
+        // service names are not guaranteed to match the OWS service ids, evict them all
+        WorkspaceInfo ws = service.getWorkspace();
+        evictWorkspace(ws != null ? ws.getName() : null, null);
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    /** Identifies a cached document */
+    static final class Key {
+
+        final String service;
+
+        final String version;
+
+        final String workspace;
+
+        final String published;
+
+        final String user;
+
+        final List<String> roles;
+
+        final Map<String, String> parameters;
+
+        final List<String> location;
+
+        Key(
+                String service,
+                String version,
+                String workspace,
+                String published,
+                String user,
+                List<String> roles,
+                Map<String, String> parameters,
+                List<String> location) {
+            this.service = service;
+            this.version = version;
+            this.workspace = workspace;
+            this.published = published;
+            this.user = user;
+            this.roles = roles;
+            this.parameters = parameters;
+            this.location = location;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return service.equals(other.service)
+                    && Objects.equals(version, other.version)
+                    && Objects.equals(workspace, other.workspace)
+                    && Objects.equals(published, other.published)
+                    && Objects.equals(user, other.user)
+                    && roles.equals(other.roles)
+                    && parameters.equals(other.parameters)
+                    && location.equals(other.location);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    service, version, workspace, published, user, roles, parameters, location);
+        }
+
+        @Override
+        public String toString() {
+            return "Key[" + service + ", " + version + ", " + workspace + ", " + parameters + "]";
+        }
+    }
+
+    /** A cached capabilities document */
+    static final class Document {
+
+        final byte[] contents;
+
+        final byte[] gzipped;
+
+        final String etag;
+
+        final long securityStamp;
+
+        Document(byte[] contents, byte[] gzipped, long securityStamp) {
+            this.contents = contents;
+            this.gzipped = gzipped;
+            this.etag = "\"" + DigestUtils.sha1Hex(contents) + "\"";
+            this.securityStamp = securityStamp;
+        }
+
+        int size() {
+            return contents.length + (gzipped != null ? gzipped.length : 0);
+        }
+    }
+
+    /**
+     * Base class for responses delegating all but the output to the original one. The responses
+     * always vary on the accepted encoding, as cached documents can be sent gzipped
+     */
+    private abstract static class DelegatingResponse extends Response {
+
+        Response delegate;
+
+        DelegatingResponse(Response delegate) {
+            super(delegate.getBinding());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return delegate.getMimeType(value, operation);
+        }
+
+        @Override
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            List<String[]> headers = new ArrayList<>();
+            String[][] delegateHeaders = delegate.getHeaders(value, operation);
+            if (delegateHeaders != null) {
+                headers.addAll(Arrays.asList(delegateHeaders));
+            }
+            headers.add(new String[] {HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING});
+            return headers.toArray(new String[headers.size()][]);
+        }
+
+        @Override
+        public String getPreferredDisposition(Object value, Operation operation) {
+            return delegate.getPreferredDisposition(value, operation);
+        }
+
+        @Override
+        public String getAttachmentFileName(Object value, Operation operation) {
+            return delegate.getAttachmentFileName(value, operation);
+        }
+
+        @Override
+        public String getCharset(Operation operation) {
+            return delegate.getCharset(operation);
+        }
+    }
+
+    /** Builds the document with the original response, and caches it */
+    private class CachingResponse extends DelegatingResponse {
+
+        Key key;
+
+        long startGeneration;
+
+        long securityStamp;
+
+        CachingResponse(Response delegate, Key key, long startGeneration, long securityStamp) {
+            super(delegate);
+            this.key = key;
+            this.startGeneration = startGeneration;
+            this.securityStamp = securityStamp;
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            delegate.write(value, bos, operation);
+            byte[] contents = bos.toByteArray();
+            byte[] gzipped = null;
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length / 4);
+                try (GZIPOutputStream gos = new GZIPOutputStream(compressed)) {
+                    gos.write(contents);
+                }
+                gzipped = compressed.toByteArray();
+            }
+            Document document = new Document(contents, gzipped, securityStamp);
+            store(key, startGeneration, document);
+
+            // nothing has been written yet, the headers can still be set
+            Request request = Dispatcher.REQUEST.get();
+            if (request != null && request.getHttpResponse() != null) {
+                request.getHttpResponse().setHeader(HttpHeaders.ETAG, document.etag);
+            }
+            output.write(contents);
+        }
+    }
+
+    /** Writes out a cached document */
+    private static class CachedResponse extends DelegatingResponse {
+
+        Document document;
+
+        boolean gzipped;
+
+        CachedResponse(Response delegate, Document document, boolean acceptsGzip) {
+            super(delegate);
+            this.document = document;
+            this.gzipped = acceptsGzip && document.gzipped != null;
+        }
+
+        @Override
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            List<String[]> headers = new ArrayList<>();
+            headers.addAll(Arrays.asList(super.getHeaders(value, operation)));
+            headers.add(new String[] {HttpHeaders.ETAG, document.etag});
+            if (gzipped) {
+                headers.add(new String[] {HttpHeaders.CONTENT_ENCODING, "gzip"});
+            }
+            return headers.toArray(new String[headers.size()][]);
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            output.write(gzipped ? document.gzipped : document.contents);
+        }
+    }
+}
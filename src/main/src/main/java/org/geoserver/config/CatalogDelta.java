@@ -0,0 +1,170 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.ows.util.ClassProperties;
+import org.geoserver.ows.util.OwsUtils;
+import org.geotools.util.logging.Logging;
+
+/**
+ * The differences between the in memory catalog and a catalog freshly read from the data
+ * directory, used to reload the catalog incrementally.
+ *
+ * <p>Objects are matched by id, and considered modified if they are not equal, or their
+ * modification date changed. Modifications are notified with the list of properties that differ
+ * between the two objects, along with their old and new values.
+ */
+class CatalogDelta {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogDelta.class);
+
+    /** Properties that are not part of the configuration, or are not meaningful to compare */
+    static final Set<String> IGNORED_PROPERTIES =
+            new HashSet<>(Arrays.asList("Id", "Catalog", "Class"));
+
+    final List<CatalogInfo> added = new ArrayList<>();
+
+    final List<Modification> modified = new ArrayList<>();
+
+    final List<CatalogInfo> removed = new ArrayList<>();
+
+    /** Computes the delta, must be called before the old catalog is synched with the new one */
+    static CatalogDelta compute(Catalog oldCatalog, Catalog newCatalog) {
+        CatalogDelta delta = new CatalogDelta();
+        // dependency order, removals are going to be notified in reverse
+        delta.compare(oldCatalog.getWorkspaces(), newCatalog.getWorkspaces());
+        delta.compare(oldCatalog.getNamespaces(), newCatalog.getNamespaces());
+        delta.compare(
+                oldCatalog.getStores(StoreInfo.class), newCatalog.getStores(StoreInfo.class));
+        delta.compare(
+                oldCatalog.getResources(ResourceInfo.class),
+                newCatalog.getResources(ResourceInfo.class));
+        delta.compare(oldCatalog.getStyles(), newCatalog.getStyles());
+        delta.compare(oldCatalog.getLayers(), newCatalog.getLayers());
+        delta.compare(oldCatalog.getLayerGroups(), newCatalog.getLayerGroups());
+        Collections.reverse(delta.removed);
+        return delta;
+    }
+
+    private void compare(
+            List<? extends CatalogInfo> oldInfos, List<? extends CatalogInfo> newInfos) {
+        Map<String, CatalogInfo> oldById = new LinkedHashMap<>();
+        for (CatalogInfo info : oldInfos) {
+            oldById.put(info.getId(), ModificationProxy.unwrap(info));
+        }
+        for (CatalogInfo info : newInfos) {
+            CatalogInfo newInfo = ModificationProxy.unwrap(info);
+            CatalogInfo oldInfo = oldById.remove(newInfo.getId());
+            if (oldInfo == null) {
+                added.add(newInfo);
+            } else if (!oldInfo.equals(newInfo)
+                    || !Objects.equals(oldInfo.getDateModified(), newInfo.getDateModified())) {
+                modified.add(new Modification(oldInfo, newInfo));
+            }
+        }
+        removed.addAll(oldById.values());
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Notifies the catalog listeners about the changes. Must be called after the catalog has been
+     * synched with the new contents.
+     */
+    void fire(CatalogImpl catalog) {
+        for (CatalogInfo info : removed) {
+            fire(() -> catalog.fireRemoved(info), info);
+        }
+        for (CatalogInfo info : added) {
+            fire(() -> catalog.fireAdded(info), info);
+        }
+        for (Modification m : modified) {
+            CatalogInfo info = m.info;
+            fire(() -> catalog.fireModified(info, m.names, m.oldValues, m.newValues), info);
+            fire(() -> catalog.firePostModified(info, m.names, m.oldValues, m.newValues), info);
+        }
+    }
+
+    private void fire(Runnable event, CatalogInfo info) {
+        try {
+            event.run();
+        } catch (RuntimeException e) {
+            // keep going, the other listeners and changes still need to be notified
+            LOGGER.log(Level.WARNING, "Failed to notify the reload of " + info, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return added.size()
+                + " added, "
+                + modified.size()
+                + " modified, "
+                + removed.size()
+                + " removed";
+    }
+
+    /** A modified object, along with the properties that changed compared to the old one */
+    static class Modification {
+
+        final CatalogInfo info;
+
+        final List<String> names = new ArrayList<>();
+
+        final List<Object> oldValues = new ArrayList<>();
+
+        final List<Object> newValues = new ArrayList<>();
+
+        Modification(CatalogInfo oldInfo, CatalogInfo newInfo) {
+            this.info = newInfo;
+            // same id, but the two objects might still be different implementations
+            if (oldInfo.getClass() != newInfo.getClass()) {
+                return;
+            }
+            ClassProperties properties = OwsUtils.getClassProperties(newInfo.getClass());
+            for (String property : properties.properties()) {
+                // only compare the configurable properties, derived ones follow from them
+                if (IGNORED_PROPERTIES.contains(property)
+                        || properties.setter(property, null) == null) {
+                    continue;
+                }
+                Method getter = properties.getter(property, null);
+                try {
+                    Object oldValue = getter.invoke(oldInfo);
+                    Object newValue = getter.invoke(newInfo);
+                    if (!Objects.equals(oldValue, newValue)) {
+                        // same naming as the events fired by ModificationProxy
+                        names.add(
+                                Character.toLowerCase(property.charAt(0)) + property.substring(1));
+                        oldValues.add(oldValue);
+                        newValues.add(newValue);
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Could not compare " + property + " on " + newInfo, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Single file copy of the catalog configuration files read by {@link GeoServerLoader} on startup.
+ *
+ * <p>Reading tens of thousands of small files scattered over the data directory is what dominates
+ * startup time on large catalogs, especially on network file systems. When enabled via the {@link
+ * #SNAPSHOT_KEY} system property, the loader records the contents of each configuration file it
+ * reads, along with its last modification time, and writes them all in a single file at the end
+ * of the load. On the next startup the snapshot is memory mapped and each file whose modification
+ * time and size did not change is served from it, while new or modified files are read from the
+ * data directory as usual. On file system based stores the file size is checked as well, other
+ * stores track the modification time themselves.
+ *
+ * <p>The snapshot holds the raw contents of the files, which are still parsed by the {@link
+ * org.geoserver.config.util.XStreamPersister} on each startup: a binary dump of the resolved
+ * catalog objects would have to track every change in their classes and in the persister
+ * configuration, while the file contents do not depend on them.
+ *
+ * <p>The files are appended to a temporary resource next to the snapshot, in the data directory,
+ * so that the catalog contents are never held in memory nor written outside of the data
+ * directory, and copied into the snapshot by {@link #save(Resource)}. The snapshot state is
+ * released by {@link #dispose()} once the load is over.
+ *
+ * <p>The snapshot carries a checksum of its contents, a corrupted or truncated snapshot is ignored
+ * and rebuilt.
+ */
+class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    /** System property enabling the catalog snapshot */
+    public static final String SNAPSHOT_KEY = "org.geoserver.catalog.snapshot";
+
+    /** Name of the snapshot file, in the root of the data directory */
+    static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    static final int MAGIC = 0x47534353; // GSCS
+
+    static final int VERSION = 1;
+
+    /** magic, version, entry count, checksum */
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    /** A snapshot that does not record anything, and reads all files from the data directory */
+    static final CatalogSnapshot DISABLED = new CatalogSnapshot(null, false);
+
+    final boolean enabled;
+
+    /** Whether the resources are plain files, whose size can be checked cheaply */
+    final boolean fileSystem;
+
+    /** The contents of the previous snapshot, by path */
+    final Map<String, Entry> entries = new HashMap<>();
+
+    /** The paths recorded during the current load */
+    final Set<String> recorded = ConcurrentHashMap.newKeySet();
+
+    /** Entries waiting to be appended, drained by whichever reader holds the record lock */
+    final Queue<Record> pending = new ConcurrentLinkedQueue<>();
+
+    /** Guards the temporary resource, readers never wait for it */
+    final ReentrantLock recordLock = new ReentrantLock();
+
+    /** Temporary resource receiving the recorded entries, created on the first one */
+    Resource recordResource;
+
+    DataOutputStream recordOut;
+
+    final CRC32 recordChecksum = new CRC32();
+
+    int recordCount;
+
+    /** The failure that stopped the recording, if any */
+    IOException recordFailure;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    CatalogSnapshot(Resource recordResource, boolean fileSystem) {
+        this.enabled = recordResource != null;
+        this.recordResource = recordResource;
+        this.fileSystem = fileSystem;
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(SNAPSHOT_KEY));
+    }
+
+    /**
+     * Loads the snapshot stored in the given resource. Returns an empty snapshot if the resource
+     * is missing, or cannot be read
+     *
+     * @param fileSystem true if the resource store is file system based
+     */
+    static CatalogSnapshot load(Resource resource, boolean fileSystem) {
+        Resource recordResource = resource.parent().get(resource.name() + ".tmp");
+        CatalogSnapshot snapshot = new CatalogSnapshot(recordResource, fileSystem);
+        if (!Resources.exists(resource)) {
+            return snapshot;
+        }
+        try {
+            snapshot.read(map(resource));
+            LOGGER.fine(
+                    () -> "Loaded catalog snapshot with " + snapshot.entries.size() + " entries");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid catalog snapshot " + resource.path(), e);
+            snapshot.entries.clear();
+        }
+        return snapshot;
+    }
+
+    private static ByteBuffer map(Resource resource) throws IOException {
+        // for non file system based stores this is a local copy of the resource
+        File file = resource.file();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    void read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a catalog snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version " + version);
+        }
+        int count = buffer.getInt();
+        long checksum = buffer.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if (crc.getValue() != checksum) {
+            throw new IOException("Catalog snapshot checksum mismatch");
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte[] pathBytes = new byte[buffer.getInt()];
+            buffer.get(pathBytes);
+            long lastModified = buffer.getLong();
+            int length = buffer.getInt();
+            // slice the buffer, the contents are copied out only when actually used
+            ByteBuffer contents = buffer.slice();
+            contents.limit(length);
+            buffer.position(buffer.position() + length);
+            entries.put(
+                    new String(pathBytes, StandardCharsets.UTF_8),
+                    new Entry(lastModified, contents));
+        }
+    }
+
+    /**
+     * Returns the contents of the resource, from the snapshot if the resource did not change since
+     * it was taken, from the resource itself otherwise
+     */
+    byte[] getContents(Resource resource) throws IOException {
+        if (!enabled) {
+            return resource.getContents();
+        }
+        String path = resource.path();
+        long lastModified = resource.lastmodified();
+        Entry entry = entries.get(path);
+        byte[] contents;
+        if (entry != null
+                && lastModified != 0
+                && entry.lastModified == lastModified
+                && (!fileSystem || entry.contents.remaining() == resource.file().length())) {
+            hits.incrementAndGet();
+            contents = entry.getContents();
+        } else {
+            misses.incrementAndGet();
+            contents = resource.getContents();
+        }
+        if (recorded.add(path)) {
+            record(path, lastModified, contents);
+        }
+        return contents;
+    }
+
+    /**
+     * Queues an entry for the temporary resource. The reader holding the record lock appends the
+     * entries queued by all the others, so that the parallel readers never wait on each other.
+     */
+    private void record(String path, long lastModified, byte[] contents) {
+        pending.add(new Record(path, lastModified, contents));
+        // check again after releasing the lock, entries might have been queued in the meantime
+        while (!pending.isEmpty() && recordLock.tryLock()) {
+            try {
+                drainPending();
+            } finally {
+                recordLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Appends the queued entries to the temporary resource, the recording stops at the first
+     * failure. Must be called holding the record lock.
+     */
+    private void drainPending() {
+        Record record;
+        while ((record = pending.poll()) != null) {
+            if (recordFailure != null || recordResource == null) {
+                continue;
+            }
+            try {
+                if (recordOut == null) {
+                    OutputStream os = new BufferedOutputStream(recordResource.out());
+                    recordOut = new DataOutputStream(new CheckedOutputStream(os, recordChecksum));
+                }
+                byte[] pathBytes = record.path.getBytes(StandardCharsets.UTF_8);
+                recordOut.writeInt(pathBytes.length);
+                recordOut.write(pathBytes);
+                recordOut.writeLong(record.lastModified);
+                recordOut.writeInt(record.contents.length);
+                recordOut.write(record.contents);
+                recordCount++;
+            } catch (IOException | IllegalStateException e) {
+                // the catalog load goes on, the snapshot just won't be saved
+                LOGGER.log(
+                        Level.WARNING,
+                        "Failed to record " + record.path + " in the catalog snapshot",
+                        e);
+                recordFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the files read so far into the given resource, streaming them from the temporary
+     * resource, and disposes the snapshot
+     */
+    void save(Resource resource) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        recordLock.lock();
+        try {
+            drainPending();
+            if (recordFailure != null) {
+                throw new IOException("Failed to record the catalog files", recordFailure);
+            }
+            if (recordOut != null) {
+                recordOut.close();
+                recordOut = null;
+            }
+            try (OutputStream os = resource.out();
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(recordCount);
+                out.writeLong(recordChecksum.getValue());
+                if (recordCount > 0) {
+                    try (InputStream in = recordResource.in()) {
+                        IOUtils.copy(in, out);
+                    }
+                }
+            }
+            LOGGER.fine(
+                    () ->
+                            "Saved catalog snapshot with "
+                                    + recordCount
+                                    + " entries, "
+                                    + hits
+                                    + " served from the previous snapshot");
+        } finally {
+            dispose();
+            recordLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the previous snapshot and the files recorded so far. Called once the catalog load
+     * is over, whether the snapshot got saved or not.
+     */
+    void dispose() {
+        if (!enabled) {
+            return;
+        }
+        recordLock.lock();
+        try {
+            // the mapped buffer gets released once the entries are garbage collected
+            entries.clear();
+            recorded.clear();
+            pending.clear();
+            if (recordOut != null) {
+                try {
+                    recordOut.close();
+                } catch (IOException e) {
+                    LOGGER.log(
+                            Level.FINE, "Failed to close the catalog snapshot temporary file", e);
+                }
+                recordOut = null;
+            }
+            if (recordResource != null) {
+                if (Resources.exists(recordResource) && !recordResource.delete()) {
+                    LOGGER.fine("Could not delete " + recordResource.path());
+                }
+                recordResource = null;
+            }
+        } finally {
+            recordLock.unlock();
+        }
+    }
+
+    /** Number of files served from the snapshot */
+    long getHits() {
+        return hits.get();
+    }
+
+    /** Number of files read from the data directory */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /** A file read during the current load, waiting to be appended to the temporary resource */
+    static final class Record {
+        final String path;
+        final long lastModified;
+        final byte[] contents;
+
+        Record(String path, long lastModified, byte[] contents) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.contents = contents;
+        }
+    }
+
+    static final class Entry {
+        final long lastModified;
+        final ByteBuffer contents;
+
+        Entry(long lastModified, ByteBuffer contents) {
+            this.lastModified = lastModified;
+            this.contents = contents;
+        }
+
+        byte[] getContents() {
+            ByteBuffer source = contents.duplicate();
+            byte[] result = new byte[source.remaining()];
+            source.get(result);
+            return result;
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.geoserver.config.util.XStreamPersisterFactory;
 import org.geoserver.config.util.XStreamServiceLoader;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.FileSystemResourceStore;
 import org.geoserver.platform.resource.Paths;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resource.Type;
@@ -92,13 +93,19 @@ public abstract class GeoServerLoader {
     /** {@link ResourceMapper} for workspaces */
     static final class WorkspaceMapper implements ResourceMapper<WorkspaceContents> {
 
+        private final CatalogSnapshot snapshot;
+
+        public WorkspaceMapper(CatalogSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
         @Override
         public WorkspaceContents apply(Resource rd) throws IOException {
             Resource wr = rd.get("workspace.xml");
             Resource nr = rd.get("namespace.xml");
             if (Resources.exists(wr) && Resources.exists(nr)) {
-                byte[] contents = wr.getContents();
-                byte[] nrContents = nr.getContents();
+                byte[] contents = snapshot.getContents(wr);
+                byte[] nrContents = snapshot.getContents(nr);
                 return new WorkspaceContents(rd, contents, nrContents);
             } else {
                 LOGGER.warning("Ignoring workspace directory " + rd.path());
@@ -122,8 +129,9 @@ public abstract class GeoServerLoader {
     }
 
     /** Basic {@link ResourceMapper} for a single {@link Resource} * */
-    static final ResourceMapper<SingleResourceContents> RESOURCE_MAPPER =
-            r -> new SingleResourceContents(r, r.getContents());
+    static ResourceMapper<SingleResourceContents> resourceMapper(CatalogSnapshot snapshot) {
+        return r -> new SingleResourceContents(r, snapshot.getContents(r));
+    }
 
     /** Layer IO resources */
     static final class LayerContents {
@@ -143,10 +151,13 @@ public abstract class GeoServerLoader {
 
         private String resourceFileName;
         private String resourceType;
+        private CatalogSnapshot snapshot;
 
-        public ResourceLayerMapper(String resourceFileName, String resourceType) {
+        public ResourceLayerMapper(
+                String resourceFileName, String resourceType, CatalogSnapshot snapshot) {
             this.resourceFileName = resourceFileName;
             this.resourceType = resourceType;
+            this.snapshot = snapshot;
         }
 
         @Override
@@ -154,8 +165,8 @@ public abstract class GeoServerLoader {
             Resource r = rd.get(resourceFileName);
             Resource lr = rd.get("layer.xml");
             if (Resources.exists(r) && Resources.exists(lr)) {
-                byte[] contents = r.getContents();
-                byte[] lrContents = lr.getContents();
+                byte[] contents = snapshot.getContents(r);
+                byte[] lrContents = snapshot.getContents(lr);
                 return new LayerContents(rd, contents, lrContents);
             } else {
                 LOGGER.warning("Ignoring " + resourceType + " directory " + rd.path());
@@ -165,17 +176,21 @@ public abstract class GeoServerLoader {
     }
 
     /** Feature Type IO resource mapper */
-    static final ResourceLayerMapper FEATURE_LAYER_MAPPER =
-            new ResourceLayerMapper("featuretype.xml", "feature type");
+    static ResourceLayerMapper featureLayerMapper(CatalogSnapshot snapshot) {
+        return new ResourceLayerMapper("featuretype.xml", "feature type", snapshot);
+    }
     /** Coverage IO resource mapper */
-    static final ResourceLayerMapper COVERAGE_LAYER_MAPPER =
-            new ResourceLayerMapper("coverage.xml", "coverage");
+    static ResourceLayerMapper coverageLayerMapper(CatalogSnapshot snapshot) {
+        return new ResourceLayerMapper("coverage.xml", "coverage", snapshot);
+    }
     /** WMS Layer IO resource mapper */
-    static final ResourceLayerMapper WMS_LAYER_MAPPER =
-            new ResourceLayerMapper("wmslayer.xml", "wms layer");
+    static ResourceLayerMapper wmsLayerMapper(CatalogSnapshot snapshot) {
+        return new ResourceLayerMapper("wmslayer.xml", "wms layer", snapshot);
+    }
     /** WMTS Layer IO resource mapper */
-    static final ResourceLayerMapper WMTS_LAYER_MAPPER =
-            new ResourceLayerMapper("wmtslayer.xml", "wmts layer");
+    static ResourceLayerMapper wmtsLayerMapper(CatalogSnapshot snapshot) {
+        return new ResourceLayerMapper("wmtslayer.xml", "wmts layer", snapshot);
+    }
     /**
      * Generic layer catalog loader for all types of IO resources
      *
@@ -244,6 +259,15 @@ public abstract class GeoServerLoader {
     GeoServer geoserver;
     XStreamPersisterFactory xpf = new XStreamPersisterFactory();
 
+    /** Source of the catalog files contents while reading the catalog */
+    CatalogSnapshot snapshot = CatalogSnapshot.DISABLED;
+
+    /**
+     * When true the catalog is being reloaded incrementally, keeping the resource pool and
+     * notifying only the differences
+     */
+    boolean incremental = false;
+
     // JD: this is a hack for the moment, it is used only to maintain tests since the test setup
     // relies
     // on the old data directory structure, once the tests have been ported to the new structure
@@ -432,6 +456,34 @@ public abstract class GeoServerLoader {
         reloadInitializers(geoserver);
     }
 
+    /**
+     * Reloads the configuration without disposing the catalog. The catalog contents are replaced
+     * with the ones in the data directory, but only the differences are notified to the catalog
+     * listeners, so that the resource pool keeps the stores and readers that did not change.
+     */
+    public void incrementalReload() throws Exception {
+        // only the services and settings are dropped, the catalog is kept as is
+        geoserver.getFacade().dispose();
+
+        Catalog catalog = geoserver.getCatalog();
+        if (catalog instanceof Wrapper) {
+            catalog = ((Wrapper) geoserver.getCatalog()).unwrap(Catalog.class);
+        }
+
+        XStreamPersister xp = xpf.createXMLPersister();
+        xp.setCatalog(catalog);
+
+        incremental = true;
+        try {
+            loadCatalog(catalog, xp);
+        } finally {
+            incremental = false;
+        }
+        loadGeoServer(geoserver, xp);
+
+        reloadInitializers(geoserver);
+    }
+
     protected void readCatalog(Catalog catalog, XStreamPersister xp) throws Exception {
         // we are going to synch up the catalogs and need to preserve listeners,
         // but these two fellas are attached to the new catalog as well
@@ -443,14 +495,30 @@ public abstract class GeoServerLoader {
         // look for catalog.xml, if it exists assume we are dealing with
         // an old data directory
         Resource f = resourceLoader.get("catalog.xml");
+        CatalogDelta delta = null;
         if (!Resources.exists(f)) {
             // assume 2.x style data directory
             Stopwatch sw = Stopwatch.createStarted();
             LOGGER.info("Loading catalog...");
             CatalogImpl catalog2 = (CatalogImpl) readCatalog(xp);
             LOGGER.info("Read catalog in " + sw.stop());
-            // make to remove the old resource pool catalog listener
-            ((CatalogImpl) catalog).sync(catalog2);
+            if (incremental) {
+                delta = CatalogDelta.compute(catalog, catalog2);
+                LOGGER.info("Catalog reload found " + delta);
+                // keep the current resource pool, sync would dispose it otherwise, and retire
+                // the one created along with the new catalog, unless shared
+                ResourcePool pool = catalog.getResourcePool();
+                ResourcePool replaced = catalog2.getResourcePool();
+                if (replaced != null && replaced != pool) {
+                    replaced.dispose();
+                }
+                catalog2.setResourcePool(pool);
+                ((CatalogImpl) catalog).sync(catalog2);
+                pool.setCatalog(catalog);
+            } else {
+                // make to remove the old resource pool catalog listener
+                ((CatalogImpl) catalog).sync(catalog2);
+            }
         } else {
             // import old style catalog, register the persister now so that we start
             // with a new version of the catalog
@@ -462,6 +530,11 @@ public abstract class GeoServerLoader {
         for (CatalogListener listener : listeners) {
             catalog.addListener(listener);
         }
+
+        // let the listeners, including the resource pool one, know what actually changed
+        if (delta != null) {
+            delta.fire((CatalogImpl) catalog);
+        }
     }
 
     boolean checkStoresOnStartup(XStreamPersister xp) {
@@ -486,6 +559,36 @@ public abstract class GeoServerLoader {
 
     /** Reads the catalog from disk. */
     Catalog readCatalog(XStreamPersister xp) throws Exception {
+        Resource snapshotResource = resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE);
+        if (CatalogSnapshot.isEnabled()) {
+            boolean fileSystem =
+                    resourceLoader.getResourceStore() instanceof FileSystemResourceStore;
+            snapshot = CatalogSnapshot.load(snapshotResource, fileSystem);
+        }
+        try {
+            Catalog catalog = readCatalogContents(xp);
+            if (snapshot.enabled) {
+                LOGGER.info(
+                        "Read "
+                                + snapshot.getHits()
+                                + " catalog files from snapshot, "
+                                + snapshot.getMisses()
+                                + " from the data directory");
+                try {
+                    snapshot.save(snapshotResource);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to save the catalog snapshot", e);
+                }
+            }
+            return catalog;
+        } finally {
+            // release the previous snapshot and the recorded files, they are startup only
+            snapshot.dispose();
+            snapshot = CatalogSnapshot.DISABLED;
+        }
+    }
+
+    private Catalog readCatalogContents(XStreamPersister xp) throws Exception {
         CatalogImpl catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog(catalog);
@@ -528,7 +631,7 @@ public abstract class GeoServerLoader {
                     new AsynchResourceIterator<>(
                             workspaces,
                             Resources.DirectoryFilter.INSTANCE,
-                            new WorkspaceMapper())) {
+                            new WorkspaceMapper(snapshot))) {
                 while (it.hasNext()) {
                     WorkspaceContents wc = it.next();
                     WorkspaceInfo ws;
@@ -599,19 +702,19 @@ public abstract class GeoServerLoader {
                     sd -> {
                         Resource f = sd.get("datastore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, snapshot.getContents(f));
                         }
                         f = sd.get("coveragestore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, snapshot.getContents(f));
                         }
                         f = sd.get("wmsstore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, snapshot.getContents(f));
                         }
                         f = sd.get("wmtsstore.xml");
                         if (Resources.exists(f)) {
-                            return new SingleResourceContents(f, f.getContents());
+                            return new SingleResourceContents(f, snapshot.getContents(f));
                         }
                         if (!isConfigDirectory(sd)) {
                             LOGGER.warning("Ignoring store directory '" + sd.name() + "'");
@@ -697,7 +800,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMS_LAYER_MAPPER)) {
+                        wmsLayerMapper(snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -729,7 +832,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMTS_LAYER_MAPPER)) {
+                        wmtsLayerMapper(snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -769,7 +872,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        COVERAGE_LAYER_MAPPER)) {
+                        coverageLayerMapper(snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -823,7 +926,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        FEATURE_LAYER_MAPPER)) {
+                        featureLayerMapper(snapshot))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 featureLoader.accept(lc);
@@ -1008,7 +1111,7 @@ public abstract class GeoServerLoader {
         Filter<Resource> styleFilter =
                 r -> XML_FILTER.accept(r) && !Resources.exists(styles.get(r.name() + ".xml"));
         try (AsynchResourceIterator<SingleResourceContents> it =
-                new AsynchResourceIterator<>(styles, styleFilter, RESOURCE_MAPPER)) {
+                new AsynchResourceIterator<>(styles, styleFilter, resourceMapper(snapshot))) {
             while (it.hasNext()) {
                 SingleResourceContents r = it.next();
                 try {
@@ -1027,7 +1130,8 @@ public abstract class GeoServerLoader {
 
     void loadLayerGroups(Resource layerGroups, Catalog catalog, XStreamPersister xp) {
         try (AsynchResourceIterator<SingleResourceContents> it =
-                new AsynchResourceIterator<>(layerGroups, XML_FILTER, RESOURCE_MAPPER)) {
+                new AsynchResourceIterator<>(
+                        layerGroups, XML_FILTER, resourceMapper(snapshot))) {
             while (it.hasNext()) {
                 SingleResourceContents r = it.next();
                 try {
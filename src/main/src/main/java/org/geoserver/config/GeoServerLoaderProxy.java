@@ -68,6 +68,12 @@ public class GeoServerLoaderProxy
         }
     }
 
+    public void incrementalReload() throws Exception {
+        if (loader != null) {
+            loader.incrementalReload();
+        }
+    }
+
     @Override
     public void destroy() throws Exception {
         if (loader != null) {
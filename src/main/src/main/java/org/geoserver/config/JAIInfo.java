@@ -19,7 +19,8 @@ public interface JAIInfo extends Cloneable, Serializable {
     static enum PngEncoderType {
         JDK,
         NATIVE,
-        PNGJ
+        PNGJ,
+        POOLED
     };
 
     /** Flag controlling image interpolation. */
@@ -38,6 +38,13 @@ public class GeoServerImpl implements GeoServer, ApplicationContextAware {
 
     private static final Logger LOGGER = Logging.getLogger(GeoServerImpl.class);
 
+    /**
+     * System property enabling incremental reloads: the catalog read from the data directory is
+     * compared to the in memory one, and only the differences are applied, keeping the unchanged
+     * stores and coverage readers open in the resource pool
+     */
+    public static final String INCREMENTAL_RELOAD_KEY = "GEOSERVER_INCREMENTAL_RELOAD";
+
     /** factory for creating objects */
     GeoServerFactory factory = new GeoServerFactoryImpl(this);
 
@@ -524,11 +531,19 @@ public class GeoServerImpl implements GeoServer, ApplicationContextAware {
 
         // perform the reload
         try {
+            GeoServerLoaderProxy loader = GeoServerExtensions.bean(GeoServerLoaderProxy.class);
+            if (newCatalog == null && isIncrementalReload()) {
+                // caches are flushed selectively, based on what changed
+                synchronized (org.geoserver.config.GeoServer.CONFIGURATION_LOCK) {
+                    loader.incrementalReload();
+                }
+                return;
+            }
+
             // flush caches
             reset();
 
             // reload configuration
-            GeoServerLoaderProxy loader = GeoServerExtensions.bean(GeoServerLoaderProxy.class);
             synchronized (org.geoserver.config.GeoServer.CONFIGURATION_LOCK) {
                 getCatalog().getResourcePool().dispose();
 
@@ -562,6 +577,10 @@ public class GeoServerImpl implements GeoServer, ApplicationContextAware {
         }
     }
 
+    boolean isIncrementalReload() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(INCREMENTAL_RELOAD_KEY));
+    }
+
     @Override
     public void reset() {
         // drop all the catalog store/feature types/raster caches
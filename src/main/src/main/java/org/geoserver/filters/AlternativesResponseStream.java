@@ -69,7 +69,10 @@ public class AlternativesResponseStream extends ServletOutputStream {
         //            logger.warning("Mime type was not set before first write!");
         //        }
 
-        if (type != null && isCompressible(type)) {
+        // content already encoded by the response, e.g. pre-compressed, must be left alone
+        if (type != null
+                && isCompressible(type)
+                && !myResponse.containsHeader("Content-Encoding")) {
             logger.log(Level.FINE, "Compressing output for mimetype: {0}", type);
             myResponse.addHeader("Content-Encoding", "gzip");
             myStream = new GZIPResponseStream(myResponse);
@@ -0,0 +1,617 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Runs only once identical requests arriving at the same time, and sends the same response to all
+ * of them. Useful when map clients fan out the same GetMap or GetFeatureInfo request to many
+ * users, or repeat it several times, in a short time span.
+ *
+ * <p>Requests are identical when they have the same path, the same normalized KVP parameters, and
+ * are made by the same user, with the same roles. The first request is executed while the others
+ * wait for its response, which is captured while being sent to the client. Waiting requests fall
+ * back on executing on their own if the first one fails, including failures reported as OGC
+ * service exceptions and clients disconnecting while the response is written, if its response is
+ * not a 200, is larger than the configured max size, or takes longer than the configured timeout.
+ *
+ * <p>Disabled by default, can be configured with the following system variables:
+ *
+ * <ul>
+ *   <li>{@value #ENABLED_KEY}: set to true to enable coalescing
+ *   <li>{@value #TIMEOUT_KEY}: max time, in milliseconds, a request waits for an identical one
+ *       (default 30000)
+ *   <li>{@value #MAX_SIZE_KEY}: max size, in bytes, of a response that can be shared (default
+ *       4MB)
+ *   <li>{@value #MAX_REQUESTS_KEY}: max number of distinct requests coalesced at the same time,
+ *       which also bounds the memory used by the captured responses (default 1000)
+ *   <li>{@value #REQUESTS_KEY}: comma separated list of the operations that can be coalesced
+ *       (default GetMap,GetFeatureInfo)
+ * </ul>
+ */
+public class RequestCoalescingFilter extends AbstractDispatcherCallback
+        implements GeoServerFilter {
+
+    static final Logger LOGGER = Logging.getLogger(RequestCoalescingFilter.class);
+
+    public static final String ENABLED_KEY = "org.geoserver.requestCoalescing";
+
+    public static final String TIMEOUT_KEY = "org.geoserver.requestCoalescing.timeout";
+
+    public static final String MAX_SIZE_KEY = "org.geoserver.requestCoalescing.maxSize";
+
+    public static final String MAX_REQUESTS_KEY = "org.geoserver.requestCoalescing.maxRequests";
+
+    public static final String REQUESTS_KEY = "org.geoserver.requestCoalescing.requests";
+
+    /** Headers that are specific to the client that made the request, and are not shared */
+    static final Set<String> PRIVATE_HEADERS =
+            new HashSet<>(Arrays.asList("set-cookie", "content-length"));
+
+    static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /** Headers influencing the response contents, which are included in the request key */
+    static final List<String> KEY_HEADERS =
+            Arrays.asList("X-Forwarded-Proto", "X-Forwarded-Host", "X-Forwarded-Path", "Forwarded");
+
+    final boolean enabled;
+
+    final long timeout;
+
+    final int maxSize;
+
+    final int maxRequests;
+
+    final Set<String> requests;
+
+    /** The response being captured by the current thread, if any */
+    static final ThreadLocal<CapturingResponse> CAPTURING = new ThreadLocal<>();
+
+    final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    final AtomicLong executed = new AtomicLong();
+
+    final AtomicLong coalesced = new AtomicLong();
+
+    final AtomicLong fallbacks = new AtomicLong();
+
+    public RequestCoalescingFilter() {
+        this(
+                Boolean.parseBoolean(GeoServerExtensions.getProperty(ENABLED_KEY)),
+                getLong(TIMEOUT_KEY, 30000),
+                (int) getLong(MAX_SIZE_KEY, 4 * 1024 * 1024),
+                (int) getLong(MAX_REQUESTS_KEY, 1000),
+                getRequests(GeoServerExtensions.getProperty(REQUESTS_KEY)));
+    }
+
+    /**
+     * @param enabled Whether coalescing is enabled
+     * @param timeout The max time, in milliseconds, a request waits for an identical one
+     * @param maxSize The max size, in bytes, of a shared response
+     * @param maxRequests The max number of distinct requests coalesced at the same time
+     * @param requests The (lowercase) names of the operations that can be coalesced
+     */
+    public RequestCoalescingFilter(
+            boolean enabled, long timeout, int maxSize, int maxRequests, Set<String> requests) {
+        this.enabled = enabled;
+        this.timeout = timeout;
+        this.maxSize = maxSize;
+        this.maxRequests = maxRequests;
+        this.requests = requests;
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Invalid value for " + key + ": " + value, e);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Set<String> getRequests(String value) {
+        if (value == null) {
+            value = "GetMap,GetFeatureInfo";
+        }
+        Set<String> result = new HashSet<>();
+        for (String request : value.split("\\s*,\\s*")) {
+            if (!request.trim().isEmpty()) {
+                result.add(request.trim().toLowerCase());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // nothing to do
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        String key = enabled ? getKey(req) : null;
+        if (key == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        HttpServletResponse response = (HttpServletResponse) res;
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            runFlight(key, flight, req, response, chain);
+        } else if (!waitFlight(existing, response)) {
+            fallbacks.incrementAndGet();
+            chain.doFilter(req, res);
+        }
+    }
+
+    /** Executes the request, sharing the response with the identical ones that arrive meanwhile */
+    void runFlight(
+            String key,
+            Flight flight,
+            ServletRequest request,
+            HttpServletResponse response,
+            FilterChain chain)
+            throws IOException, ServletException {
+        executed.incrementAndGet();
+        CapturingResponse capturing = new CapturingResponse(response, maxSize);
+        CAPTURING.set(capturing);
+        try {
+            chain.doFilter(request, capturing);
+            capturing.flushWriter();
+            flight.response = capturing.getCaptured();
+        } finally {
+            CAPTURING.remove();
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * Service exceptions are often reported with a 200 status code, and clients disconnecting are
+     * not reported to the filter chain at all, the dispatcher records both as request errors
+     */
+    @Override
+    public void finished(Request request) {
+        CapturingResponse capturing = CAPTURING.get();
+        if (capturing != null && request.getError() != null) {
+            capturing.shareable = false;
+        }
+    }
+
+    /**
+     * Waits for an identical request to complete, and sends its response. Returns false if the
+     * response could not be shared, and the request needs to be executed.
+     */
+    private boolean waitFlight(Flight flight, HttpServletResponse response) throws IOException {
+        try {
+            if (!flight.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        CapturedResponse captured = flight.response;
+        if (captured == null) {
+            return false;
+        }
+        coalesced.incrementAndGet();
+        captured.writeTo(response);
+        return true;
+    }
+
+    /** Returns the key identifying the request, or null if the request cannot be coalesced */
+    String getKey(ServletRequest req) {
+        if (!(req instanceof HttpServletRequest) || flights.size() >= maxRequests) {
+            return null;
+        }
+        HttpServletRequest request = (HttpServletRequest) req;
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+        Map<String, Object> kvp = KvpUtils.normalize(request.getParameterMap());
+        Object operation = kvp.get("request");
+        if (!(operation instanceof String)
+                || !requests.contains(((String) operation).toLowerCase())) {
+            return null;
+        }
+
+        // each part is prefixed by its length, so that values containing separators cannot
+        // make two different requests share the same key
+        StringBuilder sb = new StringBuilder();
+        appendKeyPart(sb, request.getRequestURL().toString());
+        for (Map.Entry<String, Object> entry : new TreeMap<>(kvp).entrySet()) {
+            appendKeyPart(sb, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String[]) {
+                String[] values = (String[]) value;
+                sb.append(values.length).append('#');
+                for (String v : values) {
+                    appendKeyPart(sb, v);
+                }
+            } else {
+                appendKeyPart(sb, String.valueOf(value));
+            }
+        }
+        sb.append('|');
+        for (String header : KEY_HEADERS) {
+            appendKeyPart(sb, request.getHeader(header));
+        }
+        // the response depends on who is asking
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            appendKeyPart(sb, auth.getName());
+            List<String> roles = new ArrayList<>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            sb.append(roles.size()).append('#');
+            for (String role : roles) {
+                appendKeyPart(sb, role);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendKeyPart(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append('-');
+        } else {
+            sb.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /** Number of requests actually executed */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /** Number of requests that got the response of an identical one */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /** Number of requests that waited for an identical one, but then had to execute anyway */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to do
+    }
+
+    /** A request being executed, with the identical ones waiting for it */
+    static class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile CapturedResponse response;
+    }
+
+    /** A response that can be sent again to another client */
+    static class CapturedResponse {
+        final String contentType;
+
+        final Map<String, List<String>> headers;
+
+        final byte[] body;
+
+        CapturedResponse(String contentType, Map<String, List<String>> headers, byte[] body) {
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        void writeTo(HttpServletResponse response) throws IOException {
+            response.setStatus(HttpServletResponse.SC_OK);
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                for (String value : entry.getValue()) {
+                    response.addHeader(entry.getKey(), value);
+                }
+            }
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.setContentLength(body.length);
+            OutputStream os = response.getOutputStream();
+            os.write(body);
+            os.flush();
+        }
+    }
+
+    /** Sends the response to the client, keeping a copy of it as long as it's small enough */
+    static class CapturingResponse extends HttpServletResponseWrapper {
+
+        final int maxSize;
+
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        int status = SC_OK;
+
+        boolean shareable = true;
+
+        String contentType;
+
+        CapturingOutputStream os;
+
+        PrintWriter writer;
+
+        CapturingResponse(HttpServletResponse response, int maxSize) {
+            super(response);
+            this.maxSize = maxSize;
+        }
+
+        /** Returns the captured response, or null if it cannot be shared */
+        CapturedResponse getCaptured() {
+            if (!shareable
+                    || status != SC_OK
+                    || (os != null && (os.overflow || os.failed))
+                    || (writer != null && writer.checkError())) {
+                return null;
+            }
+            byte[] body = os == null ? new byte[0] : os.copy.toByteArray();
+            return new CapturedResponse(contentType, headers, body);
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            this.status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            this.status = sc;
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            this.shareable = false;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            this.shareable = false;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            this.shareable = false;
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void setContentType(String type) {
+            this.contentType = type;
+            super.setContentType(type);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (isShared(name)) {
+                headers.put(name, singleValue(value));
+            }
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (isShared(name)) {
+                headers.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+            }
+            super.addHeader(name, value);
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (isShared(name)) {
+                headers.put(name, singleValue(String.valueOf(value)));
+            }
+            super.setIntHeader(name, value);
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (isShared(name)) {
+                headers.computeIfAbsent(name, k -> new ArrayList<>()).add(String.valueOf(value));
+            }
+            super.addIntHeader(name, value);
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            if (isShared(name)) {
+                headers.put(name, singleValue(formatDate(date)));
+            }
+            super.setDateHeader(name, date);
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            if (isShared(name)) {
+                headers.computeIfAbsent(name, k -> new ArrayList<>()).add(formatDate(date));
+            }
+            super.addDateHeader(name, date);
+        }
+
+        private List<String> singleValue(String value) {
+            return new ArrayList<>(Collections.singletonList(value));
+        }
+
+        private String formatDate(long date) {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format.format(new Date(date));
+        }
+
+        private boolean isShared(String name) {
+            return !PRIVATE_HEADERS.contains(name.toLowerCase());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (os == null) {
+                os = new CapturingOutputStream(super.getOutputStream(), maxSize);
+            }
+            return os;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (os != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                os = new CapturingOutputStream(super.getOutputStream(), maxSize);
+                writer = new PrintWriter(new OutputStreamWriter(os, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+    }
+
+    /**
+     * Writes to the client, and to an in memory copy, until the copy gets too large or writing to
+     * the client fails
+     */
+    static class CapturingOutputStream extends ServletOutputStream {
+
+        final OutputStream delegate;
+
+        final int maxSize;
+
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        boolean overflow;
+
+        /** Writing to the client failed, e.g. because it disconnected, the copy is truncated */
+        boolean failed;
+
+        CapturingOutputStream(OutputStream delegate, int maxSize) {
+            this.delegate = delegate;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                delegate.write(b);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+            if (ensureCapacity(1)) {
+                copy.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                delegate.write(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+            if (ensureCapacity(len)) {
+                copy.write(b, off, len);
+            }
+        }
+
+        private boolean ensureCapacity(int len) {
+            if (!overflow && copy.size() + len > maxSize) {
+                // too large to be shared, release the memory
+                overflow = true;
+                copy = null;
+            }
+            return !overflow;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                delegate.flush();
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+}
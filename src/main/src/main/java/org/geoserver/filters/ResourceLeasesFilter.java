@@ -0,0 +1,38 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.filters;
+
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import org.geoserver.catalog.ResourceLeases;
+
+/**
+ * Opens a {@link ResourceLeases} scope for each request, so that the data stores and coverage
+ * readers used by the request are not evicted as idle before it completes
+ */
+public class ResourceLeasesFilter implements GeoServerFilter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // nothing to do
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        try (ResourceLeases leases = ResourceLeases.open()) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to do
+    }
+}
@@ -953,18 +953,14 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
             }
         } else if (info instanceof LayerInfo || info instanceof ResourceInfo) {
             DataAccessLimits dl;
-            WorkspaceAccessLimits wl;
+            ResourceInfo resource;
 
             if (info instanceof LayerInfo) {
                 dl = accessManager.getAccessLimits(user, (LayerInfo) info, containers);
-                wl =
-                        accessManager.getAccessLimits(
-                                user, ((LayerInfo) info).getResource().getStore().getWorkspace());
+                resource = ((LayerInfo) info).getResource();
             } else {
                 dl = accessManager.getAccessLimits(user, (ResourceInfo) info);
-                wl =
-                        accessManager.getAccessLimits(
-                                user, ((ResourceInfo) info).getStore().getWorkspace());
+                resource = (ResourceInfo) info;
             }
             if (dl != null) {
                 canRead = dl.getReadFilter() != Filter.EXCLUDE;
@@ -977,6 +973,10 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
             limits = dl;
 
             if (AdminRequest.get() != null) {
+                // the workspace limits are only needed for admin requests, don't compute them
+                // for the (much more common) OWS ones
+                WorkspaceAccessLimits wl =
+                        accessManager.getAccessLimits(user, resource.getStore().getWorkspace());
                 if (wl != null && !wl.isAdminable()) {
                     canRead = false;
                 }
@@ -1609,18 +1609,7 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
 
         // create secured decorators on-demand. Assume this method is used only for listing, not
         // for accessing a single resource by name/id, thus use hide policy for mixed mode
-        final Function<T, T> securityWrapper = securityWrapper(of, MixedModeBehavior.HIDE);
-        @SuppressWarnings("PMD.CloseResource") // wrapped and returned
-        final CloseableIterator<T> filteredWrapped =
-                CloseableIteratorAdapter.transform(filtered, securityWrapper);
-
-        // wrap the iterator in a notNull filter to ensure any filtered
-        // layers (result is null) don't get passed on from the securityWrapper
-        // Function. When the AccessLevel is HIDDEN and a layer gets filtered
-        // out via a CatalogFilter - for example, this can happen with a
-        // LocalWorkspaceCatalogFilter and a virtual service request
-        return CloseableIteratorAdapter.filter(
-                filteredWrapped, com.google.common.base.Predicates.notNull());
+        return secure(filtered, MixedModeBehavior.HIDE);
     }
 
     public <T extends CatalogInfo> CloseableIterator<T> list(
@@ -1634,10 +1623,26 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
 
         // create secured decorators on-demand. Assume this method is used only for listing, not
         // for accessing a single resource by name/id, thus use hide policy for mixed mode
-        final Function<T, T> securityWrapper = securityWrapper(of, MixedModeBehavior.HIDE);
+        return secure(filtered, MixedModeBehavior.HIDE);
+    }
+
+    /**
+     * Secures all the objects returned by the iterator in a single pass, hiding the ones the current
+     * user cannot access and wrapping the others according to their access limits. The current user
+     * is looked up just once for the whole iteration, making this method preferable to {@link
+     * #checkAccess(Authentication, CatalogInfo, MixedModeBehavior)} calls on each object when a
+     * large number of objects needs to be checked.
+     *
+     * @param iterator the objects to be secured, usually coming from the raw catalog
+     * @param mixedModeBehavior how to behave on objects the user cannot read in mixed mode
+     * @return an iterator over the accessible, secured objects
+     */
+    public <T extends CatalogInfo> CloseableIterator<T> secure(
+            CloseableIterator<T> iterator, MixedModeBehavior mixedModeBehavior) {
+        final Function<T, T> securityWrapper = securityWrapper(mixedModeBehavior);
         @SuppressWarnings("PMD.CloseResource") // wrapped and returned
-        final CloseableIterator<T> filteredWrapped =
-                CloseableIteratorAdapter.transform(filtered, securityWrapper);
+        final CloseableIterator<T> wrapped =
+                CloseableIteratorAdapter.transform(iterator, securityWrapper);
 
         // wrap the iterator in a notNull filter to ensure any filtered
         // layers (result is null) don't get passed on from the securityWrapper
@@ -1645,7 +1650,7 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
         // out via a CatalogFilter - for example, this can happen with a
         // LocalWorkspaceCatalogFilter and a virtual service request
         return CloseableIteratorAdapter.filter(
-                filteredWrapped, com.google.common.base.Predicates.notNull());
+                wrapped, com.google.common.base.Predicates.notNull());
     }
 
     /**
@@ -1654,7 +1659,7 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
      * @see #checkAccess(Authentication, CatalogInfo)
      */
     private <T extends CatalogInfo> Function<T, T> securityWrapper(
-            final Class<T> forClass, MixedModeBehavior mixedModeBehavior) {
+            MixedModeBehavior mixedModeBehavior) {
 
         final Authentication user = user();
         return input -> {
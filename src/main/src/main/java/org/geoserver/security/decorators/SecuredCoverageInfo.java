@@ -29,6 +29,10 @@ public class SecuredCoverageInfo extends DecoratingCoverageInfo {
         this.policy = policy;
     }
 
+    public WrapperPolicy getWrapperPolicy() {
+        return policy;
+    }
+
     @Override
     public GridCoverage getGridCoverage(ProgressListener listener, Hints hints) throws IOException {
         if (policy.level == AccessLevel.METADATA)
@@ -51,6 +51,10 @@ public class SecuredFeatureTypeInfo extends DecoratingFeatureTypeInfo {
         this.policy = policy;
     }
 
+    public WrapperPolicy getWrapperPolicy() {
+        return policy;
+    }
+
     @Override
     public FeatureType getFeatureType() throws IOException {
 
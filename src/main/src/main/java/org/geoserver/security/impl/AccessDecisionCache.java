@@ -0,0 +1,294 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.AccessMode;
+import org.geoserver.security.GeoServerSecurityFilterChainProxy;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Caches the outcome of the access checks performed by {@link DefaultResourceAccessManager}.
+ *
+ * <p>The decisions only depend on the roles granted to the user, not on the user identity, so they
+ * are keyed by role set and path of the secured object in the authorization tree. All the
+ * decisions are dropped whenever the catalog changes (the layer group containment rules depend on
+ * its contents) or the access rules are reloaded. Each decision records the invalidation generation
+ * it was computed in, and is served only while that generation is current, so a decision computed
+ * concurrently with an invalidation can be stored, but never used.
+ *
+ * <p>The maximum number of cached decisions can be set with the {@link #CACHE_SIZE_KEY} system
+ * property, setting it to zero disables the cache.
+ */
+public class AccessDecisionCache {
+
+    static final Logger LOGGER = Logging.getLogger(AccessDecisionCache.class);
+
+    /** System property controlling the maximum number of cached decisions */
+    public static final String CACHE_SIZE_KEY = "GEOSERVER_ACCESS_DECISION_CACHE_SIZE";
+
+    static final int DEFAULT_CACHE_SIZE = 100000;
+
+    /** The kind of object an access decision has been taken for */
+    enum Kind {
+        WORKSPACE,
+        RESOURCE,
+        LAYER_GROUP
+    }
+
+    final Map<DecisionKey, Decision> decisions = new ConcurrentHashMap<>();
+
+    final int maxSize;
+
+    final AtomicLong hits = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    final AtomicLong evaluationTime = new AtomicLong();
+
+    final AtomicLong invalidations = new AtomicLong();
+
+    public AccessDecisionCache(Catalog catalog) {
+        this(catalog, getConfiguredSize());
+    }
+
+    AccessDecisionCache(Catalog catalog, int maxSize) {
+        this.maxSize = maxSize;
+        if (catalog != null) {
+            catalog.addListener(new CatalogChangeListener());
+        }
+    }
+
+    static int getConfiguredSize() {
+        String value = GeoServerExtensions.getProperty(CACHE_SIZE_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Invalid value for " + CACHE_SIZE_KEY + ": " + value + ", using default",
+                        e);
+            }
+        }
+        return DEFAULT_CACHE_SIZE;
+    }
+
+    /**
+     * Returns the cached access decision for the given object, evaluating it if missing
+     *
+     * @param user the user accessing the object
+     * @param kind the kind of object
+     * @param mode the access mode
+     * @param flags any other context element the decision depends on
+     * @param evaluator computes the decision on cache miss
+     * @param path the object path in the authorization tree
+     */
+    boolean canAccess(
+            Authentication user,
+            Kind kind,
+            AccessMode mode,
+            int flags,
+            BooleanSupplier evaluator,
+            String... path) {
+        if (maxSize <= 0
+                || !GeoServerSecurityFilterChainProxy.isSecurityEnabledForCurrentRequest()) {
+            // cache disabled, or security check short-circuited for the current request
+            return evaluate(evaluator);
+        }
+
+        DecisionKey key = new DecisionKey(getRoles(user), kind, mode, flags, path);
+        // read before the decision, anything computed before an invalidation is stale
+        long generation = invalidations.get();
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.generation == generation) {
+            hits.incrementAndGet();
+            return decision.granted;
+        }
+
+        misses.incrementAndGet();
+        boolean result = evaluate(evaluator);
+        if (decisions.size() >= maxSize) {
+            // simple strategy, the whole set of decisions gets rebuilt quickly anyways
+            decisions.clear();
+        }
+        // if the catalog or the rules changed in the meantime, the decision won't be used
+        decisions.put(key, new Decision(result, generation));
+        return result;
+    }
+
+    private boolean evaluate(BooleanSupplier evaluator) {
+        long start = System.nanoTime();
+        try {
+            return evaluator.getAsBoolean();
+        } finally {
+            evaluationTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    static Set<String> getRoles(Authentication user) {
+        if (user == null || user.getAuthorities() == null) {
+            return Collections.emptySet();
+        }
+        Set<String> roles = new HashSet<>();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        return roles;
+    }
+
+    /** Drops all the cached decisions */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+        decisions.clear();
+    }
+
+    /** Number of decisions served from the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Number of decisions that had to be computed */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Ratio between hits and total number of requests, or 0 if no request has been made yet */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : ((double) h) / total;
+    }
+
+    /** Total time spent evaluating the access rules, in nanoseconds */
+    public long getEvaluationTime() {
+        return evaluationTime.get();
+    }
+
+    /** Number of times the cache has been flushed due to catalog or rule changes */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /** Number of decisions currently cached */
+    public int size() {
+        return decisions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "AccessDecisionCache [hits="
+                + hits
+                + ", misses="
+                + misses
+                + ", evaluationTime="
+                + evaluationTime
+                + "ns, invalidations="
+                + invalidations
+                + ", size="
+                + decisions.size()
+                + "]";
+    }
+
+    /** An access decision, along with the invalidation generation it was computed in */
+    static final class Decision {
+        final boolean granted;
+        final long generation;
+
+        Decision(boolean granted, long generation) {
+            this.granted = granted;
+            this.generation = generation;
+        }
+    }
+
+    static final class DecisionKey {
+        final Set<String> roles;
+        final Kind kind;
+        final AccessMode mode;
+        final int flags;
+        final String[] path;
+        final int hashCode;
+
+        DecisionKey(Set<String> roles, Kind kind, AccessMode mode, int flags, String[] path) {
+            this.roles = roles;
+            this.kind = kind;
+            this.mode = mode;
+            this.flags = flags;
+            this.path = path;
+            this.hashCode = Objects.hash(roles, kind, mode, flags, Arrays.hashCode(path));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) obj;
+            return flags == other.flags
+                    && kind == other.kind
+                    && mode == other.mode
+                    && Arrays.equals(path, other.path)
+                    && roles.equals(other.roles);
+        }
+    }
+
+    /** Flushes the decisions on any catalog change */
+    final class CatalogChangeListener implements CatalogListener {
+
+        @Override
+        public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        @Override
+        public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        @Override
+        public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+            invalidate();
+        }
+
+        @Override
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+            // the modification has been applied now, drop anything computed in between
+            invalidate();
+        }
+
+        @Override
+        public void reloaded() {
+            invalidate();
+        }
+    }
+}
@@ -8,6 +8,7 @@ package org.geoserver.security.impl;
 import static org.geoserver.security.impl.DataAccessRule.ANY;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -111,6 +112,8 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
 
     LayerGroupContainmentCache groupsCache;
 
+    AccessDecisionCache decisionCache;
+
     /**
      * Pass a reference to the raw, unsecured catalog. The reference is used to evaluate the
      * relationship between layers and the groups containing them
@@ -120,6 +123,12 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
         this.rawCatalog = rawCatalog;
         this.root = buildAuthorizationTree(dao);
         this.groupsCache = new LayerGroupContainmentCache(rawCatalog);
+        this.decisionCache = new AccessDecisionCache(rawCatalog);
+    }
+
+    /** Returns the cache of access decisions, along with its usage statistics */
+    public AccessDecisionCache getDecisionCache() {
+        return decisionCache;
     }
 
     public CatalogMode getMode() {
@@ -128,6 +137,17 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
 
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         checkPropertyFile();
+        return decisionCache.canAccess(
+                user,
+                AccessDecisionCache.Kind.WORKSPACE,
+                mode,
+                0,
+                () -> canAccessWorkspace(user, workspace, mode),
+                workspace.getName());
+    }
+
+    private boolean canAccessWorkspace(
+            Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         SecureTreeNode node = root.getDeepestNode(new String[] {workspace.getName()});
         if (node.canAccess(user, mode)) {
             return true;
@@ -194,13 +214,42 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
             return true;
         }
 
+        final String workspaceName = workspace;
+        final boolean groupCheckRequired = layerGroupContainmentCheckRequired();
+        final int flags = (directAccess ? 1 : 0) | (groupCheckRequired ? 2 : 0);
+        return decisionCache.canAccess(
+                user,
+                AccessDecisionCache.Kind.RESOURCE,
+                mode,
+                flags,
+                () ->
+                        canAccessResource(
+                                user,
+                                resource,
+                                workspaceName,
+                                resourceName,
+                                mode,
+                                directAccess,
+                                groupCheckRequired),
+                workspaceName,
+                resourceName,
+                resource.getId());
+    }
+
+    private boolean canAccessResource(
+            Authentication user,
+            ResourceInfo resource,
+            String workspace,
+            String resourceName,
+            AccessMode mode,
+            boolean directAccess,
+            boolean groupCheckRequired) {
         // if we have a catalog rule that is at resource level, it's the most specific type,
         // it wins. Or it could be that we do not need to check layer groups at all
         SecureTreeNode securityNode = root.getDeepestNode(new String[] {workspace, resourceName});
         int catalogNodeDepth = securityNode.getDepth();
         boolean rulesAllowAccess = securityNode.canAccess(user, mode);
-        if (catalogNodeDepth == SecureTreeNode.RESOURCE_DEPTH
-                || !layerGroupContainmentCheckRequired()) {
+        if (catalogNodeDepth == SecureTreeNode.RESOURCE_DEPTH || !groupCheckRequired) {
             return rulesAllowAccess;
         }
 
@@ -325,6 +374,7 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
         if (lastLoaded < daoLastModified || force) {
             root = buildAuthorizationTree(dao);
             lastLoaded = daoLastModified;
+            decisionCache.invalidate();
         }
     }
 
@@ -464,6 +514,19 @@ public class DefaultResourceAccessManager implements ResourceAccessManager {
     private boolean canAccess(
             Authentication user, LayerGroupInfo layerGroup, boolean directAccess) {
         String[] path = getLayerGroupPath(layerGroup);
+        String[] key = Arrays.copyOf(path, path.length + 1);
+        key[path.length] = layerGroup.getId();
+        return decisionCache.canAccess(
+                user,
+                AccessDecisionCache.Kind.LAYER_GROUP,
+                AccessMode.READ,
+                directAccess ? 1 : 0,
+                () -> canAccessGroup(user, layerGroup, path, directAccess),
+                key);
+    }
+
+    private boolean canAccessGroup(
+            Authentication user, LayerGroupInfo layerGroup, String[] path, boolean directAccess) {
         SecureTreeNode node = root.getDeepestNode(path);
         boolean catalogNodeAllowsAccess = node.canAccess(user, AccessMode.READ);
         boolean allowAccess;
@@ -21,6 +21,7 @@ import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StructuredCoverageViewReader;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.catalog.util.ReaderDimensionsAccessor;
 import org.geoserver.platform.ServiceException;
 import org.geotools.coverage.grid.io.DimensionDescriptor;
@@ -372,6 +373,7 @@ public abstract class NearestMatchFinder {
 
     /** Nearest matcher for vector data */
     private static class Vector extends NearestMatchFinder {
+        private final FeatureTypeInfo ftInfo;
         private final FeatureSource featureSource;
 
         public Vector(
@@ -382,9 +384,42 @@ public abstract class NearestMatchFinder {
                 Class<?> dataType)
                 throws IOException {
             super(attribute, endAttribute, acceptableRange, dataType);
+            this.ftInfo = ftInfo;
             this.featureSource = ftInfo.getFeatureSource(null, null);
         }
 
+        @Override
+        public Object getNearest(Object value) throws IOException {
+            // point vs point comparisons can be resolved against the indexed domain, if available
+            DimensionDomainIndex index = DimensionDomainIndex.get();
+            if (index == null
+                    || value == null
+                    || endAttribute != null
+                    || (value instanceof Range
+                            && !((Range) value)
+                                    .getMinValue()
+                                    .equals(((Range) value).getMaxValue()))) {
+                return super.getNearest(value);
+            }
+            Date date = (Date) (value instanceof Range ? ((Range) value).getMinValue() : value);
+            DimensionDomainIndex.Domain domain =
+                    index.getAttributeDomain(ftInfo, attribute.getPropertyName());
+            Object result;
+            if (acceptableRange != null) {
+                Range searchRange = acceptableRange.getSearchRange(date);
+                result =
+                        domain.getNearest(
+                                date, searchRange.getMinValue(), searchRange.getMaxValue());
+            } else {
+                result = domain.getNearest(date);
+            }
+            if (date.equals(result)) {
+                return value;
+            } else {
+                return result;
+            }
+        }
+
         @Override
         protected FeatureCollection getMatches(Filter filter) throws IOException {
             return featureSource.getFeatures(filter);
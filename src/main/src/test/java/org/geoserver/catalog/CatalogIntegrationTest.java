@@ -7,6 +7,7 @@ package org.geoserver.catalog;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -18,12 +19,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.commons.io.FileUtils;
 import org.geoserver.catalog.CascadeRemovalReporter.ModificationType;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
 import org.geoserver.catalog.impl.ModificationProxy;
 import org.geoserver.config.GeoServerConfigPersister;
+import org.geoserver.config.impl.GeoServerImpl;
 import org.geoserver.data.test.MockData;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.platform.GeoServerExtensions;
@@ -34,6 +44,7 @@ import org.geoserver.test.GeoServerSystemTestSupport;
 import org.geoserver.test.SystemTest;
 import org.geoserver.test.TestSetup;
 import org.geoserver.test.TestSetupFrequency;
+import org.geotools.data.DataAccess;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -556,6 +567,115 @@ public class CatalogIntegrationTest extends GeoServerSystemTestSupport {
         }
     }
 
+    @Test
+    public void testIncrementalReload() throws Exception {
+        Catalog catalog = getCatalog();
+        ResourcePool pool = catalog.getResourcePool();
+        DataStoreInfo cite = catalog.getDataStoreByName(MockData.CITE_PREFIX);
+        DataStoreInfo sf = catalog.getDataStoreByName(MockData.SF_PREFIX);
+        DataAccess<?, ?> citeAccess = pool.getDataStore(cite);
+        DataAccess<?, ?> sfAccess = pool.getDataStore(sf);
+        int layers = catalog.getLayers().size();
+
+        // modify one store behind the back of the catalog
+        Resource citeConfig = getDataDirectory().config(cite);
+        String xml = new String(citeConfig.getContents(), StandardCharsets.UTF_8);
+        xml = xml.replaceFirst("</name>", "</name><description>changed</description>");
+        citeConfig.setContents(xml.getBytes(StandardCharsets.UTF_8));
+
+        System.setProperty(GeoServerImpl.INCREMENTAL_RELOAD_KEY, "true");
+        try {
+            getGeoServer().reload();
+        } finally {
+            System.clearProperty(GeoServerImpl.INCREMENTAL_RELOAD_KEY);
+        }
+
+        // same pool, unchanged store still open, modified one got flushed
+        assertSame(pool, catalog.getResourcePool());
+        assertSame(sfAccess, pool.getDataStore(catalog.getDataStoreByName(MockData.SF_PREFIX)));
+        cite = catalog.getDataStoreByName(MockData.CITE_PREFIX);
+        assertEquals("changed", cite.getDescription());
+        assertNotSame(citeAccess, pool.getDataStore(cite));
+        assertEquals(layers, catalog.getLayers().size());
+        // the pool of the catalog read from disk got retired, no eviction threads piling up
+        long evictionThreads =
+                Thread.getAllStackTraces().keySet().stream()
+                        .filter(t -> "gs-resource-pool-eviction".equals(t.getName()))
+                        .count();
+        assertTrue(evictionThreads <= 1);
+    }
+
+    @Test
+    public void testIncrementalReloadRename() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo buildings = catalog.getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        String layerId = catalog.getLayerByName(getLayerId(MockData.BUILDINGS)).getId();
+
+        // rename the layer behind the back of the catalog
+        Resource config = getDataDirectory().config(buildings);
+        String xml = new String(config.getContents(), StandardCharsets.UTF_8);
+        xml = xml.replace("<name>Buildings</name>", "<name>Houses</name>");
+        config.setContents(xml.getBytes(StandardCharsets.UTF_8));
+
+        List<CatalogModifyEvent> modified = new CopyOnWriteArrayList<>();
+        List<CatalogPostModifyEvent> postModified = new CopyOnWriteArrayList<>();
+        CatalogListener listener =
+                new CatalogListener() {
+                    @Override
+                    public void handleAddEvent(CatalogAddEvent event) {}
+
+                    @Override
+                    public void handleRemoveEvent(CatalogRemoveEvent event) {}
+
+                    @Override
+                    public void handleModifyEvent(CatalogModifyEvent event) {
+                        modified.add(event);
+                    }
+
+                    @Override
+                    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+                        postModified.add(event);
+                    }
+
+                    @Override
+                    public void reloaded() {}
+                };
+        catalog.addListener(listener);
+        System.setProperty(GeoServerImpl.INCREMENTAL_RELOAD_KEY, "true");
+        try {
+            getGeoServer().reload();
+        } finally {
+            System.clearProperty(GeoServerImpl.INCREMENTAL_RELOAD_KEY);
+            catalog.removeListener(listener);
+        }
+
+        assertNull(catalog.getLayerByName(getLayerId(MockData.BUILDINGS)));
+        assertEquals(layerId, catalog.getLayerByName("cite:Houses").getId());
+
+        // both the resource and the layer report the actual name change
+        for (String id : Arrays.asList(buildings.getId(), layerId)) {
+            CatalogModifyEvent event = findEvent(modified, id);
+            assertNameChanged(event.getPropertyNames(), event.getOldValues(), event.getNewValues());
+            CatalogPostModifyEvent post = findEvent(postModified, id);
+            assertNameChanged(post.getPropertyNames(), post.getOldValues(), post.getNewValues());
+        }
+    }
+
+    private <E extends CatalogEvent> E findEvent(List<E> events, String id) {
+        return events.stream()
+                .filter(e -> id.equals(e.getSource().getId()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No event for " + id));
+    }
+
+    private void assertNameChanged(
+            List<String> names, List<Object> oldValues, List<Object> newValues) {
+        int idx = names.indexOf("name");
+        assertTrue(idx >= 0);
+        assertEquals("Buildings", oldValues.get(idx));
+        assertEquals("Houses", newValues.get(idx));
+    }
+
     @Test
     public void testRenameWorspaceAfterReload() throws Exception {
         // reload
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -37,9 +38,11 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import javax.media.jai.PlanarImage;
 import javax.xml.namespace.QName;
@@ -236,6 +239,100 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertEquals(att1, att3);
     }
 
+    @Test
+    public void testCacheStatistics() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        FeatureTypeInfo info =
+                getCatalog()
+                        .getFeatureTypeByName(
+                                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
+        pool.getFeatureType(info);
+        pool.getFeatureType(info);
+        pool.getFeatureType(info);
+
+        ResourceCacheStatistics stats = pool.getCacheStatistics().get("featureType");
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getLoads());
+        assertTrue(stats.getLoadTime() > 0);
+        // the data store got looked up once per feature type load
+        assertEquals(1, pool.getCacheStatistics().get("dataStore").getLoads());
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        ResourcePool.CatalogResourceCache<String, List<AttributeTypeInfo>> cache =
+                pool.new FeatureTypeAttributeCache(10);
+        ResourceCacheStatistics stats = new ResourceCacheStatistics();
+        cache.statistics = stats;
+        AtomicLong time = new AtomicLong(1000);
+        cache.clock = time::get;
+        cache.setIdleTimeout(50);
+
+        cache.put("idle", Collections.emptyList());
+        cache.put("used", Collections.emptyList());
+        time.addAndGet(100);
+        // touch one of the entries, the other one is evicted
+        assertNotNull(cache.get("used"));
+        cache.evictIdle();
+        assertNull(cache.get("idle"));
+        assertNotNull(cache.get("used"));
+        assertEquals(1, stats.getIdleEvictions());
+    }
+
+    @Test
+    public void testIdleEvictionScheduling() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        try {
+            // nothing scheduled until an entry subject to the idle timeout is cached
+            assertNull(pool.idleEviction);
+            ResourcePool.CatalogResourceCache<String, List<AttributeTypeInfo>> cache =
+                    pool.new FeatureTypeAttributeCache(10);
+            cache.setIdleTimeout(50);
+            cache.put("entry", Collections.emptyList());
+            assertNotNull(pool.idleEviction);
+
+            // a flush does not retire the pool, the eviction starts again with new entries
+            pool.dispose();
+            assertNull(pool.idleEviction);
+            cache.put("entry", Collections.emptyList());
+            assertNotNull(pool.idleEviction);
+            assertFalse(pool.idleEviction.isDone());
+        } finally {
+            pool.dispose();
+        }
+    }
+
+    @Test
+    public void testIdleEvictionSkipsLeased() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        ResourcePool.CatalogResourceCache<String, List<AttributeTypeInfo>> cache =
+                pool.new FeatureTypeAttributeCache(10);
+        AtomicLong time = new AtomicLong(1000);
+        cache.clock = time::get;
+        cache.setIdleTimeout(50);
+        cache.put("leased", Collections.emptyList());
+
+        try (ResourceLeases leases = ResourceLeases.open()) {
+            assertNotNull(cache.get("leased"));
+            // nested scopes leave the lease to the outer one
+            ResourceLeases.open().close();
+            // in use for longer than the idle timeout, e.g., a long streaming request
+            time.addAndGet(100);
+            cache.evictIdle();
+            assertTrue(cache.containsKey("leased"));
+        }
+
+        // released, the idle time starts now
+        cache.evictIdle();
+        assertTrue(cache.containsKey("leased"));
+        time.addAndGet(100);
+        cache.evictIdle();
+        assertFalse(cache.containsKey("leased"));
+        assertTrue(cache.leases.isEmpty());
+    }
+
     boolean cleared = false;
 
     @Test
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -3391,4 +3392,57 @@ public class CatalogImplTest extends GeoServerSystemTestSupport {
         LayerGroupInfo g2 = catalog.getFacade().getLayerGroupByName(lg.getName());
         assertTrue(LayerGroupInfo.equals(g1, g2));
     }
+
+    @Test
+    public void testReadSnapshot() {
+        addLayerGroup();
+        CatalogImpl catalogImpl = (CatalogImpl) catalog;
+        CatalogReadSnapshot snapshot = catalogImpl.getReadSnapshot();
+        // shared until the next change
+        assertSame(snapshot, catalogImpl.getReadSnapshot());
+
+        // the catalog objects themselves, not proxies
+        LayerInfo layer = snapshot.getLayerByName("wsName:ftName");
+        assertNotNull(layer);
+        assertNull(ModificationProxy.handler(layer));
+        assertSame(layer, ModificationProxy.unwrap(catalog.getLayer(l.getId())));
+        assertSame(layer, snapshot.getLayerByName("ftName"));
+        assertSame(layer, snapshot.getById(l.getId(), LayerInfo.class));
+        assertSame(layer, snapshot.getById(l.getId(), PublishedInfo.class));
+        assertNull(snapshot.getById(l.getId(), ResourceInfo.class));
+        assertEquals(1, snapshot.getLayers().size());
+        assertSame(layer, snapshot.getLayers().get(0));
+
+        WorkspaceInfo workspace = snapshot.getWorkspaceByName("wsName");
+        assertNotNull(snapshot.getStoreByName(workspace, "dsName", DataStoreInfo.class));
+        assertNull(snapshot.getStoreByName(workspace, "dsName", CoverageStoreInfo.class));
+        NamespaceInfo namespace = snapshot.getNamespaceByPrefix("wsName");
+        assertNotNull(snapshot.getResourceByName(namespace, "ftName", FeatureTypeInfo.class));
+        assertNotNull(snapshot.getLayerGroupByName(null, "layerGroup"));
+        assertNotNull(snapshot.getStyleByName(null, "styleName"));
+    }
+
+    @Test
+    public void testReadSnapshotVersions() {
+        addLayer();
+        CatalogImpl catalogImpl = (CatalogImpl) catalog;
+        CatalogReadSnapshot snapshot = catalogImpl.getReadSnapshot();
+
+        FeatureTypeInfo featureType = catalog.getFeatureTypeByName("wsName", "ftName");
+        featureType.setName("renamed");
+        catalog.save(featureType);
+        CatalogReadSnapshot renamed = catalogImpl.getReadSnapshot();
+        assertTrue(renamed.getVersion() > snapshot.getVersion());
+        assertNull(renamed.getLayerByName("wsName:ftName"));
+        assertNotNull(renamed.getLayerByName("wsName:renamed"));
+
+        catalog.remove(l);
+        CatalogReadSnapshot removed = catalogImpl.getReadSnapshot();
+        assertTrue(removed.getVersion() > renamed.getVersion());
+        assertNull(removed.getLayerByName("wsName:renamed"));
+        assertTrue(removed.getLayers().isEmpty());
+        // the previous snapshots are not affected
+        assertNotNull(renamed.getLayerByName("wsName:renamed"));
+        assertEquals(1, snapshot.getLayers().size());
+    }
 }
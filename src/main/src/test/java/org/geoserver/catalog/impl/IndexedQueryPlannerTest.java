@@ -0,0 +1,188 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+public class IndexedQueryPlannerTest {
+
+    Catalog catalog;
+
+    DefaultCatalogFacade facade;
+
+    WorkspaceInfo wsA, wsB;
+
+    NamespaceInfo nsA, nsB;
+
+    DataStoreInfo dsA, dsB;
+
+    @Before
+    public void setUp() throws Exception {
+        CatalogImpl catalogImpl = new CatalogImpl();
+        catalogImpl.setResourceLoader(new GeoServerResourceLoader());
+        catalog = catalogImpl;
+        facade = (DefaultCatalogFacade) catalogImpl.getFacade();
+
+        CatalogFactory factory = catalog.getFactory();
+        wsA = addWorkspace(factory, "aaa");
+        wsB = addWorkspace(factory, "bbb");
+        nsA = catalog.getNamespaceByPrefix("aaa");
+        nsB = catalog.getNamespaceByPrefix("bbb");
+        dsA = addStore(factory, wsA, "dsA");
+        dsB = addStore(factory, wsB, "dsB");
+        for (int i = 0; i < 10; i++) {
+            addFeatureType(factory, nsA, dsA, "ftA" + i, i % 2 == 0);
+            addFeatureType(factory, nsB, dsB, "ftB" + i, true);
+        }
+    }
+
+    private WorkspaceInfo addWorkspace(CatalogFactory factory, String name) {
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName(name);
+        catalog.add(ws);
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix(name);
+        ns.setURI("http://" + name);
+        catalog.add(ns);
+        return catalog.getWorkspaceByName(name);
+    }
+
+    private DataStoreInfo addStore(CatalogFactory factory, WorkspaceInfo ws, String name) {
+        DataStoreInfo ds = factory.createDataStore();
+        ds.setEnabled(true);
+        ds.setName(name);
+        ds.setWorkspace(ws);
+        catalog.add(ds);
+        return catalog.getDataStoreByName(ws, name);
+    }
+
+    private void addFeatureType(
+            CatalogFactory factory,
+            NamespaceInfo ns,
+            DataStoreInfo ds,
+            String name,
+            boolean enabled) {
+        FeatureTypeInfo ft = factory.createFeatureType();
+        ft.setName(name);
+        ft.setNativeName(name);
+        ft.setNamespace(ns);
+        ft.setStore(ds);
+        ft.setEnabled(enabled);
+        catalog.add(ft);
+    }
+
+    private <T extends CatalogInfo> List<T> list(Class<T> type, Filter filter) {
+        List<T> result = new ArrayList<>();
+        try (CloseableIterator<T> it = catalog.list(type, filter)) {
+            it.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    @Test
+    public void testEqualityOnIndexedProperty() {
+        Filter filter = Predicates.equal("store.id", dsA.getId());
+        Collection<ResourceInfo> candidates =
+                IndexedQueryPlanner.candidates(facade.resources, filter);
+        assertNotNull(candidates);
+        assertEquals(10, candidates.size());
+
+        List<FeatureTypeInfo> matches = list(FeatureTypeInfo.class, filter);
+        assertEquals(10, matches.size());
+        matches.forEach(ft -> assertEquals(dsA.getId(), ft.getStore().getId()));
+        assertEquals(10, catalog.count(FeatureTypeInfo.class, filter));
+    }
+
+    @Test
+    public void testReferenceEquality() {
+        Filter filter = Predicates.equal("workspace", wsB);
+        Collection<StoreInfo> candidates = IndexedQueryPlanner.candidates(facade.stores, filter);
+        assertNotNull(candidates);
+        assertEquals(1, candidates.size());
+        assertEquals("dsB", candidates.iterator().next().getName());
+    }
+
+    @Test
+    public void testAndOr() {
+        Filter and =
+                Predicates.and(
+                        Predicates.equal("namespace.id", nsA.getId()),
+                        Predicates.equal("enabled", Boolean.FALSE));
+        assertNotNull(IndexedQueryPlanner.candidates(facade.resources, and));
+        assertEquals(5, catalog.count(ResourceInfo.class, and));
+
+        Filter or =
+                Predicates.or(
+                        Predicates.equal("enabled", Boolean.FALSE),
+                        Predicates.equal("namespace.id", nsB.getId()));
+        assertNotNull(IndexedQueryPlanner.candidates(facade.resources, or));
+        assertEquals(15, catalog.count(ResourceInfo.class, or));
+
+        // one non indexed branch forces a full scan
+        Filter partial =
+                Predicates.or(
+                        Predicates.equal("enabled", Boolean.FALSE),
+                        Predicates.equal("name", "ftB1"));
+        assertNull(IndexedQueryPlanner.candidates(facade.resources, partial));
+        assertEquals(6, catalog.count(ResourceInfo.class, partial));
+    }
+
+    @Test
+    public void testReindexOnSave() {
+        FeatureTypeInfo ft = catalog.getFeatureTypeByName("aaa", "ftA0");
+        assertTrue(ft.isEnabled());
+        ft.setEnabled(false);
+        catalog.save(ft);
+
+        Filter disabled = Predicates.equal("enabled", Boolean.FALSE);
+        assertEquals(6, catalog.count(ResourceInfo.class, disabled));
+        assertEquals(14, catalog.count(ResourceInfo.class, Predicates.equal("enabled", true)));
+    }
+
+    @Test
+    public void testRemove() {
+        catalog.remove(catalog.getFeatureTypeByName("bbb", "ftB0"));
+        Filter filter = Predicates.equal("store.id", dsB.getId());
+        assertEquals(9, IndexedQueryPlanner.candidates(facade.resources, filter).size());
+        assertEquals(9, catalog.count(ResourceInfo.class, filter));
+    }
+
+    @Test
+    public void testSortedPage() {
+        Filter filter = Predicates.equal("namespace.id", nsB.getId());
+        List<FeatureTypeInfo> page = new ArrayList<>();
+        try (CloseableIterator<FeatureTypeInfo> it =
+                catalog.list(
+                        FeatureTypeInfo.class, filter, 2, 3, Predicates.desc("name"))) {
+            it.forEachRemaining(page::add);
+        }
+        assertEquals(3, page.size());
+        assertEquals("ftB7", page.get(0).getName());
+        assertEquals("ftB6", page.get(1).getName());
+        assertEquals("ftB5", page.get(2).getName());
+    }
+}
@@ -10,6 +10,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertSame;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -21,6 +22,21 @@ import org.junit.Test;
 
 public class ModificationProxyTest {
 
+    @Test
+    public void testProxyClassReuse() throws Exception {
+        TestBean bean1 = new TestBeanImpl("Mr. Bean", "Uhh", "Bean");
+        TestBean bean2 = new TestBeanImpl("Johnny English", "Not", "Bond");
+        TestBean proxy1 = ModificationProxy.create(bean1, TestBean.class);
+        TestBean proxy2 = ModificationProxy.create(bean2, TestBean.class);
+
+        // the proxy class is shared, but each proxy has its own handler and state
+        assertSame(proxy1.getClass(), proxy2.getClass());
+        proxy1.setValue("Edmond Blackadder");
+        assertThat(proxy1.getValue(), equalTo("Edmond Blackadder"));
+        assertThat(proxy2.getValue(), equalTo("Johnny English"));
+        assertThat(bean1.getValue(), equalTo("Mr. Bean"));
+    }
+
     @Test
     public void testRewrapNoProxyIdentity() throws Exception {
         TestBean bean = new TestBeanImpl("Mr. Bean", "Uhh", "Bean");
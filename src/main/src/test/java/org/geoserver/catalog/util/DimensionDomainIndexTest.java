@@ -0,0 +1,146 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.FeatureTypeInfoImpl;
+import org.geoserver.catalog.util.DimensionDomainIndex.Domain;
+import org.geoserver.catalog.util.DimensionDomainIndex.DomainLoader;
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.VectorAccessLimits;
+import org.geoserver.security.WrapperPolicy;
+import org.geoserver.security.decorators.SecuredFeatureTypeInfo;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+
+public class DimensionDomainIndexTest {
+
+    @Test
+    public void testMinMax() {
+        Domain domain = new Domain(Arrays.asList(30d, 10d, null, 20d));
+        assertEquals(3, domain.size());
+        assertEquals(10d, domain.getMin());
+        assertEquals(30d, domain.getMax());
+
+        Domain empty = new Domain(Collections.emptyList());
+        assertTrue(empty.isEmpty());
+        assertNull(empty.getMin());
+        assertNull(empty.getMax());
+        assertNull(empty.getNearest(10d));
+    }
+
+    @Test
+    public void testConversion() {
+        Domain domain = new Domain(Arrays.asList(1, 2, 3));
+        // longs are converted to the integers already in the domain
+        domain.addAll(Arrays.asList(4L, 2L));
+        assertEquals(Arrays.asList(1, 2, 3, 4), new ArrayList<>(domain.getValues()));
+        assertEquals(3, domain.getNearest(3.2d));
+    }
+
+    @Test
+    public void testResolution() {
+        Domain domain = new Domain(Arrays.asList(new Date(0), new Date(1000), new Date(2000)));
+        assertEquals(Double.valueOf(1000), domain.getResolution());
+
+        domain.addAll(Collections.singletonList(new Date(2500)));
+        assertNull(domain.getResolution());
+
+        assertNull(new Domain(Arrays.asList(1d, 2d)).getResolution());
+    }
+
+    @Test
+    public void testNearest() {
+        Domain domain = new Domain(Arrays.asList(new Date(0), new Date(1000), new Date(2000)));
+        assertEquals(new Date(1000), domain.getNearest(new Date(1200)));
+        // ties pick the lowest value
+        assertEquals(new Date(1000), domain.getNearest(new Date(1500)));
+        assertEquals(new Date(0), domain.getNearest(new Date(-500)));
+        assertEquals(new Date(2000), domain.getNearest(new Date(5000)));
+    }
+
+    @Test
+    public void testNearestWithBounds() {
+        Domain domain = new Domain(Arrays.asList(new Date(0), new Date(1000), new Date(2000)));
+        assertEquals(
+                new Date(2000),
+                domain.getNearest(new Date(1600), new Date(1500), new Date(2500)));
+        assertNull(domain.getNearest(new Date(1400), new Date(1100), new Date(1900)));
+        assertEquals(
+                new Date(1000), domain.getNearest(new Date(1400), new Date(1000), null));
+    }
+
+    @Test
+    public void testSecuredDomains() throws Exception {
+        CatalogImpl catalog = new CatalogImpl();
+        DimensionDomainIndex index = new DimensionDomainIndex(catalog);
+        FeatureTypeInfo raw = new FeatureTypeInfoImpl(catalog, "ft");
+        VectorAccessLimits limits =
+                new VectorAccessLimits(
+                        CatalogMode.HIDE, null, ECQL.toFilter("elevation < 2"), null, null);
+        FeatureTypeInfo restricted =
+                new SecuredFeatureTypeInfo(raw, WrapperPolicy.readOnlyHide(limits));
+        FeatureTypeInfo unrestricted =
+                new SecuredFeatureTypeInfo(raw, WrapperPolicy.readWrite(null));
+        DomainLoader unexpected =
+                () -> {
+                    throw new AssertionError("The domain should have been cached");
+                };
+
+        // the domains loaded with access limits are cached separately
+        Domain full = index.getDomain(raw, "elevation", () -> Arrays.asList(1, 2, 3));
+        Domain limited = index.getDomain(restricted, "elevation", () -> Arrays.asList(1));
+        assertEquals(3, full.size());
+        assertEquals(1, limited.size());
+        assertSame(full, index.getDomain(raw, "elevation", unexpected));
+        assertSame(limited, index.getDomain(restricted, "elevation", unexpected));
+        assertSame(full, index.getDomain(unrestricted, "elevation", unexpected));
+
+        // new values are added to the unrestricted domain, the limited one gets reloaded
+        index.addValues(raw, "elevation", Arrays.asList(0, 4));
+        assertEquals(5, full.size());
+        assertSame(full, index.getDomain(raw, "elevation", unexpected));
+        Domain reloaded = index.getDomain(restricted, "elevation", () -> Arrays.asList(0, 1));
+        assertEquals(Arrays.asList(0, 1), new ArrayList<>(reloaded.getValues()));
+
+        assertEquals(1, index.domains.size());
+        assertEquals(1, index.restrictedDomains.size());
+
+        // invalidation drops all of them
+        index.invalidate(raw);
+        assertTrue(index.domains.isEmpty());
+        assertEquals(0, index.restrictedDomains.size());
+    }
+
+    @Test
+    public void testRestrictedDomainsBounded() throws Exception {
+        CatalogImpl catalog = new CatalogImpl();
+        DimensionDomainIndex index = new DimensionDomainIndex(catalog, 10);
+        FeatureTypeInfo raw = new FeatureTypeInfoImpl(catalog, "ft");
+        Domain full = index.getDomain(raw, "elevation", () -> Arrays.asList(1, 2, 3, 4, 5, 6));
+        for (int i = 0; i < 5; i++) {
+            VectorAccessLimits limits =
+                    new VectorAccessLimits(
+                            CatalogMode.HIDE, null, ECQL.toFilter("elevation < " + i), null, null);
+            FeatureTypeInfo restricted =
+                    new SecuredFeatureTypeInfo(raw, WrapperPolicy.readOnlyHide(limits));
+            index.getDomain(restricted, "elevation", () -> Arrays.asList(1, 2, 3));
+        }
+
+        // each restricted domain weighs 4, at most two fit, the unrestricted one is kept
+        assertTrue(index.restrictedDomains.size() <= 2);
+        assertSame(full, index.getDomain(raw, "elevation", () -> Arrays.asList(1)));
+    }
+}
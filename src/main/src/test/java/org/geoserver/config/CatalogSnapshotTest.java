@@ -0,0 +1,186 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.geoserver.platform.resource.FileSystemResourceStore;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceStore;
+import org.geoserver.platform.resource.Resources;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogSnapshotTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    ResourceStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileSystemResourceStore(folder.getRoot());
+    }
+
+    private Resource write(String path, String contents) throws IOException {
+        Resource r = store.get(path);
+        r.setContents(contents.getBytes(StandardCharsets.UTF_8));
+        return r;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource ns = write("workspaces/ws/namespace.xml", "<namespace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, true);
+        first.getContents(ws);
+        first.getContents(ns);
+        assertEquals(0, first.getHits());
+        assertEquals(2, first.getMisses());
+        first.save(snapshotResource);
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, true);
+        assertArrayEquals(ws.getContents(), second.getContents(ws));
+        assertArrayEquals(ns.getContents(), second.getContents(ns));
+        assertEquals(2, second.getHits());
+        assertEquals(0, second.getMisses());
+    }
+
+    @Test
+    public void testModifiedFileReadFromDisk() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, true);
+        first.getContents(ws);
+        first.save(snapshotResource);
+
+        write("workspaces/ws/workspace.xml", "<workspace><name>ws</name></workspace>");
+        assertTrue(ws.file().setLastModified(ws.lastmodified() + 10000));
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, true);
+        assertEquals(
+                "<workspace><name>ws</name></workspace>",
+                new String(second.getContents(ws), StandardCharsets.UTF_8));
+        assertEquals(0, second.getHits());
+        assertEquals(1, second.getMisses());
+    }
+
+    @Test
+    public void testResizedFileReadFromDisk() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, true);
+        first.getContents(ws);
+        first.save(snapshotResource);
+
+        // same modification time, different contents
+        long lastModified = ws.lastmodified();
+        write("workspaces/ws/workspace.xml", "<workspace><name>ws</name></workspace>");
+        assertTrue(ws.file().setLastModified(lastModified));
+        assertEquals(lastModified, ws.lastmodified());
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, true);
+        assertEquals(
+                "<workspace><name>ws</name></workspace>",
+                new String(second.getContents(ws), StandardCharsets.UTF_8));
+        assertEquals(0, second.getHits());
+        assertEquals(1, second.getMisses());
+    }
+
+    @Test
+    public void testSizeCheckedOnFileSystemOnly() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, false);
+        first.getContents(ws);
+        first.save(snapshotResource);
+
+        // same modification time, different contents, only the store metadata is trusted
+        long lastModified = ws.lastmodified();
+        write("workspaces/ws/workspace.xml", "<workspace><name>ws</name></workspace>");
+        assertTrue(ws.file().setLastModified(lastModified));
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, false);
+        assertEquals("<workspace/>", new String(second.getContents(ws), StandardCharsets.UTF_8));
+        assertEquals(1, second.getHits());
+        second.dispose();
+    }
+
+    @Test
+    public void testSaveDisposes() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, true);
+        first.getContents(ws);
+        first.save(snapshotResource);
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, true);
+        assertEquals(1, second.entries.size());
+        second.getContents(ws);
+        // recorded in the data directory, next to the snapshot
+        Resource recordResource = second.recordResource;
+        assertEquals(snapshotResource.parent(), recordResource.parent());
+        assertTrue(Resources.exists(recordResource));
+        second.save(snapshotResource);
+
+        assertTrue(second.entries.isEmpty());
+        assertTrue(second.recorded.isEmpty());
+        assertNull(second.recordResource);
+        assertFalse(Resources.exists(recordResource));
+    }
+
+    @Test
+    public void testDisposeWithoutSave() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot snapshot = CatalogSnapshot.load(snapshotResource, true);
+        snapshot.getContents(ws);
+        Resource recordResource = snapshot.recordResource;
+        snapshot.dispose();
+
+        assertFalse(Resources.exists(recordResource));
+        assertTrue(snapshot.recorded.isEmpty());
+        assertEquals(Resource.Type.UNDEFINED, snapshotResource.getType());
+    }
+
+    @Test
+    public void testCorruptedSnapshotIgnored() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        Resource snapshotResource = store.get(CatalogSnapshot.SNAPSHOT_FILE);
+        CatalogSnapshot first = CatalogSnapshot.load(snapshotResource, true);
+        first.getContents(ws);
+        first.save(snapshotResource);
+
+        // flip the last byte of the contents
+        byte[] bytes = snapshotResource.getContents();
+        bytes[bytes.length - 1] = (byte) ~bytes[bytes.length - 1];
+        try (OutputStream os = snapshotResource.out()) {
+            os.write(bytes);
+        }
+
+        CatalogSnapshot second = CatalogSnapshot.load(snapshotResource, true);
+        assertTrue(second.entries.isEmpty());
+        assertArrayEquals(ws.getContents(), second.getContents(ws));
+        assertEquals(1, second.getMisses());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Resource ws = write("workspaces/ws/workspace.xml", "<workspace/>");
+        assertArrayEquals(ws.getContents(), CatalogSnapshot.DISABLED.getContents(ws));
+        assertTrue(CatalogSnapshot.DISABLED.recorded.isEmpty());
+    }
+}
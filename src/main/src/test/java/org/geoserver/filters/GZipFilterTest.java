@@ -14,6 +14,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 import org.springframework.mock.web.DelegatingServletOutputStream;
@@ -162,4 +163,38 @@ public class GZipFilterTest {
         filter.doFilter(request, response, chain);
         assertFalse(response.containsHeader("Content-Length"));
     }
+
+    @Test
+    public void testAlreadyEncodedNotCompressed() throws Exception {
+        MockHttpServletRequest request =
+                new MockHttpServletRequest("GET", "http://www.geoserver.org");
+        request.addHeader("accept-encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setContentType("text/plain");
+
+        // run the filter
+        GZIPFilter filter = new GZIPFilter();
+        MockServletContext context = new MockServletContext();
+        MockFilterConfig config = new MockFilterConfig(context);
+        config.addInitParameter("compressed-types", "text/plain");
+        filter.init(config);
+
+        MockFilterChain chain =
+                new MockFilterChain() {
+                    @Override
+                    @SuppressWarnings("PMD.CloseResource")
+                    public void doFilter(ServletRequest request, ServletResponse response)
+                            throws IOException, ServletException {
+                        // the response writes contents that are gzipped already
+                        ((HttpServletResponse) response).addHeader("Content-Encoding", "gzip");
+                        AlternativesResponseStream alternatives =
+                                (AlternativesResponseStream) response.getOutputStream();
+                        assertFalse(alternatives.getStream() instanceof GZIPResponseStream);
+                        alternatives.write(1);
+                    }
+                };
+        filter.doFilter(request, response, chain);
+        assertEquals(1, response.getContentAsByteArray().length);
+        assertEquals(1, response.getHeaders("Content-Encoding").size());
+    }
 }
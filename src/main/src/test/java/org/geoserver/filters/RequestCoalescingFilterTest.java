@@ -0,0 +1,274 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.ServiceException;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.DelegatingServletOutputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class RequestCoalescingFilterTest {
+
+    static final byte[] BODY = {1, 2, 3, 4, 5};
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SecurityContextHolder.clearContext();
+    }
+
+    RequestCoalescingFilter filter(int maxSize) {
+        return new RequestCoalescingFilter(
+                true, 10000, maxSize, 100, new HashSet<>(Arrays.asList("getmap")));
+    }
+
+    MockHttpServletRequest request(String query) {
+        MockHttpServletRequest request =
+                new MockHttpServletRequest("GET", "/geoserver/wms?" + query);
+        request.setRequestURI("/geoserver/wms");
+        request.setQueryString(query);
+        for (String kvp : query.split("&")) {
+            String[] kv = kvp.split("=");
+            request.addParameter(kv[0], kv[1]);
+        }
+        return request;
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        FilterChain chain =
+                (req, res) -> {
+                    executions.incrementAndGet();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    HttpServletResponse response = (HttpServletResponse) res;
+                    response.setContentType("image/png");
+                    response.setHeader("Content-Disposition", "inline; filename=test.png");
+                    response.getOutputStream().write(BODY);
+                };
+
+        MockHttpServletResponse r1 = new MockHttpServletResponse();
+        MockHttpServletResponse r2 = new MockHttpServletResponse();
+        Future<?> f1 =
+                executor.submit(
+                        () -> {
+                            filter.doFilter(request("request=GetMap&layers=a"), r1, chain);
+                            return null;
+                        });
+        while (executions.get() < 1) {
+            Thread.sleep(10);
+        }
+        // same request, different parameter case and order
+        Thread waiter =
+                new Thread(
+                        () -> {
+                            try {
+                                filter.doFilter(request("LAYERS=a&REQUEST=GetMap"), r2, chain);
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        waiter.start();
+        // wait for the second request to be waiting on the first one
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        f1.get();
+        waiter.join(10000);
+
+        assertEquals(1, executions.get());
+        assertEquals(1, filter.getExecutedCount());
+        assertEquals(1, filter.getCoalescedCount());
+        assertArrayEquals(BODY, r1.getContentAsByteArray());
+        assertArrayEquals(BODY, r2.getContentAsByteArray());
+        assertEquals("image/png", r2.getContentType());
+        assertEquals("inline; filename=test.png", r2.getHeader("Content-Disposition"));
+        assertEquals(BODY.length, r2.getContentLength());
+    }
+
+    @Test
+    public void testFallbackOnError() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        RequestCoalescingFilter.Flight flight = new RequestCoalescingFilter.Flight();
+        String key = filter.getKey(request("request=GetMap&layers=a"));
+        filter.runFlight(
+                key,
+                flight,
+                request("request=GetMap&layers=a"),
+                new MockHttpServletResponse(),
+                (req, res) -> ((HttpServletResponse) res).sendError(500, "Failed"));
+        assertNull(flight.response);
+    }
+
+    @Test
+    public void testFallbackOnServiceException() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        RequestCoalescingFilter.Flight flight = new RequestCoalescingFilter.Flight();
+        String key = filter.getKey(request("request=GetMap&layers=a"));
+        filter.runFlight(
+                key,
+                flight,
+                request("request=GetMap&layers=a"),
+                new MockHttpServletResponse(),
+                (req, res) -> {
+                    // exception reports are usually sent with a 200 status code
+                    res.setContentType("application/vnd.ogc.se_xml");
+                    res.getOutputStream().write(BODY);
+                    Request request = new Request();
+                    request.setError(new ServiceException("Failed"));
+                    filter.finished(request);
+                });
+        assertNull(flight.response);
+    }
+
+    @Test
+    public void testFallbackOnClientDisconnect() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        RequestCoalescingFilter.Flight flight = new RequestCoalescingFilter.Flight();
+        String key = filter.getKey(request("request=GetMap&layers=a"));
+        MockHttpServletResponse response =
+                new MockHttpServletResponse() {
+                    @Override
+                    public ServletOutputStream getOutputStream() {
+                        return new DelegatingServletOutputStream(
+                                new OutputStream() {
+                                    @Override
+                                    public void write(int b) throws IOException {
+                                        throw new IOException("Broken pipe");
+                                    }
+                                });
+                    }
+                };
+        filter.runFlight(
+                key,
+                flight,
+                request("request=GetMap&layers=a"),
+                response,
+                (req, res) -> {
+                    try {
+                        res.getOutputStream().write(BODY);
+                    } catch (IOException e) {
+                        // the dispatcher swallows client disconnects and returns normally
+                    }
+                });
+        assertNull(flight.response);
+    }
+
+    @Test
+    public void testFallbackOnLargeResponse() throws Exception {
+        RequestCoalescingFilter filter = filter(3);
+        RequestCoalescingFilter.Flight flight = new RequestCoalescingFilter.Flight();
+        String key = filter.getKey(request("request=GetMap&layers=a"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.runFlight(
+                key,
+                flight,
+                request("request=GetMap&layers=a"),
+                response,
+                (req, res) -> res.getOutputStream().write(BODY));
+        assertNull(flight.response);
+        // the client still got the full response
+        assertArrayEquals(BODY, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCapture() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        RequestCoalescingFilter.Flight flight = new RequestCoalescingFilter.Flight();
+        String key = filter.getKey(request("request=GetMap&layers=a"));
+        filter.runFlight(
+                key,
+                flight,
+                request("request=GetMap&layers=a"),
+                new MockHttpServletResponse(),
+                (req, res) -> {
+                    res.setContentType("text/plain");
+                    res.getWriter().write("Hello");
+                });
+        assertNotNull(flight.response);
+        assertEquals("Hello", new String(flight.response.body, "UTF-8"));
+        assertEquals("text/plain", flight.response.contentType);
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        // not a coalesced operation
+        assertNull(filter.getKey(request("request=GetCapabilities")));
+        // not a GET
+        MockHttpServletRequest post = request("request=GetMap&layers=a");
+        post.setMethod("POST");
+        assertNull(filter.getKey(post));
+
+        String anonymous = filter.getKey(request("request=GetMap&layers=a"));
+        assertNotEquals(anonymous, filter.getKey(request("request=GetMap&layers=b")));
+
+        // the user is part of the key
+        SecurityContextHolder.getContext()
+                .setAuthentication(new TestingAuthenticationToken("admin", "pwd", "ADMIN"));
+        String admin = filter.getKey(request("request=GetMap&layers=a"));
+        assertNotEquals(anonymous, admin);
+        SecurityContextHolder.getContext()
+                .setAuthentication(new TestingAuthenticationToken("admin", "pwd", "USER"));
+        assertNotEquals(admin, filter.getKey(request("request=GetMap&layers=a")));
+    }
+
+    @Test
+    public void testKeyEncoding() throws Exception {
+        RequestCoalescingFilter filter = filter(1024);
+        // a value containing separators must not be confused with two parameters
+        MockHttpServletRequest single = request("request=GetMap");
+        single.addParameter("layers", "a&styles=b");
+        MockHttpServletRequest split = request("request=GetMap&layers=a&styles=b");
+        assertNotEquals(filter.getKey(single), filter.getKey(split));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        RequestCoalescingFilter filter =
+                new RequestCoalescingFilter(
+                        false, 10000, 1024, 100, new HashSet<>(Arrays.asList("getmap")));
+        AtomicInteger executions = new AtomicInteger();
+        filter.doFilter(
+                request("request=GetMap&layers=a"),
+                new MockHttpServletResponse(),
+                (req, res) -> executions.incrementAndGet());
+        assertEquals(1, executions.get());
+        assertEquals(0, filter.getExecutedCount());
+    }
+}
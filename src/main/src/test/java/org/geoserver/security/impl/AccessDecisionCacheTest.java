@@ -0,0 +1,163 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.security.AccessMode;
+import org.geoserver.security.impl.AccessDecisionCache.Kind;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+public class AccessDecisionCacheTest {
+
+    Authentication user(String name, String... roles) {
+        SimpleGrantedAuthority[] authorities = new SimpleGrantedAuthority[roles.length];
+        for (int i = 0; i < roles.length; i++) {
+            authorities[i] = new SimpleGrantedAuthority(roles[i]);
+        }
+        return new UsernamePasswordAuthenticationToken(
+                name, "password", Arrays.asList(authorities));
+    }
+
+    @Test
+    public void testCachedByRoles() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+
+        Authentication joe = user("joe", "ROLE_A", "ROLE_B");
+        Authentication jane = user("jane", "ROLE_B", "ROLE_A");
+        Authentication bob = user("bob", "ROLE_C");
+
+        assertTrue(canAccess(cache, joe, evaluations, true));
+        assertEquals(1, evaluations.get());
+        // same roles, different user, no evaluation
+        assertTrue(canAccess(cache, jane, evaluations, true));
+        assertEquals(1, evaluations.get());
+        // different roles, evaluated
+        assertFalse(canAccess(cache, bob, evaluations, false));
+        assertEquals(2, evaluations.get());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testKeyedByContext() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 100);
+        Authentication joe = user("joe", "ROLE_A");
+
+        assertTrue(cache.canAccess(joe, Kind.RESOURCE, AccessMode.READ, 0, () -> true, "ws", "l"));
+        // different mode, flags, kind or path are different decisions
+        assertFalse(
+                cache.canAccess(joe, Kind.RESOURCE, AccessMode.WRITE, 0, () -> false, "ws", "l"));
+        assertFalse(
+                cache.canAccess(joe, Kind.RESOURCE, AccessMode.READ, 1, () -> false, "ws", "l"));
+        assertFalse(
+                cache.canAccess(joe, Kind.LAYER_GROUP, AccessMode.READ, 0, () -> false, "ws", "l"));
+        assertFalse(
+                cache.canAccess(joe, Kind.RESOURCE, AccessMode.READ, 0, () -> false, "ws", "l2"));
+        assertEquals(5, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testInvalidate() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+        Authentication joe = user("joe", "ROLE_A");
+
+        canAccess(cache, joe, evaluations, true);
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        canAccess(cache, joe, evaluations, true);
+        assertEquals(2, evaluations.get());
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testInvalidateWhileEvaluating() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+        Authentication joe = user("joe", "ROLE_A");
+
+        // the rules change while the decision is being computed with the old ones
+        cache.canAccess(
+                joe,
+                Kind.RESOURCE,
+                AccessMode.READ,
+                0,
+                () -> {
+                    cache.invalidate();
+                    return true;
+                },
+                "ws",
+                "layer");
+        assertFalse(canAccess(cache, joe, evaluations, false));
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    public void testStaleDecisionIgnored() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 100);
+        AtomicInteger evaluations = new AtomicInteger();
+        Authentication joe = user("joe", "ROLE_A");
+
+        // a decision computed before an invalidation, stored only after it completed
+        long generation = cache.getInvalidations();
+        cache.invalidate();
+        cache.decisions.put(
+                new AccessDecisionCache.DecisionKey(
+                        AccessDecisionCache.getRoles(joe),
+                        Kind.RESOURCE,
+                        AccessMode.READ,
+                        0,
+                        new String[] {"ws", "layer"}),
+                new AccessDecisionCache.Decision(true, generation));
+
+        assertFalse(canAccess(cache, joe, evaluations, false));
+        assertEquals(1, evaluations.get());
+        // the fresh decision replaced the stale one
+        assertFalse(canAccess(cache, joe, evaluations, true));
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    public void testDisabled() {
+        AccessDecisionCache cache = new AccessDecisionCache(null, 0);
+        AtomicInteger evaluations = new AtomicInteger();
+        Authentication joe = user("joe", "ROLE_A");
+
+        canAccess(cache, joe, evaluations, true);
+        canAccess(cache, joe, evaluations, true);
+        assertEquals(2, evaluations.get());
+        assertEquals(0, cache.size());
+    }
+
+    private boolean canAccess(
+            AccessDecisionCache cache,
+            Authentication user,
+            AtomicInteger evaluations,
+            boolean result) {
+        return cache.canAccess(
+                user,
+                Kind.RESOURCE,
+                AccessMode.READ,
+                0,
+                () -> {
+                    evaluations.incrementAndGet();
+                    return result;
+                },
+                "ws",
+                "layer");
+    }
+}
@@ -130,6 +130,19 @@ public class Dispatcher extends AbstractController {
 
     static final Charset UTF8 = Charset.forName("UTF-8");
 
+    /**
+     * Shared StAX factory, creating one is expensive and, once configured, it can be used
+     * concurrently to create parsers
+     */
+    static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        // disable DTDs
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        // disable external entities
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     /** The amount of bytes to be read to determine the proper xml reader in POST request */
     int XML_LOOKAHEAD = 8192;
 
@@ -1648,13 +1661,7 @@ public class Dispatcher extends AbstractController {
             input.read(buff);
             input.reset();
         }
-        // create stream parser
-        XMLInputFactory factory = XMLInputFactory.newFactory();
-        // disable DTDs
-        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
-        // disable external entities
-        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-        XMLStreamReader parser = factory.createXMLStreamReader(new CharArrayReader(buff));
+        XMLStreamReader parser = XML_INPUT_FACTORY.createXMLStreamReader(new CharArrayReader(buff));
         return parser;
     }
 
@@ -16,8 +16,11 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.ows.KvpParser;
@@ -40,6 +43,12 @@ public class KvpUtils {
     private static Logger LOGGER =
             org.geotools.util.logging.Logging.getLogger("org.vfny.geoserver.requests.readers");
 
+    /** Lookup table of the parsers for each operation, see {@link #parse(Map)} */
+    private static volatile ParserTable parserTable;
+
+    /** Max number of operations, and keys per operation, whose parser lookups are cached */
+    static final int MAX_CACHED_LOOKUPS = 1000;
+
     /**
      * Defines how to tokenize a string by using some sort of delimiter.
      *
@@ -407,7 +416,7 @@ public class KvpUtils {
         String version = KvpUtils.getSingleValue(kvp, "version");
         String request = KvpUtils.getSingleValue(kvp, "request");
 
-        purgeParsers(parsers, service, version, request);
+        OperationParsers lookup = getOperationParsers(parsers, service, version, request);
 
         // parser the kvp's
         ArrayList<Throwable> errors = new ArrayList<>();
@@ -415,7 +424,7 @@ public class KvpUtils {
             String key = entry.getKey();
 
             // find the parser for this key value pair
-            KvpParser parser = findParser(key, service, request, version, parsers);
+            KvpParser parser = lookup.find(key);
 
             // parse the value
             Object parsed = null;
@@ -450,6 +459,80 @@ public class KvpUtils {
         return errors;
     }
 
+    /**
+     * Returns the parsers matching the specified operation, caching the parser found for each key.
+     * The cached lookups are dropped as soon as the registered parsers change.
+     */
+    private static OperationParsers getOperationParsers(
+            List<KvpParser> parsers, String service, String version, String request) {
+        ParserTable table = parserTable;
+        if (table == null || !table.parsers.equals(parsers)) {
+            table = new ParserTable(parsers);
+            parserTable = table;
+        }
+        String operation =
+                (service == null ? "" : service.toUpperCase(Locale.ENGLISH))
+                        + "/"
+                        + (version == null ? "" : version)
+                        + "/"
+                        + (request == null ? "" : request.toUpperCase(Locale.ENGLISH));
+        OperationParsers result = table.operations.get(operation);
+        if (result == null) {
+            result = new OperationParsers(table.parsers, service, version, request);
+            // service, version and request come from the client, do not let the table grow forever
+            if (table.operations.size() < MAX_CACHED_LOOKUPS) {
+                table.operations.putIfAbsent(operation, result);
+            }
+        }
+        return result;
+    }
+
+    /** The registered parsers, along with the lookup tables built from them for each operation */
+    private static class ParserTable {
+        final List<KvpParser> parsers;
+
+        final Map<String, OperationParsers> operations = new ConcurrentHashMap<>();
+
+        ParserTable(List<KvpParser> parsers) {
+            this.parsers = new ArrayList<>(parsers);
+        }
+    }
+
+    /** The parsers matching an operation, and the parser found for each key */
+    private static class OperationParsers {
+        final String service;
+
+        final String version;
+
+        final String request;
+
+        final List<KvpParser> parsers;
+
+        final Map<String, Optional<KvpParser>> lookup = new ConcurrentHashMap<>();
+
+        OperationParsers(
+                List<KvpParser> parsers, String service, String version, String request) {
+            this.service = service;
+            this.version = version;
+            this.request = request;
+            this.parsers = new ArrayList<>(parsers);
+            purgeParsers(this.parsers, service, version, request);
+        }
+
+        KvpParser find(String key) {
+            String lookupKey = key.toUpperCase(Locale.ENGLISH);
+            Optional<KvpParser> parser = lookup.get(lookupKey);
+            if (parser == null) {
+                parser = Optional.ofNullable(findParser(key, service, request, version, parsers));
+                // keys come from the client too
+                if (lookup.size() < MAX_CACHED_LOOKUPS) {
+                    lookup.putIfAbsent(lookupKey, parser);
+                }
+            }
+            return parser.orElse(null);
+        }
+    }
+
     /**
      * Strip out parsers which do not match current service/request/version
      *
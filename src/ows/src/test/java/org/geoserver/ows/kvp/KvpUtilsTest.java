@@ -10,10 +10,14 @@ import static org.junit.Assert.assertArrayEquals;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.geoserver.ows.Message;
+import org.geoserver.ows.MessageKvpParser;
 import org.geoserver.ows.util.KvpMap;
 import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.platform.GeoServerExtensions;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
 
 public class KvpUtilsTest {
     @Test
@@ -202,4 +206,34 @@ public class KvpUtilsTest {
         assertArrayEquals(new String[] {"1.0.0", "2.0.0"}, (String[]) kvp.get("version"));
         Assert.assertEquals("NAME='geoserver'", kvp.get("CQL_FILTER"));
     }
+
+    @Test
+    public void testParseCachedLookup() throws Exception {
+        try (StaticApplicationContext context = new StaticApplicationContext()) {
+            context.registerSingleton("extensions", GeoServerExtensions.class);
+            context.registerSingleton("messageKvpParser", MessageKvpParser.class);
+            context.refresh();
+
+            // the second run uses the cached lookup, key case should not matter
+            for (String key : new String[] {"message", "MESSAGE"}) {
+                Map<String, Object> kvp = new KvpMap<>();
+                kvp.put("service", "hello");
+                kvp.put(key, "Hello world!");
+                Assert.assertTrue(KvpUtils.parse(kvp).isEmpty());
+                Assert.assertEquals(new Message("Hello world!"), kvp.get(key));
+            }
+        }
+
+        // the parser is gone, the cached lookup must not be used anymore
+        try (StaticApplicationContext context = new StaticApplicationContext()) {
+            context.registerSingleton("extensions", GeoServerExtensions.class);
+            context.refresh();
+
+            Map<String, Object> kvp = new KvpMap<>();
+            kvp.put("service", "hello");
+            kvp.put("message", "Hello world!");
+            Assert.assertTrue(KvpUtils.parse(kvp).isEmpty());
+            Assert.assertEquals("Hello world!", kvp.get("message"));
+        }
+    }
 }
@@ -10,10 +10,19 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +30,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -38,9 +48,11 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 /**
  * Active object (using a ScheduledExecutorService) used to watch file system for changes.
  *
- * <p>This implementation currently polls the file system and should be updated with Java 7
- * WatchService when available. The internal design is similar to WatchService, WatchKey and
- * WatchEvent in order to facilitate this transition.
+ * <p>Where the file system supports native change events, a {@link java.nio.file.WatchService} is
+ * used to find out which watches need to be checked, and only those are examined. Watches that
+ * cannot be registered for events (e.g., the watched directory does not exist yet) and file
+ * systems without native events support fall back on polling. Native events can be disabled using
+ * the {@link #NATIVE_EVENTS_KEY} system property.
  *
  * <p>This implementation makes a few concessions to being associated with ResourceStore, reporting
  * changes with resource paths rather than files.
@@ -123,6 +135,9 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         private Set<File> children = null;
         private long childrenLastModifiedMax = 0L;
 
+        /** Directory registered for native events, or null if the watch is polled */
+        volatile Path directory;
+
         public Watch(File file, String path) {
             Objects.requireNonNull(file);
             Objects.requireNonNull(path);
@@ -305,6 +320,12 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
             return delta;
         }
 
+        /** The directory whose events are relevant to this watch, or null if it does not exist */
+        Path getEventDirectory() {
+            File dir = file.isDirectory() ? file : file.getParentFile();
+            return dir != null && dir.isDirectory() ? dir.toPath() : null;
+        }
+
         public boolean isMatch(File file, String path) {
             return this.file.equals(file) && this.path.equals(path);
         }
@@ -319,93 +340,304 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     CopyOnWriteArrayList<Watch> watchers = new CopyOnWriteArrayList<>();
 
     /**
-     * Note we have a single runnable here to review all outstanding Watch instances. The focus is
-     * on using minimal system resources while we wait for Java 7 WatchService (to be more
-     * efficient).
+     * System property that can be set to false to disable native file system events, and poll the
+     * file system instead
+     */
+    public static final String NATIVE_EVENTS_KEY = "GEOSERVER_FILESYSTEM_EVENTS";
+
+    /** Quiet period used to coalesce bursts of file system events */
+    static final long COALESCE_MILLIS = 100;
+
+    /** Maximum delay of notifications caused by event coalescing */
+    static final long MAX_COALESCE_MILLIS = 1000;
+
+    /**
+     * Native event loop, lazily started, null if native events are not available. Volatile as the
+     * sync task reads it without locking, while destroy() clears it.
+     */
+    private volatile EventLoop events;
+
+    private boolean eventsInitialized;
+
+    /**
+     * Note we have a single runnable here to review all outstanding Watch instances that cannot
+     * rely on native file system events. The focus is on using minimal system resources.
      */
     private Runnable sync =
             new Runnable() {
                 @Override
                 public void run() {
                     long now = System.currentTimeMillis();
+                    // read once, destroy() might clear it concurrently
+                    EventLoop events = FileSystemWatcher.this.events;
                     for (Watch watch : watchers) {
                         if (watch.getListeners().isEmpty()) {
                             watchers.remove(watch);
+                            if (events != null) {
+                                events.unregister(watch);
+                            }
                             continue;
                         }
-                        final boolean directory = watch.file.isDirectory();
-                        Level level = Level.FINER;
-                        long start = System.nanoTime();
-                        if (directory) LOGGER.log(level, "polling contents of " + watch.file);
-                        Delta delta;
-                        try {
-                            delta = watch.changed(now);
-                        } catch (RuntimeException e) {
-                            LOGGER.log(Level.WARNING, "Error polling contents of " + watch.file, e);
+                        if (watch.directory != null) {
+                            continue; // notified by the event loop
+                        }
+                        // directory might have been created in the meantime, switch to events
+                        // but check once more, changes might have occurred before registration
+                        if (events != null) {
+                            events.register(watch);
+                        }
+                        if (!check(watch, now)) {
                             return;
                         }
-                        if (directory && LOGGER.isLoggable(level)) {
-                            long ellapsedMicros =
-                                    MICROSECONDS.convert(System.nanoTime() - start, NANOSECONDS);
-                            long ellapsedMillis =
-                                    MILLISECONDS.convert(ellapsedMicros, MICROSECONDS);
-                            String unit = ellapsedMillis == 0L ? "us" : "ms";
-                            long time = ellapsedMillis == 0L ? ellapsedMicros : ellapsedMillis;
-                            LOGGER.log(
-                                    level,
-                                    String.format(
-                                            "delta computed in %,d%s for %s",
-                                            time, unit, watch.file));
+                    }
+                }
+            };
+
+    /**
+     * Checks the watch for changes, notifying its listeners if any is found
+     *
+     * @return false if the check failed
+     */
+    private boolean check(Watch watch, long now) {
+        final boolean directory = watch.file.isDirectory();
+        Level level = Level.FINER;
+        long start = System.nanoTime();
+        if (directory) LOGGER.log(level, "polling contents of " + watch.file);
+        Delta delta;
+        try {
+            // the watch might be switching between polling and events
+            synchronized (watch) {
+                delta = watch.changed(now);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error polling contents of " + watch.file, e);
+            return false;
+        }
+        if (directory && LOGGER.isLoggable(level)) {
+            long ellapsedMicros = MICROSECONDS.convert(System.nanoTime() - start, NANOSECONDS);
+            long ellapsedMillis = MILLISECONDS.convert(ellapsedMicros, MICROSECONDS);
+            String unit = ellapsedMillis == 0L ? "us" : "ms";
+            long time = ellapsedMillis == 0L ? ellapsedMicros : ellapsedMillis;
+            LOGGER.log(
+                    level, String.format("delta computed in %,d%s for %s", time, unit, watch.file));
+        }
+        if (delta != null) {
+            notify(watch, delta);
+        }
+        return true;
+    }
+
+    private void notify(Watch watch, Delta delta) {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(
+                    String.format(
+                            "Notifying %s change on %s. Created: %,d, removed: %,d, modified: %,d",
+                            delta.kind,
+                            delta.context,
+                            delta.created.size(),
+                            delta.removed.size(),
+                            delta.modified.size()));
+        }
+        // do not call listeners on the watch thread, they may take a
+        // considerable amount of time to process the events
+        CompletableFuture.runAsync(
+                () -> {
+                    /** Created based on created/removed/modified files */
+                    List<ResourceNotification.Event> events =
+                            ResourceNotification.delta(
+                                    watch.file, delta.created, delta.removed, delta.modified);
+
+                    ResourceNotification notify =
+                            new ResourceNotification(
+                                    watch.getPath(), delta.kind, watch.last, events);
+
+                    for (ResourceListener listener : watch.getListeners()) {
+                        try {
+                            listener.changed(notify);
+                        } catch (Throwable t) {
+                            Logger logger =
+                                    Logger.getLogger(listener.getClass().getPackage().getName());
+                            logger.log(
+                                    Level.FINE,
+                                    "Unable to notify " + watch + ":" + t.getMessage(),
+                                    t);
                         }
-                        if (delta != null) {
-                            notify(watch, delta);
+                    }
+                });
+    }
+
+    /**
+     * Receives native file system events from a {@link WatchService}, and checks only the watches
+     * affected by them. A single registration is made for each directory, shared among all the
+     * watches on the directory and its files.
+     *
+     * <p>Events are coalesced for {@link #COALESCE_MILLIS} after the last one is received (up to
+     * {@link #MAX_COALESCE_MILLIS}), so that a burst of changes, such as a directory being copied,
+     * results in a single check of each watch.
+     */
+    private class EventLoop implements Runnable {
+
+        final WatchService service;
+
+        final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+        final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+        EventLoop(WatchService service) {
+            this.service = service;
+        }
+
+        /** Registers the watch for native events, returns false if it has to be polled instead */
+        synchronized boolean register(Watch watch) {
+            Path directory = watch.getEventDirectory();
+            if (directory == null) {
+                return false;
+            }
+            try {
+                WatchKey key = keys.get(directory);
+                if (key == null || !key.isValid()) {
+                    key =
+                            directory.register(
+                                    service,
+                                    StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_DELETE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY);
+                    keys.put(directory, key);
+                    directories.put(key, directory);
+                }
+                Path previous = watch.directory;
+                watch.directory = directory;
+                if (previous != null && !previous.equals(directory)) {
+                    unregister(previous);
+                }
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.log(Level.FINE, "Cannot receive events for " + directory + ", polling", e);
+                return false;
+            }
+        }
+
+        /** Cancels the registration of the watch directory, if no other watch is using it */
+        void unregister(Watch watch) {
+            Path directory = watch.directory;
+            if (directory != null) {
+                unregister(directory);
+            }
+        }
+
+        private synchronized void unregister(Path directory) {
+            for (Watch other : watchers) {
+                if (directory.equals(other.directory)) {
+                    return;
+                }
+            }
+            WatchKey key = keys.remove(directory);
+            if (key != null) {
+                directories.remove(key);
+                key.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.take();
+                    Map<Path, Set<String>> changes = new HashMap<>();
+                    boolean overflow = false;
+                    long deadline = System.currentTimeMillis() + MAX_COALESCE_MILLIS;
+                    while (key != null) {
+                        overflow |= collect(key, changes);
+                        if (System.currentTimeMillis() > deadline) {
+                            break;
                         }
+                        key = service.poll(COALESCE_MILLIS, MILLISECONDS);
+                    }
+                    try {
+                        dispatch(changes, overflow);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Error dispatching file system events", e);
                     }
                 }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                LOGGER.fine("File system event loop stopped");
+            }
+        }
 
-                private void notify(Watch watch, Delta delta) {
-                    if (LOGGER.isLoggable(Level.INFO)) {
-                        LOGGER.info(
-                                String.format(
-                                        "Notifying %s change on %s. Created: %,d, removed: %,d, modified: %,d",
-                                        delta.kind,
-                                        delta.context,
-                                        delta.created.size(),
-                                        delta.removed.size(),
-                                        delta.modified.size()));
+        /** Collects the names of the changed entries, returns true if events have been lost */
+        private boolean collect(WatchKey key, Map<Path, Set<String>> changes) {
+            Path directory = directories.get(key);
+            boolean overflow = false;
+            Set<String> names =
+                    directory == null
+                            ? new HashSet<>()
+                            : changes.computeIfAbsent(directory, d -> new HashSet<>());
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else if (event.context() instanceof Path) {
+                    names.add(event.context().toString());
+                }
+            }
+            if (!key.reset() && directory != null) {
+                // directory is gone, fall back on polling until it gets created again
+                synchronized (this) {
+                    keys.remove(directory, key);
+                    directories.remove(key);
+                    for (Watch watch : watchers) {
+                        if (directory.equals(watch.directory)) {
+                            watch.directory = null;
+                        }
                     }
-                    // do not call listeners on the watch thread, they may take a
-                    // considerable amount of time to process the events
-                    CompletableFuture.runAsync(
-                            () -> {
-                                /** Created based on created/removed/modified files */
-                                List<ResourceNotification.Event> events =
-                                        ResourceNotification.delta(
-                                                watch.file,
-                                                delta.created,
-                                                delta.removed,
-                                                delta.modified);
-
-                                ResourceNotification notify =
-                                        new ResourceNotification(
-                                                watch.getPath(), delta.kind, watch.last, events);
-
-                                for (ResourceListener listener : watch.getListeners()) {
-                                    try {
-                                        listener.changed(notify);
-                                    } catch (Throwable t) {
-                                        Logger logger =
-                                                Logger.getLogger(
-                                                        listener.getClass().getPackage().getName());
-                                        logger.log(
-                                                Level.FINE,
-                                                "Unable to notify " + watch + ":" + t.getMessage(),
-                                                t);
-                                    }
-                                }
-                            });
                 }
-            };
+            }
+            return overflow;
+        }
+
+        private void dispatch(Map<Path, Set<String>> changes, boolean overflow) {
+            long now = System.currentTimeMillis();
+            for (Watch watch : watchers) {
+                if (watch.getListeners().isEmpty()) {
+                    continue;
+                }
+                Path path = watch.file.toPath();
+                Path parent = path.getParent();
+                Set<String> siblings = parent == null ? null : changes.get(parent);
+                if (overflow
+                        || changes.containsKey(path)
+                        || (siblings != null && siblings.contains(path.getFileName().toString()))) {
+                    check(watch, now);
+                    // a watched directory might have been created, or replaced by a file
+                    Path directory = watch.getEventDirectory();
+                    if (directory != null
+                            && !directory.equals(watch.directory)
+                            && register(watch)) {
+                        // changes might have happened before the registration
+                        check(watch, now);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Starts the native event loop, unless disabled or not supported by the file system */
+    private static WatchService newWatchService() {
+        if (!Boolean.valueOf(System.getProperty(NATIVE_EVENTS_KEY, "true"))) {
+            return null;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            if (service.getClass().getSimpleName().startsWith("Polling")) {
+                // the JDK would poll the directories anyways, and we do it more efficiently
+                service.close();
+                return null;
+            }
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(Level.INFO, "File system events not available, polling for changes", e);
+            return null;
+        }
+    }
 
     private ScheduledFuture<?> monitor;
 
@@ -456,6 +688,10 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         if (watch == null) {
             watch = new Watch(file, path);
             watchers.add(watch);
+            EventLoop events = getEventLoop();
+            if (events != null) {
+                events.register(watch);
+            }
             if (monitor == null) {
                 monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
             }
@@ -463,6 +699,24 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         watch.addListener(listener);
     }
 
+    /** Returns true if changes are notified by native file system events, rather than polling */
+    synchronized boolean isNativeEvents() {
+        return getEventLoop() != null;
+    }
+
+    /** Lazily starts the native event loop, returns null if not available */
+    private EventLoop getEventLoop() {
+        if (!eventsInitialized) {
+            eventsInitialized = true;
+            WatchService service = newWatchService();
+            if (service != null) {
+                events = new EventLoop(service);
+                tFactory.newThread(events).start();
+            }
+        }
+        return events;
+    }
+
     @Override
     public synchronized boolean removeListener(String path, ResourceListener listener) {
         Objects.requireNonNull(path, "Path for notification is required");
@@ -475,6 +729,9 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
             watch.removeListener(listener);
             if (watch.getListeners().isEmpty()) {
                 removed = watchers.remove(watch);
+                if (removed && events != null) {
+                    events.unregister(watch);
+                }
             }
         }
         if (removed && watchers.isEmpty()) {
@@ -500,6 +757,12 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     public void destroy() throws Exception {
         pool.shutdown();
         monitor = null;
+        synchronized (this) {
+            if (events != null) {
+                events.service.close();
+                events = null;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,391 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.geotools.util.logging.Logging;
+
+/**
+ * An in memory lock provider based on striped locks, aware of the resource path hierarchy.
+ *
+ * <p>Locking a path takes an exclusive lock on the path itself, and shared locks on all its
+ * parents, up to the root. This way writes to different workspaces or stores proceed in parallel,
+ * while locking a directory, for example while renaming or removing a workspace, waits for all the
+ * writes inside it to complete, and blocks new ones.
+ *
+ * <p>The stripes prefer writers: once a thread waits for an exclusive lock, new shared locks on the
+ * same stripe queue behind it, so that a steady flow of writes inside a directory cannot starve a
+ * lock on the directory itself. Threads already holding the stripe can still lock it again.
+ *
+ * <p>The stripes are always locked in the same order, however nested locks taken by the same
+ * thread, and stripe collisions, can still lead to deadlocks. These are detected while waiting, and
+ * reported with an {@link IllegalStateException}, after releasing the stripes already locked as
+ * part of the same request. Waits are also bounded by a timeout, see {@link #setTimeout(long)},
+ * after which the lock acquisition fails the same way.
+ *
+ * <p>Basic statistics about lock contention are available, see {@link #getAcquisitions()}, {@link
+ * #getContendedAcquisitions()}, {@link #getTotalWaitTime()}, {@link #getMaxWaitTime()} and {@link
+ * #getDeadlocks()}.
+ */
+public class HierarchicalLockProvider implements LockProvider {
+
+    static final Logger LOGGER = Logging.getLogger(HierarchicalLockProvider.class);
+
+    /** How often a waiting thread checks again for deadlocks, in milliseconds */
+    static final long DEADLOCK_CHECK_MS = 100;
+
+    /** Default maximum wait for a lock, in milliseconds, same as {@link FileLockProvider} */
+    static final long DEFAULT_TIMEOUT_MS = 120 * 1000;
+
+    final Stripe[] stripes;
+
+    /** The stripe each blocked thread is waiting for */
+    final Map<Thread, Waiter> waiting = new ConcurrentHashMap<>();
+
+    final AtomicLong acquisitions = new AtomicLong();
+
+    final AtomicLong contendedAcquisitions = new AtomicLong();
+
+    final AtomicLong totalWaitTime = new AtomicLong();
+
+    final AtomicLong maxWaitTime = new AtomicLong();
+
+    final AtomicLong deadlocks = new AtomicLong();
+
+    /** Maximum wait for a lock, in milliseconds */
+    volatile long timeout = DEFAULT_TIMEOUT_MS;
+
+    public HierarchicalLockProvider() {
+        this(1024);
+    }
+
+    public HierarchicalLockProvider(int concurrency) {
+        stripes = new Stripe[concurrency];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    @Override
+    public Resource.Lock acquire(String path) {
+        // stripe index to exclusive flag, sorted so that stripes are always locked in order
+        TreeMap<Integer, Boolean> required = new TreeMap<>();
+        String target = normalize(path);
+        for (String parent : getParents(target)) {
+            required.putIfAbsent(getIndex(parent), false);
+        }
+        required.put(getIndex(target), true);
+
+        Thread thread = Thread.currentThread();
+        List<Stripe> locked = new ArrayList<>(required.size());
+        List<Boolean> modes = new ArrayList<>(required.size());
+        try {
+            for (Map.Entry<Integer, Boolean> entry : required.entrySet()) {
+                Stripe stripe = stripes[entry.getKey()];
+                lock(stripe, thread, entry.getValue(), target);
+                locked.add(stripe);
+                modes.add(entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            release(thread, locked, modes);
+            throw e;
+        }
+        acquisitions.incrementAndGet();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Acquired lock on " + target + " using stripes " + required.keySet());
+        }
+
+        return new Resource.Lock() {
+
+            boolean released;
+
+            @Override
+            public void release() {
+                if (!released) {
+                    released = true;
+                    HierarchicalLockProvider.this.release(thread, locked, modes);
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Released lock on " + target);
+                    }
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "HierarchicalLock " + target;
+            }
+        };
+    }
+
+    static String normalize(String path) {
+        String result = path == null ? "" : path.replace('\\', '/');
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /** Returns the parents of a normalized path, starting from the root */
+    static List<String> getParents(String path) {
+        List<String> parents = new ArrayList<>();
+        if (!path.isEmpty()) {
+            parents.add("");
+            for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+                parents.add(path.substring(0, i));
+            }
+        }
+        return parents;
+    }
+
+    int getIndex(String path) {
+        // same as MemoryLockProvider, the digest provides a better distribution than the hash
+        return Math.abs(DigestUtils.sha1Hex(path).hashCode() % stripes.length);
+    }
+
+    private void lock(Stripe stripe, Thread thread, boolean exclusive, String target) {
+        synchronized (stripe) {
+            if (stripe.canLock(thread, exclusive)) {
+                stripe.lock(thread, exclusive);
+                return;
+            }
+
+            contendedAcquisitions.incrementAndGet();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+            waiting.put(thread, new Waiter(stripe, exclusive));
+            if (exclusive) {
+                stripe.waitingWriters.add(thread);
+            }
+            try {
+                while (!stripe.canLock(thread, exclusive)) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        throw new IllegalStateException(
+                                "Failed to get a lock on "
+                                        + target
+                                        + " after "
+                                        + timeout
+                                        + " ms, stripe "
+                                        + stripe.index
+                                        + " is held by "
+                                        + stripe.getBlockers(thread, exclusive));
+                    }
+                    try {
+                        stripe.wait(Math.min(DEADLOCK_CHECK_MS, remaining));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException(
+                                "Interrupted while waiting for the lock on " + target, e);
+                    }
+                    // a real deadlock does not go away, checking after a wait avoids
+                    // being fooled by holders that are just about to release
+                    if (!stripe.canLock(thread, exclusive) && isDeadlocked(thread)) {
+                        deadlocks.incrementAndGet();
+                        throw new IllegalStateException(
+                                "Deadlock detected while locking "
+                                        + target
+                                        + ", thread "
+                                        + thread.getName()
+                                        + " is waiting on stripe "
+                                        + stripe.index
+                                        + " held by "
+                                        + stripe.getBlockers(thread, exclusive));
+                    }
+                }
+                stripe.lock(thread, exclusive);
+            } finally {
+                waiting.remove(thread);
+                if (exclusive) {
+                    stripe.waitingWriters.remove(thread);
+                    // readers queued behind this writer might be able to proceed
+                    stripe.notifyAll();
+                }
+                long waited = System.nanoTime() - start;
+                totalWaitTime.addAndGet(waited);
+                maxWaitTime.accumulateAndGet(waited, Math::max);
+            }
+        }
+    }
+
+    private void release(Thread thread, List<Stripe> locked, List<Boolean> modes) {
+        for (int i = locked.size() - 1; i >= 0; i--) {
+            Stripe stripe = locked.get(i);
+            synchronized (stripe) {
+                stripe.unlock(thread, modes.get(i));
+                stripe.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Checks if the threads blocking the given one are, directly or transitively, waiting for a
+     * stripe held by it
+     */
+    boolean isDeadlocked(Thread thread) {
+        Set<Thread> visited = new HashSet<>();
+        List<Thread> stack = new ArrayList<>();
+        stack.add(thread);
+        while (!stack.isEmpty()) {
+            Thread current = stack.remove(stack.size() - 1);
+            Waiter waiter = waiting.get(current);
+            if (waiter == null) {
+                continue;
+            }
+            for (Thread blocker : waiter.stripe.getBlockers(current, waiter.exclusive)) {
+                if (blocker == thread) {
+                    return true;
+                }
+                if (visited.add(blocker)) {
+                    stack.add(blocker);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Maximum wait for a lock, in milliseconds */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the maximum wait for a lock, in milliseconds. Acquisitions waiting longer than that fail
+     * with an {@link IllegalStateException}.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /** Number of locks acquired so far */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /** Number of stripe locks that could not be acquired without waiting */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.get();
+    }
+
+    /** Total time spent waiting for stripe locks, in milliseconds */
+    public long getTotalWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get());
+    }
+
+    /** Longest wait for a single stripe lock, in milliseconds */
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+    }
+
+    /** Number of deadlocks detected, each one resulting in a failed lock acquisition */
+    public long getDeadlocks() {
+        return deadlocks.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HierarchicalLockProvider";
+    }
+
+    /**
+     * A reentrant, writer preferring, read/write lock keeping track of its holders. State changes
+     * happen while synchronized on the stripe, the holders can be read at any time for deadlock
+     * detection.
+     */
+    static final class Stripe {
+
+        final int index;
+
+        volatile Thread writer;
+
+        int writeHolds;
+
+        final Map<Thread, Integer> readers = new ConcurrentHashMap<>();
+
+        /** Threads waiting for an exclusive lock, new readers wait for them */
+        final Set<Thread> waitingWriters = ConcurrentHashMap.newKeySet();
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        boolean canLock(Thread thread, boolean exclusive) {
+            if (writer != null && writer != thread) {
+                return false;
+            }
+            if (exclusive) {
+                // allow upgrades when the thread is the only reader
+                return readers.isEmpty() || (readers.size() == 1 && readers.containsKey(thread));
+            }
+            return waitingWriters.isEmpty() || isHolder(thread);
+        }
+
+        /** Holders can lock again even if writers are waiting, they would deadlock otherwise */
+        boolean isHolder(Thread thread) {
+            return writer == thread || readers.containsKey(thread);
+        }
+
+        void lock(Thread thread, boolean exclusive) {
+            if (exclusive) {
+                writer = thread;
+                writeHolds++;
+            } else {
+                readers.merge(thread, 1, Integer::sum);
+            }
+        }
+
+        void unlock(Thread thread, boolean exclusive) {
+            if (exclusive) {
+                if (writer == thread && --writeHolds == 0) {
+                    writer = null;
+                }
+            } else {
+                readers.computeIfPresent(thread, (t, holds) -> holds == 1 ? null : holds - 1);
+            }
+        }
+
+        /** The threads preventing the given one from locking the stripe */
+        Set<Thread> getBlockers(Thread thread, boolean exclusive) {
+            Set<Thread> blockers = new HashSet<>();
+            Thread w = writer;
+            if (w != null && w != thread) {
+                blockers.add(w);
+            }
+            if (exclusive) {
+                blockers.addAll(readers.keySet());
+            } else if (!isHolder(thread)) {
+                blockers.addAll(waitingWriters);
+            }
+            blockers.remove(thread);
+            return blockers;
+        }
+    }
+
+    /** A thread waiting to lock a stripe */
+    static final class Waiter {
+
+        final Stripe stripe;
+
+        final boolean exclusive;
+
+        Waiter(Stripe stripe, boolean exclusive) {
+            this.stripe = stripe;
+            this.exclusive = exclusive;
+        }
+    }
+}
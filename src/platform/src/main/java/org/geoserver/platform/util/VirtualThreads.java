@@ -0,0 +1,111 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Opt-in support for virtual threads in the GeoServer internal executors, enabled by setting the
+ * {@value #VIRTUAL_THREADS_KEY} system variable to true.
+ *
+ * <p>Virtual threads are looked up by reflection, as GeoServer still runs on JVMs not supporting
+ * them; on those the executors keep using platform threads. The tasks running on the executors
+ * get the thread locals of the submitting thread through {@code ThreadLocalsTransfer}, virtual
+ * threads are hence created without inheriting the inheritable thread locals of the thread
+ * creating them.
+ *
+ * <p>Blocking while holding a monitor pins the virtual thread to its carrier, to locate such spots
+ * run the JVM with <code>-Djdk.tracePinnedThreads=short</code>, or record the <code>
+ * jdk.VirtualThreadPinned</code> JFR event.
+ */
+public class VirtualThreads {
+
+    static final Logger LOGGER = Logging.getLogger(VirtualThreads.class);
+
+    /** System variable enabling virtual threads in the internal executors */
+    public static final String VIRTUAL_THREADS_KEY = "org.geoserver.virtualThreads";
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method INHERIT_THREAD_LOCALS;
+
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method inherit = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            inherit = builder.getMethod("inheritInheritableThreadLocals", boolean.class);
+            factory = builder.getMethod("factory");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            LOGGER.log(Level.FINE, "Virtual threads are not supported by this JVM", e);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        INHERIT_THREAD_LOCALS = inherit;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {}
+
+    /** Returns true if the JVM supports virtual threads */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /** Returns true if virtual threads have been requested, and the JVM supports them */
+    public static boolean isEnabled() {
+        if (!Boolean.parseBoolean(GeoServerExtensions.getProperty(VIRTUAL_THREADS_KEY))) {
+            return false;
+        }
+        if (!isSupported()) {
+            LOGGER.warning(
+                    VIRTUAL_THREADS_KEY
+                            + " is set, but the JVM does not support virtual threads, "
+                            + "will use platform threads instead");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a factory of virtual threads named after the given prefix if virtual threads are
+     * {@link #isEnabled() enabled}, the fallback factory otherwise.
+     *
+     * @param prefix The thread name prefix, a counter will be appended to it
+     * @param fallback The factory used when virtual threads are not enabled
+     */
+    public static ThreadFactory factory(String prefix, ThreadFactory fallback) {
+        if (!isEnabled()) {
+            return fallback;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, prefix, 0L);
+            builder = INHERIT_THREAD_LOCALS.invoke(builder, false);
+            LOGGER.info("Using virtual threads for " + prefix + " tasks");
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Failed to create virtual threads factory, using platform threads",
+                    e);
+            return fallback;
+        }
+    }
+}
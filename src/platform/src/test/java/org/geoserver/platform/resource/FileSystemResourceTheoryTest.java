@@ -11,6 +11,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -339,6 +340,29 @@ public class FileSystemResourceTheoryTest extends ResourceTheoryTest {
         assertEquals(files.size(), fileEvents.size());
     }
 
+    @Test
+    public void nativeEventsWithoutPolling() throws Exception {
+        final String dirName = testName.getMethodName();
+        File watchedDir = Paths.toFile(store.baseDirectory, dirName);
+        assertTrue(watchedDir.mkdir());
+        File fileA = new File(watchedDir, "FileA");
+
+        FileSystemWatcher watcher = (FileSystemWatcher) store.getResourceNotificationDispatcher();
+        // file system without native events support
+        assumeTrue(watcher.isNativeEvents());
+        // polling would not pick up the change in time
+        watcher.schedule(1, TimeUnit.HOURS);
+        AwaitResourceListener listener = new AwaitResourceListener();
+        watcher.addListener(dirName, listener);
+        touch(fileA);
+
+        ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+        assertEquals(dirName, n.getPath());
+        assertEquals(1, n.events().size());
+        assertEquals("FileA", n.events().get(0).getPath());
+        assertEquals(Kind.ENTRY_CREATE, n.events().get(0).getKind());
+    }
+
     /** ResourceListener that traps the next ResourceNotification for testing */
     static class AwaitResourceListener implements ResourceListener {
         private final AtomicReference<ResourceNotification> reference = new AtomicReference<>();
@@ -0,0 +1,188 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HierarchicalLockProviderTest {
+
+    HierarchicalLockProvider provider;
+
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        provider = new HierarchicalLockProvider();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testParents() {
+        assertEquals(
+                Arrays.asList("", "workspaces", "workspaces/ws"),
+                HierarchicalLockProvider.getParents(
+                        HierarchicalLockProvider.normalize("/workspaces/ws/workspace.xml")));
+        assertTrue(HierarchicalLockProvider.getParents("").isEmpty());
+    }
+
+    @Test
+    public void testSiblingsInParallel() throws Exception {
+        Resource.Lock lock = provider.acquire("workspaces/ws1/workspace.xml");
+        try {
+            // a sibling in another workspace can be locked while the first lock is held
+            Future<?> other =
+                    executor.submit(
+                            () -> provider.acquire("workspaces/ws2/workspace.xml").release());
+            other.get(5, TimeUnit.SECONDS);
+        } finally {
+            lock.release();
+        }
+        assertEquals(2, provider.getAcquisitions());
+    }
+
+    @Test
+    public void testParentWaitsForChildren() throws Exception {
+        Resource.Lock child = provider.acquire("workspaces/ws1/workspace.xml");
+        Future<?> parent = executor.submit(() -> provider.acquire("workspaces/ws1").release());
+        try {
+            parent.get(300, TimeUnit.MILLISECONDS);
+            fail("The parent lock should not be granted while the child is locked");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        child.release();
+        parent.get(5, TimeUnit.SECONDS);
+        assertEquals(1, provider.getContendedAcquisitions());
+        assertTrue(provider.getTotalWaitTime() > 0);
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+        Resource.Lock outer = provider.acquire("workspaces/ws1");
+        // nested locks on the same path and its children do not block
+        Resource.Lock same = provider.acquire("workspaces/ws1");
+        Resource.Lock inner = provider.acquire("workspaces/ws1/workspace.xml");
+        inner.release();
+        same.release();
+        outer.release();
+
+        executor.submit(() -> provider.acquire("workspaces/ws1").release())
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testDeadlockDetection() throws Exception {
+        CountDownLatch locked = new CountDownLatch(2);
+        Future<Boolean> first = executor.submit(() -> lockBoth("a", "b", locked));
+        Future<Boolean> second = executor.submit(() -> lockBoth("b", "a", locked));
+
+        // at least one of the two gets an exception, and the other one can then proceed
+        boolean firstOk = first.get(10, TimeUnit.SECONDS);
+        boolean secondOk = second.get(10, TimeUnit.SECONDS);
+        assertFalse(firstOk && secondOk);
+        assertTrue(provider.getDeadlocks() > 0);
+        assertTrue(provider.waiting.isEmpty());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        provider.setTimeout(200);
+        Resource.Lock lock = provider.acquire("workspaces/ws1");
+        try {
+            Future<?> other = executor.submit(() -> provider.acquire("workspaces/ws1").release());
+            try {
+                other.get(5, TimeUnit.SECONDS);
+                fail("The lock should have timed out");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+                assertThat(e.getCause().getMessage(), containsString("workspaces/ws1"));
+            }
+        } finally {
+            lock.release();
+        }
+        assertTrue(provider.waiting.isEmpty());
+        executor.submit(() -> provider.acquire("workspaces/ws1").release())
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWriterNotStarved() throws Exception {
+        // readers of the workspace directory keep overlapping, it's never free of shared locks
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String path = "workspaces/ws1/file" + i + ".xml";
+            readers.add(
+                    executor.submit(
+                            () -> {
+                                started.countDown();
+                                while (!stop.get()) {
+                                    Resource.Lock lock = provider.acquire(path);
+                                    try {
+                                        Thread.sleep(20);
+                                    } finally {
+                                        lock.release();
+                                    }
+                                }
+                                return null;
+                            }));
+        }
+        try {
+            started.await();
+            // new readers queue behind the writer, which gets the lock in a timely manner
+            executor.submit(() -> provider.acquire("workspaces/ws1").release())
+                    .get(5, TimeUnit.SECONDS);
+        } finally {
+            stop.set(true);
+        }
+        for (Future<?> reader : readers) {
+            reader.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(0, provider.getDeadlocks());
+    }
+
+    private boolean lockBoth(String path1, String path2, CountDownLatch latch)
+            throws InterruptedException {
+        Resource.Lock lock1 = provider.acquire(path1);
+        try {
+            latch.countDown();
+            latch.await();
+            Resource.Lock lock2 = provider.acquire(path2);
+            lock2.release();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        } finally {
+            lock1.release();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    static final InheritableThreadLocal<String> INHERITED = new InheritableThreadLocal<>();
+
+    @After
+    public void cleanup() {
+        System.clearProperty(VirtualThreads.VIRTUAL_THREADS_KEY);
+        INHERITED.remove();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(VirtualThreads.isEnabled());
+        ThreadFactory fallback = Executors.defaultThreadFactory();
+        assertSame(fallback, VirtualThreads.factory("test-", fallback));
+    }
+
+    @Test
+    public void testEnabled() throws Exception {
+        System.setProperty(VirtualThreads.VIRTUAL_THREADS_KEY, "true");
+        assertEquals(VirtualThreads.isSupported(), VirtualThreads.isEnabled());
+        ThreadFactory fallback = Executors.defaultThreadFactory();
+        ThreadFactory factory = VirtualThreads.factory("test-", fallback);
+        if (!VirtualThreads.isSupported()) {
+            assertSame(fallback, factory);
+            return;
+        }
+
+        assertNotSame(fallback, factory);
+        INHERITED.set("value");
+        AtomicReference<String> inherited = new AtomicReference<>("unset");
+        Thread thread = factory.newThread(() -> inherited.set(INHERITED.get()));
+        assertTrue(thread.getName().startsWith("test-"));
+        // virtual threads are always daemon ones
+        assertTrue(thread.isDaemon());
+        thread.start();
+        thread.join();
+        // thread locals are transferred explicitly by the executors, not inherited
+        assertNull(inherited.get());
+    }
+}
@@ -0,0 +1,58 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.config.GeoServer;
+import org.geoserver.rest.catalog.NamedMap;
+import org.geoserver.rest.util.MediaTypeExtensions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/** Reports the usage statistics of the resource pool caches */
+@RestController
+@RequestMapping(path = RestBaseController.ROOT_PATH + "/resourcepool")
+public class ResourcePoolController extends AbstractGeoServerController {
+
+    @Autowired
+    public ResourcePoolController(@Qualifier("geoServer") GeoServer geoServer) {
+        super(geoServer);
+    }
+
+    @GetMapping(
+        produces = {
+            MediaType.APPLICATION_JSON_VALUE,
+            MediaTypeExtensions.TEXT_JSON_VALUE,
+            MediaType.APPLICATION_XML_VALUE,
+            MediaType.TEXT_XML_VALUE
+        }
+    )
+    @ResponseBody
+    public NamedMap<String, Object> statisticsGet() {
+        NamedMap<String, Object> result = new NamedMap<>("resourcePool");
+        Map<String, ResourceCacheStatistics> caches =
+                geoServer.getCatalog().getResourcePool().getCacheStatistics();
+        for (Map.Entry<String, ResourceCacheStatistics> entry : caches.entrySet()) {
+            ResourceCacheStatistics stats = entry.getValue();
+            Map<String, Object> cache = new LinkedHashMap<>();
+            cache.put("hits", stats.getHits());
+            cache.put("misses", stats.getMisses());
+            cache.put("hitRatio", stats.getHitRatio());
+            cache.put("loads", stats.getLoads());
+            cache.put("averageLoadTimeMicros", stats.getAverageLoadTime() / 1000);
+            cache.put("evictions", stats.getEvictions());
+            cache.put("idleEvictions", stats.getIdleEvictions());
+            result.put(entry.getKey(), cache);
+        }
+        return result;
+    }
+}
@@ -21,6 +21,7 @@ import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.SingleGridCoverage2DReader;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.data.util.CoverageStoreUtils;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resource.Type;
@@ -124,6 +125,8 @@ public class CoverageStoreFileController extends AbstractStoreUploadController {
         }
         // File Harvesting
         sr.harvest(null, harvestedResources, GeoTools.getDefaultHints());
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index != null) index.invalidate(info);
         if (updateBBox) new MosaicInfoBBoxHandler(catalog).updateNativeBBox(info, sr);
     }
 
@@ -23,6 +23,7 @@ import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.CoverageStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.impl.AttributeTypeInfoImpl;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.config.util.XStreamPersister;
 import org.geoserver.feature.RetypingFeatureCollection;
 import org.geoserver.rest.ResourceNotFoundException;
@@ -250,6 +251,11 @@ public class StructuredCoverageController extends AbstractCatalogController {
         } else {
             store.removeGranules(filter);
         }
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index != null) {
+            CoverageStoreInfo storeInfo = catalog.getCoverageStoreByName(workspaceName, storeName);
+            if (storeInfo != null) index.invalidate(storeInfo);
+        }
         if (updateBBox) {
             // before updating checks that the delete request
             // has not been performed over all granules
@@ -0,0 +1,37 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSONObject;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.rest.catalog.CatalogRESTTestSupport;
+import org.junit.Test;
+
+public class ResourcePoolControllerTest extends CatalogRESTTestSupport {
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        FeatureTypeInfo info = getCatalog().getFeatureTypeByName(getLayerId(MockData.LAKES));
+        getCatalog().getResourcePool().getFeatureType(info);
+
+        JSONObject caches =
+                (JSONObject) getAsJSON(RestBaseController.ROOT_PATH + "/resourcepool.json");
+        for (String name : new String[] {"crs", "dataStore", "featureType", "coverageReader"}) {
+            JSONObject cache = caches.getJSONObject(name);
+            for (String key :
+                    new String[] {"hits", "misses", "loads", "evictions", "idleEvictions"}) {
+                assertTrue(name + "/" + key, cache.has(key));
+            }
+        }
+        JSONObject featureTypes = caches.getJSONObject("featureType");
+        assertTrue(featureTypes.getLong("hits") + featureTypes.getLong("misses") > 0);
+        // no idle timeout configured
+        assertEquals(0, caches.getJSONObject("dataStore").getLong("idleEvictions"));
+    }
+}
@@ -19,6 +19,7 @@ import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.MetadataMap;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.catalog.util.ReaderDimensionsAccessor;
 import org.geoserver.util.ISO8601Formatter;
 import org.geoserver.wcs2_0.exception.WCS20Exception;
@@ -73,12 +74,15 @@ public class WCSDimensionsHelper {
 
     String coverageId;
 
+    CoverageInfo coverage;
+
     /**
      * Base constructor which only deals with timeDimension. It is used by WCS-EO classes which
      * deals with up to timeDimensions
      */
     public WCSDimensionsHelper(CoverageInfo ci) throws IOException {
         this.coverageId = NCNameResourceCodec.encode(ci);
+        this.coverage = ci;
         this.accessor =
                 new ReaderDimensionsAccessor(
                         (GridCoverage2DReader) ci.getGridCoverageReader(null, null));
@@ -185,10 +189,20 @@ public class WCSDimensionsHelper {
     }
 
     public TreeSet<Object> getTimeDomain() throws IOException {
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (coverage != null && index != null) {
+            return index.getDomain(coverage, ResourceInfo.TIME, accessor::getTimeDomain)
+                    .toTreeSet();
+        }
         return accessor.getTimeDomain();
     }
 
     public TreeSet<Object> getElevationDomain() throws IOException {
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (coverage != null && index != null) {
+            return index.getDomain(coverage, ResourceInfo.ELEVATION, accessor::getElevationDomain)
+                    .toTreeSet();
+        }
         return accessor.getElevationDomain();
     }
 
@@ -0,0 +1,53 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.List;
+import java.util.Map;
+import javax.xml.namespace.QName;
+import org.geoserver.wfs.request.TransactionElement;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.FeatureStore;
+
+/**
+ * A {@link TransactionElementHandler} able to execute a run of consecutive elements as a single
+ * batch, used when {@link WFSInfo#isBatchTransactions()} is enabled. The batch is executed in the
+ * same transaction as the other elements, so the request stays atomic.
+ */
+public interface BatchTransactionElementHandler extends TransactionElementHandler {
+
+    /**
+     * Checks if the element can be executed in the same batch as the element preceding it
+     *
+     * @param previous the element preceding {@code element} in the request, handled by this same
+     *     handler
+     * @param element the element to be added to the batch
+     * @param request the transaction request
+     */
+    boolean canBatch(
+            TransactionElement previous, TransactionElement element, TransactionRequest request);
+
+    /**
+     * Executes the elements as a single batch, with the same results as executing them one by one
+     * with {@link #execute(TransactionElement, TransactionRequest, Map, TransactionResponse,
+     * TransactionListener)}, but notifying the listener once per batch instead of once per element
+     *
+     * @param elements the consecutive elements to be executed, in request order
+     * @param request the transaction request
+     * @param featureStores map from {@link QName} to {@link FeatureStore}
+     * @param response the transaction response, to be updated with the results of all elements
+     * @param listener a transaction listener that will be called before and after each change
+     *     performed against the data stores
+     */
+    @SuppressWarnings("rawtypes")
+    void executeBatch(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map<QName, FeatureStore> featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException;
+}
@@ -0,0 +1,210 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.platform.util.VirtualThreads;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.feature.FeatureCollection;
+
+/**
+ * Computes the sizes of the queries in a GetFeature request, and their numberMatched counts,
+ * running up to {@link WFSInfo#getMaxConcurrentQueries()} of them at the same time. Useful when
+ * the queries hit different stores, the request then waits on the slowest store, instead of the
+ * sum of them all.
+ *
+ * <p>The sizes are computed assuming the queries do not hit the max features limit, as the limit
+ * of each query depends on the sizes of the ones before it. {@link #computeSizes()} returns the
+ * total, the caller has to run the queries sequentially if it reached the limit.
+ */
+class ConcurrentCounts {
+
+    private static volatile ExecutorService POOL;
+
+    private final int threads;
+
+    private final List<FeatureCollection<?, ?>> collections = new ArrayList<>();
+
+    private final List<CountExecutor> executors = new ArrayList<>();
+
+    private final List<Integer> maxFeatures = new ArrayList<>();
+
+    /**
+     * @param threads The maximum number of counts running at the same time, the request thread
+     *     included
+     */
+    public ConcurrentCounts(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a query collection, whose size will be computed by {@link #computeSizes()}
+     *
+     * @param features The query results
+     * @param executor The count executor of the query, or null if numberMatched is not needed.
+     *     Will be given the size if below the query max features
+     * @param queryMaxFeatures The max features of the query
+     */
+    public void add(
+            FeatureCollection<?, ?> features, CountExecutor executor, int queryMaxFeatures) {
+        collections.add(features);
+        executors.add(executor);
+        maxFeatures.add(queryMaxFeatures);
+    }
+
+    /**
+     * Computes the sizes of all the collections, and passes them to the count executors when they
+     * can be used as the numberMatched
+     *
+     * @return The total size
+     */
+    public int computeSizes() throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (FeatureCollection<?, ?> collection : collections) {
+            tasks.add(collection::size);
+        }
+        List<Integer> sizes = run(tasks, threads);
+        int total = 0;
+        for (int i = 0; i < sizes.size(); i++) {
+            int size = sizes.get(i);
+            int queryMaxFeatures = maxFeatures.get(i);
+            CountExecutor executor = executors.get(i);
+            if (executor != null
+                    && (queryMaxFeatures == Integer.MAX_VALUE || size < queryMaxFeatures)) {
+                executor.setProvidedCount(size);
+            }
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the count executors not having a pre-computed count, returns the total
+     *
+     * @return The total, or -1 if one of the counts is unknown
+     */
+    static long getTotalCount(List<CountExecutor> executors, int threads) throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (CountExecutor executor : executors) {
+            tasks.add(executor::getCount);
+        }
+        long total = 0;
+        for (Integer count : run(tasks, threads)) {
+            // if the count is unknown for one, we don't know the total
+            if (count == -1) {
+                return -1;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the tasks, at most {@code threads} at a time, the calling thread included, and returns
+     * their results in the same order as the tasks
+     */
+    static <T> List<T> run(List<Callable<T>> tasks, int threads) throws IOException {
+        int n = tasks.size();
+        List<T> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(null);
+        }
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker =
+                () -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < n) {
+                        try {
+                            // each slot is written by a single worker, and read only after
+                            // waiting on all of them
+                            results.set(i, tasks.get(i).call());
+                        } catch (Exception e) {
+                            // no point in starting other tasks
+                            next.set(n);
+                            throw e;
+                        }
+                    }
+                    return null;
+                };
+
+        ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 1; i < Math.min(threads, n); i++) {
+            futures.add(
+                    getPool()
+                            .submit(
+                                    () -> {
+                                        transfer.apply();
+                                        try {
+                                            return worker.call();
+                                        } finally {
+                                            transfer.cleanup();
+                                        }
+                                    }));
+        }
+
+        Throwable failure = null;
+        try {
+            worker.call();
+        } catch (Exception e) {
+            failure = e;
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IOException("Failed to compute the queries counts", failure);
+        }
+        return results;
+    }
+
+    private static ExecutorService getPool() {
+        if (POOL == null) {
+            synchronized (ConcurrentCounts.class) {
+                if (POOL == null) {
+                    POOL =
+                            new ThreadPoolExecutor(
+                                    0,
+                                    Integer.MAX_VALUE,
+                                    60L,
+                                    TimeUnit.SECONDS,
+                                    new SynchronousQueue<>(),
+                                    VirtualThreads.factory(
+                                            "gs-wfs-count-", Executors.defaultThreadFactory()));
+                }
+            }
+        }
+        return POOL;
+    }
+}
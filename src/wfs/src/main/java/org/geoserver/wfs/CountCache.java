@@ -0,0 +1,379 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.util.VirtualThreads;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.Query;
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.Filter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the feature counts used to compute numberMatched in WFS 2.0 responses, so that the pages
+ * of a paginated crawl do not run the same count over and over. Enabled by {@link
+ * WFSInfo#getCountCacheTimeout()}.
+ *
+ * <p>Counts are keyed by feature type, query filter, view parameters and the current user, as the
+ * security limits applied to the count depend on it. Counts of a feature type are dropped when a
+ * WFS transaction modifies it, or when the feature type or its store are modified in the catalog.
+ * Changes made to the data outside of GeoServer are only picked up once the timeout expires.
+ *
+ * <p>The counts can also be computed in background, see {@link WFSInfo#isAsyncNumberMatched()}.
+ */
+public class CountCache implements TransactionCallback, CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(CountCache.class);
+
+    static final String MODIFIED_TYPES = "COUNT_CACHE_MODIFIED_TYPES";
+
+    /** Maximum number of counts kept in memory */
+    static final int MAX_ENTRIES = 1000;
+
+    /** Maximum number of counts computed in background at the same time */
+    static final int BACKGROUND_THREADS = 4;
+
+    /** Maximum number of counts waiting to be computed in background */
+    static final int BACKGROUND_QUEUE_SIZE = 100;
+
+    private final Catalog catalog;
+
+    private final Cache<Key, Count> counts =
+            CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+    /** Keys whose count is being computed in background */
+    private final Set<Key> pending = ConcurrentHashMap.newKeySet();
+
+    /** Bumped at each invalidation, counts started before it are not cached */
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile ThreadPoolExecutor executor;
+
+    public CountCache(Catalog catalog) {
+        this.catalog = catalog;
+        catalog.addListener(this);
+    }
+
+    /** Returns the count cache, if available */
+    public static CountCache get() {
+        return GeoServerExtensions.bean(CountCache.class);
+    }
+
+    /**
+     * Returns the cache key for the given query against the feature type, or null if the query
+     * count cannot be cached
+     */
+    Key getKey(FeatureTypeInfo typeInfo, Query query) {
+        if (query.getJoins() != null && !query.getJoins().isEmpty()) {
+            return null;
+        }
+        // keyed on the filter itself, as no text encoding captures all of its details (e.g.,
+        // CQL has no way to express matchCase). Filters not implementing equals won't ever match
+        Filter filter = query.getFilter() == null ? Filter.INCLUDE : query.getFilter();
+        Map<Object, Object> hints = query.getHints();
+        String hintsKey = hints == null || hints.isEmpty() ? "" : toString(hints);
+        String crs =
+                query.getCoordinateSystem() == null ? "" : CRS.toSRS(query.getCoordinateSystem());
+        return new Key(
+                typeInfo.getId(), filter, hintsKey, query.getVersion(), crs, getUserKey());
+    }
+
+    private String toString(Map<Object, Object> hints) {
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<Object, Object> entry : hints.entrySet()) {
+            sorted.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        return sorted.toString();
+    }
+
+    private String getUserKey() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null) {
+            return "";
+        }
+        Set<String> roles = new TreeSet<>();
+        Collection<? extends GrantedAuthority> authorities = auth.getAuthorities();
+        if (authorities != null) {
+            for (GrantedAuthority authority : authorities) {
+                roles.add(authority.getAuthority());
+            }
+        }
+        return auth.getName() + roles;
+    }
+
+    /**
+     * Returns the cached count, or null if missing or older than the timeout
+     *
+     * @param key The count key
+     * @param timeout The maximum age of the count, in seconds
+     */
+    Integer getCount(Key key, int timeout) {
+        Count count = counts.getIfPresent(key);
+        if (count == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - count.timestamp > timeout * 1000L) {
+            counts.invalidate(key);
+            return null;
+        }
+        return count.value;
+    }
+
+    /**
+     * Runs the count and caches its result
+     *
+     * @param key The count key
+     * @param counter Computes the count
+     */
+    int count(Key key, Counter counter) throws IOException {
+        long start = generation.get();
+        int count = counter.count();
+        // don't cache if something changed meanwhile, or if the count is unknown
+        if (count >= 0 && generation.get() == start) {
+            counts.put(key, new Count(count));
+        }
+        return count;
+    }
+
+    /**
+     * Computes the count in background and caches it, unless the same count is already being
+     * computed, or there are too many counts waiting
+     */
+    void countInBackground(Key key, Counter counter) {
+        if (!pending.add(key)) {
+            return;
+        }
+        ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        try {
+            getExecutor()
+                    .execute(
+                            () -> {
+                                transfer.apply();
+                                try {
+                                    count(key, counter);
+                                } catch (IOException | RuntimeException e) {
+                                    LOGGER.log(Level.WARNING, "Background count failed", e);
+                                } finally {
+                                    pending.remove(key);
+                                    transfer.cleanup();
+                                }
+                            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            LOGGER.fine("Too many counts waiting, skipping background count");
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    ThreadPoolExecutor pool =
+                            new ThreadPoolExecutor(
+                                    BACKGROUND_THREADS,
+                                    BACKGROUND_THREADS,
+                                    60L,
+                                    TimeUnit.SECONDS,
+                                    new LinkedBlockingQueue<>(BACKGROUND_QUEUE_SIZE),
+                                    VirtualThreads.factory(
+                                            "gs-wfs-count-", Executors.defaultThreadFactory()));
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /** Drops the counts of the given feature type */
+    public void invalidate(String typeId) {
+        generation.incrementAndGet();
+        counts.asMap().keySet().removeIf(k -> k.typeId.equals(typeId));
+    }
+
+    /** Drops all the counts */
+    public void clear() {
+        generation.incrementAndGet();
+        counts.invalidateAll();
+    }
+
+    /** Number of cached counts */
+    long size() {
+        return counts.size();
+    }
+
+    @Override
+    public TransactionRequest beforeTransaction(TransactionRequest request) throws WFSException {
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionRequest request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(
+            TransactionRequest request, TransactionResponse result, boolean committed) {
+        @SuppressWarnings("unchecked")
+        Set<String> modified = (Set<String>) request.getExtendedProperties().remove(MODIFIED_TYPES);
+        if (modified != null) {
+            // invalidate also on rollback, counts might have been computed meanwhile
+            modified.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return 0;
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        QName name = event.getLayerName();
+        FeatureTypeInfo typeInfo =
+                catalog.getFeatureTypeByName(name.getNamespaceURI(), name.getLocalPart());
+        if (typeInfo == null) {
+            return;
+        }
+        // drop right away, and again after the transaction, for the counts run meanwhile
+        invalidate(typeInfo.getId());
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> properties = event.getRequest().getExtendedProperties();
+        @SuppressWarnings("unchecked")
+        Set<String> modified =
+                (Set<String>)
+                        properties.computeIfAbsent(
+                                MODIFIED_TYPES, k -> ConcurrentHashMap.newKeySet());
+        modified.add(typeInfo.getId());
+    }
+
+    private void invalidateCatalogInfo(CatalogInfo info) {
+        if (info instanceof ResourceInfo) {
+            invalidate(info.getId());
+        } else if (info instanceof StoreInfo) {
+            // rare enough to not warrant tracking the store of each count
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        // nothing to do
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidateCatalogInfo(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the change to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidateCatalogInfo(event.getSource());
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    /** Runs a count against the store */
+    interface Counter {
+        int count() throws IOException;
+    }
+
+    /** A cached count */
+    static final class Count {
+        final int value;
+
+        final long timestamp = System.currentTimeMillis();
+
+        Count(int value) {
+            this.value = value;
+        }
+    }
+
+    /** The count cache key */
+    static final class Key {
+        final String typeId;
+
+        final Filter filter;
+
+        final String hints;
+
+        final String version;
+
+        final String crs;
+
+        final String user;
+
+        Key(String typeId, Filter filter, String hints, String version, String crs, String user) {
+            this.typeId = typeId;
+            this.filter = filter;
+            this.hints = hints;
+            this.version = version;
+            this.crs = crs;
+            this.user = user;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return typeId.equals(key.typeId)
+                    && filter.equals(key.filter)
+                    && hints.equals(key.hints)
+                    && Objects.equals(version, key.version)
+                    && crs.equals(key.crs)
+                    && user.equals(key.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeId, filter, hints, version, crs, user);
+        }
+    }
+}
@@ -6,6 +6,7 @@
 package org.geoserver.wfs;
 
 import java.io.IOException;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 
@@ -26,11 +27,38 @@ class CountExecutor {
 
     int providedCount = COUNT_UNSET;
 
+    CountCache cache;
+
+    CountCache.Key key;
+
     public CountExecutor(FeatureSource source, Query query) {
         this.source = source;
         this.query = query;
     }
 
+    /**
+     * Builds a count executor that looks up the count in the cache first, and caches it once
+     * computed
+     *
+     * @param timeout The maximum age of the cached count, in seconds
+     */
+    public CountExecutor(
+            FeatureSource source,
+            Query query,
+            CountCache cache,
+            FeatureTypeInfo typeInfo,
+            int timeout) {
+        this(source, query);
+        this.key = cache.getKey(typeInfo, query);
+        if (key != null) {
+            this.cache = cache;
+            Integer cached = cache.getCount(key, timeout);
+            if (cached != null) {
+                this.providedCount = cached;
+            }
+        }
+    }
+
     public CountExecutor(int providedCount) {
         this.providedCount = providedCount;
     }
@@ -38,13 +66,34 @@ class CountExecutor {
     public int getCount() throws IOException {
         if (isCountSet()) {
             return providedCount;
+        } else if (cache != null) {
+            return cache.count(key, this::runCount);
         } else {
-            // make sure we get a count by getting a feature colleciton
-            // FeatureSource.getCount(...) can return -1
-            return source.getFeatures(query).size();
+            return runCount();
         }
     }
 
+    private int runCount() throws IOException {
+        // make sure we get a count by getting a feature colleciton
+        // FeatureSource.getCount(...) can return -1
+        return source.getFeatures(query).size();
+    }
+
+    /** Returns true if the count can be cached */
+    public boolean isCacheable() {
+        return cache != null;
+    }
+
+    /** Computes the count in background, making it available in the cache for later requests */
+    public void countInBackground() {
+        cache.countInBackground(key, this::runCount);
+    }
+
+    /** Sets the count, making it pre-computed */
+    public void setProvidedCount(int providedCount) {
+        this.providedCount = providedCount;
+    }
+
     public boolean isCountSet() {
         return providedCount != COUNT_UNSET;
     }
@@ -8,6 +8,8 @@ package org.geoserver.wfs;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -32,7 +34,9 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.Id;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.identity.Identifier;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 /**
@@ -40,7 +44,8 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  *
  * @author Andrea Aime - TOPP
  */
-public class DeleteElementHandler extends AbstractTransactionElementHandler {
+public class DeleteElementHandler extends AbstractTransactionElementHandler
+        implements BatchTransactionElementHandler {
     /** logger */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
 
@@ -87,6 +92,46 @@ public class DeleteElementHandler extends AbstractTransactionElementHandler {
             TransactionResponse response,
             TransactionListener listener)
             throws WFSTransactionException {
+        execute(delete, delete.getFilter(), request, featureStores, response, listener);
+    }
+
+    @Override
+    public boolean canBatch(
+            TransactionElement previous, TransactionElement element, TransactionRequest request) {
+        // only feature id deletes against the same type are merged, the lock release path
+        // works feature by feature anyway
+        return previous.getTypeName().equals(element.getTypeName())
+                && previous.getFilter() instanceof Id
+                && element.getFilter() instanceof Id
+                && !(request.getLockId() != null && request.isReleaseActionSome());
+    }
+
+    /** Executes the feature id deletes as a single delete against the union of their ids */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void executeBatch(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map<QName, FeatureStore> featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
+        Set<Identifier> ids = new LinkedHashSet<>();
+        for (TransactionElement element : elements) {
+            ids.addAll(((Id) element.getFilter()).getIdentifiers());
+        }
+        // the first delete stands for the whole batch in events and errors
+        execute(elements.get(0), factory.id(ids), request, featureStores, response, listener);
+    }
+
+    private void execute(
+            TransactionElement delete,
+            Filter filter,
+            TransactionRequest request,
+            Map featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
 
         QName elementName = delete.getTypeName();
         String handle = delete.getHandle();
@@ -105,8 +150,6 @@ public class DeleteElementHandler extends AbstractTransactionElementHandler {
         LOGGER.finer("Transaction Delete:" + delete);
 
         try {
-            Filter filter = delete.getFilter();
-
             // make sure all geometric elements in the filter have a crs, and that the filter
             // is reprojected to store's native crs as well
             CoordinateReferenceSystem declaredCRS =
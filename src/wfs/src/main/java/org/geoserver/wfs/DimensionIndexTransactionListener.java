@@ -0,0 +1,173 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import net.opengis.wfs.PropertyType;
+import net.opengis.wfs.TransactionType;
+import net.opengis.wfs.UpdateElementType;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Keeps the {@link DimensionDomainIndex} in synch with the WFS transactions. Inserted values are
+ * added to the indexed domains, while updates touching the dimension attributes and deletes
+ * invalidate the domains of the affected feature types. Changes are applied only once the
+ * transaction is committed.
+ */
+public class DimensionIndexTransactionListener implements TransactionCallback {
+
+    static final Logger LOGGER = Logging.getLogger(DimensionIndexTransactionListener.class);
+
+    static final String DIMENSION_INDEX_CHANGES = "DIMENSION_INDEX_CHANGES";
+
+    private final Catalog catalog;
+
+    public DimensionIndexTransactionListener(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public TransactionRequest beforeTransaction(TransactionRequest request) throws WFSException {
+        // nothing to do
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionRequest request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(
+            TransactionRequest request, TransactionResponse result, boolean committed) {
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        Changes changes = (Changes) request.getExtendedProperties().remove(DIMENSION_INDEX_CHANGES);
+        if (!committed || index == null || changes == null) {
+            return;
+        }
+        try {
+            for (String id : changes.invalidated) {
+                FeatureTypeInfo typeInfo = catalog.getFeatureType(id);
+                if (typeInfo != null) index.invalidate(typeInfo);
+            }
+            for (Map.Entry<String, Map<String, List<Object>>> entry : changes.added.entrySet()) {
+                FeatureTypeInfo typeInfo = catalog.getFeatureType(entry.getKey());
+                if (typeInfo == null || changes.invalidated.contains(entry.getKey())) continue;
+                for (Map.Entry<String, List<Object>> values : entry.getValue().entrySet()) {
+                    index.addValues(typeInfo, values.getKey(), values.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            // never make the transaction fail due to the index, worst case it gets cleared
+            LOGGER.log(Level.WARNING, "Failed to update the dimension index, clearing it", e);
+            index.clear();
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return 0;
+    }
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (DimensionDomainIndex.get() == null) {
+            return;
+        }
+        try {
+            dataStoreChangeInternal(event);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to track the dimension values changes", e);
+        }
+    }
+
+    private void dataStoreChangeInternal(TransactionEvent event) {
+        QName name = event.getLayerName();
+        FeatureTypeInfo typeInfo =
+                catalog.getFeatureTypeByName(name.getNamespaceURI(), name.getLocalPart());
+        if (typeInfo == null) {
+            return;
+        }
+        Set<String> attributes = DimensionDomainIndex.getDimensionAttributes(typeInfo);
+        if (attributes.isEmpty()) {
+            return;
+        }
+
+        TransactionEventType type = event.getType();
+        Changes changes = getChanges(event.getRequest());
+        if (TransactionEventType.POST_INSERT.equals(type)) {
+            Map<String, List<Object>> values =
+                    changes.added.computeIfAbsent(typeInfo.getId(), k -> new HashMap<>());
+            collectValues(event.getAffectedFeatures(), attributes, values);
+        } else if (TransactionEventType.PRE_DELETE.equals(type)
+                || (TransactionEventType.PRE_UPDATE.equals(type)
+                        && updatesAny(event.getSource(), attributes))) {
+            // the removed values might have been the last ones in the domain
+            changes.invalidated.add(typeInfo.getId());
+        }
+    }
+
+    private boolean updatesAny(Object source, Set<String> attributes) {
+        if (!(source instanceof UpdateElementType)) {
+            // unknown, play it safe
+            return true;
+        }
+        for (Object o : ((UpdateElementType) source).getProperty()) {
+            QName name = ((PropertyType) o).getName();
+            if (name != null && attributes.contains(name.getLocalPart())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectValues(
+            SimpleFeatureCollection features,
+            Set<String> attributes,
+            Map<String, List<Object>> values) {
+        try (SimpleFeatureIterator it = features.features()) {
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                for (String attribute : attributes) {
+                    Object value = feature.getAttribute(attribute);
+                    if (value != null) {
+                        values.computeIfAbsent(attribute, k -> new ArrayList<>()).add(value);
+                    }
+                }
+            }
+        }
+    }
+
+    private Changes getChanges(TransactionType transaction) {
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> properties = transaction.getExtendedProperties();
+        return (Changes) properties.computeIfAbsent(DIMENSION_INDEX_CHANGES, k -> new Changes());
+    }
+
+    /** The dimension changes accumulated during a transaction */
+    static class Changes {
+        /** Values added, by feature type id and attribute */
+        final Map<String, Map<String, List<Object>>> added = new HashMap<>();
+
+        /** Feature type ids whose domains need to be reloaded */
+        final Set<String> invalidated = new HashSet<>();
+    }
+}
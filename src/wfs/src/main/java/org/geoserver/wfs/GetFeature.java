@@ -376,6 +376,15 @@ public class GetFeature {
         List<FeatureCollection<? extends FeatureType, ? extends Feature>> results =
                 new ArrayList<>();
         final List<CountExecutor> totalCountExecutors = new ArrayList<>();
+        // the sizes of multiple queries can be computed concurrently, assuming they don't
+        // hit the max features, otherwise the limit of each depends on the ones before it
+        ConcurrentCounts concurrentCounts = null;
+        if (wfs.getMaxConcurrentQueries() > 1
+                && queries.size() > 1
+                && calculateSize
+                && offset <= 0) {
+            concurrentCounts = new ConcurrentCounts(wfs.getMaxConcurrentQueries());
+        }
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
@@ -685,7 +694,7 @@ public class GetFeature {
                     }
 
                     int size = 0;
-                    if (calculateSize) {
+                    if (calculateSize && concurrentCounts == null) {
                         size = features.size();
                     }
 
@@ -697,8 +706,10 @@ public class GetFeature {
                     // calculated above
                     isNumberMatchedSkipped =
                             meta.getSkipNumberMatched() && !request.isResultTypeHits();
+                    CountExecutor countExecutor = null;
                     if (!isNumberMatchedSkipped) {
-                        if (calculateSize
+                        if (concurrentCounts == null
+                                && calculateSize
                                 && (queryMaxFeatures == Integer.MAX_VALUE
                                         || size < queryMaxFeatures)
                                 && offset <= 0) {
@@ -717,9 +728,14 @@ public class GetFeature {
                                             joins,
                                             primaryTypeName,
                                             primaryAlias);
-                            totalCountExecutors.add(new CountExecutor(source, qTotal));
+                            countExecutor = newCountExecutor(source, qTotal, primaryMeta);
+                            totalCountExecutors.add(countExecutor);
                         }
                     }
+                    if (concurrentCounts != null) {
+                        // the size will be given to the count executor, if usable
+                        concurrentCounts.add(features, countExecutor, queryMaxFeatures);
+                    }
 
                     // if offset is present we need to check the size of this returned feature
                     // collection
@@ -783,6 +799,19 @@ public class GetFeature {
                     }
 
                     results.add(features);
+
+                    if (concurrentCounts != null && i == queries.size() - 1) {
+                        count = concurrentCounts.computeSizes();
+                        if (count >= maxFeatures) {
+                            // the max features has been hit, the results are not the same
+                            // as the sequential ones, start over and run them sequentially
+                            concurrentCounts = null;
+                            results.clear();
+                            totalCountExecutors.clear();
+                            count = 0;
+                            i = -1;
+                        }
+                    }
                 } catch (WFSException e) {
                     // intercept and set locator to query handle if one was set, or if it simply set
                     // to GetFeature, which is the default
@@ -807,6 +836,18 @@ public class GetFeature {
             } else if (isPreComputed(totalCountExecutors)) {
                 long total = getTotalCount(totalCountExecutors);
                 totalCount = BigInteger.valueOf(total);
+            } else if (wfs.isAsyncNumberMatched()
+                    && !request.isResultTypeHits()
+                    && request.getVersion().startsWith("2")
+                    && isCacheable(totalCountExecutors)) {
+                // return unknown, the following pages will find the counts in the cache. Hits
+                // requests are all about the count, and only WFS 2.0 allows unknown counts
+                for (CountExecutor executor : totalCountExecutors) {
+                    if (!executor.isCountSet()) {
+                        executor.countInBackground();
+                    }
+                }
+                totalCount = BigInteger.valueOf(-1);
             } else {
                 // ok, in this case we're forced to run the queries to discover the actual total
                 // count
@@ -851,7 +892,33 @@ public class GetFeature {
         return true;
     }
 
+    /** Returns true if the counts not yet computed can be cached */
+    private boolean isCacheable(List<CountExecutor> totalCountExecutors) {
+        for (CountExecutor q : totalCountExecutors) {
+            if (!q.isCountSet() && !q.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CountExecutor newCountExecutor(
+            FeatureSource<? extends FeatureType, ? extends Feature> source,
+            org.geotools.data.Query query,
+            FeatureTypeInfo typeInfo) {
+        int timeout = wfs.getCountCacheTimeout();
+        CountCache cache = timeout > 0 ? CountCache.get() : null;
+        if (cache != null) {
+            return new CountExecutor(source, query, cache, typeInfo, timeout);
+        }
+        return new CountExecutor(source, query);
+    }
+
     private long getTotalCount(List<CountExecutor> totalCountExecutors) throws IOException {
+        int threads = wfs.getMaxConcurrentQueries();
+        if (threads > 1 && totalCountExecutors.size() > 1) {
+            return ConcurrentCounts.getTotalCount(totalCountExecutors, threads);
+        }
         long totalCount = 0;
         for (CountExecutor q : totalCountExecutors) {
             int result = q.getCount();
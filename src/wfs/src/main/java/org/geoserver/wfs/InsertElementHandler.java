@@ -7,8 +7,9 @@ package org.geoserver.wfs;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +27,6 @@ import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -48,7 +48,8 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  *
  * @author Andrea Aime - TOPP
  */
-public class InsertElementHandler extends AbstractTransactionElementHandler {
+public class InsertElementHandler extends AbstractTransactionElementHandler
+        implements BatchTransactionElementHandler {
     /** logger */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
 
@@ -77,46 +78,107 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             TransactionResponse response,
             TransactionListener listener)
             throws WFSTransactionException {
+        executeBatch(
+                Collections.singletonList(element), request, featureStores, response, listener);
+    }
 
+    /**
+     * Inserts are batched only if they all target the same, single, feature type, with the same
+     * identifier generation mode
+     */
+    @Override
+    public boolean canBatch(
+            TransactionElement previous, TransactionElement element, TransactionRequest request) {
+        Insert previousInsert = (Insert) previous;
         Insert insert = (Insert) element;
-        LOGGER.finer("Transaction Insert:" + insert);
+        if (previousInsert.isIdGenUseExisting() != insert.isIdGenUseExisting()) {
+            return false;
+        }
+        SimpleFeatureType type = getSingleFeatureType(insert);
+        return type != null && type.equals(getSingleFeatureType(previousInsert));
+    }
+
+    /** Returns the feature type of all the features in the insert, or null if there are more */
+    private SimpleFeatureType getSingleFeatureType(Insert insert) {
+        SimpleFeatureType result = null;
+        for (Object item : insert.getFeatures()) {
+            if (!(item instanceof SimpleFeature)) {
+                return null;
+            }
+            SimpleFeatureType type = ((SimpleFeature) item).getFeatureType();
+            if (result == null) {
+                result = type;
+            } else if (!result.equals(type)) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Executes the inserts with a single {@link SimpleFeatureStore#addFeatures} call per feature
+     * type, allowing stores to batch the inserts, e.g., in JDBC batches
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void executeBatch(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map<QName, FeatureStore> featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
+
+        // the first insert stands for the whole batch in events
+        Insert insert = (Insert) elements.get(0);
+        LOGGER.finer("Transaction Insert:" + elements);
 
         long inserted = response.getTotalInserted().longValue();
 
+        // the insert the errors are reported against
+        Insert failing = insert;
         try {
-            // group features by their schema
-            HashMap /* <SimpleFeatureType,FeatureCollection> */ schema2features = new HashMap();
-
-            List featureList = insert.getFeatures();
-            for (Object item : featureList) {
-                SimpleFeature feature = (SimpleFeature) item;
-                SimpleFeatureType schema = feature.getFeatureType();
-                ListFeatureCollection collection =
-                        (ListFeatureCollection) schema2features.get(schema);
-
-                if (collection == null) {
-                    collection = new ListFeatureCollection(schema);
-                    schema2features.put(schema, collection);
-                }
+            // group features by their schema, keeping the request order
+            Map<SimpleFeatureType, ListFeatureCollection> schema2features = new LinkedHashMap<>();
+
+            for (TransactionElement element : elements) {
+                Insert current = (Insert) element;
+                failing = current;
+                for (Object item : current.getFeatures()) {
+                    SimpleFeature feature = (SimpleFeature) item;
+                    SimpleFeatureType schema = feature.getFeatureType();
+                    ListFeatureCollection collection = schema2features.get(schema);
 
-                // do a check for idegen = useExisting, if set try to tell the datastore to use
-                // the provided fid
-                if (insert.isIdGenUseExisting()) {
-                    feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
-                } else {
-                    Object identifier =
-                            feature.getAttribute(new NameImpl(GML.NAMESPACE, "identifier"));
-                    if (WFSInfo.Version.V_20.compareTo(insert.getVersion()) >= 0
-                            && identifier instanceof String) {
-                        SimpleFeatureBuilder fb =
-                                new SimpleFeatureBuilder(feature.getFeatureType());
-                        fb.init(feature);
-                        feature = fb.buildFeature((String) identifier);
+                    // if we really need to, make sure we are inserting coordinates that do
+                    // match the CRS area of validity
+                    if (getInfo().isCiteCompliant()) {
+                        checkFeatureCoordinatesRange(feature);
+                    }
+
+                    if (collection == null) {
+                        collection = new ListFeatureCollection(schema);
+                        schema2features.put(schema, collection);
+                    }
+
+                    // do a check for idegen = useExisting, if set try to tell the datastore to
+                    // use the provided fid
+                    if (current.isIdGenUseExisting()) {
                         feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                    } else {
+                        Object identifier =
+                                feature.getAttribute(new NameImpl(GML.NAMESPACE, "identifier"));
+                        if (WFSInfo.Version.V_20.compareTo(current.getVersion()) >= 0
+                                && identifier instanceof String) {
+                            SimpleFeatureBuilder fb =
+                                    new SimpleFeatureBuilder(feature.getFeatureType());
+                            fb.init(feature);
+                            feature = fb.buildFeature((String) identifier);
+                            feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                        }
                     }
-                }
 
-                collection.add(feature);
+                    collection.add(feature);
+                }
             }
 
             // JD: change from set fo list because if inserting
@@ -125,10 +187,13 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             // JD: change from list to map so that the map can later be
             // processed and we can report the fids back in the same order
             // as they were supplied
-            Map<String, List<FeatureId>> schema2fids = new HashMap<>();
+            Map<String, List<FeatureId>> schema2fids = new LinkedHashMap<>();
 
-            for (Object value : schema2features.values()) {
-                SimpleFeatureCollection collection = (SimpleFeatureCollection) value;
+            // the features of all the inserts in the batch are stored together, the first insert
+            // stands for all of them
+            failing = insert;
+            for (ListFeatureCollection schemaFeatures : schema2features.values()) {
+                SimpleFeatureCollection collection = schemaFeatures;
                 SimpleFeatureType schema = collection.getSchema();
 
                 final QName elementName =
@@ -142,12 +207,6 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
                 }
 
                 if (collection != null) {
-                    // if we really need to, make sure we are inserting coordinates that do
-                    // match the CRS area of validity
-                    if (getInfo().isCiteCompliant()) {
-                        checkFeatureCoordinatesRange(collection);
-                    }
-
                     // reprojection
                     final GeometryDescriptor defaultGeometry =
                             store.getSchema().getGeometryDescriptor();
@@ -220,45 +279,43 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
 
             // report back fids, we need to keep the same order the
             // fids were reported in the original feature collection
-            for (Object o : featureList) {
-                SimpleFeature feature = (SimpleFeature) o;
-                SimpleFeatureType schema = feature.getFeatureType();
-
-                // get the next fid
-                LinkedList<FeatureId> fids =
-                        (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
-                FeatureId fid = fids.removeFirst();
+            for (TransactionElement element : elements) {
+                Insert current = (Insert) element;
+                List featureList = current.getFeatures();
+                for (Object o : featureList) {
+                    SimpleFeature feature = (SimpleFeature) o;
+                    SimpleFeatureType schema = feature.getFeatureType();
+
+                    // get the next fid
+                    LinkedList<FeatureId> fids =
+                            (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
+                    FeatureId fid = fids.removeFirst();
+
+                    response.addInsertedFeature(current.getHandle(), fid);
+                }
 
-                response.addInsertedFeature(insert.getHandle(), fid);
+                // update the insert counter
+                inserted += featureList.size();
             }
-
-            // update the insert counter
-            inserted += featureList.size();
         } catch (Exception e) {
             String msg = "Error performing insert: " + e.getMessage();
-            throw new WFSTransactionException(msg, e, insert.getHandle());
+            throw new WFSTransactionException(msg, e, failing.getHandle());
         }
 
         // update transaction summary
         response.setTotalInserted(BigInteger.valueOf(inserted));
     }
 
-    /** Checks that all features coordinates are within the expected coordinate range */
-    void checkFeatureCoordinatesRange(SimpleFeatureCollection collection)
-            throws PointOutsideEnvelopeException {
-        List types = collection.getSchema().getAttributeDescriptors();
-        try (SimpleFeatureIterator fi = collection.features()) {
-            while (fi.hasNext()) {
-                SimpleFeature f = fi.next();
-                for (int i = 0; i < types.size(); i++) {
-                    if (types.get(i) instanceof GeometryDescriptor) {
-                        GeometryDescriptor gat = (GeometryDescriptor) types.get(i);
-                        if (gat.getCoordinateReferenceSystem() != null) {
-                            Geometry geom = (Geometry) f.getAttribute(i);
-                            if (geom != null)
-                                JTS.checkCoordinatesRange(geom, gat.getCoordinateReferenceSystem());
-                        }
-                    }
+    /** Checks that the feature coordinates are within the expected coordinate range */
+    void checkFeatureCoordinatesRange(SimpleFeature f) throws PointOutsideEnvelopeException {
+        List types = f.getFeatureType().getAttributeDescriptors();
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i) instanceof GeometryDescriptor) {
+                GeometryDescriptor gat = (GeometryDescriptor) types.get(i);
+                if (gat.getCoordinateReferenceSystem() != null) {
+                    Geometry geom = (Geometry) f.getAttribute(i);
+                    if (geom != null)
+                        JTS.checkCoordinatesRange(geom, gat.getCoordinateReferenceSystem());
                 }
             }
         }
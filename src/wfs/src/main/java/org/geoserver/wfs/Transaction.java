@@ -288,13 +288,19 @@ public class Transaction {
         Exception exception = null;
 
         try {
-            for (Entry<TransactionElement, TransactionElementHandler>
-                    transactionElementTransactionElementHandlerEntry : elementHandlers.entrySet()) {
-                Entry entry = (Entry) transactionElementTransactionElementHandlerEntry;
-                TransactionElement element = (TransactionElement) entry.getKey();
-                TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
-
-                handler.execute(element, request, stores, result, multiplexer);
+            if (wfs.isBatchTransactions()) {
+                executeBatches(elementHandlers, request, stores, result, multiplexer);
+            } else {
+                for (Entry<TransactionElement, TransactionElementHandler>
+                        transactionElementTransactionElementHandlerEntry :
+                                elementHandlers.entrySet()) {
+                    Entry entry = (Entry) transactionElementTransactionElementHandlerEntry;
+                    TransactionElement element = (TransactionElement) entry.getKey();
+                    TransactionElementHandler handler =
+                            (TransactionElementHandler) entry.getValue();
+
+                    handler.execute(element, request, stores, result, multiplexer);
+                }
             }
         } catch (WFSTransactionException e) {
             LOGGER.log(Level.SEVERE, "Transaction failed", e);
@@ -443,6 +449,60 @@ public class Transaction {
         }
     }
 
+    /**
+     * Executes the elements in order, grouping runs of consecutive elements handled by the same
+     * {@link BatchTransactionElementHandler} into a single batch
+     */
+    @SuppressWarnings("rawtypes")
+    private void executeBatches(
+            Map<TransactionElement, TransactionElementHandler> elementHandlers,
+            TransactionRequest request,
+            Map<QName, FeatureStore> stores,
+            TransactionResponse result,
+            TransactionListener listener)
+            throws WFSTransactionException {
+        List<TransactionElement> batch = new ArrayList<>();
+        BatchTransactionElementHandler batchHandler = null;
+        for (Entry<TransactionElement, TransactionElementHandler> entry :
+                elementHandlers.entrySet()) {
+            TransactionElement element = entry.getKey();
+            TransactionElementHandler handler = entry.getValue();
+            if (handler == batchHandler
+                    && batchHandler.canBatch(batch.get(batch.size() - 1), element, request)) {
+                batch.add(element);
+                continue;
+            }
+
+            // the current batch is over
+            flushBatch(batch, batchHandler, request, stores, result, listener);
+            batch.clear();
+            batchHandler = null;
+            if (handler instanceof BatchTransactionElementHandler) {
+                batchHandler = (BatchTransactionElementHandler) handler;
+                batch.add(element);
+            } else {
+                handler.execute(element, request, stores, result, listener);
+            }
+        }
+        flushBatch(batch, batchHandler, request, stores, result, listener);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void flushBatch(
+            List<TransactionElement> batch,
+            BatchTransactionElementHandler handler,
+            TransactionRequest request,
+            Map<QName, FeatureStore> stores,
+            TransactionResponse result,
+            TransactionListener listener)
+            throws WFSTransactionException {
+        if (batch.size() == 1) {
+            handler.execute(batch.get(0), request, stores, result, listener);
+        } else if (batch.size() > 1) {
+            handler.executeBatch(batch, request, stores, result, listener);
+        }
+    }
+
     /** Looks up the element handlers to be used for each element */
     private Map<TransactionElement, TransactionElementHandler> gatherElementHandlers(
             TransactionRequest request) throws WFSTransactionException {
@@ -272,6 +272,48 @@ public interface WFSInfo extends ServiceInfo {
     /** Set the maximum number of features to be displayed in a layer preview */
     void setMaxNumberOfFeaturesForPreview(Integer maxNumberOfFeaturesForPreview);
 
+    /**
+     * Get the maximum number of queries of a single GetFeature request whose counts are computed
+     * concurrently, values lower than 2 keep them sequential. By default, 1.
+     *
+     * @return maxConcurrentQueries
+     */
+    int getMaxConcurrentQueries();
+
+    /** Set the maximum number of queries of a single GetFeature counted concurrently */
+    void setMaxConcurrentQueries(int maxConcurrentQueries);
+
+    /**
+     * Get the number of seconds the counts used for numberMatched are cached, values lower than 1
+     * disable the cache. By default, 0.
+     *
+     * @return countCacheTimeout
+     */
+    int getCountCacheTimeout();
+
+    /** Set the number of seconds the counts used for numberMatched are cached */
+    void setCountCacheTimeout(int countCacheTimeout);
+
+    /**
+     * Flag that determines if numberMatched is returned as unknown when its count is not cached,
+     * computing it in background for the following requests. Requires the count cache to be
+     * enabled, applies only to WFS 2.0 requests with results type "results". Default false.
+     */
+    boolean isAsyncNumberMatched();
+
+    /** Sets the flag that determines if numberMatched counts are computed in background */
+    void setAsyncNumberMatched(boolean asyncNumberMatched);
+
+    /**
+     * Flag that determines if consecutive transaction elements are executed in batches, e.g.,
+     * consecutive inserts as a single insert per feature type, with the transaction listeners
+     * notified once per batch. Default false.
+     */
+    boolean isBatchTransactions();
+
+    /** Sets the flag that determines if consecutive transaction elements are batched */
+    void setBatchTransactions(boolean batchTransactions);
+
     /** The srs's that the WFS service will advertise in the capabilities document */
     List<String> getSRS();
 
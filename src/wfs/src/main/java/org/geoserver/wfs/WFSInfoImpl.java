@@ -125,6 +125,50 @@ public class WFSInfoImpl extends ServiceInfoImpl implements WFSInfo {
         getMetadata().put("maxNumberOfFeaturesForPreview", maxNumberOfFeaturesForPreview);
     }
 
+    @Override
+    public int getMaxConcurrentQueries() {
+        Integer i = getMetadata().get("maxConcurrentQueries", Integer.class);
+        return i != null ? i : 1;
+    }
+
+    @Override
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        getMetadata().put("maxConcurrentQueries", maxConcurrentQueries);
+    }
+
+    @Override
+    public int getCountCacheTimeout() {
+        Integer i = getMetadata().get("countCacheTimeout", Integer.class);
+        return i != null ? i : 0;
+    }
+
+    @Override
+    public void setCountCacheTimeout(int countCacheTimeout) {
+        getMetadata().put("countCacheTimeout", countCacheTimeout);
+    }
+
+    @Override
+    public boolean isAsyncNumberMatched() {
+        Boolean b = getMetadata().get("asyncNumberMatched", Boolean.class);
+        return b != null ? b : false;
+    }
+
+    @Override
+    public void setAsyncNumberMatched(boolean asyncNumberMatched) {
+        getMetadata().put("asyncNumberMatched", asyncNumberMatched);
+    }
+
+    @Override
+    public boolean isBatchTransactions() {
+        Boolean b = getMetadata().get("batchTransactions", Boolean.class);
+        return b != null ? b : false;
+    }
+
+    @Override
+    public void setBatchTransactions(boolean batchTransactions) {
+        getMetadata().put("batchTransactions", batchTransactions);
+    }
+
     @Override
     public List<String> getSRS() {
         return srs;
@@ -5,12 +5,15 @@
  */
 package org.geoserver.wfs.json;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import net.sf.json.JSONException;
+import net.sf.json.JSONString;
 import net.sf.json.util.JSONBuilder;
+import net.sf.json.util.JSONUtils;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Converters;
 import org.locationtech.jts.geom.CoordinateSequence;
@@ -33,14 +36,25 @@ import org.locationtech.jts.geom.Polygon;
  */
 public class GeoJSONBuilder extends JSONBuilder {
 
+    /** Empty value, used to let the builder know a value has been written directly to the output */
+    private static final JSONString WRITTEN_VALUE = () -> "";
+
     private CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
 
     private int numDecimals = 6;
 
     private boolean encodeMeasures = false;
 
+    private final Writer out;
+
+    /** Reused to format the ordinates, avoids allocating objects for each one of them */
+    private final StringBuilder ordinate = new StringBuilder(32);
+
+    private final char[] ordinateChars = new char[32];
+
     public GeoJSONBuilder(Writer w) {
         super(w);
+        this.out = w;
     }
 
     /**
@@ -60,50 +74,12 @@ public class GeoJSONBuilder extends JSONBuilder {
 
         if (geometryType != MULTIGEOMETRY) {
             this.key("coordinates");
-
-            switch (geometryType) {
-                case POINT:
-                    Point point = (Point) geometry;
-                    writeCoordinate(point);
-                    break;
-                case LINESTRING:
-                    writeCoordinates(((LineString) geometry).getCoordinateSequence());
-                    break;
-                case MULTIPOINT:
-                    this.array();
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinate((Point) geometry.getGeometryN(i));
-                    }
-                    this.endArray();
-                    break;
-                case POLYGON:
-                    writePolygon((Polygon) geometry);
-
-                    break;
-
-                case MULTILINESTRING:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writeCoordinates(
-                                ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
-                    }
-
-                    this.endArray();
-
-                    break;
-
-                case MULTIPOLYGON:
-                    this.array();
-
-                    for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
-                        writePolygon((Polygon) geometry.getGeometryN(i));
-                    }
-
-                    this.endArray();
-
-                    break;
+            try {
+                writeCoordinates(geometry, geometryType);
+            } catch (IOException e) {
+                throw new JSONException(e);
             }
+            writtenValue();
         } else {
             writeGeomCollection((GeometryCollection) geometry);
         }
@@ -111,6 +87,64 @@ public class GeoJSONBuilder extends JSONBuilder {
         return this.endObject();
     }
 
+    /**
+     * Writes the coordinates array of a geometry straight to the output, bypassing the builder, as
+     * it allocates a few objects for each ordinate
+     */
+    private void writeCoordinates(Geometry geometry, int geometryType) throws IOException {
+        switch (geometryType) {
+            case POINT:
+                writeCoordinate((Point) geometry);
+                break;
+            case LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case MULTIPOINT:
+                out.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeCoordinate((Point) geometry.getGeometryN(i));
+                }
+                out.write(']');
+                break;
+            case POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case MULTILINESTRING:
+                out.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeCoordinates(
+                            ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+                }
+                out.write(']');
+                break;
+            case MULTIPOLYGON:
+                out.write('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                out.write(']');
+                break;
+        }
+    }
+
+    /**
+     * Informs the builder that a value following a key has been written directly to the output. It
+     * must be called right after the key, when the builder does not need to add a separator before
+     * the value.
+     */
+    private void writtenValue() {
+        super.value(WRITTEN_VALUE);
+    }
+
     private JSONBuilder writeGeomCollection(GeometryCollection collection) {
         this.key("geometries");
         this.array();
@@ -128,13 +162,12 @@ public class GeoJSONBuilder extends JSONBuilder {
      * otherwise measures will be ignored.
      *
      * @param point the point whose coordinate will be encoded
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinate(Point point) throws JSONException {
+    private void writeCoordinate(Point point) throws IOException {
         CoordinateSequence coordinates = point.getCoordinateSequence();
         // let's see if we need to encode measures, NaN values will not be encoded
         double m = encodeMeasures ? coordinates.getM(0) : Double.NaN;
-        return writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
+        writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
     }
 
     /**
@@ -143,20 +176,22 @@ public class GeoJSONBuilder extends JSONBuilder {
      * encoded, otherwise measures will be ignored.
      *
      * @param coordinates the coordinates sequence that will be encoded
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinates(CoordinateSequence coordinates) throws JSONException {
+    private void writeCoordinates(CoordinateSequence coordinates) throws IOException {
         // start encoding the JSON array of coordinates
-        this.array();
+        out.write('[');
         // each coordinate will be encoded has an array of ordinates
         for (int i = 0; i < coordinates.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
             // let's see if we need to encode measures, NaN values will not be encoded
             double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
             // encode the coordinate ordinates to the JSON output
             writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
         }
         // we are done with the array
-        return this.endArray();
+        out.write(']');
     }
 
     /**
@@ -171,22 +206,23 @@ public class GeoJSONBuilder extends JSONBuilder {
      * @param y X ordinate
      * @param z Z ordinate, can be {@code NaN}
      * @param m M ordinate, can be {@code NaN}
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinate(double x, double y, double z, double m) {
+    private void writeCoordinate(double x, double y, double z, double m) throws IOException {
         // start encoding JSON array
-        this.array();
+        out.write('[');
         // adjust the order of X and Y ordinates if needed
         if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
             // encode latitude first and then longitude
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
                 roundedValue(y);
+                out.write(',');
             }
             roundedValue(x);
         } else {
             // encode longitude first and then latitude
             roundedValue(x);
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
+                out.write(',');
                 roundedValue(y);
             }
         }
@@ -194,18 +230,43 @@ public class GeoJSONBuilder extends JSONBuilder {
         z = Double.isNaN(z) && !Double.isNaN(m) ? 0 : z;
         // encode Z value if available
         if (!Double.isNaN(z)) {
+            out.write(',');
             roundedValue(z);
         }
         // encode M value if available
         if (!Double.isNaN(m)) {
+            out.write(',');
             roundedValue(m);
         }
         // we are done with the array
-        return this.endArray();
+        out.write(']');
     }
 
-    private void roundedValue(double value) {
-        super.value(RoundingUtil.round(value, numDecimals));
+    /**
+     * Writes the rounded value the same way the builder would, that is, as {@link
+     * Double#toString(double)} does, minus the trailing zeros and decimal point, but without
+     * allocating objects
+     */
+    private void roundedValue(double value) throws IOException {
+        double rounded = RoundingUtil.round(value, numDecimals);
+        if (Double.isNaN(rounded) || Double.isInfinite(rounded)) {
+            // let the builder report the invalid number
+            JSONUtils.testValidity(rounded);
+        }
+        StringBuilder sb = this.ordinate;
+        sb.setLength(0);
+        sb.append(rounded);
+        int length = sb.length();
+        if (sb.indexOf("E") < 0) {
+            while (sb.charAt(length - 1) == '0') {
+                length--;
+            }
+            if (sb.charAt(length - 1) == '.') {
+                length--;
+            }
+        }
+        sb.getChars(0, length, ordinateChars, 0);
+        out.write(ordinateChars, 0, length);
     }
 
     /**
@@ -216,19 +277,29 @@ public class GeoJSONBuilder extends JSONBuilder {
      */
     protected JSONBuilder writeBoundingBox(Envelope env) {
         this.key("bbox");
-        this.array();
-        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
-            roundedValue(env.getMinY());
-            roundedValue(env.getMinX());
-            roundedValue(env.getMaxY());
-            roundedValue(env.getMaxX());
-        } else {
-            roundedValue(env.getMinX());
-            roundedValue(env.getMinY());
-            roundedValue(env.getMaxX());
-            roundedValue(env.getMaxY());
+        try {
+            out.write('[');
+            if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+                writeOrdinates(env.getMinY(), env.getMinX());
+                out.write(',');
+                writeOrdinates(env.getMaxY(), env.getMaxX());
+            } else {
+                writeOrdinates(env.getMinX(), env.getMinY());
+                out.write(',');
+                writeOrdinates(env.getMaxX(), env.getMaxY());
+            }
+            out.write(']');
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        return this.endArray();
+        writtenValue();
+        return this;
+    }
+
+    private void writeOrdinates(double first, double second) throws IOException {
+        roundedValue(first);
+        out.write(',');
+        roundedValue(second);
     }
 
     /**
@@ -236,16 +307,16 @@ public class GeoJSONBuilder extends JSONBuilder {
      *
      * @param geometry The polygon to write
      */
-    private void writePolygon(Polygon geometry) throws JSONException {
-        this.array();
+    private void writePolygon(Polygon geometry) throws IOException {
+        out.write('[');
         writeCoordinates(geometry.getExteriorRing().getCoordinateSequence());
 
         for (int i = 0, ii = geometry.getNumInteriorRing(); i < ii; i++) {
+            out.write(',');
             writeCoordinates(geometry.getInteriorRingN(i).getCoordinateSequence());
         }
 
-        this.endArray(); // end the linear ring
-        // this.endObject(); //end the
+        out.write(']'); // end the linear ring
     }
 
     /** Internal representation of OGC SF Point */
@@ -53,6 +53,12 @@ public class GML32OutputFormat extends GML3OutputFormat {
 
     GeoServer geoServer;
 
+    /**
+     * Shared among requests like the GML3 one held by the WFS configuration, it caches the lookups
+     * in the GML 3.2 schema
+     */
+    final FeatureTypeSchemaBuilder schemaBuilder;
+
     protected static DOMSource xslt;
 
     static {
@@ -76,12 +82,14 @@ public class GML32OutputFormat extends GML3OutputFormat {
     public GML32OutputFormat(GeoServer geoServer, WFSConfiguration configuration) {
         super(new HashSet<>(FORMATS), geoServer, configuration);
         this.geoServer = geoServer;
+        this.schemaBuilder = new FeatureTypeSchemaBuilder.GML32(geoServer);
     }
 
     protected GML32OutputFormat(
             GeoServer geoServer, Set<String> formats, WFSConfiguration configuration) {
         super(formats, geoServer, configuration);
         this.geoServer = geoServer;
+        this.schemaBuilder = new FeatureTypeSchemaBuilder.GML32(geoServer);
     }
 
     @Override
@@ -93,8 +101,6 @@ public class GML32OutputFormat extends GML3OutputFormat {
     protected Configuration customizeConfiguration(
             Configuration configuration, Map<String, Set<ResourceInfo>> resources, Object request) {
 
-        FeatureTypeSchemaBuilder schemaBuilder = new FeatureTypeSchemaBuilder.GML32(geoServer);
-
         ApplicationSchemaXSD2 xsd = new ApplicationSchemaXSD2(schemaBuilder);
         xsd.setBaseURL(GetFeatureRequest.adapt(request).getBaseURL());
         xsd.setResources(resources);
@@ -0,0 +1,190 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory;
+import org.w3c.dom.Document;
+
+public class CountCacheTest extends WFSTestSupport {
+
+    static final String SEVEN_REQUEST =
+            "wfs?request=GetFeature&version=2.0.0&service=wfs&typeNames=cdf:Seven&count=1";
+
+    CountCache cache;
+
+    @Before
+    public void setup() {
+        cache = CountCache.get();
+        assertNotNull(cache);
+        cache.clear();
+    }
+
+    @After
+    public void cleanup() {
+        WFSInfo wfs = getWFS();
+        wfs.setCountCacheTimeout(0);
+        wfs.setAsyncNumberMatched(false);
+        getGeoServer().save(wfs);
+        cache.clear();
+        logout();
+    }
+
+    private void setCountCache(int timeout, boolean async) {
+        WFSInfo wfs = getWFS();
+        wfs.setCountCacheTimeout(timeout);
+        wfs.setAsyncNumberMatched(async);
+        getGeoServer().save(wfs);
+    }
+
+    private String getNumberMatched(String request) throws Exception {
+        Document dom = getAsDOM(request);
+        return dom.getDocumentElement().getAttribute("numberMatched");
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCachedCount() throws Exception {
+        setCountCache(600, false);
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(1, cache.size());
+
+        // the next pages use the same count
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST + "&startIndex=1"));
+        assertEquals(1, cache.size());
+
+        // a different filter is counted separately
+        assertEquals("1", getNumberMatched(SEVEN_REQUEST + "&featureId=Seven.1"));
+        assertEquals(2, cache.size());
+
+        // modifying the feature type drops its counts
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(getLayerId(MockData.SEVEN));
+        String title = typeInfo.getTitle();
+        typeInfo.setTitle("Modified");
+        getCatalog().save(typeInfo);
+        assertEquals(0, cache.size());
+        typeInfo.setTitle(title);
+        getCatalog().save(typeInfo);
+    }
+
+    @Test
+    public void testFilterKey() throws Exception {
+        FeatureTypeInfo typeInfo = getCatalog().getFeatureTypeByName(getLayerId(MockData.SEVEN));
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Query caseSensitive =
+                new Query(null, ff.equal(ff.property("name"), ff.literal("abc"), true));
+        Query caseInsensitive =
+                new Query(null, ff.equal(ff.property("name"), ff.literal("abc"), false));
+        Query sameAsFirst =
+                new Query(null, ff.equal(ff.property("name"), ff.literal("abc"), true));
+
+        // the filters are the same in CQL, but count differently
+        assertNotEquals(
+                cache.getKey(typeInfo, caseSensitive), cache.getKey(typeInfo, caseInsensitive));
+        assertEquals(cache.getKey(typeInfo, caseSensitive), cache.getKey(typeInfo, sameAsFirst));
+    }
+
+    @Test
+    public void testAsyncNumberMatched() throws Exception {
+        setCountCache(600, true);
+        assertEquals("unknown", getNumberMatched(SEVEN_REQUEST));
+
+        // wait for the background count
+        for (int i = 0; i < 100 && cache.size() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, cache.size());
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+    }
+
+    @Test
+    public void testAsyncIgnoresHits() throws Exception {
+        setCountCache(600, true);
+        // hits requests are all about the count, it's computed right away
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST + "&resultType=hits"));
+    }
+
+    @Test
+    public void testAsyncIgnoresWFS11() throws Exception {
+        setCountCache(600, true);
+        // WFS 1.1 has no way to return an unknown count
+        Document dom =
+                getAsDOM(
+                        "wfs?request=GetFeature&version=1.1.0&service=wfs"
+                                + "&typeName=cdf:Seven&resultType=hits");
+        assertEquals("7", dom.getDocumentElement().getAttribute("numberOfFeatures"));
+    }
+
+    @Test
+    public void testTransactionInvalidates() throws Exception {
+        setCountCache(600, false);
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals("1", getNumberMatched(SEVEN_REQUEST + "&featureId=Seven.1"));
+        assertEquals(2, cache.size());
+
+        // an update leaving the data as is, still drops all the counts of the feature type
+        String update =
+                "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                        + "xmlns:cdf=\""
+                        + MockData.CDF_URI
+                        + "\" "
+                        + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                        + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                        + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                        + "<wfs:Update typeName=\"cdf:Seven\">"
+                        + "<wfs:Property>"
+                        + "<wfs:Name>pointProperty</wfs:Name>"
+                        + "<wfs:Value>"
+                        + "<gml:Point srsName=\"EPSG:32615\"><gml:pos>500050 500050</gml:pos>"
+                        + "</gml:Point>"
+                        + "</wfs:Value>"
+                        + "</wfs:Property>"
+                        + "<ogc:Filter><ogc:FeatureId fid=\"Seven.1\"/></ogc:Filter>"
+                        + "</wfs:Update>"
+                        + "</wfs:Transaction>";
+        Document dom = postAsDOM("wfs", update);
+        assertEquals("1", dom.getElementsByTagName("wfs:totalUpdated").item(0).getTextContent());
+        assertEquals(0, cache.size());
+
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testUserSeparation() throws Exception {
+        setCountCache(600, false);
+
+        // same roles, but the security limits might differ
+        login("alice", "pwd", "ROLE_WFS");
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(1, cache.size());
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST + "&startIndex=1"));
+        assertEquals(1, cache.size());
+
+        login("bob", "pwd", "ROLE_WFS");
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(2, cache.size());
+
+        // and different roles for the same user
+        login("bob", "pwd", "ROLE_WFS", "ROLE_OTHER");
+        assertEquals("7", getNumberMatched(SEVEN_REQUEST));
+        assertEquals(3, cache.size());
+    }
+}
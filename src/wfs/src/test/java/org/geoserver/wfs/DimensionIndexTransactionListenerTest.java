@@ -0,0 +1,138 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.impl.DimensionInfoImpl;
+import org.geoserver.catalog.util.DimensionDomainIndex;
+import org.geoserver.catalog.util.DimensionDomainIndex.Domain;
+import org.geoserver.catalog.util.DimensionDomainIndex.DomainLoader;
+import org.geoserver.data.test.CiteTestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class DimensionIndexTransactionListenerTest extends WFSTestSupport {
+
+    static final String DIMENSION = ResourceInfo.CUSTOM_DIMENSION_PREFIX + "id";
+
+    static final DomainLoader UNEXPECTED =
+            () -> {
+                throw new AssertionError("The domain should have been cached");
+            };
+
+    DimensionDomainIndex index;
+
+    @Before
+    public void setupIndex() {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo lines = catalog.getFeatureTypeByName(getLayerId(CiteTestData.LINES));
+        DimensionInfo dimension = new DimensionInfoImpl();
+        dimension.setEnabled(true);
+        dimension.setAttribute("id");
+        lines.getMetadata().put(DIMENSION, dimension);
+        catalog.save(lines);
+
+        index = applicationContext.getBean(DimensionDomainIndex.class);
+        index.setEnabled(true);
+    }
+
+    @After
+    public void cleanupIndex() {
+        index.setEnabled(false);
+        FeatureTypeInfo lines = getLines();
+        lines.getMetadata().remove(DIMENSION);
+        getCatalog().save(lines);
+    }
+
+    private FeatureTypeInfo getLines() {
+        return getCatalog().getFeatureTypeByName(getLayerId(CiteTestData.LINES));
+    }
+
+    private Domain getDomain(DomainLoader loader) throws Exception {
+        return index.getDomain(getLines(), "id", loader);
+    }
+
+    @Test
+    public void testInsertAddsValues() throws Exception {
+        Domain domain = getDomain(() -> Arrays.asList("t0001"));
+
+        Document dom = postAsDOM("wfs", getTransaction(getLinesInsert("t0002")));
+        assertEquals("wfs:WFS_TransactionResponse", dom.getDocumentElement().getNodeName());
+        assertEquals(1, dom.getElementsByTagName("wfs:SUCCESS").getLength());
+
+        // the new value got added to the cached domain
+        assertSame(domain, getDomain(UNEXPECTED));
+        assertEquals(Arrays.asList("t0001", "t0002"), list(domain));
+    }
+
+    @Test
+    public void testDeleteInvalidates() throws Exception {
+        Domain domain = getDomain(() -> Arrays.asList("t0001", "t0003"));
+
+        postAsDOM("wfs", getTransaction(getLinesInsert("t0003")));
+        assertSame(domain, getDomain(UNEXPECTED));
+
+        postAsDOM("wfs", getTransaction(getLinesDelete("t0003")));
+        // the removed value might have been the last one, the domain has to be reloaded
+        Domain reloaded = getDomain(() -> Arrays.asList("t0001"));
+        assertNotSame(domain, reloaded);
+        assertEquals(Arrays.asList("t0001"), list(reloaded));
+    }
+
+    private List<Object> list(Domain domain) {
+        return Arrays.asList(domain.getValues().toArray());
+    }
+
+    private String getTransaction(String elements) {
+        return "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                + elements
+                + "</wfs:Transaction>";
+    }
+
+    private String getLinesInsert(String id) {
+        return "<wfs:Insert> "
+                + "<cgf:Lines>"
+                + "<cgf:lineStringProperty>"
+                + "<gml:LineString>"
+                + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                + "</gml:coordinates>"
+                + "</gml:LineString>"
+                + "</cgf:lineStringProperty>"
+                + "<cgf:id>"
+                + id
+                + "</cgf:id>"
+                + "</cgf:Lines>"
+                + "</wfs:Insert>";
+    }
+
+    private String getLinesDelete(String id) {
+        return "<wfs:Delete typeName=\"cgf:Lines\"> "
+                + "<ogc:Filter> "
+                + "<ogc:PropertyIsEqualTo> "
+                + "<ogc:PropertyName>cgf:id</ogc:PropertyName> "
+                + "<ogc:Literal>"
+                + id
+                + "</ogc:Literal> "
+                + "</ogc:PropertyIsEqualTo> "
+                + "</ogc:Filter> "
+                + "</wfs:Delete>";
+    }
+}
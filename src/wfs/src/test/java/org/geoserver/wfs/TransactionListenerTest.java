@@ -17,6 +17,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.opengis.feature.Feature;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  * This test must be run with the server configured with the wfs 1.0 cite configuration, with data
@@ -179,4 +181,132 @@ public class TransactionListenerTest extends WFSTestSupport {
 
         assertEquals(2, listener.features.size());
     }
+
+    @Test
+    public void testBatchedInsertDelete() throws Exception {
+        WFSInfo wfs = getWFS();
+        wfs.setBatchTransactions(true);
+        getGeoServer().save(wfs);
+        try {
+            // two inserts, executed as a single batch
+            String insert =
+                    "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                            + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                            + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                            + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                            + getLinesInsert("t0010")
+                            + getLinesInsert("t0011")
+                            + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", insert);
+            assertEquals(2, listener.events.size());
+            assertEquals(TransactionEventType.PRE_INSERT, listener.events.get(0).getType());
+            assertEquals(TransactionEventType.POST_INSERT, listener.events.get(1).getType());
+            // both features in the pre-insert and post-insert events
+            assertEquals(4, listener.features.size());
+
+            // both fids reported back
+            NodeList fids = dom.getElementsByTagName("ogc:FeatureId");
+            assertEquals(2, fids.getLength());
+
+            // two feature id deletes, merged in a single one
+            listener.clear();
+            String delete =
+                    "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                            + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                            + "xmlns:wfs=\"http://www.opengis.net/wfs\"> "
+                            + getLinesDelete(((Element) fids.item(0)).getAttribute("fid"))
+                            + getLinesDelete(((Element) fids.item(1)).getAttribute("fid"))
+                            + "</wfs:Transaction>";
+            postAsDOM("wfs", delete);
+            assertEquals(1, listener.events.size());
+            assertEquals(TransactionEventType.PRE_DELETE, listener.events.get(0).getType());
+            assertEquals(2, listener.features.size());
+        } finally {
+            wfs.setBatchTransactions(false);
+            getGeoServer().save(wfs);
+        }
+    }
+
+    @Test
+    public void testBatchedMixedInserts() throws Exception {
+        WFSInfo wfs = getWFS();
+        wfs.setBatchTransactions(true);
+        getGeoServer().save(wfs);
+        try {
+            // only the consecutive inserts of the same type are batched
+            String insert =
+                    "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                            + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                            + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                            + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                            + getLinesInsert("t0020")
+                            + getLinesInsert("t0021")
+                            + "<wfs:Insert handle=\"points\"> "
+                            + "<cgf:Points>"
+                            + "<cgf:pointProperty>"
+                            + "<gml:Point>"
+                            + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                            + "494475.71056415,5433016.8189323"
+                            + "</gml:coordinates>"
+                            + "</gml:Point>"
+                            + "</cgf:pointProperty>"
+                            + "<cgf:id>t0022</cgf:id>"
+                            + "</cgf:Points>"
+                            + "</wfs:Insert>"
+                            + getLinesInsert("t0023")
+                            + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", insert);
+            assertEquals(6, listener.events.size());
+            assertEquals(CiteTestData.LINES, listener.events.get(0).getLayerName());
+            assertEquals(CiteTestData.POINTS, listener.events.get(2).getLayerName());
+            assertEquals(CiteTestData.LINES, listener.events.get(4).getLayerName());
+            // the first batch has both lines, in the pre-insert and post-insert events
+            assertEquals(TransactionEventType.PRE_INSERT, listener.events.get(0).getType());
+            assertEquals(TransactionEventType.POST_INSERT, listener.events.get(1).getType());
+            assertEquals(8, listener.features.size());
+            assertEquals("t0020", listener.features.get(0).getProperty("id").getValue());
+            assertEquals("t0021", listener.features.get(1).getProperty("id").getValue());
+
+            // all fids reported back, in request order
+            NodeList fids = dom.getElementsByTagName("ogc:FeatureId");
+            assertEquals(4, fids.getLength());
+            assertTrue(((Element) fids.item(0)).getAttribute("fid").startsWith("Lines"));
+            assertTrue(((Element) fids.item(1)).getAttribute("fid").startsWith("Lines"));
+            assertTrue(((Element) fids.item(2)).getAttribute("fid").startsWith("Points"));
+            assertTrue(((Element) fids.item(3)).getAttribute("fid").startsWith("Lines"));
+        } finally {
+            wfs.setBatchTransactions(false);
+            getGeoServer().save(wfs);
+        }
+    }
+
+    private String getLinesInsert(String id) {
+        return "<wfs:Insert> "
+                + "<cgf:Lines>"
+                + "<cgf:lineStringProperty>"
+                + "<gml:LineString>"
+                + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                + "</gml:coordinates>"
+                + "</gml:LineString>"
+                + "</cgf:lineStringProperty>"
+                + "<cgf:id>"
+                + id
+                + "</cgf:id>"
+                + "</cgf:Lines>"
+                + "</wfs:Insert>";
+    }
+
+    private String getLinesDelete(String fid) {
+        return "<wfs:Delete typeName=\"cgf:Lines\"> "
+                + "<ogc:Filter><ogc:FeatureId fid=\""
+                + fid
+                + "\"/></ogc:Filter>"
+                + "</wfs:Delete>";
+    }
 }
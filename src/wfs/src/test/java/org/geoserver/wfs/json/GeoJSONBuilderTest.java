@@ -16,10 +16,14 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
 import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
+import net.sf.json.util.JSONBuilder;
+import org.geotools.referencing.CRS;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
@@ -253,6 +257,51 @@ public class GeoJSONBuilderTest {
                 writer.toString());
     }
 
+    @Test
+    public void testOrdinatesSameAsBuilder() throws Exception {
+        double[] values = {
+            0, -0d, 1, -1, 0.5, 1e-3, 1.5e-4, 123456.789, 12345678.9, 1.23e20, -45.123456789, 1e300
+        };
+        for (int decimals = 0; decimals <= 10; decimals++) {
+            for (double value : values) {
+                StringWriter expected = new StringWriter();
+                JSONBuilder reference = new JSONBuilder(expected);
+                reference.array().value(RoundingUtil.round(value, decimals)).endArray();
+
+                StringWriter actual = new StringWriter();
+                GeoJSONBuilder geoJSON = new GeoJSONBuilder(actual);
+                geoJSON.setNumberOfDecimals(decimals);
+                geoJSON.writeGeom(new GeometryFactory().createPoint(new Coordinate(value, 1)));
+
+                String ordinates = expected.toString().replace("]", ",1]");
+                assertEquals(
+                        "{\"type\":\"Point\",\"coordinates\":" + ordinates + "}",
+                        actual.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteBoundingBox() throws Exception {
+        builder.setAxisOrder(CRS.AxisOrder.NORTH_EAST);
+        builder.array();
+        builder.writeGeom(new WKTReader().read("MULTIPOINT((1 2),(3 4))"));
+        builder.object();
+        builder.writeBoundingBox(new Envelope(1, 3, 2, 4));
+        builder.key("id").value("f1");
+        builder.endObject();
+        builder.endArray();
+        assertEquals(
+                "[{\"type\":\"MultiPoint\",\"coordinates\":[[2,1],[4,3]]},"
+                        + "{\"bbox\":[2,1,4,3],\"id\":\"f1\"}]",
+                writer.toString());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testWriteNonFiniteOrdinate() throws Exception {
+        builder.writeGeom(new GeometryFactory().createPoint(new Coordinate(Double.NaN, 1)));
+    }
+
     @Test
     public void testWriteStrList() throws Exception {
         final List<String> list = Arrays.asList("a", "b", "c", "d");
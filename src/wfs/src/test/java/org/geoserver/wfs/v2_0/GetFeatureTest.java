@@ -21,6 +21,7 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
 import javax.xml.namespace.QName;
 import org.custommonkey.xmlunit.XMLAssert;
+import org.custommonkey.xmlunit.XMLUnit;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.config.GeoServer;
@@ -830,6 +831,43 @@ public class GetFeatureTest extends WFS20TestSupport {
         }
     }
 
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        String base = "wfs?request=GetFeature&version=2.0.0&service=wfs&typeNames=";
+        String[] requests = {
+            base + "cdf:Fifteen,cdf:Seven",
+            base + "cdf:Seven,cdf:Fifteen&count=10",
+            base + "cdf:Fifteen,cdf:Seven&count=15",
+            base + "cdf:Seven,cdf:Fifteen,cdf:Other&resultType=hits",
+            base + "cdf:Seven,cdf:Fifteen&startIndex=3"
+        };
+        WFSInfo wfs = getWFS();
+        for (String request : requests) {
+            String expected = summarize(getAsDOM(request));
+            try {
+                wfs.setMaxConcurrentQueries(4);
+                getGeoServer().save(wfs);
+                assertEquals(request, expected, summarize(getAsDOM(request)));
+            } finally {
+                wfs.setMaxConcurrentQueries(1);
+                getGeoServer().save(wfs);
+            }
+        }
+    }
+
+    /** Returns the matched and returned counts, and the ids of the features in the response */
+    private String summarize(Document dom) throws Exception {
+        Element root = dom.getDocumentElement();
+        StringBuilder sb = new StringBuilder();
+        sb.append(root.getAttribute("numberMatched"));
+        sb.append("/").append(root.getAttribute("numberReturned"));
+        NodeList features = XMLUnit.newXpathEngine().getMatchingNodes("//*[@gml:id]", dom);
+        for (int i = 0; i < features.getLength(); i++) {
+            sb.append(" ").append(((Element) features.item(i)).getAttribute("gml:id"));
+        }
+        return sb.toString();
+    }
+
     @Test
     public void testWithSRS() throws Exception {
         String xml =
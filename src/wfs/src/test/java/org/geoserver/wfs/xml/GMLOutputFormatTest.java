@@ -6,9 +6,14 @@
 package org.geoserver.wfs.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import javax.xml.namespace.QName;
+import org.eclipse.xsd.XSDElementDeclaration;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.MockData;
 import org.geoserver.wfs.WFSTestSupport;
@@ -226,4 +231,36 @@ public class GMLOutputFormatTest extends WFSTestSupport {
                 "0.0000 -1.0000 1.0000 0.0000 0.0000 1.0000 -1.0000 0.0000 0.0000 -1.0000",
                 dom.getElementsByTagName("gml:posList").item(0).getTextContent());
     }
+
+    @Test
+    public void testGML32SharedSchemaBuilder() throws Exception {
+        GML32OutputFormat format =
+                applicationContext.getBean("gml32OutputFormat", GML32OutputFormat.class);
+        FeatureTypeSchemaBuilder builder = format.schemaBuilder;
+
+        Document dom = getAsDOM(getGML32Request(MockData.BASIC_POLYGONS));
+        assertEquals("FeatureCollection", dom.getDocumentElement().getLocalName());
+        assertEquals(3, dom.getElementsByTagName("cite:BasicPolygons").getLength());
+        XSDElementDeclaration featureElement = builder.featureSubGroupElement;
+
+        // the builder and its GML 3.2 lookups are reused, without leaking the previous request
+        dom = getAsDOM(getGML32Request(MockData.BUILDINGS));
+        assertSame(builder, format.schemaBuilder);
+        if (featureElement != null) {
+            assertSame(featureElement, builder.featureSubGroupElement);
+        }
+        assertEquals("FeatureCollection", dom.getDocumentElement().getLocalName());
+        assertEquals(2, dom.getElementsByTagName("cite:Buildings").getLength());
+        assertEquals(0, dom.getElementsByTagName("cite:BasicPolygons").getLength());
+        String schemaLocation = dom.getDocumentElement().getAttribute("xsi:schemaLocation");
+        assertTrue(schemaLocation.contains("Buildings"));
+        assertFalse(schemaLocation.contains("BasicPolygons"));
+    }
+
+    private String getGML32Request(QName typeName) {
+        return "wfs?request=getfeature&version=2.0.0&outputFormat=gml32&typename="
+                + typeName.getPrefix()
+                + ":"
+                + typeName.getLocalPart();
+    }
 }
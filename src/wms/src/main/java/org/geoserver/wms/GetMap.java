@@ -15,6 +15,7 @@ import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.catalog.LayerInfo;
@@ -24,6 +25,7 @@ import org.geoserver.ows.Dispatcher;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.map.MetatileMapOutputFormat;
+import org.geoserver.wms.map.PrefetchingFeatureSource;
 import org.geoserver.wms.map.RenderedImageMapOutputFormat;
 import org.geotools.coverage.grid.io.GridCoverage2DReader;
 import org.geotools.data.FeatureSource;
@@ -41,10 +43,7 @@ import org.geotools.ows.wms.map.WMSLayer;
 import org.geotools.ows.wmts.WebMapTileServer;
 import org.geotools.ows.wmts.map.WMTSMapLayer;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.geotools.renderer.lite.MetaBufferEstimator;
 import org.geotools.styling.FeatureTypeConstraint;
-import org.geotools.styling.FeatureTypeStyle;
-import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.geotools.util.factory.GeoTools;
 import org.geotools.util.factory.Hints;
@@ -203,6 +202,25 @@ public class GetMap {
         return executeInternal(mapContent, request, delegate, times, elevations);
     }
 
+    /**
+     * Wraps the feature source so that features are read in a background thread, ahead of the
+     * renderer, if pipelined loading is enabled and the map is rendered by the streaming renderer
+     */
+    private FeatureSource<? extends FeatureType, ? extends Feature> prefetchFeatures(
+            FeatureSource<? extends FeatureType, ? extends Feature> source,
+            GetMapOutputFormat delegate) {
+        int queueSize = wms.getPipelinedLoadingQueueSize();
+        ExecutorService pool = DefaultWebMapService.getRenderingPool();
+        if (queueSize > 0
+                && pool != null
+                && source instanceof SimpleFeatureSource
+                && (delegate instanceof RenderedImageMapOutputFormat
+                        || delegate instanceof MetatileMapOutputFormat)) {
+            return new PrefetchingFeatureSource((SimpleFeatureSource) source, pool, queueSize);
+        }
+        return source;
+    }
+
     /**
      * Actually computes the WebMap, either in a single shot, or for a particular time/elevation
      * value should there be a list of them
@@ -324,6 +342,8 @@ public class GetMap {
                         validateSort(source, layerSort, mapLayerInfo);
                     }
 
+                    source = prefetchFeatures(source, delegate);
+
                     // NOTE for the feature. Here there was some code that
                     // sounded like:
                     // * get the bounding box from feature source
@@ -624,7 +644,10 @@ public class GetMap {
                 int layerBuffer = layerBuffers[i];
                 if (layerBuffer == 0) {
                     layerBuffer =
-                            computeLayerBuffer(map.layers().get(i).getStyle(), scaleDenominator);
+                            computeLayerBuffer(
+                                    map.layers().get(i).getStyle(),
+                                    scaleDenominator,
+                                    map.getRequest());
                 }
                 if (layerBuffer > buffer) {
                     buffer = layerBuffer;
@@ -636,20 +659,9 @@ public class GetMap {
     }
 
     /** Computes the rendering buffer for this layer */
-    static int computeLayerBuffer(Style style, double scaleDenominator) {
-        final double TOLERANCE = 1e-6;
-        MetaBufferEstimator estimator = new MetaBufferEstimator();
-        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
-            for (Rule rule : fts.rules()) {
-                if (((rule.getMinScaleDenominator() - TOLERANCE) <= scaleDenominator)
-                        && ((rule.getMaxScaleDenominator() + TOLERANCE) > scaleDenominator)) {
-                    estimator.visit(rule);
-                }
-            }
-        }
-
+    static int computeLayerBuffer(Style style, double scaleDenominator, GetMapRequest request) {
         // we get any estimate, it's better than nothing...
-        return estimator.getBuffer();
+        return StyleRenderPlan.get(style, request).getActiveRules(scaleDenominator).getBuffer();
     }
 
     /**
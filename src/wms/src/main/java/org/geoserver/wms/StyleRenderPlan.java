@@ -0,0 +1,318 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import org.geoserver.wms.map.RasterSymbolizerVisitor;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.renderer.lite.MetaBufferEstimator;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * The result of the analysis of a {@link Style}, shared among all the requests using the same
+ * style instance.
+ *
+ * <p>The {@link org.geoserver.catalog.ResourcePool} hands out the same parsed {@link Style} until
+ * the associated {@link org.geoserver.catalog.StyleInfo} or its file get modified, so the style
+ * object identity is used as the cache key: a modified style gets parsed again and gets a new
+ * plan, while the old one is garbage collected along with the old style. Styles provided in the
+ * request are parsed again on each request, their plans are built by {@link #get(Style,
+ * GetMapRequest)} or {@link #analyze(Style)} without going through the cache, so that they do not
+ * evict the catalog ones.
+ *
+ * <p>The analysis results depend on the rules active at the requested scale, and are computed
+ * lazily, once for each distinct set of active rules.
+ *
+ * <p>The styles analyzed by this class, and the ones handed to {@link #getDerivedStyle(Object,
+ * Supplier)}, must not be modified after the plan is built. Derived styles are kept in a cache
+ * bounded to {@link #MAX_DERIVED_STYLES} entries per plan, as their keys might reference large
+ * objects, such as feature types. Callers should not derive styles provided in the request through
+ * the plan, as they are used only once.
+ */
+public class StyleRenderPlan {
+
+    /** Tolerance used when matching the scale denominator against the rule scale ranges */
+    static final double TOLERANCE = 1e-6;
+
+    /** Maximum number of styles whose plan is kept in memory */
+    static final int MAX_PLANS = 1000;
+
+    /** Maximum number of derived styles kept by each plan */
+    static final int MAX_DERIVED_STYLES = 10;
+
+    static final LoadingCache<Style, StyleRenderPlan> PLANS =
+            CacheBuilder.newBuilder()
+                    .weakKeys()
+                    .maximumSize(MAX_PLANS)
+                    .build(CacheLoader.from(StyleRenderPlan::new));
+
+    /** Returns the plan for the given style */
+    public static StyleRenderPlan get(Style style) {
+        return PLANS.getUnchecked(style);
+    }
+
+    /**
+     * Returns the plan for a style used in the given request, the plan is cached only if the style
+     * is not provided by the request
+     *
+     * @param request The request using the style, or null if the style comes from the catalog
+     */
+    public static StyleRenderPlan get(Style style, GetMapRequest request) {
+        if (request != null && isRequestStyle(request)) {
+            return analyze(style);
+        }
+        return get(style);
+    }
+
+    /** Returns a new plan for the given style, without caching it, for styles used only once */
+    public static StyleRenderPlan analyze(Style style) {
+        return new StyleRenderPlan(style);
+    }
+
+    /** Returns true if the styles are provided by the request, via the SLD or SLD_BODY params */
+    public static boolean isRequestStyle(GetMapRequest request) {
+        return request.getSld() != null || request.getSldBody() != null;
+    }
+
+    /** Drops all the cached plans */
+    public static void clear() {
+        PLANS.invalidateAll();
+    }
+
+    final List<FeatureTypeStyle> featureTypeStyles;
+
+    /** All the rules, in painting order */
+    final Rule[] rules;
+
+    final Map<BitSet, ActiveRules> activeRules = new ConcurrentHashMap<>();
+
+    final Map<RasterKey, RasterRules> rasterRules = new ConcurrentHashMap<>();
+
+    final Cache<Object, Style> derivedStyles =
+            CacheBuilder.newBuilder().maximumSize(MAX_DERIVED_STYLES).build();
+
+    StyleRenderPlan(Style style) {
+        // do not keep a reference to the style, it's the weak key of the cache
+        this.featureTypeStyles = new ArrayList<>(style.featureTypeStyles());
+        List<Rule> rules = new ArrayList<>();
+        for (FeatureTypeStyle fts : featureTypeStyles) {
+            rules.addAll(fts.rules());
+        }
+        this.rules = rules.toArray(new Rule[rules.size()]);
+    }
+
+    /**
+     * Returns the rules active at the given scale denominator, that is, the ones having at least
+     * one symbolizer and a scale range containing the scale denominator
+     */
+    public ActiveRules getActiveRules(double scaleDenominator) {
+        BitSet mask = new BitSet(rules.length);
+        for (int i = 0; i < rules.length; i++) {
+            Rule r = rules[i];
+            if ((r.getMinScaleDenominator() - TOLERANCE <= scaleDenominator)
+                    && (r.getMaxScaleDenominator() + TOLERANCE > scaleDenominator)
+                    && r.symbolizers() != null
+                    && !r.symbolizers().isEmpty()) {
+                mask.set(i);
+            }
+        }
+        return activeRules.computeIfAbsent(mask, this::buildActiveRules);
+    }
+
+    private ActiveRules buildActiveRules(BitSet mask) {
+        List<Rule> active = new ArrayList<>(mask.cardinality());
+        for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+            active.add(rules[i]);
+        }
+        return new ActiveRules(active);
+    }
+
+    /**
+     * Returns the raster symbolizers active at the given scale denominator, with the same logic as
+     * {@link RasterSymbolizerVisitor}
+     *
+     * @param featureType The feature type the style is applied to, or null to consider all the
+     *     feature type styles
+     */
+    public RasterRules getRasterRules(double scaleDenominator, FeatureType featureType) {
+        BitSet mask = new BitSet(rules.length);
+        for (int i = 0; i < rules.length; i++) {
+            Rule r = rules[i];
+            if (r.getMinScaleDenominator() < scaleDenominator
+                    && r.getMaxScaleDenominator() > scaleDenominator) {
+                mask.set(i);
+            }
+        }
+        Name typeName = featureType == null ? null : featureType.getName();
+        return rasterRules.computeIfAbsent(
+                new RasterKey(mask, typeName),
+                k -> {
+                    RasterSymbolizerVisitor visitor =
+                            new RasterSymbolizerVisitor(scaleDenominator, featureType);
+                    for (FeatureTypeStyle fts : featureTypeStyles) {
+                        fts.accept(visitor);
+                    }
+                    return new RasterRules(
+                            visitor.getRasterSymbolizers(),
+                            visitor.getRasterRenderingTransformation());
+                });
+    }
+
+    /**
+     * Returns a style derived from the one this plan is built for, building it on first access.
+     * Allows to share preprocessed copies of the style among requests, and thus, their own plans
+     * too. Only the most recently used derived styles are kept, see {@link #MAX_DERIVED_STYLES}.
+     *
+     * @param key Identifies the derivation, must be a valid hash key
+     * @param builder Builds the derived style
+     */
+    public Style getDerivedStyle(Object key, Supplier<Style> builder) {
+        try {
+            return derivedStyles.get(key, builder::get);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // the builder does not throw checked exceptions, unwrap the runtime ones
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /** The rules active at a given scale, along with the information derived from them */
+    public static class ActiveRules {
+
+        final List<Rule> rules;
+
+        final int buffer;
+
+        final boolean bufferAccurate;
+
+        volatile Filter filter;
+
+        ActiveRules(List<Rule> rules) {
+            this.rules = Collections.unmodifiableList(rules);
+            MetaBufferEstimator estimator = new MetaBufferEstimator();
+            for (Rule rule : rules) {
+                rule.accept(estimator);
+            }
+            this.buffer = estimator.getBuffer();
+            this.bufferAccurate = estimator.isEstimateAccurate();
+        }
+
+        /** The active rules, in painting order. The list cannot be modified. */
+        public List<Rule> getRules() {
+            return rules;
+        }
+
+        /** The rendering buffer estimated by {@link MetaBufferEstimator} for the active rules */
+        public int getBuffer() {
+            return buffer;
+        }
+
+        /** Returns true if the buffer estimate took into account all the symbolizers */
+        public boolean isBufferAccurate() {
+            return bufferAccurate;
+        }
+
+        /**
+         * Returns the simplified OR of the active rule filters, or {@link Filter#INCLUDE} if any of
+         * the rules has no filter, or is an else rule
+         */
+        public Filter getFilter() {
+            Filter result = filter;
+            if (result == null) {
+                result = buildFilter();
+                filter = result;
+            }
+            return result;
+        }
+
+        private Filter buildFilter() {
+            List<Filter> filters = new ArrayList<>();
+            for (Rule rule : rules) {
+                if (rule.getFilter() == null || rule.isElseFilter()) return Filter.INCLUDE;
+                filters.add(rule.getFilter());
+            }
+            // not or and and simplify (if there is any include/exclude we'll get
+            // a very simple result ;-)
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+            Filter or = ff.or(filters);
+            SimplifyingFilterVisitor simplifier = new SimplifyingFilterVisitor();
+            return (Filter) or.accept(simplifier, null);
+        }
+    }
+
+    /** The raster symbolizers active at a given scale */
+    public static class RasterRules {
+
+        final List<RasterSymbolizer> symbolizers;
+
+        final Expression transformation;
+
+        RasterRules(List<RasterSymbolizer> symbolizers, Expression transformation) {
+            this.symbolizers = Collections.unmodifiableList(new ArrayList<>(symbolizers));
+            this.transformation = transformation;
+        }
+
+        /**
+         * The active raster symbolizers, or an empty list if other symbolizers, or non raster
+         * rendering transformations, are active too
+         */
+        public List<RasterSymbolizer> getRasterSymbolizers() {
+            return symbolizers;
+        }
+
+        /** The raster to raster rendering transformation, if any */
+        public Expression getRasterRenderingTransformation() {
+            return transformation;
+        }
+    }
+
+    static class RasterKey {
+        final BitSet mask;
+
+        final Name typeName;
+
+        RasterKey(BitSet mask, Name typeName) {
+            this.mask = mask;
+            this.typeName = typeName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RasterKey)) return false;
+            RasterKey other = (RasterKey) o;
+            return mask.equals(other.mask) && Objects.equals(typeName, other.typeName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mask, typeName);
+        }
+    }
+}
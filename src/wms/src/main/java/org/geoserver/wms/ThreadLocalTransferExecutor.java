@@ -10,17 +10,24 @@ import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import org.geoserver.platform.util.VirtualThreads;
 import org.geoserver.threadlocals.ThreadLocalsTransfer;
 
 /**
  * An equivalent to {@link Executors#newCachedThreadPool()} that will also perform thread locals
  * transfer using Spring registered {@link org.geoserver.threadlocals.ThreadLocalTransfer} when
- * starting a new task
+ * starting a new task. Uses virtual threads if {@link VirtualThreads#isEnabled() enabled}.
  */
 class ThreadLocalTransferExecutor extends ThreadPoolExecutor {
 
     public ThreadLocalTransferExecutor() {
-        super(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+        super(
+                0,
+                Integer.MAX_VALUE,
+                60L,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                VirtualThreads.factory("gs-rendering-", Executors.defaultThreadFactory()));
     }
 
     @Override
@@ -41,6 +41,7 @@ import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMTSLayerInfo;
 import org.geoserver.catalog.impl.AdvertisedCatalog;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.catalog.util.ReaderDimensionsAccessor;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
@@ -208,6 +209,18 @@ public class WMS implements ApplicationContextAware {
     /** Root Layer in Capabilities key * */
     public static String ROOT_LAYER_IN_CAPABILITIES_KEY = "rootLayerInCapabilities";
 
+    /**
+     * Maximum number of layers painted concurrently in a single GetMap, values lower than 2
+     * disable parallel rendering
+     */
+    public static final String PARALLEL_RENDERING_THREADS_KEY = "parallelRenderingThreads";
+
+    public static final int PARALLEL_RENDERING_THREADS_DEFAULT = 0;
+
+    public static final String PIPELINED_LOADING_QUEUE_KEY = "pipelinedLoadingQueueSize";
+
+    public static final int PIPELINED_LOADING_QUEUE_DEFAULT = 0;
+
     /** GIF disposal methods */
     public static final String DISPOSAL_METHOD_NONE = "none";
 
@@ -561,6 +574,24 @@ public class WMS implements ApplicationContextAware {
                 ROOT_LAYER_IN_CAPABILITIES_KEY, ROOT_LAYER_IN_CAPABILITIES_DEFAULT, Boolean.class);
     }
 
+    /**
+     * Returns the maximum number of layers painted concurrently in a single GetMap request, values
+     * lower than 2 mean the layers are painted sequentially
+     */
+    public int getParallelRenderingThreads() {
+        return getMetadataValue(
+                PARALLEL_RENDERING_THREADS_KEY, PARALLEL_RENDERING_THREADS_DEFAULT, Integer.class);
+    }
+
+    /**
+     * Returns the number of features read ahead of the renderer, in a background thread, for each
+     * vector layer in a GetMap request. Zero means the features are read by the renderer itself.
+     */
+    public int getPipelinedLoadingQueueSize() {
+        return getMetadataValue(
+                PIPELINED_LOADING_QUEUE_KEY, PIPELINED_LOADING_QUEUE_DEFAULT, Integer.class);
+    }
+
     public Boolean getScalehintUnitPixel() {
         return getMetadataValue(
                 SCALEHINT_MAPUNITS_PIXEL, SCALEHINT_MAPUNITS_PIXEL_DEFAULT, Boolean.class);
@@ -1255,6 +1286,21 @@ public class WMS implements ApplicationContextAware {
                     "Layer " + typeInfo.prefixedName() + " does not have time support enabled");
         }
 
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index != null) {
+            DimensionDomainIndex.Domain domain =
+                    index.getAttributeDomain(typeInfo, time.getAttribute());
+            boolean all = time.getPresentation() == DimensionPresentation.LIST;
+            if (all && domain.isEmpty()) {
+                return null;
+            }
+            TreeSet<Date> result = new TreeSet<>();
+            for (Object value : getIndexedValues(domain, all)) {
+                result.add((Date) value);
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, time);
 
         TreeSet<Date> result = new TreeSet<>();
@@ -1332,12 +1378,25 @@ public class WMS implements ApplicationContextAware {
                             + " does not have elevation support enabled");
         }
 
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index != null) {
+            DimensionDomainIndex.Domain domain =
+                    index.getAttributeDomain(typeInfo, elevation.getAttribute());
+            boolean all = isFullDomainRequired(elevation);
+            if (all && domain.isEmpty()) {
+                return null;
+            }
+            TreeSet<Double> result = new TreeSet<>();
+            for (Object value : getIndexedValues(domain, all)) {
+                result.add(((Number) value).doubleValue());
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
 
         TreeSet<Double> result = new TreeSet<>();
-        if (elevation.getPresentation() == DimensionPresentation.LIST
-                || (elevation.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL
-                        && elevation.getResolution() == null)) {
+        if (isFullDomainRequired(elevation)) {
             final UniqueVisitor visitor = new UniqueVisitor(elevation.getAttribute());
             collection.accepts(visitor, null);
 
@@ -1495,6 +1554,27 @@ public class WMS implements ApplicationContextAware {
         }
     }
 
+    /**
+     * Returns true if the dimension presentation requires all the domain values, false if the
+     * minimum and maximum are enough
+     */
+    private static boolean isFullDomainRequired(DimensionInfo dimension) {
+        return dimension.getPresentation() == DimensionPresentation.LIST
+                || (dimension.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL
+                        && dimension.getResolution() == null);
+    }
+
+    /** Returns all the values of an indexed domain, or just its minimum and maximum */
+    private static Collection<Object> getIndexedValues(
+            DimensionDomainIndex.Domain domain, boolean all) {
+        if (all) {
+            return domain.getValues();
+        } else if (domain.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(domain.getMin(), domain.getMax());
+    }
+
     /**
      * Returns the collection of all values of the dimension attribute, eventually sorted if the
      * native capabilities allow for it
@@ -1748,12 +1828,17 @@ public class WMS implements ApplicationContextAware {
      */
     public TreeSet<Object> getDimensionValues(FeatureTypeInfo typeInfo, DimensionInfo dimensionInfo)
             throws IOException {
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index != null) {
+            DimensionDomainIndex.Domain domain =
+                    index.getAttributeDomain(typeInfo, dimensionInfo.getAttribute());
+            return new TreeSet<>(getIndexedValues(domain, isFullDomainRequired(dimensionInfo)));
+        }
+
         final FeatureCollection fcollection = getDimensionCollection(typeInfo, dimensionInfo);
 
         final TreeSet<Object> result = new TreeSet<>();
-        if (dimensionInfo.getPresentation() == DimensionPresentation.LIST
-                || (dimensionInfo.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL
-                        && dimensionInfo.getResolution() == null)) {
+        if (isFullDomainRequired(dimensionInfo)) {
             final UniqueVisitor uniqueVisitor = new UniqueVisitor(dimensionInfo.getAttribute());
             fcollection.accepts(uniqueVisitor, null);
             @SuppressWarnings("unchecked")
@@ -31,6 +31,7 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.WMTSLayerInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.catalog.util.ReaderDimensionsAccessor;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.util.ISO8601Formatter;
@@ -358,7 +359,17 @@ abstract class DimensionHelper {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.log(Level.FINE, "Dimension has not been extracted. The reason: ", ex);
             }
-            elevations = dimensions.getElevationDomain();
+            DimensionDomainIndex index = DimensionDomainIndex.get();
+            if (index != null) {
+                elevations =
+                        index.getDomain(
+                                        cvInfo,
+                                        ResourceInfo.ELEVATION,
+                                        dimensions::getElevationDomain)
+                                .toTreeSet();
+            } else {
+                elevations = dimensions.getElevationDomain();
+            }
         }
         String elevationMetadata = getNumberRepresentation(elevInfo, elevations);
         String defaultValue = getDefaultValueRepresentation(cvInfo, ResourceInfo.ELEVATION, "0");
@@ -404,7 +415,14 @@ abstract class DimensionHelper {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.log(Level.FINE, "Dimension has not been extracted. The reason: ", ex);
             }
-            temporalDomain = dimension.getTimeDomain();
+            DimensionDomainIndex index = DimensionDomainIndex.get();
+            if (index != null) {
+                temporalDomain =
+                        index.getDomain(cvInfo, ResourceInfo.TIME, dimension::getTimeDomain)
+                                .toTreeSet();
+            } else {
+                temporalDomain = dimension.getTimeDomain();
+            }
         }
         String timeMetadata = getTemporalDomainRepresentation(timeInfo, temporalDomain);
         String defaultValue =
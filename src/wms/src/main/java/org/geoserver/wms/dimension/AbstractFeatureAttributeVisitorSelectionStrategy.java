@@ -11,6 +11,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.platform.ServiceException;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
@@ -55,6 +56,24 @@ public abstract class AbstractFeatureAttributeVisitorSelectionStrategy
         return retval;
     }
 
+    /**
+     * Returns the domain of the dimension attribute from the {@link DimensionDomainIndex}, or null
+     * if the index is not enabled, or the domain could not be loaded
+     */
+    protected DimensionDomainIndex.Domain getIndexedDomain(
+            FeatureTypeInfo typeInfo, DimensionInfo dimension) {
+        DimensionDomainIndex index = DimensionDomainIndex.get();
+        if (index == null) {
+            return null;
+        }
+        try {
+            return index.getAttributeDomain(typeInfo, dimension.getAttribute());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            return null;
+        }
+    }
+
     private FeatureCollection<?, ?> getDimensionCollection(
             FeatureTypeInfo typeInfo, DimensionInfo dimension) throws IOException {
         // grab the feature source
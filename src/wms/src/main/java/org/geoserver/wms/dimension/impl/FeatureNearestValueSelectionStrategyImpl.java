@@ -8,6 +8,7 @@ package org.geoserver.wms.dimension.impl;
 import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.wms.dimension.AbstractFeatureAttributeVisitorSelectionStrategy;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.visitor.CalcResult;
@@ -42,6 +43,18 @@ public class FeatureNearestValueSelectionStrategyImpl
     @Override
     public Object getDefaultValue(
             ResourceInfo resource, String dimensionName, DimensionInfo dimension, Class<?> clz) {
+        DimensionDomainIndex.Domain domain =
+                getIndexedDomain((FeatureTypeInfo) resource, dimension);
+        if (domain != null) {
+            Object value = domain.getNearest(toMatch);
+            if (value != null) {
+                return Converters.convert(value, clz);
+            } else if (domain.isEmpty()) {
+                return null;
+            }
+            // not a date or number domain, fall back on the visitor
+        }
+
         final FeatureCalc nearest =
                 new NearestVisitor(ff.property(dimension.getAttribute()), this.toMatch);
 
@@ -8,10 +8,11 @@ package org.geoserver.wms.featureinfo;
 import java.util.ArrayList;
 import java.util.List;
 import org.geoserver.wms.FeatureInfoRequestParameters;
+import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.StyleRenderPlan;
 import org.geoserver.wms.clip.ClippedFeatureSource;
 import org.geotools.data.FeatureSource;
-import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.locationtech.jts.geom.Geometry;
@@ -21,8 +22,6 @@ import org.opengis.feature.type.FeatureType;
 abstract class AbstractVectorLayerIdentifier
         implements LayerIdentifier<FeatureSource<? extends FeatureType, ? extends Feature>> {
 
-    private static final double TOLERANCE = 1e-6;
-
     @Override
     public boolean canHandle(MapLayerInfo layer) {
         int type = layer.getType();
@@ -30,20 +29,10 @@ abstract class AbstractVectorLayerIdentifier
     }
 
     /** Selects the rules active at this zoom level */
-    protected List<Rule> getActiveRules(Style style, double scaleDenominator) {
-        List<Rule> result = new ArrayList<>();
-
-        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
-            for (Rule r : fts.rules()) {
-                if ((r.getMinScaleDenominator() - TOLERANCE <= scaleDenominator)
-                        && (r.getMaxScaleDenominator() + TOLERANCE > scaleDenominator)
-                        && r.symbolizers() != null
-                        && r.symbolizers().size() > 0) {
-                    result.add(r);
-                }
-            }
-        }
-        return result;
+    protected List<Rule> getActiveRules(
+            Style style, double scaleDenominator, GetMapRequest request) {
+        return new ArrayList<>(
+                StyleRenderPlan.get(style, request).getActiveRules(scaleDenominator).getRules());
     }
 
     @Override
@@ -30,9 +30,9 @@ import org.geoserver.catalog.ProjectionPolicy;
 import org.geoserver.wms.FeatureInfoRequestParameters;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.StyleRenderPlan;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.clip.CroppedGridCoverage2DReader;
-import org.geoserver.wms.map.RasterSymbolizerVisitor;
 import org.geotools.coverage.GridSampleDimension;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -367,10 +367,10 @@ public class RasterLayerIdentifier implements LayerIdentifier<GridCoverage2DRead
 
         //
         Style style = params.getStyle();
-        RasterSymbolizerVisitor visitor =
-                new RasterSymbolizerVisitor(params.getScaleDenominator(), null);
-        style.accept(visitor);
-        Expression transformation = visitor.getRasterRenderingTransformation();
+        Expression transformation =
+                StyleRenderPlan.get(style, params.getGetMapRequest())
+                        .getRasterRules(params.getScaleDenominator(), null)
+                        .getRasterRenderingTransformation();
         if (transformation != null) {
             RenderingTransformationHelper helper =
                     new RenderingTransformationHelper() {
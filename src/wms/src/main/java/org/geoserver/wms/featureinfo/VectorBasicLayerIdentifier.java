@@ -5,7 +5,6 @@
  */
 package org.geoserver.wms.featureinfo;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +14,8 @@ import org.geoserver.catalog.LayerInfo;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.FeatureInfoRequestParameters;
 import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.StyleRenderPlan;
+import org.geoserver.wms.StyleRenderPlan.ActiveRules;
 import org.geoserver.wms.WMS;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
@@ -26,8 +27,6 @@ import org.geotools.filter.visitor.SimplifyingFilterVisitor;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
-import org.geotools.renderer.lite.MetaBufferEstimator;
-import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
@@ -71,8 +70,10 @@ public class VectorBasicLayerIdentifier extends AbstractVectorLayerIdentifier {
         final Filter filter = params.getFilter();
         final Style style = params.getStyle();
         // ok, internally rendered layer then, we check the style to see what's active
-        final List<Rule> rules = getActiveRules(style, params.getScaleDenominator());
-        if (rules.isEmpty()) {
+        final ActiveRules rules =
+                StyleRenderPlan.get(style, params.getGetMapRequest())
+                        .getActiveRules(params.getScaleDenominator());
+        if (rules.getRules().isEmpty()) {
             return null;
         }
 
@@ -116,7 +117,7 @@ public class VectorBasicLayerIdentifier extends AbstractVectorLayerIdentifier {
         // see if we can include the rule filters as well, if too many we'll do them in
         // memory
         Filter postFilter = Filter.INCLUDE;
-        Filter rulesFilters = buildRulesFilter(ff, rules);
+        Filter rulesFilters = rules.getFilter();
         if (!(featureSource.getSchema() instanceof SimpleFeatureType)
                 || !(rulesFilters instanceof Or)
                 || (rulesFilters instanceof Or && ((Or) rulesFilters).getChildren().size() <= 20)) {
@@ -172,8 +173,10 @@ public class VectorBasicLayerIdentifier extends AbstractVectorLayerIdentifier {
         return Collections.singletonList(match);
     }
 
-    private double getSearchRadius(
-            FeatureInfoRequestParameters params, final MapLayerInfo layer, final List<Rule> rules) {
+    double getSearchRadius(
+            FeatureInfoRequestParameters params,
+            final MapLayerInfo layer,
+            final ActiveRules rules) {
         double radius;
         int buffer = params.getBuffer();
         if (buffer <= 0) {
@@ -186,12 +189,7 @@ public class VectorBasicLayerIdentifier extends AbstractVectorLayerIdentifier {
                 radius = layerBuffer;
             } else {
                 // estimate the radius given the currently active rules
-                MetaBufferEstimator estimator = new MetaBufferEstimator();
-                for (Rule rule : rules) {
-                    rule.accept(estimator);
-                }
-
-                int estimatedRadius = estimator.getBuffer() / 2;
+                int estimatedRadius = rules.getBuffer() / 2;
                 if (estimatedRadius < MIN_BUFFER_SIZE) {
                     radius = MIN_BUFFER_SIZE;
                 } else {
@@ -211,21 +209,7 @@ public class VectorBasicLayerIdentifier extends AbstractVectorLayerIdentifier {
         return radius;
     }
 
-    private Filter buildRulesFilter(org.opengis.filter.FilterFactory ff, List<Rule> rules) {
-        // build up a or of all the rule filters
-        List<Filter> filters = new ArrayList<>();
-        for (Rule rule : rules) {
-            if (rule.getFilter() == null || rule.isElseFilter()) return Filter.INCLUDE;
-            filters.add(rule.getFilter());
-        }
-        // not or and and simplify (if there is any include/exclude we'll get
-        // a very simple result ;-)
-        Filter or = ff.or(filters);
-        SimplifyingFilterVisitor simplifier = new SimplifyingFilterVisitor();
-        return (Filter) or.accept(simplifier, null);
-    }
-
-    private ReferencedEnvelope getEnvelopeFilter(
+    ReferencedEnvelope getEnvelopeFilter(
             FeatureInfoRequestParameters params, double radius) {
         final int x = params.getX();
         final int y = params.getY();
@@ -0,0 +1,318 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.featureinfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.platform.ExtensionPriority;
+import org.geoserver.wms.FeatureInfoRequestParameters;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.StyleRenderPlan;
+import org.geoserver.wms.StyleRenderPlan.ActiveRules;
+import org.geoserver.wms.WMS;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.filter.Filters;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.styling.LineSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.visitor.StyleAttributeExtractor;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Or;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * An identifier for vector layers that performs the hit test in memory, without rendering.
+ *
+ * <p>The candidates are read with only the attributes needed by the style, and each of them is hit
+ * if its geometry is within the symbol size, computed for that very feature by {@link
+ * DynamicBufferEstimator}, from the click point. The scan stops as soon as enough features are
+ * found, and only those are then read with all the attributes needed by the output format.
+ *
+ * <p>Polygons whose matching rules only stroke them are hit only close to their boundary, as their
+ * interior is not painted.
+ *
+ * <p>Enabled by setting the {@value #FEATURE_INFO_FAST_ENABLED_KEY} system variable to true. Layers
+ * with complex features, or without stable feature ids (e.g., tables and SQL views without a
+ * primary key), and transformations, are handled by the other identifiers.
+ */
+public class VectorFastLayerIdentifier extends VectorBasicLayerIdentifier
+        implements ExtensionPriority {
+
+    static final Logger LOGGER = Logging.getLogger(VectorFastLayerIdentifier.class);
+
+    static final String FEATURE_INFO_FAST_ENABLED_KEY = "org.geoserver.wms.featureinfo.fast";
+
+    /** Same as the rendering based identifier, the symbol sizes are accounted for */
+    static final int MIN_HIT_BUFFER =
+            Integer.getInteger(VectorBasicLayerIdentifier.FEATUREINFO_DEFAULT_BUFFER, 3);
+
+    private WMS wms;
+
+    public VectorFastLayerIdentifier(WMS wms) {
+        super(wms);
+        this.wms = wms;
+    }
+
+    @Override
+    public boolean canHandle(MapLayerInfo layer) {
+        return Boolean.getBoolean(FEATURE_INFO_FAST_ENABLED_KEY) && super.canHandle(layer);
+    }
+
+    @Override
+    public List<FeatureCollection> identify(FeatureInfoRequestParameters params, int maxFeatures)
+            throws Exception {
+        LOGGER.log(Level.FINER, "Applying hit test based feature info identifier");
+
+        final MapLayerInfo layer = params.getLayer();
+        final CoordinateReferenceSystem requestedCRS = params.getRequestedCRS();
+        final FeatureSource<? extends FeatureType, ? extends Feature> featureSource =
+                handleClipParam(params, layer.getFeatureSource(false, requestedCRS));
+        final FeatureType schema = featureSource.getSchema();
+        final ActiveRules rules =
+                StyleRenderPlan.get(params.getStyle(), params.getGetMapRequest())
+                        .getActiveRules(params.getScaleDenominator());
+        // the hits are read back by id, which requires ids stable across queries
+        if (!(schema instanceof SimpleFeatureType)
+                || !featureSource.getQueryCapabilities().isReliableFIDSupported()
+                || hasTransformations(params.getStyle(), rules.getRules())) {
+            return super.identify(params, maxFeatures);
+        }
+        if (rules.getRules().isEmpty()) {
+            return null;
+        }
+
+        // a fixed radius if set by the user or the admin, otherwise it depends on each feature
+        final int maxRadius = wms.getMaxBuffer();
+        final double fixedRadius = getFixedRadius(params, layer, maxRadius);
+        double searchRadius = fixedRadius;
+        if (searchRadius <= 0) {
+            if (rules.isBufferAccurate()) {
+                searchRadius = Math.max(rules.getBuffer() / 2, MIN_HIT_BUFFER);
+            } else if (maxRadius > 0) {
+                searchRadius = maxRadius;
+            } else {
+                // sizes depend on attributes and there is no upper bound, use the cheaper
+                // estimates of the basic identifier
+                return super.identify(params, maxFeatures);
+            }
+        }
+        if (maxRadius > 0 && searchRadius > maxRadius) {
+            searchRadius = maxRadius;
+        }
+
+        // the candidates, with just the attributes needed to evaluate the style
+        FilterFactory2 ff = params.getFilterFactory();
+        String geometryName = schema.getGeometryDescriptor().getLocalName();
+        ReferencedEnvelope searchArea = getEnvelopeFilter(params, searchRadius);
+        ReferencedEnvelope queryEnvelope = toDataCRS(searchArea, layer);
+        Filter filter =
+                ff.intersects(
+                        ff.property(geometryName), ff.literal(JTS.toGeometry(queryEnvelope)));
+        if (params.getFilter() != null) {
+            filter = ff.and(filter, params.getFilter());
+        }
+        Filter rulesFilter = rules.getFilter();
+        boolean rulesInQuery =
+                !(rulesFilter instanceof Or) || ((Or) rulesFilter).getChildren().size() <= 20;
+        if (rulesInQuery) {
+            filter = ff.and(filter, rulesFilter);
+        }
+        Filter timeElevationFilter =
+                wms.getTimeElevationToFilter(
+                        params.getTimes(), params.getElevations(), layer.getFeature());
+        filter = Filters.and(ff, filter, timeElevationFilter);
+        filter = (Filter) filter.accept(new SimplifyingFilterVisitor(), null);
+
+        String typeName = schema.getName().getLocalPart();
+        Query candidates = new Query(typeName, filter);
+        candidates.setPropertyNames(getStyleProperties(params, rules, geometryName));
+        candidates.setSortBy(params.getSort());
+        // hit testing happens in the request CRS, where the pixel size is known
+        candidates.setCoordinateSystemReproject(requestedCRS);
+        setViewParams(params, candidates);
+
+        // hit test, stopping as soon as enough features are found
+        ReferencedEnvelope bbox = params.getRequestedBounds();
+        int width = params.getWidth();
+        int height = params.getHeight();
+        double pixelSize = bbox.getWidth() / width;
+        Coordinate click = WMS.pixelToWorld(params.getX(), params.getY(), bbox, width, height);
+        Polygon searchPolygon = JTS.toGeometry(searchArea);
+        Point clickPoint = searchPolygon.getFactory().createPoint(click);
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(searchPolygon);
+        Set<FeatureId> hits = new LinkedHashSet<>();
+        try (FeatureIterator<? extends Feature> it =
+                featureSource.getFeatures(candidates).features()) {
+            while (it.hasNext() && (maxFeatures <= 0 || hits.size() < maxFeatures)) {
+                Feature feature = it.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometryProperty().getValue();
+                if (geometry == null
+                        || (!rulesInQuery && !rulesFilter.evaluate(feature))
+                        || !prepared.intersects(geometry)) {
+                    continue;
+                }
+                double radius = fixedRadius;
+                if (radius <= 0) {
+                    radius = Math.max(getFeatureBuffer(feature, rules) / 2, MIN_HIT_BUFFER);
+                    radius = Math.min(radius, searchRadius);
+                }
+                if (geometry instanceof Polygonal && !isFilled(feature, rules)) {
+                    // the interior of stroke only polygons is not painted
+                    geometry = geometry.getBoundary();
+                }
+                if (geometry.isWithinDistance(clickPoint, radius * pixelSize)) {
+                    hits.add(feature.getIdentifier());
+                }
+            }
+        }
+
+        // read the features hit, with all the attributes the output needs
+        Filter hitFilter = hits.isEmpty() ? Filter.EXCLUDE : ff.id(hits);
+        Query q =
+                new Query(typeName, null, hitFilter, maxFeatures, params.getPropertyNames(), null);
+        q.setSortBy(params.getSort());
+        setViewParams(params, q);
+        if (!wms.isFeaturesReprojectionDisabled()) {
+            q.setCoordinateSystemReproject(requestedCRS);
+        }
+        LOGGER.log(Level.FINE, q.toString());
+        return Collections.singletonList(featureSource.getFeatures(q));
+    }
+
+    /** Returns the radius set by the user or the admin, in pixels, or 0 if none is set */
+    private double getFixedRadius(
+            FeatureInfoRequestParameters params, MapLayerInfo layer, int maxRadius) {
+        double radius = params.getBuffer();
+        if (radius <= 0) {
+            LayerInfo layerInfo = layer.getLayerInfo();
+            if (layerInfo != null) {
+                Integer layerBuffer = layerInfo.getMetadata().get(LayerInfo.BUFFER, Integer.class);
+                if (layerBuffer != null && layerBuffer > 0) {
+                    radius = layerBuffer;
+                }
+            }
+        }
+        if (radius > 0 && maxRadius > 0 && radius > maxRadius) {
+            radius = maxRadius;
+        }
+        return Math.max(radius, 0);
+    }
+
+    private ReferencedEnvelope toDataCRS(ReferencedEnvelope envelope, MapLayerInfo layer)
+            throws Exception {
+        CoordinateReferenceSystem requestedCRS = envelope.getCoordinateReferenceSystem();
+        CoordinateReferenceSystem dataCRS = layer.getCoordinateReferenceSystem();
+        if (requestedCRS == null || CRS.equalsIgnoreMetadata(dataCRS, requestedCRS)) {
+            return envelope;
+        }
+        if (dataCRS.getCoordinateSystem().getDimension() == 3
+                && requestedCRS.getCoordinateSystem().getDimension() == 2) {
+            return JTS.transformTo3D(envelope, dataCRS, true, 10);
+        }
+        return envelope.transform(dataCRS, true);
+    }
+
+    /** The geometry, the attributes used by the rules, and the sorting ones */
+    private String[] getStyleProperties(
+            FeatureInfoRequestParameters params, ActiveRules rules, String geometryName) {
+        StyleAttributeExtractor extractor = new StyleAttributeExtractor();
+        for (Rule rule : rules.getRules()) {
+            rule.accept(extractor);
+        }
+        Set<String> properties = new LinkedHashSet<>();
+        properties.add(geometryName);
+        properties.addAll(Arrays.asList(extractor.getAttributeNames()));
+        if (params.getSort() != null) {
+            Arrays.stream(params.getSort())
+                    .filter(s -> s.getPropertyName() != null)
+                    .forEach(s -> properties.add(s.getPropertyName().getPropertyName()));
+        }
+        return properties.toArray(new String[properties.size()]);
+    }
+
+    /** Evaluates the symbol size of the rules matching the feature */
+    private int getFeatureBuffer(Feature feature, ActiveRules rules) {
+        DynamicBufferEstimator estimator = new DynamicBufferEstimator();
+        estimator.setFeature(feature);
+        for (Rule rule : rules.getRules()) {
+            Filter filter = rule.getFilter();
+            if (filter == null || rule.isElseFilter() || filter.evaluate(feature)) {
+                rule.accept(estimator);
+            }
+        }
+        return estimator.getBuffer();
+    }
+
+    /** Returns false if the rules matching the feature only stroke its polygons */
+    private boolean isFilled(Feature feature, ActiveRules rules) {
+        for (Rule rule : rules.getRules()) {
+            Filter filter = rule.getFilter();
+            if (filter != null && !rule.isElseFilter() && !filter.evaluate(feature)) {
+                continue;
+            }
+            for (Symbolizer symbolizer : rule.symbolizers()) {
+                if (symbolizer instanceof LineSymbolizer
+                        || (symbolizer instanceof PolygonSymbolizer
+                                && ((PolygonSymbolizer) symbolizer).getFill() == null)) {
+                    continue;
+                }
+                // fills, or paints something else the distance test accounts for
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Transformations change the painted geometries, the hit test cannot use the data ones */
+    private boolean hasTransformations(Style style, List<Rule> rules) {
+        return style.featureTypeStyles().stream().anyMatch(fts -> fts.getTransformation() != null)
+                || rules.stream()
+                        .flatMap(r -> r.symbolizers().stream())
+                        .anyMatch(s -> s.getGeometry() != null);
+    }
+
+    private void setViewParams(FeatureInfoRequestParameters params, Query query) {
+        final Map<String, String> viewParams = params.getViewParams();
+        if (viewParams != null && !viewParams.isEmpty()) {
+            query.setHints(new Hints(Hints.VIRTUAL_TABLE_PARAMETERS, viewParams));
+        }
+    }
+
+    /** Tried before the rendering based identifier, when enabled */
+    @Override
+    public int getPriority() {
+        return (ExtensionPriority.LOWEST + ExtensionPriority.HIGHEST) / 2 - 1;
+    }
+}
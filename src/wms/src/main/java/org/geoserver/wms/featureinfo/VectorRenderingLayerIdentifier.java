@@ -28,6 +28,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageTypeSpecifier;
@@ -40,6 +41,7 @@ import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.RenderingVariables;
+import org.geoserver.wms.StyleRenderPlan;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.RenderedImageMapOutputFormat;
@@ -142,12 +144,16 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         }
 
         final Style style =
-                preprocessStyle(params.getStyle(), params.getLayer().getFeature().getFeatureType());
+                preprocessStyle(
+                        params.getStyle(),
+                        params.getLayer().getFeature().getFeatureType(),
+                        StyleRenderPlan.isRequestStyle(params.getGetMapRequest()));
         final int userBuffer = params.getBuffer() > 0 ? params.getBuffer() : MIN_BUFFER_SIZE;
         final int buffer = getBuffer(userBuffer);
 
         // check the style to see what's active
-        final List<Rule> rules = getActiveRules(style, params.getScaleDenominator());
+        final List<Rule> rules =
+                getActiveRules(style, params.getScaleDenominator(), params.getGetMapRequest());
         if (rules.isEmpty()) {
             return null;
         }
@@ -304,12 +310,22 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         }
     }
 
-    private Style preprocessStyle(Style style, FeatureType schema) {
-        FeatureInfoStylePreprocessor preprocessor = new FeatureInfoStylePreprocessor(schema);
-        style.accept(preprocessor);
-        Style result = (Style) preprocessor.getCopy();
-
-        return result;
+    private Style preprocessStyle(Style style, FeatureType schema, boolean requestStyle) {
+        Supplier<Style> builder =
+                () -> {
+                    FeatureInfoStylePreprocessor preprocessor =
+                            new FeatureInfoStylePreprocessor(schema);
+                    style.accept(preprocessor);
+                    return (Style) preprocessor.getCopy();
+                };
+        // styles provided in the request are parsed again on each request, no point caching
+        if (requestStyle) {
+            return builder.get();
+        }
+        // the preprocessed copy is shared among requests, along with its own render plan
+        return StyleRenderPlan.get(style)
+                .getDerivedStyle(
+                        Arrays.asList(FeatureInfoStylePreprocessor.class, schema), builder);
     }
 
     private List<FeatureCollection> aggregateByFeatureType(
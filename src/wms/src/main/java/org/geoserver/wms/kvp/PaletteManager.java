@@ -200,19 +200,27 @@ public class PaletteManager {
 
     /**
      * IndexColorModel has a broken hashcode implementation (inherited from ColorModel and not
-     * overridden), use a custom key that leverages identity hash code instead (a full equals would
-     * be expensive, palettes can have 65k entries)
+     * overridden), use a custom key based on the palette contents instead, so that palettes built
+     * on the fly for each request (e.g., by the PaletteExtractor) can share the inverse color map.
+     * The hash code is computed once, the full comparison happens only on hash matches.
      */
     private static class IndexColorModelKey {
         IndexColorModel icm;
 
+        int[] rgbs;
+
+        int hashCode;
+
         public IndexColorModelKey(IndexColorModel icm) {
             this.icm = icm;
+            this.rgbs = new int[icm.getMapSize()];
+            icm.getRGBs(rgbs);
+            this.hashCode = 31 * Arrays.hashCode(rgbs) + icm.getPixelSize();
         }
 
         @Override
         public int hashCode() {
-            return System.identityHashCode(icm);
+            return hashCode;
         }
 
         @Override
@@ -221,7 +229,10 @@ public class PaletteManager {
             if (obj == null) return false;
             if (getClass() != obj.getClass()) return false;
             IndexColorModelKey other = (IndexColorModelKey) obj;
-            return icm == other.icm;
+            if (icm == other.icm) return true;
+            return hashCode == other.hashCode
+                    && icm.getPixelSize() == other.icm.getPixelSize()
+                    && Arrays.equals(rgbs, other.rgbs);
         }
     }
 }
@@ -14,12 +14,14 @@ import java.util.logging.Logger;
 import org.geoserver.config.JAIInfo;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.png.PNGJWriter;
+import org.geoserver.wms.map.png.PooledPNGWriter;
 import org.geotools.image.ImageWorker;
 import org.geotools.util.logging.Logging;
 
@@ -100,6 +102,10 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         if (encoder == JAIInfo.PngEncoderType.PNGJ) {
             image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
             RasterCleaner.addImage(image);
+        } else if (encoder == JAIInfo.PngEncoderType.POOLED) {
+            PooledPNGWriter writer = new PooledPNGWriter(DefaultWebMapService.getRenderingPool());
+            image = writer.writePNG(image, outStream, quality, mapContent);
+            RasterCleaner.addImage(image);
         } else {
             Boolean PNGNativeAcc = (encoder == JAIInfo.PngEncoderType.NATIVE);
             SampleModel sm = image.getSampleModel();
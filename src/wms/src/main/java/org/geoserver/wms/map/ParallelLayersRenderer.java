@@ -0,0 +1,298 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.StyleLayer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.LabelCacheImpl;
+import org.geotools.renderer.lite.LabelCacheImpl.LabelRenderingMode;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Style;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A {@link StreamingRenderer} that paints the layers of the map concurrently, each one with its
+ * own renderer and on its own image, and then composites the images in map order. Labels are
+ * collected from all layers and placed at the end, on the composited map, exactly as a single
+ * renderer would do.
+ *
+ * <p>The layer images are composited as soon as all the layers below them are ready, so the
+ * memory used is at most one image per layer, and usually a lot less.
+ *
+ * <p>Layers blending with the ones below (FeatureTypeStyle composites) cannot be painted in
+ * isolation, use {@link #canRenderInParallel(List)} to check the map is suitable before using this
+ * renderer.
+ */
+class ParallelLayersRenderer extends StreamingRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelLayersRenderer.class);
+
+    private final Supplier<StreamingRenderer> rendererFactory;
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    private final List<RenderListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<StreamingRenderer> renderers = new CopyOnWriteArrayList<>();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param rendererFactory Builds the renderers used for the single layers
+     * @param executor The executor running the layer rendering tasks, and the data loading of the
+     *     layer renderers. Must be able to run at least {@code threads} tasks concurrently.
+     * @param threads The maximum number of layers painted at the same time
+     */
+    ParallelLayersRenderer(
+            Supplier<StreamingRenderer> rendererFactory, ExecutorService executor, int threads) {
+        this.rendererFactory = rendererFactory;
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns true if all layers can be painted on their own, without looking at the ones below
+     * them.
+     */
+    static boolean canRenderInParallel(List<Layer> layers) {
+        for (Layer layer : layers) {
+            if (!(layer instanceof StyleLayer)) {
+                return false;
+            }
+            Style style = ((StyleLayer) layer).getStyle();
+            if (style == null) {
+                continue;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options != null
+                        && (options.containsKey(FeatureTypeStyle.COMPOSITE)
+                                || options.containsKey(FeatureTypeStyle.COMPOSITE_BASE))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void addRenderListener(RenderListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeRenderListener(RenderListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void stopRendering() {
+        stopped = true;
+        super.stopRendering();
+        for (StreamingRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
+    }
+
+    @Override
+    public void paint(
+            Graphics2D graphics,
+            Rectangle paintArea,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        List<Layer> layers = getMapContent().layers();
+        Compositor compositor = new Compositor(graphics, paintArea, layers.size());
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker =
+                () -> {
+                    int i;
+                    while (!stopped && (i = next.getAndIncrement()) < layers.size()) {
+                        paintLayer(layers.get(i), i, compositor, mapArea, worldToScreen);
+                    }
+                };
+
+        // the calling thread paints layers too
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < Math.min(threads, layers.size()); i++) {
+            futures.add(executor.submit(worker));
+        }
+        try {
+            worker.run();
+        } catch (RuntimeException e) {
+            fireError(e);
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                fireError(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopRendering();
+            }
+        }
+
+        // place the labels of all layers together, as a single renderer would do
+        if (!stopped) {
+            for (RenderListener listener : listeners) listener.labellingStart();
+            LabelCacheImpl labelCache = new LabelCacheImpl();
+            Object mode = getRendererHints().get(TEXT_RENDERING_KEY);
+            if (mode instanceof String) {
+                try {
+                    labelCache.setLabelRenderingMode(LabelRenderingMode.valueOf((String) mode));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.FINE, "Unknown text rendering mode " + mode, e);
+                }
+            }
+            labelCache.start();
+            for (RecordingLabelCache recorded : compositor.labels) {
+                if (recorded != null) recorded.replay(labelCache, graphics, paintArea);
+            }
+            labelCache.end(graphics, paintArea);
+            for (RenderListener listener : listeners) listener.labellingEnd();
+        }
+        for (RenderListener listener : listeners) listener.renderingComplete();
+    }
+
+    private void paintLayer(
+            Layer layer,
+            int index,
+            Compositor compositor,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        Rectangle paintArea = compositor.paintArea;
+        BufferedImage image =
+                new BufferedImage(
+                        paintArea.width, paintArea.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        RecordingLabelCache labels = new RecordingLabelCache(String.valueOf(index));
+        MapContent content = new MapContent();
+        content.setViewport(new MapViewport(mapArea));
+        content.addLayer(layer);
+        Graphics2D graphics = image.createGraphics();
+        StreamingRenderer renderer = rendererFactory.get();
+        renderers.add(renderer);
+        try {
+            graphics.setRenderingHints(compositor.hints);
+            graphics.translate(-paintArea.x, -paintArea.y);
+
+            renderer.setThreadPool(executor);
+            renderer.setJava2DHints(getJava2DHints());
+            renderer.setGeneralizationDistance(getGeneralizationDistance());
+            Map<Object, Object> hints = new HashMap<>(getRendererHints());
+            hints.put(LABEL_CACHE_KEY, labels);
+            renderer.setRendererHints(hints);
+            renderer.setMapContent(content);
+            renderer.addRenderListener(new LayerListener());
+            // a stop request might have been issued before the renderer got registered
+            if (!stopped) {
+                renderer.paint(graphics, paintArea, mapArea, worldToScreen);
+            }
+        } finally {
+            renderers.remove(renderer);
+            graphics.dispose();
+            // the layer is shared with the original map content, must not be disposed
+            content.removeLayer(layer);
+            content.dispose();
+            // composite even on failure, or the layers above would never be
+            compositor.done(index, image, labels);
+        }
+    }
+
+    private void fireError(Throwable t) {
+        Exception e = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+        synchronized (listeners) {
+            for (RenderListener listener : listeners) listener.errorOccurred(e);
+        }
+    }
+
+    /** Forwards the events of a single layer renderer, one at a time, to the listeners */
+    private class LayerListener implements RenderListener {
+
+        @Override
+        public void featureRenderer(SimpleFeature feature) {
+            synchronized (listeners) {
+                for (RenderListener listener : listeners) listener.featureRenderer(feature);
+            }
+        }
+
+        @Override
+        public void errorOccurred(Exception e) {
+            fireError(e);
+        }
+
+        @Override
+        public void layerStart(Layer layer) {
+            synchronized (listeners) {
+                for (RenderListener listener : listeners) listener.layerStart(layer);
+            }
+        }
+
+        @Override
+        public void layerEnd(Layer layer) {
+            synchronized (listeners) {
+                for (RenderListener listener : listeners) listener.layerEnd(layer);
+            }
+        }
+    }
+
+    /** Draws the layer images on the target graphics, in map order, as soon as possible */
+    private static class Compositor {
+
+        final Graphics2D graphics;
+
+        final RenderingHints hints;
+
+        final Rectangle paintArea;
+
+        final BufferedImage[] images;
+
+        final RecordingLabelCache[] labels;
+
+        int composited;
+
+        Compositor(Graphics2D graphics, Rectangle paintArea, int layers) {
+            this.graphics = graphics;
+            this.hints = graphics.getRenderingHints();
+            this.paintArea = paintArea;
+            this.images = new BufferedImage[layers];
+            this.labels = new RecordingLabelCache[layers];
+        }
+
+        synchronized void done(int index, BufferedImage image, RecordingLabelCache labels) {
+            this.images[index] = image;
+            this.labels[index] = labels;
+            while (composited < images.length && images[composited] != null) {
+                graphics.drawImage(images[composited], paintArea.x, paintArea.y, null);
+                images[composited] = null;
+                composited++;
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.security.decorators.DecoratingSimpleFeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+
+/**
+ * Reads the features in a background thread, ahead of the consumer, so that the latency of the
+ * store (e.g., a database round trip per batch of rows) overlaps with the styling and painting of
+ * the features already read, instead of adding up.
+ *
+ * <p>The features are handed over through a bounded queue, whose size caps the number of features
+ * read ahead. Closing the iterator stops the reader, so rendering timeouts and errors do not leave
+ * the store reading in the background. Reader failures, including errors and interruptions, are
+ * rethrown to the consumer once the features read before the failure have been consumed.
+ */
+public class PrefetchingFeatureSource extends DecoratingSimpleFeatureSource {
+
+    static final Logger LOGGER = Logging.getLogger(PrefetchingFeatureSource.class);
+
+    /** Marks the end of the features in the queue */
+    private static final Object END = new Object();
+
+    /** How often the reader and the consumer check on each other, while waiting on the queue */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final ExecutorService executor;
+
+    private final int queueSize;
+
+    /**
+     * @param delegate The wrapped feature source
+     * @param executor Runs the reading tasks, must not queue them
+     * @param queueSize The max number of features read ahead of the consumer
+     */
+    public PrefetchingFeatureSource(
+            SimpleFeatureSource delegate, ExecutorService executor, int queueSize) {
+        super(delegate);
+        this.executor = executor;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures() throws IOException {
+        return new PrefetchingFeatureCollection(super.getFeatures());
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Filter filter) throws IOException {
+        return new PrefetchingFeatureCollection(super.getFeatures(filter));
+    }
+
+    @Override
+    public SimpleFeatureCollection getFeatures(Query query) throws IOException {
+        return new PrefetchingFeatureCollection(super.getFeatures(query));
+    }
+
+    class PrefetchingFeatureCollection extends DecoratingSimpleFeatureCollection {
+
+        PrefetchingFeatureCollection(SimpleFeatureCollection delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new PrefetchingFeatureIterator(delegate);
+        }
+
+        @Override
+        public SimpleFeatureCollection subCollection(Filter filter) {
+            return new PrefetchingFeatureCollection(delegate.subCollection(filter));
+        }
+    }
+
+    class PrefetchingFeatureIterator implements SimpleFeatureIterator {
+
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueSize);
+
+        final Future<?> reader;
+
+        volatile boolean closed;
+
+        Object next;
+
+        PrefetchingFeatureIterator(SimpleFeatureCollection features) {
+            this.reader = executor.submit(() -> read(features));
+        }
+
+        private void read(SimpleFeatureCollection features) {
+            Object last = END;
+            boolean interrupted = false;
+            try {
+                readFeatures(features);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                last = new Failure(e);
+            } catch (Throwable t) {
+                // errors included, they are rethrown in the consumer thread
+                last = new Failure(t);
+            } finally {
+                // always tell the consumer the read is over, clearing the interrupt to do so
+                interrupted |= Thread.interrupted();
+                try {
+                    put(last);
+                } catch (InterruptedException e) {
+                    // the consumer will notice the reader is done
+                    interrupted = true;
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void readFeatures(SimpleFeatureCollection features) throws InterruptedException {
+            try (SimpleFeatureIterator it = features.features()) {
+                while (!closed && it.hasNext()) {
+                    SimpleFeature feature = it.next();
+                    // compute and cache the envelope, the renderer needs it for clipping
+                    Object geometry = feature.getDefaultGeometry();
+                    if (geometry instanceof Geometry) {
+                        ((Geometry) geometry).getEnvelopeInternal();
+                    }
+                    put(feature);
+                }
+            }
+        }
+
+        private void put(Object item) throws InterruptedException {
+            while (!closed && !queue.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                // waiting for the consumer to catch up, or to close the iterator
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                try {
+                    next = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new RuntimeException("Interrupted while waiting for features", e);
+                }
+                if (next == null && reader.isDone()) {
+                    // the reader might have queued its last item right before completing
+                    next = queue.poll();
+                    if (next == null) {
+                        next = new Failure(getReaderFailure());
+                    }
+                }
+            }
+            if (next instanceof Failure) {
+                Throwable cause = ((Failure) next).cause;
+                next = END;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("Failed to read the features in background", cause);
+            }
+            return next != END;
+        }
+
+        /** Returns the reason why the reader completed without queuing the end of the features */
+        private Throwable getReaderFailure() {
+            try {
+                reader.get();
+                return new IllegalStateException("Background feature reader stopped unexpectedly");
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return e;
+            } catch (CancellationException e) {
+                return e;
+            }
+        }
+
+        @Override
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SimpleFeature result = (SimpleFeature) next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            next = END;
+            queue.clear();
+            // wait for the reader to close the delegate iterator, it might be holding a connection
+            try {
+                reader.get(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                LOGGER.log(Level.WARNING, "Background feature reader did not stop cleanly", e);
+            }
+        }
+    }
+
+    /** Wraps a reader failure, queued in place of the end marker */
+    static final class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
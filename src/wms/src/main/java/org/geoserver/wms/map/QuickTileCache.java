@@ -5,35 +5,76 @@
  */
 package org.geoserver.wms.map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
 import org.geoserver.wfs.WFSException;
 import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.WMSInfo;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
 import org.geotools.util.CanonicalSet;
+import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
 
-public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+/**
+ * Caches the tiles of the meta-tiles rendered for WMS requests with the TILED=true hint, so that
+ * the other tiles of the same meta-tile can be returned without rendering.
+ *
+ * <p>The cache is bounded by the memory used by the tiles, and is invalidated only for the layers
+ * affected by WFS transactions and catalog changes. The max size, in megabytes, can be configured
+ * with the {@value #SIZE_KEY} system variable (default 64).
+ */
+public class QuickTileCache
+        implements TransactionListener, GeoServerLifecycleHandler, CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(QuickTileCache.class);
+
+    public static final String SIZE_KEY = "org.geoserver.wms.metaTileCacheSize";
+
+    static final long DEFAULT_SIZE_MB = 64;
+
+    /** Marks meta tiles depending on data that cannot be tracked, any change invalidates them */
+    static final String ANY_RESOURCE = "*";
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -55,9 +96,14 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     /** Canonicalizer used to return the same object when two threads ask for the same meta-tile */
     private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
 
-    private WeakHashMap<MetaTileKey, CacheElement> tileCache = new WeakHashMap<>();
+    private final Cache<MetaTileKey, CacheElement> tileCache;
+
+    private Catalog catalog;
 
     public QuickTileCache(GeoServer geoServer) {
+        this(getMaxSize());
+        this.catalog = geoServer.getCatalog();
+        catalog.addListener(this);
         geoServer.addListener(
                 new ConfigurationListenerAdapter() {
                     @Override
@@ -66,7 +112,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        clear();
                     }
 
                     @Override
@@ -75,18 +121,46 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        // the other services do not affect the maps
+                        if (service instanceof WMSInfo) {
+                            clear();
+                        }
                     }
 
                     @Override
                     public void reloaded() {
-                        tileCache.clear();
+                        clear();
                     }
                 });
     }
 
     /** For testing only */
-    QuickTileCache() {}
+    QuickTileCache() {
+        this(DEFAULT_SIZE_MB * 1024 * 1024);
+    }
+
+    /** @param maxSize The max memory used by the cached tiles, in bytes */
+    QuickTileCache(long maxSize) {
+        this.tileCache =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxSize)
+                        .weigher((MetaTileKey k, CacheElement e) -> e.size)
+                        .recordStats()
+                        .build();
+    }
+
+    private static long getMaxSize() {
+        long size = DEFAULT_SIZE_MB;
+        String value = GeoServerExtensions.getProperty(SIZE_KEY);
+        if (value != null) {
+            try {
+                size = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + SIZE_KEY + ": " + value + ", using default");
+            }
+        }
+        return size * 1024 * 1024;
+    }
 
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
@@ -116,7 +190,9 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
+        MetaTileKey key =
+                new MetaTileKey(
+                        mapKey, metaTileCoords, metaTileEnvelope, getResourceIds(request));
 
         // since this will be used for thread synchronization, we have to make
         // sure two thread asking for the same meta tile will get the same key
@@ -124,6 +200,16 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         return metaTileKeys.unique(key);
     }
 
+    /** Collects the ids of the resources painted in the map */
+    private Set<String> getResourceIds(GetMapRequest request) {
+        Set<String> ids = new HashSet<>();
+        for (MapLayerInfo layer : request.getLayers()) {
+            ResourceInfo resource = layer.getResource();
+            ids.add(resource != null ? resource.getId() : ANY_RESOURCE);
+        }
+        return ids;
+    }
+
     private ReferencedEnvelope getMetaTileEnvelope(
             ReferencedEnvelope bbox, Point tileCoords, Point metaTileCoords) {
         double minx = bbox.getMinX() + (metaTileCoords.x - tileCoords.x) * bbox.getWidth();
@@ -274,12 +360,33 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
         ReferencedEnvelope metaTileEnvelope;
 
+        /** The resources painted in the meta tile, not part of the key identity */
+        Set<String> resourceIds;
+
         public MetaTileKey(
                 MapKey mapKey, Point metaTileCoords, ReferencedEnvelope metaTileEnvelope) {
+            this(
+                    mapKey,
+                    metaTileCoords,
+                    metaTileEnvelope,
+                    Collections.singleton(ANY_RESOURCE));
+        }
+
+        public MetaTileKey(
+                MapKey mapKey,
+                Point metaTileCoords,
+                ReferencedEnvelope metaTileEnvelope,
+                Set<String> resourceIds) {
             super();
             this.mapKey = mapKey;
             this.metaTileCoords = metaTileCoords;
             this.metaTileEnvelope = metaTileEnvelope;
+            this.resourceIds = resourceIds;
+        }
+
+        /** Returns true if the meta tile paints the specified resource */
+        boolean uses(String resourceId) {
+            return resourceIds.contains(resourceId) || resourceIds.contains(ANY_RESOURCE);
         }
 
         public ReferencedEnvelope getMetaTileEnvelope() {
@@ -328,8 +435,8 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     }
 
     /** Gathers a tile from the cache, if available */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.getIfPresent(key);
 
         if (ce == null) {
             return null;
@@ -353,36 +460,143 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     /**
      * Puts the specified tile array in the cache, and returns the tile the request was looking for
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
         tileCache.put(key, new CacheElement(tiles));
     }
 
-    class CacheElement {
+    /** Drops all the cached tiles */
+    public void clear() {
+        tileCache.invalidateAll();
+    }
+
+    /** Drops the meta tiles painting the specified resource */
+    public void invalidate(String resourceId) {
+        invalidateIf(k -> k.uses(resourceId));
+    }
+
+    private void invalidateIf(Predicate<MetaTileKey> predicate) {
+        tileCache.asMap().keySet().removeIf(predicate);
+    }
+
+    /** Number of tiles found in the cache */
+    public long getHits() {
+        return tileCache.stats().hitCount();
+    }
+
+    /** Number of tiles that were not found in the cache */
+    public long getMisses() {
+        return tileCache.stats().missCount();
+    }
+
+    /** Number of meta tiles evicted from the cache to make room for new ones */
+    public long getEvictions() {
+        return tileCache.stats().evictionCount();
+    }
+
+    /** Number of meta tiles currently in the cache */
+    public long size() {
+        return tileCache.size();
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
+        /** Memory used by the tiles, in bytes */
+        int size;
+
         public CacheElement(RenderedImage[] tiles) {
             this.tiles = tiles;
+            long size = 0;
+            for (RenderedImage tile : tiles) {
+                if (tile != null) {
+                    SampleModel sm = tile.getSampleModel();
+                    int pixelBits = 0;
+                    for (int bits : sm.getSampleSize()) {
+                        pixelBits += bits;
+                    }
+                    size += (long) tile.getWidth() * tile.getHeight() * pixelBits / 8;
+                }
+            }
+            this.size = (int) Math.min(Integer.MAX_VALUE, size);
         }
     }
 
     @Override
     public void dataStoreChange(TransactionEvent event) throws WFSException {
-        // if anything changes we just wipe out the cache. the mapkey
-        // contains a string with part of the map request where the layer
-        // name is included, but we would have to parse it and consider
-        // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        // drop only the meta tiles painting the modified feature type
+        QName name = event.getLayerName();
+        FeatureTypeInfo ft =
+                catalog == null || name == null
+                        ? null
+                        : catalog.getFeatureTypeByName(name.getNamespaceURI(), name.getLocalPart());
+        if (ft != null) {
+            invalidate(ft.getId());
+        } else {
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) {
+        // nothing to do, a new object is not part of any cached map yet
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) {
+        // wait for the post modify, the change is not applied yet
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+        invalidate(event);
+    }
+
+    private void invalidate(CatalogEvent event) {
+        Object source = event.getSource();
+        if (source instanceof ResourceInfo) {
+            invalidate(((ResourceInfo) source).getId());
+        } else if (source instanceof LayerInfo) {
+            ResourceInfo resource = ((LayerInfo) source).getResource();
+            if (resource != null) {
+                invalidate(resource.getId());
+            } else {
+                clear();
+            }
+        } else if (source instanceof StoreInfo) {
+            Set<String> ids = new HashSet<>();
+            for (ResourceInfo resource :
+                    catalog.getResourcesByStore((StoreInfo) source, ResourceInfo.class)) {
+                ids.add(resource.getId());
+            }
+            invalidateIf(k -> k.uses(ANY_RESOURCE) || !Collections.disjoint(k.resourceIds, ids));
+        } else {
+            // styles, groups, workspaces and namespaces, can affect any map
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Clearing the meta tile cache after a change in " + source);
+            }
+            clear();
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();
+        clear();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        clear();
     }
 
     @Override
@@ -392,6 +606,6 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        clear();
     }
 }
@@ -0,0 +1,126 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.renderer.lite.LabelCache;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A {@link LabelCache} that does not paint anything, but records the labels of a single layer so
+ * that they can be replayed later, in map order, into the label cache shared by all layers.
+ */
+class RecordingLabelCache implements LabelCache {
+
+    final String layerId;
+
+    final List<Consumer<LabelCache>> operations = new ArrayList<>();
+
+    boolean enabled = true;
+
+    /** @param layerId The identifier of the layer in the whole map, used during replay */
+    RecordingLabelCache(String layerId) {
+        this.layerId = layerId;
+    }
+
+    /**
+     * Replays the recorded labels into the target cache, which is expected to be already started.
+     */
+    void replay(LabelCache target, Graphics2D graphics, Rectangle displayArea) {
+        target.startLayer(layerId);
+        if (!enabled) {
+            target.disableLayer(layerId);
+        }
+        for (Consumer<LabelCache> operation : operations) {
+            operation.accept(target);
+        }
+        target.endLayer(layerId, graphics, displayArea);
+    }
+
+    @Override
+    public void start() {
+        // nothing to do
+    }
+
+    @Override
+    public void startLayer(String layerId) {
+        // nothing to do, the layer is started during replay
+    }
+
+    @Override
+    public void put(
+            String layerId,
+            TextSymbolizer symbolizer,
+            Feature feature,
+            LiteShape2 shape,
+            NumberRange<Double> scaleRange) {
+        // feature readers are allowed to reuse the feature objects, take a shallow copy
+        Feature copy = feature;
+        if (feature instanceof SimpleFeature) {
+            SimpleFeature sf = (SimpleFeature) feature;
+            copy = SimpleFeatureBuilder.build(sf.getFeatureType(), sf.getAttributes(), sf.getID());
+            copy.getUserData().putAll(sf.getUserData());
+        }
+        Feature labelled = copy;
+        operations.add(c -> c.put(this.layerId, symbolizer, labelled, shape, scaleRange));
+    }
+
+    @Override
+    public void put(Rectangle2D area) {
+        operations.add(c -> c.put(area));
+    }
+
+    @Override
+    public void endLayer(String layerId, Graphics2D graphics, Rectangle displayArea) {
+        // nothing to do, labels are painted during replay
+    }
+
+    @Override
+    public void end(Graphics2D graphics, Rectangle displayArea) {
+        // nothing to do, labels are painted during replay
+    }
+
+    @Override
+    public void stop() {
+        operations.clear();
+    }
+
+    @Override
+    public void clear() {
+        operations.clear();
+    }
+
+    @Override
+    public void clear(String layerId) {
+        operations.clear();
+    }
+
+    @Override
+    public void disableLayer(String layerId) {
+        enabled = false;
+    }
+
+    @Override
+    public void enableLayer(String layerId) {
+        enabled = true;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List orderedLabels() {
+        return Collections.emptyList();
+    }
+}
@@ -52,6 +52,7 @@ import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.MapProducerCapabilities;
+import org.geoserver.wms.StyleRenderPlan;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.WMSInfo.WMSInterpolation;
@@ -442,7 +443,18 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        StreamingRenderer renderer = buildRenderer();
+        StreamingRenderer renderer;
+        int parallelThreads =
+                getParallelRenderingThreads(mapContent, preparedImage, emptyMap, memory, maxMemory);
+        if (parallelThreads > 1) {
+            renderer =
+                    new ParallelLayersRenderer(
+                            this::buildRenderer,
+                            DefaultWebMapService.getRenderingPool(),
+                            parallelThreads);
+        } else {
+            renderer = buildRenderer();
+        }
         renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
         renderer.setMapContent(mapContent);
         renderer.setJava2DHints(hints);
@@ -695,6 +707,42 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
                 : layers.stream().map(MapLayerInfo::getName).collect(Collectors.joining(", "));
     }
 
+    /**
+     * Returns the number of layers that can be painted concurrently, or 1 if the map has to be
+     * painted sequentially
+     */
+    private int getParallelRenderingThreads(
+            WMSMapContent mapContent,
+            RenderedImage preparedImage,
+            boolean emptyMap,
+            long memory,
+            long maxMemory) {
+        int threads = wms != null ? wms.getParallelRenderingThreads() : 1;
+        List<Layer> layers = mapContent.layers();
+        if (threads < 2
+                || emptyMap
+                || layers.size() < 2
+                || labelCache != null
+                || DefaultWebMapService.getRenderingPool() == null) {
+            return 1;
+        }
+        // compositing over a paletted image would not give the same result as painting on it
+        if (!(preparedImage instanceof BufferedImage)
+                || preparedImage.getColorModel() instanceof IndexColorModel) {
+            return 1;
+        }
+        // worst case, all the layer images are waiting to be composited at the same time
+        long layersMemory =
+                4L * preparedImage.getWidth() * preparedImage.getHeight() * layers.size();
+        if (maxMemory > 0 && memory + layersMemory > maxMemory) {
+            return 1;
+        }
+        if (!ParallelLayersRenderer.canRenderInParallel(layers)) {
+            return 1;
+        }
+        return threads;
+    }
+
     /**
      * Creates a {@link StreamingRenderer} instance (subclasses can provide their own specialized
      * subclasses of {@link StreamingRenderer}
@@ -851,16 +899,16 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         FeatureType featureType = layer.getFeatureSource().getSchema();
         Style style = layer.getStyle();
 
-        RasterSymbolizerVisitor visitor =
-                new RasterSymbolizerVisitor(scaleDenominator, featureType);
-        style.accept(visitor);
+        StyleRenderPlan.RasterRules rasterRules =
+                StyleRenderPlan.get(style, mapContent.getRequest())
+                        .getRasterRules(scaleDenominator, featureType);
 
-        List<RasterSymbolizer> symbolizers = visitor.getRasterSymbolizers();
+        List<RasterSymbolizer> symbolizers = rasterRules.getRasterSymbolizers();
         if (symbolizers.size() != 1) {
             return null;
         }
         RasterSymbolizer symbolizer = symbolizers.get(0);
-        Expression transformation = visitor.getRasterRenderingTransformation();
+        Expression transformation = rasterRules.getRasterRenderingTransformation();
 
         // direct raster rendering uses Query.ALL for the style query which is
         // inefficient for vector sources
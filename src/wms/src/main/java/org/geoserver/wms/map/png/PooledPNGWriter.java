@@ -0,0 +1,599 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import ar.com.hjg.pngj.FilterType;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.WMSMapContent;
+
+/**
+ * Encodes the image in PNG reusing, for each thread, the scanline buffers, deflaters and chunk
+ * buffers, so that encoding a tile does not allocate memory proportional to its size. Large images
+ * are split in horizontal strips that are deflated in parallel, and then concatenated in a single
+ * zlib stream.
+ *
+ * <p>Handles 8 bits gray, gray/alpha, RGB and RGBA images, and paletted images with 1, 2, 4 or 8
+ * bits per pixel. Any other image is handed over to the {@link PNGJWriter}.
+ */
+public class PooledPNGWriter {
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+
+    static final byte[] PLTE = {'P', 'L', 'T', 'E'};
+
+    static final byte[] TRNS = {'t', 'R', 'N', 'S'};
+
+    static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+
+    static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    static final int COLOR_GRAY = 0;
+
+    static final int COLOR_RGB = 2;
+
+    static final int COLOR_PALETTE = 3;
+
+    static final int COLOR_GRAY_ALPHA = 4;
+
+    static final int COLOR_RGBA = 6;
+
+    /** Images with at least this many pixels are deflated in parallel */
+    static final int PARALLEL_PIXELS = 512 * 512;
+
+    /** The approximate number of pixels in each strip deflated in parallel */
+    static final int STRIP_PIXELS = 128 * 1024;
+
+    /** The max size of the IDAT chunks */
+    static final int CHUNK_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final ExecutorService executor;
+
+    /** @param executor Used to deflate large images in parallel, if null it's never done */
+    public PooledPNGWriter(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** Returns true if the image can be encoded without falling back on the {@link PNGJWriter} */
+    public static boolean isSupported(RenderedImage image) {
+        return Layout.of(image) != null;
+    }
+
+    public RenderedImage writePNG(
+            RenderedImage image, OutputStream outStream, float quality, WMSMapContent mapContent) {
+        Layout layout = Layout.of(image);
+        if (layout == null) {
+            return new PNGJWriter().writePNG(image, outStream, quality, mapContent);
+        }
+        boolean sub =
+                mapContent != null
+                        && new PNGJWriter().getFilterType(mapContent) == FilterType.FILTER_SUB;
+        int level = Math.max(0, Math.min(9, Math.round(9 * (1 - quality))));
+        try {
+            writePNG(image, layout, outStream, level, sub);
+        } catch (IOException e) {
+            throw new ServiceException("Failed to encode the PNG", e);
+        }
+
+        return image;
+    }
+
+    /**
+     * Encodes the image
+     *
+     * @param image The image to encode, must be supported according to {@link
+     *     #isSupported(RenderedImage)}
+     * @param out The destination stream
+     * @param level The deflate compression level, between 0 and 9
+     * @param sub Whether to use the SUB scanline filter, or no filter
+     */
+    public void writePNG(RenderedImage image, OutputStream out, int level, boolean sub)
+            throws IOException {
+        Layout layout = Layout.of(image);
+        if (layout == null) {
+            throw new IllegalArgumentException("Unsupported image layout");
+        }
+        writePNG(image, layout, out, level, sub);
+    }
+
+    private void writePNG(
+            RenderedImage image, Layout layout, OutputStream out, int level, boolean sub)
+            throws IOException {
+        Buffers buffers = BUFFERS.get();
+        ChunkWriter chunks = buffers.chunks;
+        chunks.start(out);
+        try {
+            out.write(SIGNATURE);
+            writeHeader(image, layout, chunks, buffers.meta);
+            if (layout.palette != null) {
+                writePalette(layout, chunks, buffers.meta);
+            }
+
+            // zlib header, the data is deflated as raw streams so that strips can be concatenated
+            chunks.write(0x78);
+            chunks.write(level < 2 ? 0x01 : level < 6 ? 0x5E : level == 6 ? 0x9C : 0xDA);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            long adler;
+            if (executor != null && (long) width * height >= PARALLEL_PIXELS) {
+                adler = deflateParallel(image, layout, level, sub, chunks);
+            } else {
+                adler = deflateRows(image, layout, 0, height, level, sub, true, chunks);
+            }
+            chunks.writeInt((int) adler);
+            chunks.flushChunk();
+
+            chunks.chunk(IEND, buffers.meta, 0);
+        } finally {
+            chunks.end();
+        }
+    }
+
+    private void writeHeader(RenderedImage image, Layout layout, ChunkWriter chunks, byte[] meta)
+            throws IOException {
+        setInt(meta, 0, image.getWidth());
+        setInt(meta, 4, image.getHeight());
+        meta[8] = (byte) layout.bitDepth;
+        meta[9] = (byte) layout.colorType;
+        meta[10] = 0; // deflate
+        meta[11] = 0; // adaptive filtering
+        meta[12] = 0; // no interlace
+        chunks.chunk(IHDR, meta, 13);
+    }
+
+    private void writePalette(Layout layout, ChunkWriter chunks, byte[] meta) throws IOException {
+        IndexColorModel icm = layout.palette;
+        int size = Math.min(icm.getMapSize(), 1 << layout.bitDepth);
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            meta[i * 3] = (byte) icm.getRed(i);
+            meta[i * 3 + 1] = (byte) icm.getGreen(i);
+            meta[i * 3 + 2] = (byte) icm.getBlue(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        chunks.chunk(PLTE, meta, size * 3);
+        if (lastTranslucent >= 0) {
+            for (int i = 0; i <= lastTranslucent; i++) {
+                meta[i] = (byte) icm.getAlpha(i);
+            }
+            chunks.chunk(TRNS, meta, lastTranslucent + 1);
+        }
+    }
+
+    /**
+     * Deflates the image in strips, each one in a separate task, and writes them in order. The
+     * calling thread deflates the first strip.
+     */
+    private long deflateParallel(
+            RenderedImage image, Layout layout, int level, boolean sub, OutputStream out)
+            throws IOException {
+        int height = image.getHeight();
+        int stripRows = Math.max(1, STRIP_PIXELS / image.getWidth());
+        List<Future<Strip>> futures = new ArrayList<>();
+        try {
+            for (int y = stripRows; y < height; y += stripRows) {
+                int minY = y;
+                int maxY = Math.min(height, y + stripRows);
+                futures.add(
+                        executor.submit(
+                                () ->
+                                        deflateStrip(
+                                                image,
+                                                layout,
+                                                minY,
+                                                maxY,
+                                                level,
+                                                sub,
+                                                maxY == height)));
+            }
+            int maxY = Math.min(height, stripRows);
+            Strip first = deflateStrip(image, layout, 0, maxY, level, sub, maxY == height);
+            first.data.writeTo(out);
+            long adler = first.adler;
+            for (Future<Strip> future : futures) {
+                Strip strip = future.get();
+                strip.data.writeTo(out);
+                adler = combineAdler32(adler, strip.adler, strip.length);
+            }
+            return adler;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the PNG", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode the PNG", e.getCause());
+        } finally {
+            for (Future<Strip> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Strip deflateStrip(
+            RenderedImage image,
+            Layout layout,
+            int minY,
+            int maxY,
+            int level,
+            boolean sub,
+            boolean last)
+            throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        long adler = deflateRows(image, layout, minY, maxY, level, sub, last, data);
+        long length = (long) (maxY - minY) * (layout.rowBytes(image.getWidth()) + 1);
+        return new Strip(data, adler, length);
+    }
+
+    /**
+     * Filters and deflates the rows between minY (inclusive) and maxY (exclusive), as a raw deflate
+     * stream that is either finished, or flushed to a byte boundary so that another stream can be
+     * appended. Returns the Adler32 checksum of the uncompressed data.
+     */
+    private long deflateRows(
+            RenderedImage image,
+            Layout layout,
+            int minY,
+            int maxY,
+            int level,
+            boolean sub,
+            boolean last,
+            OutputStream out)
+            throws IOException {
+        Buffers buffers = BUFFERS.get();
+        Deflater deflater = buffers.deflater(level);
+        Adler32 adler = buffers.adler;
+        adler.reset();
+        byte[] deflated = buffers.deflated;
+        int rowBytes = layout.rowBytes(image.getWidth());
+        int bpp = layout.bytesPerPixel();
+        byte[] row = buffers.row(rowBytes + 1);
+        try {
+            for (int y = minY; y < maxY; y++) {
+                layout.readRow(image, image.getMinY() + y, row, buffers);
+                if (sub) {
+                    row[0] = 1;
+                    // backwards, so that the previous pixel is still the original one
+                    for (int i = rowBytes; i > bpp; i--) {
+                        row[i] = (byte) (row[i] - row[i - bpp]);
+                    }
+                } else {
+                    row[0] = 0;
+                }
+                adler.update(row, 0, rowBytes + 1);
+                deflater.setInput(row, 0, rowBytes + 1);
+                while (!deflater.needsInput()) {
+                    int n = deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH);
+                    out.write(deflated, 0, n);
+                }
+            }
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(deflated, 0, deflated.length);
+                    out.write(deflated, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+                    out.write(deflated, 0, n);
+                } while (n == deflated.length);
+            }
+            return adler.getValue();
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * Combines the Adler32 checksums of two consecutive blocks of data, same as adler32_combine in
+     * zlib
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    static void setInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /** A strip of the image, deflated */
+    static final class Strip {
+        final ByteArrayOutputStream data;
+
+        final long adler;
+
+        final long length;
+
+        Strip(ByteArrayOutputStream data, long adler, long length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /** How the image pixels map to the PNG ones */
+    static final class Layout {
+
+        final int colorType;
+
+        final int bitDepth;
+
+        final int bands;
+
+        final IndexColorModel palette;
+
+        Layout(int colorType, int bitDepth, int bands, IndexColorModel palette) {
+            this.colorType = colorType;
+            this.bitDepth = bitDepth;
+            this.bands = bands;
+            this.palette = palette;
+        }
+
+        /** Returns the layout of the image, or null if the image is not supported */
+        static Layout of(RenderedImage image) {
+            ColorModel cm = image.getColorModel();
+            SampleModel sm = image.getSampleModel();
+            if (cm == null || sm == null || image.getWidth() <= 0 || image.getHeight() <= 0) {
+                return null;
+            }
+            int bands = sm.getNumBands();
+            if (cm instanceof IndexColorModel) {
+                int bits = sm.getSampleSize(0);
+                if (bands != 1 || (bits != 1 && bits != 2 && bits != 4 && bits != 8)) {
+                    return null;
+                }
+                return new Layout(COLOR_PALETTE, bits, 1, (IndexColorModel) cm);
+            }
+            if (!(cm instanceof ComponentColorModel || cm instanceof DirectColorModel)
+                    || cm.isAlphaPremultiplied()
+                    || cm.getNumComponents() != bands) {
+                return null;
+            }
+            for (int b = 0; b < bands; b++) {
+                if (sm.getSampleSize(b) != 8) {
+                    return null;
+                }
+            }
+            int colorSpace = cm.getColorSpace().getType();
+            if (colorSpace == ColorSpace.TYPE_GRAY && cm.getNumColorComponents() == 1) {
+                return new Layout(bands == 1 ? COLOR_GRAY : COLOR_GRAY_ALPHA, 8, bands, null);
+            } else if (colorSpace == ColorSpace.TYPE_RGB && cm.getNumColorComponents() == 3) {
+                return new Layout(bands == 3 ? COLOR_RGB : COLOR_RGBA, 8, bands, null);
+            }
+            return null;
+        }
+
+        int rowBytes(int width) {
+            return (width * bands * bitDepth + 7) / 8;
+        }
+
+        int bytesPerPixel() {
+            return Math.max(1, bands * bitDepth / 8);
+        }
+
+        /** Reads a row of the image in the row buffer, after the filter type byte */
+        void readRow(RenderedImage image, int y, byte[] row, Buffers buffers) {
+            int tileCount = buffers.loadTiles(image, y);
+            Raster[] tiles = buffers.tiles;
+            int minX = image.getMinX();
+            int maxX = minX + image.getWidth();
+            if (bitDepth < 8) {
+                Arrays.fill(row, 1, rowBytes(image.getWidth()) + 1, (byte) 0);
+            }
+            for (int t = 0; t < tileCount; t++) {
+                Raster tile = tiles[t];
+                int x0 = Math.max(minX, tile.getMinX());
+                int x1 = Math.min(maxX, tile.getMinX() + tile.getWidth());
+                int w = x1 - x0;
+                if (w <= 0) {
+                    continue;
+                }
+                int[] samples = buffers.samples(w * bands);
+                tile.getPixels(x0, y, w, 1, samples);
+                int pixel = x0 - minX;
+                if (bitDepth == 8) {
+                    int pos = 1 + pixel * bands;
+                    for (int i = 0, n = w * bands; i < n; i++) {
+                        row[pos++] = (byte) samples[i];
+                    }
+                } else {
+                    for (int i = 0; i < w; i++, pixel++) {
+                        int bit = pixel * bitDepth;
+                        row[1 + (bit >> 3)] |= (byte) (samples[i] << (8 - bitDepth - (bit & 7)));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Buffers the IDAT data, and writes the PNG chunks */
+    static final class ChunkWriter extends OutputStream {
+
+        final CRC32 crc = new CRC32();
+
+        final byte[] header = new byte[8];
+
+        final byte[] buffer = new byte[CHUNK_SIZE];
+
+        int count;
+
+        OutputStream out;
+
+        void start(OutputStream out) {
+            this.out = out;
+            this.count = 0;
+        }
+
+        void end() {
+            this.out = null;
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void writeInt(int value) throws IOException {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        /** Writes the buffered data as an IDAT chunk */
+        void flushChunk() throws IOException {
+            if (count > 0) {
+                chunk(IDAT, buffer, count);
+                count = 0;
+            }
+        }
+
+        /** Writes a chunk straight to the output */
+        void chunk(byte[] type, byte[] data, int length) throws IOException {
+            setInt(header, 0, length);
+            System.arraycopy(type, 0, header, 4, 4);
+            out.write(header);
+            out.write(data, 0, length);
+            crc.reset();
+            crc.update(type);
+            crc.update(data, 0, length);
+            setInt(header, 0, (int) crc.getValue());
+            out.write(header, 0, 4);
+        }
+    }
+
+    /** The state reused by all the encodings happening in a thread */
+    static final class Buffers {
+
+        final ChunkWriter chunks = new ChunkWriter();
+
+        final Adler32 adler = new Adler32();
+
+        final Deflater[] deflaters = new Deflater[10];
+
+        final byte[] deflated = new byte[CHUNK_SIZE];
+
+        /** Header, palette and transparency chunks data */
+        final byte[] meta = new byte[256 * 3];
+
+        byte[] row = new byte[0];
+
+        int[] samples = new int[0];
+
+        Raster[] tiles = new Raster[0];
+
+        RenderedImage tilesImage;
+
+        int tilesY;
+
+        int tileCount;
+
+        Deflater deflater(int level) {
+            Deflater deflater = deflaters[level];
+            if (deflater == null) {
+                deflater = new Deflater(level, true);
+                deflaters[level] = deflater;
+            } else {
+                deflater.reset();
+            }
+            return deflater;
+        }
+
+        byte[] row(int length) {
+            if (row.length < length) {
+                row = new byte[length];
+            }
+            return row;
+        }
+
+        int[] samples(int length) {
+            if (samples.length < length) {
+                samples = new int[length];
+            }
+            return samples;
+        }
+
+        /** Loads the tiles covering the specified row, returns how many there are */
+        int loadTiles(RenderedImage image, int y) {
+            int tileY = Math.floorDiv(y - image.getTileGridYOffset(), image.getTileHeight());
+            if (image != tilesImage || tileY != tilesY) {
+                int count = image.getNumXTiles();
+                if (tiles.length < count) {
+                    tiles = new Raster[count];
+                }
+                for (int i = 0; i < count; i++) {
+                    tiles[i] = image.getTile(image.getMinTileX() + i, tileY);
+                }
+                tilesImage = image;
+                tilesY = tileY;
+                tileCount = count;
+            }
+            return tileCount;
+        }
+
+        /** Drops the references to the image, the buffers outlive it */
+        void release() {
+            Arrays.fill(tiles, null);
+            tilesImage = null;
+            tileCount = 0;
+        }
+    }
+}
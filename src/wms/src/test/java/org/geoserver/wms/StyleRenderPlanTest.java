@@ -0,0 +1,154 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+public class StyleRenderPlanTest {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+
+    Style style;
+
+    Rule small;
+
+    Rule large;
+
+    @Before
+    public void setUp() {
+        StyleBuilder sb = new StyleBuilder();
+        // a rule with a 10 pixels circle active at high scale denominators
+        small =
+                sb.createRule(
+                        sb.createPointSymbolizer(
+                                sb.createGraphic(null, sb.createMark("circle"), null, 1, 10, 0)));
+        small.setMinScaleDenominator(100000);
+        small.setFilter(FF.equals(FF.property("type"), FF.literal("town")));
+        // a rule with a 30 pixels square active at low scale denominators
+        large =
+                sb.createRule(
+                        sb.createPointSymbolizer(
+                                sb.createGraphic(null, sb.createMark("square"), null, 1, 30, 0)));
+        large.setMaxScaleDenominator(100000);
+        large.setFilter(FF.equals(FF.property("type"), FF.literal("city")));
+        style = sb.createStyle();
+        style.featureTypeStyles()
+                .add(sb.createFeatureTypeStyle("Feature", new Rule[] {small, large}));
+    }
+
+    @Test
+    public void testPlanSharedByStyleInstance() {
+        StyleRenderPlan plan = StyleRenderPlan.get(style);
+        assertSame(plan, StyleRenderPlan.get(style));
+    }
+
+    @Test
+    public void testActiveRules() {
+        StyleRenderPlan plan = StyleRenderPlan.get(style);
+
+        StyleRenderPlan.ActiveRules lowScale = plan.getActiveRules(5000);
+        assertEquals(1, lowScale.getRules().size());
+        assertSame(large, lowScale.getRules().get(0));
+        assertTrue(lowScale.getBuffer() >= 30);
+        assertTrue(lowScale.isBufferAccurate());
+        assertEquals(large.getFilter(), lowScale.getFilter());
+        // same active rules, same analysis
+        assertSame(lowScale, plan.getActiveRules(50000));
+
+        StyleRenderPlan.ActiveRules highScale = plan.getActiveRules(500000);
+        assertNotSame(lowScale, highScale);
+        assertSame(small, highScale.getRules().get(0));
+        assertTrue(highScale.getBuffer() >= 10);
+        assertTrue(highScale.getBuffer() < lowScale.getBuffer());
+    }
+
+    @Test
+    public void testElseRuleFilter() {
+        large.setElseFilter(true);
+        StyleRenderPlan.ActiveRules rules = StyleRenderPlan.get(style).getActiveRules(5000);
+        assertEquals(Filter.INCLUDE, rules.getFilter());
+    }
+
+    @Test
+    public void testComputeLayerBuffer() {
+        StyleRenderPlan plan = StyleRenderPlan.get(style);
+        assertEquals(
+                plan.getActiveRules(5000).getBuffer(),
+                GetMap.computeLayerBuffer(style, 5000, null));
+        assertEquals(
+                plan.getActiveRules(500000).getBuffer(),
+                GetMap.computeLayerBuffer(style, 500000, null));
+    }
+
+    @Test
+    public void testRequestStyleNotCached() {
+        GetMapRequest request = new GetMapRequest();
+        assertFalse(StyleRenderPlan.isRequestStyle(request));
+        StyleRenderPlan plan = StyleRenderPlan.get(style, request);
+        assertSame(plan, StyleRenderPlan.get(style));
+
+        // styles provided in the request are analyzed on the fly
+        Style requestStyle = new StyleBuilder().createStyle();
+        request.setSldBody("<StyledLayerDescriptor/>");
+        assertTrue(StyleRenderPlan.isRequestStyle(request));
+        StyleRenderPlan requestPlan = StyleRenderPlan.get(requestStyle, request);
+        assertNotSame(requestPlan, StyleRenderPlan.get(requestStyle, request));
+        assertNull(StyleRenderPlan.PLANS.getIfPresent(requestStyle));
+    }
+
+    @Test
+    public void testRasterRules() {
+        StyleBuilder sb = new StyleBuilder();
+        Style raster = sb.createStyle(sb.createRasterSymbolizer());
+        StyleRenderPlan plan = StyleRenderPlan.get(raster);
+        StyleRenderPlan.RasterRules rules = plan.getRasterRules(1000, null);
+        assertEquals(1, rules.getRasterSymbolizers().size());
+        assertSame(rules, plan.getRasterRules(2000, null));
+
+        // vector symbolizers are not handled by the direct raster path
+        StyleRenderPlan.RasterRules vector = StyleRenderPlan.get(style).getRasterRules(5000, null);
+        assertTrue(vector.getRasterSymbolizers().isEmpty());
+    }
+
+    @Test
+    public void testDerivedStyle() {
+        StyleRenderPlan plan = StyleRenderPlan.get(style);
+        Style copy = new StyleBuilder().createStyle();
+        assertSame(copy, plan.getDerivedStyle("test", () -> copy));
+        assertSame(copy, plan.getDerivedStyle("test", StyleRenderPlanTest::fail));
+    }
+
+    @Test
+    public void testDerivedStylesBounded() {
+        StyleRenderPlan plan = StyleRenderPlan.get(style);
+        StyleBuilder sb = new StyleBuilder();
+        for (int i = 0; i < StyleRenderPlan.MAX_DERIVED_STYLES * 2; i++) {
+            plan.getDerivedStyle(i, sb::createStyle);
+        }
+        assertTrue(plan.derivedStyles.size() <= StyleRenderPlan.MAX_DERIVED_STYLES);
+        // the most recent one is still there
+        int last = StyleRenderPlan.MAX_DERIVED_STYLES * 2 - 1;
+        Style lastStyle = plan.getDerivedStyle(last, StyleRenderPlanTest::fail);
+        assertSame(lastStyle, plan.getDerivedStyle(last, StyleRenderPlanTest::fail));
+    }
+
+    private static Style fail() {
+        throw new AssertionError("Derived style should have been cached");
+    }
+}
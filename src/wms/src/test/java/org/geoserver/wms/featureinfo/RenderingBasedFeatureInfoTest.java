@@ -9,10 +9,13 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,6 +38,7 @@ import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapLayerInfo;
 import org.geoserver.wms.MapProducerCapabilities;
+import org.geoserver.wms.StyleRenderPlan;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.WMSMapContent;
@@ -265,6 +269,37 @@ public class RenderingBasedFeatureInfoTest extends WMSTestSupport {
         assertEquals(1, result.getJSONArray("features").size());
     }
 
+    @Test
+    public void testSldBody() throws Exception {
+        String layer = getLayerId(MockData.FORESTS);
+        String sld =
+                "<StyledLayerDescriptor version=\"1.0.0\" xmlns=\"http://www.opengis.net/sld\">"
+                        + "<NamedLayer><Name>"
+                        + layer
+                        + "</Name><UserStyle><FeatureTypeStyle><Rule><PolygonSymbolizer/>"
+                        + "</Rule></FeatureTypeStyle></UserStyle></NamedLayer>"
+                        + "</StyledLayerDescriptor>";
+        String request =
+                "wms?version=1.1.1&bbox=-0.002,-0.002,0.002,0.002&format=jpeg"
+                        + "&request=GetFeatureInfo&layers="
+                        + layer
+                        + "&query_layers="
+                        + layer
+                        + "&sld_body="
+                        + URLEncoder.encode(sld, "UTF-8")
+                        + "&width=20&height=20&x=10&y=10"
+                        + "&info_format=application/json&feature_count=50";
+
+        // request styles are preprocessed on the fly, not cached in the style render plan
+        JSONObject result = (JSONObject) getAsJSON(request);
+        assertEquals(1, result.getJSONArray("features").size());
+
+        GetMapRequest getMap = new GetMapRequest();
+        assertFalse(StyleRenderPlan.isRequestStyle(getMap));
+        getMap.setSldBody(sld);
+        assertTrue(StyleRenderPlan.isRequestStyle(getMap));
+    }
+
     @Test
     public void testTwoFeatureTypeStyles() throws Exception {
         String layer = getLayerId(MockData.FORESTS);
@@ -0,0 +1,124 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.featureinfo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import net.sf.json.JSONObject;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wms.WMSInfo;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VectorFastLayerIdentifierTest extends WMSTestSupport {
+
+    static final String BRIDGES_REQUEST =
+            "wms?REQUEST=GetFeatureInfo&BBOX=0.000196%2C0.000696%2C0.000204%2C0.000704"
+                    + "&SERVICE=WMS&INFO_FORMAT=application/json&QUERY_LAYERS=cite%3ABridges"
+                    + "&Layers=cite%3ABridges&WIDTH=100&HEIGHT=100&format=image%2Fpng"
+                    + "&srs=EPSG%3A4326&version=1.1.1&feature_count=50";
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        super.onSetUp(testData);
+
+        Class<?> scope = RenderingBasedFeatureInfoTest.class;
+        testData.addStyle("ranged", "ranged.sld", scope, getCatalog());
+        testData.addStyle("dynamic", "dynamic.sld", scope, getCatalog());
+        testData.addStyle("stroke-only", "stroke-only.sld", scope, getCatalog());
+        testData.addVectorLayer(
+                RenderingBasedFeatureInfoTest.REPEATED,
+                Collections.emptyMap(),
+                "repeated_lines.properties",
+                scope,
+                getCatalog());
+    }
+
+    @Before
+    public void enable() {
+        System.setProperty(VectorFastLayerIdentifier.FEATURE_INFO_FAST_ENABLED_KEY, "true");
+    }
+
+    @After
+    public void cleanup() {
+        System.clearProperty(VectorFastLayerIdentifier.FEATURE_INFO_FAST_ENABLED_KEY);
+        setMaxBuffer(0);
+    }
+
+    private void setMaxBuffer(int maxBuffer) {
+        WMSInfo wms = getGeoServer().getService(WMSInfo.class);
+        wms.setMaxBuffer(maxBuffer);
+        getGeoServer().save(wms);
+    }
+
+    @Test
+    public void testRangedSize() throws Exception {
+        // the rule active for the feature paints a small symbol, the click misses it
+        JSONObject result = (JSONObject) getAsJSON(BRIDGES_REQUEST + "&styles=ranged&x=49&y=65");
+        assertEquals(0, result.getJSONArray("features").size());
+    }
+
+    @Test
+    public void testDynamicSize() throws Exception {
+        // the symbol size depends on an attribute, needs an upper bound for the search
+        setMaxBuffer(50);
+        JSONObject result = (JSONObject) getAsJSON(BRIDGES_REQUEST + "&styles=dynamic&x=49&y=60");
+        assertEquals(1, result.getJSONArray("features").size());
+
+        // user provided buffer
+        result =
+                (JSONObject)
+                        getAsJSON(BRIDGES_REQUEST + "&styles=dynamic&x=54&y=50&buffer=10");
+        assertEquals(1, result.getJSONArray("features").size());
+    }
+
+    @Test
+    public void testFeatureCount() throws Exception {
+        String layer = getLayerId(RenderingBasedFeatureInfoTest.REPEATED);
+        String request =
+                "wms?REQUEST=GetFeatureInfo&BBOX=499900,499900,500100,500100&SERVICE=WMS"
+                        + "&INFO_FORMAT=application/json&QUERY_LAYERS="
+                        + layer
+                        + "&Layers="
+                        + layer
+                        + "&WIDTH=11&HEIGHT=11&format=image%2Fpng&styles=line"
+                        + "&srs=EPSG%3A32615&version=1.1.1&x=5&y=5";
+        JSONObject result = (JSONObject) getAsJSON(request + "&FEATURE_COUNT=50");
+        assertEquals(2, result.getJSONArray("features").size());
+
+        // stops at the first hit
+        result = (JSONObject) getAsJSON(request + "&FEATURE_COUNT=1");
+        assertEquals(1, result.getJSONArray("features").size());
+    }
+
+    @Test
+    public void testStrokeOnlyPolygons() throws Exception {
+        String layer = getLayerId(MockData.FORESTS);
+        String request =
+                "wms?REQUEST=GetFeatureInfo&BBOX=-0.001,-0.001,0.001,0.001&SERVICE=WMS"
+                        + "&INFO_FORMAT=application/json&QUERY_LAYERS="
+                        + layer
+                        + "&Layers="
+                        + layer
+                        + "&WIDTH=20&HEIGHT=20&format=image%2Fpng"
+                        + "&srs=EPSG%3A4326&version=1.1.1";
+
+        // the click is inside the polygon, hit when filled
+        JSONObject result = (JSONObject) getAsJSON(request + "&styles=polygon&x=10&y=10");
+        assertEquals(1, result.getJSONArray("features").size());
+
+        // but not when only the boundary is painted
+        result = (JSONObject) getAsJSON(request + "&styles=stroke-only&x=10&y=10");
+        assertEquals(0, result.getJSONArray("features").size());
+
+        // unless the click is close to the boundary
+        result = (JSONObject) getAsJSON(request + "&styles=stroke-only&x=10&y=4");
+        assertEquals(1, result.getJSONArray("features").size());
+    }
+}
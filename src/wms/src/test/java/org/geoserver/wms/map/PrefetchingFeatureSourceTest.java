@@ -0,0 +1,215 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.geoserver.security.decorators.DecoratingSimpleFeatureSource;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class PrefetchingFeatureSourceTest {
+
+    ExecutorService executor;
+
+    ListFeatureCollection features;
+
+    @Before
+    public void setup() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        SimpleFeatureType type = DataUtilities.createType("test", "geom:Point,id:int");
+        GeometryFactory gf = JTSFactoryFinder.getGeometryFactory();
+        features = new ListFeatureCollection(type);
+        for (int i = 0; i < 100; i++) {
+            features.add(
+                    SimpleFeatureBuilder.build(
+                            type,
+                            new Object[] {gf.createPoint(new Coordinate(i, i)), i},
+                            "test." + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        PrefetchingFeatureSource source =
+                new PrefetchingFeatureSource(DataUtilities.source(features), executor, 10);
+        List<Object> ids = new ArrayList<>();
+        try (SimpleFeatureIterator it = source.getFeatures().features()) {
+            while (it.hasNext()) {
+                ids.add(it.next().getAttribute("id"));
+            }
+            assertFalse(it.hasNext());
+        }
+        assertEquals(100, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, ids.get(i));
+        }
+    }
+
+    @Test
+    public void testCloseStopsReader() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        SimpleFeatureCollection tracked = new TrackingCollection(features, closed);
+        PrefetchingFeatureSource source =
+                new PrefetchingFeatureSource(source(tracked), executor, 5);
+        SimpleFeatureIterator it = source.getFeatures().features();
+        assertTrue(it.hasNext());
+        it.next();
+        it.close();
+        // close waits for the reader to release the delegate iterator
+        assertTrue(closed.get());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testReaderFailure() throws Exception {
+        SimpleFeatureCollection failing =
+                new FailingCollection(features, 10, new IllegalStateException("failed"));
+        PrefetchingFeatureSource source =
+                new PrefetchingFeatureSource(source(failing), executor, 5);
+        int count = 0;
+        try (SimpleFeatureIterator it = source.getFeatures().features()) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            fail("The reader failure should have been propagated");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(10, count);
+    }
+
+    @Test(timeout = 10000)
+    public void testReaderError() throws Exception {
+        SimpleFeatureCollection failing =
+                new FailingCollection(features, 10, new OutOfMemoryError("failed"));
+        PrefetchingFeatureSource source =
+                new PrefetchingFeatureSource(source(failing), executor, 5);
+        int count = 0;
+        try (SimpleFeatureIterator it = source.getFeatures().features()) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            fail("The reader error should have been propagated");
+        } catch (OutOfMemoryError e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(10, count);
+    }
+
+    @Test(timeout = 10000)
+    public void testReaderInterrupted() throws Exception {
+        PrefetchingFeatureSource source =
+                new PrefetchingFeatureSource(DataUtilities.source(features), executor, 5);
+        int count = 0;
+        try (SimpleFeatureIterator it = source.getFeatures().features()) {
+            // let the reader fill the queue, then interrupt it
+            assertTrue(it.hasNext());
+            Thread.sleep(200);
+            executor.shutdownNow();
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            fail("The reader interruption should have been propagated");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertTrue(count < 100);
+    }
+
+    /** Returns a source whose features are the given collection, untouched */
+    private SimpleFeatureSource source(SimpleFeatureCollection collection) {
+        return new DecoratingSimpleFeatureSource(DataUtilities.source(features)) {
+            @Override
+            public SimpleFeatureCollection getFeatures() {
+                return collection;
+            }
+        };
+    }
+
+    /** Records the closing of the iterators */
+    static class TrackingCollection extends DecoratingSimpleFeatureCollection {
+
+        final AtomicBoolean closed;
+
+        TrackingCollection(SimpleFeatureCollection delegate, AtomicBoolean closed) {
+            super(delegate);
+            this.closed = closed;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new DecoratingSimpleFeatureIterator(super.features()) {
+                @Override
+                public void close() {
+                    super.close();
+                    closed.set(true);
+                }
+            };
+        }
+    }
+
+    /** Fails after returning the specified number of features */
+    static class FailingCollection extends DecoratingSimpleFeatureCollection {
+
+        final int limit;
+
+        final Throwable failure;
+
+        FailingCollection(SimpleFeatureCollection delegate, int limit, Throwable failure) {
+            super(delegate);
+            this.limit = limit;
+            this.failure = failure;
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            return new DecoratingSimpleFeatureIterator(super.features()) {
+                int count;
+
+                @Override
+                public SimpleFeature next() {
+                    if (count++ >= limit) {
+                        if (failure instanceof Error) {
+                            throw (Error) failure;
+                        }
+                        throw (RuntimeException) failure;
+                    }
+                    return super.next();
+                }
+            };
+        }
+    }
+}
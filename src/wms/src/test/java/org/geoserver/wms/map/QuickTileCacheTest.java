@@ -6,9 +6,20 @@
 package org.geoserver.wms.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.Collections;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
 
@@ -68,4 +79,69 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    @Test
+    public void testSizeBound() {
+        // each meta tile is 9 tiles of 64x64 ARGB, 144KB
+        QuickTileCache cache = new QuickTileCache(1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.storeTiles(key("layer1", i, "r1"), tiles());
+        }
+        assertTrue(cache.size() <= 7);
+        assertEquals(100 - cache.size(), cache.getEvictions());
+
+        MetaTileKey key = key("layer1", 100, "r1");
+        assertNull(cache.getTile(key, request()));
+        cache.storeTiles(key, tiles());
+        assertNotNull(cache.getTile(key, request()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidateResource() {
+        QuickTileCache cache = new QuickTileCache();
+        MetaTileKey k1 = key("layer1", 0, "r1");
+        MetaTileKey k2 = key("layer2", 0, "r2");
+        MetaTileKey unknown =
+                new MetaTileKey(
+                        new MapKey("layer3", 1, new Point2D.Double(0, 0)),
+                        new Point(0, 0),
+                        new ReferencedEnvelope(0, 3, 0, 3, DefaultGeographicCRS.WGS84));
+        cache.storeTiles(k1, tiles());
+        cache.storeTiles(k2, tiles());
+        cache.storeTiles(unknown, tiles());
+
+        // only the maps using the resource, or unknown resources, are dropped
+        cache.invalidate("r1");
+        assertNull(cache.getTile(k1, request()));
+        assertNull(cache.getTile(unknown, request()));
+        assertNotNull(cache.getTile(k2, request()));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private MetaTileKey key(String layer, int x, String resourceId) {
+        return new MetaTileKey(
+                new MapKey(layer, 1, new Point2D.Double(0, 0)),
+                new Point(x, 0),
+                new ReferencedEnvelope(0, 3, 0, 3, DefaultGeographicCRS.WGS84),
+                Collections.singleton(resourceId));
+    }
+
+    private RenderedImage[] tiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        }
+        return tiles;
+    }
+
+    private GetMapRequest request() {
+        GetMapRequest request = new GetMapRequest();
+        request.setBbox(new Envelope(0, 1, 0, 1));
+        request.setCrs(DefaultGeographicCRS.WGS84);
+        return request;
+    }
 }
@@ -806,6 +806,60 @@ public class RenderedImageMapOutputFormatTest extends WMSTestSupport {
         assertNotBlank("testBlueLake", image);
     }
 
+    @Test
+    public void testParallelRendering() throws Exception {
+        BufferedImage sequential = renderBasemap();
+
+        WMSInfo info = getWMS().getServiceInfo();
+        info.getMetadata().put(WMS.PARALLEL_RENDERING_THREADS_KEY, 4);
+        getGeoServer().save(info);
+        try {
+            BufferedImage parallel = renderBasemap();
+            // same image, allowing for rounding differences in the antialiased borders
+            ImageAssert.assertEquals(sequential, parallel, 100);
+        } finally {
+            info.getMetadata().remove(WMS.PARALLEL_RENDERING_THREADS_KEY);
+            getGeoServer().save(info);
+        }
+    }
+
+    private BufferedImage renderBasemap() throws Exception {
+        Envelope env =
+                getCatalog()
+                        .getFeatureTypeByName(getLayerId(MockData.LAKES))
+                        .getFeatureSource(null, null)
+                        .getBounds();
+        double shift = env.getWidth() / 6;
+        env.expandBy(shift);
+
+        GetMapRequest request = new GetMapRequest();
+        request.setFormat(getMapFormat());
+        WMSMapContent map = new WMSMapContent();
+        int w = 400;
+        int h = (int) Math.round((env.getHeight() * w) / env.getWidth());
+        map.setMapWidth(w);
+        map.setMapHeight(h);
+        map.setBgColor(BG_COLOR);
+        map.setTransparent(false);
+        map.setRequest(request);
+        addToMap(map, MockData.FORESTS);
+        addToMap(map, MockData.LAKES);
+        addToMap(map, MockData.STREAMS);
+        addToMap(map, MockData.NAMED_PLACES);
+        addToMap(map, MockData.ROAD_SEGMENTS);
+        addToMap(map, MockData.PONDS);
+        addToMap(map, MockData.BUILDINGS);
+        addToMap(map, MockData.DIVIDED_ROUTES);
+        addToMap(map, MockData.BRIDGES);
+        map.getViewport().setBounds(new ReferencedEnvelope(env, DefaultGeographicCRS.WGS84));
+
+        RenderedImageMap imageMap = this.rasterMapProducer.produceMap(map);
+        BufferedImage image = (BufferedImage) imageMap.getImage();
+        imageMap.dispose();
+        assertNotBlank("basemap", image);
+        return image;
+    }
+
     @Test
     public void testCustomLabelCache() throws IOException {
         final Catalog catalog = getCatalog();
@@ -0,0 +1,153 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import org.geoserver.wms.map.PaletteExtractor;
+import org.junit.After;
+import org.junit.Test;
+
+public class PooledPNGWriterTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRGBA() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR)));
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB)));
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR)));
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    @Test
+    public void testGray() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(100, 50, BufferedImage.TYPE_BYTE_GRAY)));
+    }
+
+    @Test
+    public void testPaletted() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_INDEXED)));
+        // odd width, so that the last byte of each row is only partially used
+        assertRoundTrip(paint(new BufferedImage(101, 33, BufferedImage.TYPE_BYTE_BINARY)));
+        IndexColorModel icm =
+                new IndexColorModel(
+                        4,
+                        3,
+                        new int[] {0x00FFFFFF, 0xFFFF0000, 0x800000FF},
+                        0,
+                        true,
+                        0,
+                        DataBuffer.TYPE_BYTE);
+        assertRoundTrip(paint(new BufferedImage(77, 45, BufferedImage.TYPE_BYTE_BINARY, icm)));
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        // large enough to be split in several strips
+        BufferedImage image = paint(new BufferedImage(1000, 800, BufferedImage.TYPE_INT_ARGB));
+        assertRoundTrip(image);
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertFalse(
+                PooledPNGWriter.isSupported(
+                        new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB_PRE)));
+        assertFalse(
+                PooledPNGWriter.isSupported(
+                        new BufferedImage(10, 10, BufferedImage.TYPE_USHORT_GRAY)));
+        assertTrue(
+                PooledPNGWriter.isSupported(
+                        new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+        // falls back on PNGJ
+        BufferedImage image = paint(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB_PRE));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PooledPNGWriter(executor).writePNG(image, bos, 0.75f, null);
+        assertEquals(64, ImageIO.read(new ByteArrayInputStream(bos.toByteArray())).getWidth());
+    }
+
+    @Test
+    public void testCombineAdler32() throws Exception {
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70_000);
+        Adler32 second = new Adler32();
+        second.update(data, 70_000, 30_000);
+        assertEquals(
+                full.getValue(),
+                PooledPNGWriter.combineAdler32(first.getValue(), second.getValue(), 30_000));
+    }
+
+    @Test
+    public void testExtractedPalette() throws Exception {
+        PaletteExtractor extractor = new PaletteExtractor(Color.WHITE);
+        assertTrue(extractor.canComputePalette());
+        IndexColorModel icm = extractor.getPalette();
+        BufferedImage image = new BufferedImage(30, 30, BufferedImage.TYPE_BYTE_BINARY, icm);
+        assertRoundTrip(image);
+    }
+
+    private BufferedImage paint(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(
+                    new GradientPaint(
+                            0, 0, new Color(255, 0, 0, 50), image.getWidth(), 0, Color.BLUE));
+            g.fillRect(0, 0, image.getWidth(), image.getHeight() / 2);
+            g.setColor(Color.GREEN);
+            g.fillOval(0, 0, image.getWidth(), image.getHeight());
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private void assertRoundTrip(BufferedImage image) throws Exception {
+        for (int level : new int[] {0, 4, 9}) {
+            for (boolean sub : new boolean[] {false, true}) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                new PooledPNGWriter(executor).writePNG(image, bos, level, sub);
+                BufferedImage read = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+                assertEquals(image.getWidth(), read.getWidth());
+                assertEquals(image.getHeight(), read.getHeight());
+                assertEquals(image.getColorModel().hasAlpha(), read.getColorModel().hasAlpha());
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        assertEquals("Pixel " + x + "," + y, image.getRGB(x, y), read.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.wms_1_3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.config.CapabilitiesCacheCallback;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.TestResourceAccessManager;
+import org.geoserver.security.WMSAccessLimits;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Checks the capabilities cache against a resource access manager with per user rules */
+public class CapabilitiesCacheSecurityTest extends WMSTestSupport {
+
+    static final String CAPABILITIES = "wms?service=WMS&request=GetCapabilities&version=1.3.0";
+
+    CapabilitiesCacheCallback cache;
+
+    @Override
+    protected void setUpSpring(List<String> springContextLocations) {
+        super.setUpSpring(springContextLocations);
+        springContextLocations.add("classpath:/org/geoserver/wms/ResourceAccessManagerContext.xml");
+    }
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        super.onSetUp(testData);
+
+        // hide the buildings to the "restricted" user only
+        TestResourceAccessManager tam =
+                (TestResourceAccessManager) applicationContext.getBean("testResourceAccessManager");
+        LayerInfo buildings = getCatalog().getLayerByName(getLayerId(MockData.BUILDINGS));
+        tam.putLimits(
+                "restricted",
+                buildings,
+                new WMSAccessLimits(CatalogMode.HIDE, Filter.EXCLUDE, null, false));
+    }
+
+    @Before
+    public void enableCache() {
+        cache = applicationContext.getBean(CapabilitiesCacheCallback.class);
+        cache.setEnabled(true);
+    }
+
+    @After
+    public void disableCache() {
+        cache.setEnabled(false);
+        logout();
+    }
+
+    @Test
+    public void testUsersSharingRoles() throws Exception {
+        String buildings = "<Name>" + getLayerId(MockData.BUILDINGS) + "</Name>";
+
+        // same roles, different rules
+        login("unrestricted", "pwd", "ROLE_USER");
+        MockHttpServletResponse unrestricted = getAsServletResponse(CAPABILITIES);
+        assertTrue(unrestricted.getContentAsString().contains(buildings));
+
+        login("restricted", "pwd", "ROLE_USER");
+        MockHttpServletResponse restricted = getAsServletResponse(CAPABILITIES);
+        assertFalse(restricted.getContentAsString().contains(buildings));
+
+        // each user keeps getting its own cached document
+        long hits = cache.getHits();
+        login("unrestricted", "pwd", "ROLE_USER");
+        MockHttpServletResponse cached = getAsServletResponse(CAPABILITIES);
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(unrestricted.getHeader("ETag"), cached.getHeader("ETag"));
+        assertTrue(cached.getContentAsString().contains(buildings));
+
+        login("restricted", "pwd", "ROLE_USER");
+        cached = getAsServletResponse(CAPABILITIES);
+        assertEquals(hits + 2, cache.getHits());
+        assertFalse(cached.getContentAsString().contains(buildings));
+    }
+
+    @Test
+    public void testVaryOnAcceptEncoding() throws Exception {
+        // both the response building the document and the cached ones vary on the encoding
+        MockHttpServletResponse first = getAsServletResponse(CAPABILITIES);
+        assertEquals("Accept-Encoding", first.getHeader("Vary"));
+        MockHttpServletResponse second = getAsServletResponse(CAPABILITIES);
+        assertEquals("Accept-Encoding", second.getHeader("Vary"));
+    }
+}
@@ -0,0 +1,114 @@
+/* (c) 2021 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.wms_1_3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.config.CapabilitiesCacheCallback;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CapabilitiesCacheTest extends WMSTestSupport {
+
+    static final String CAPABILITIES = "wms?service=WMS&request=GetCapabilities&version=1.3.0";
+
+    CapabilitiesCacheCallback cache;
+
+    @Before
+    public void enableCache() {
+        cache = applicationContext.getBean(CapabilitiesCacheCallback.class);
+        cache.setEnabled(true);
+    }
+
+    @After
+    public void disableCache() {
+        cache.setEnabled(false);
+    }
+
+    @Test
+    public void testCachedDocument() throws Exception {
+        long misses = cache.getMisses();
+        long hits = cache.getHits();
+        MockHttpServletResponse first = getAsServletResponse(CAPABILITIES);
+        String etag = first.getHeader("ETag");
+        assertNotNull(etag);
+        assertEquals(misses + 1, cache.getMisses());
+
+        MockHttpServletResponse second = getAsServletResponse(CAPABILITIES);
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(etag, second.getHeader("ETag"));
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertEquals(first.getContentType(), second.getContentType());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        String etag = getAsServletResponse(CAPABILITIES).getHeader("ETag");
+
+        MockHttpServletRequest request = createRequest(CAPABILITIES);
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = dispatch(request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testGzipped() throws Exception {
+        String plain = getAsServletResponse(CAPABILITIES).getContentAsString();
+
+        MockHttpServletRequest request = createRequest(CAPABILITIES);
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        MockHttpServletResponse response = dispatch(request);
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        try (GZIPInputStream is =
+                new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(plain, IOUtils.toString(is, response.getCharacterEncoding()));
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo fti = catalog.getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        String title = fti.getTitle();
+        String globalEtag = getAsServletResponse(CAPABILITIES).getHeader("ETag");
+        String citeCapabilities = "cite/" + CAPABILITIES;
+        String citeEtag = getAsServletResponse(citeCapabilities).getHeader("ETag");
+        String sfCapabilities = "sf/" + CAPABILITIES;
+        String sfEtag = getAsServletResponse(sfCapabilities).getHeader("ETag");
+        try {
+            fti.setTitle("The cached title changed");
+            catalog.save(fti);
+
+            // the global document and the cite one are rebuilt
+            MockHttpServletResponse global = getAsServletResponse(CAPABILITIES);
+            assertFalse(globalEtag.equals(global.getHeader("ETag")));
+            assertTrue(global.getContentAsString().contains("The cached title changed"));
+            MockHttpServletResponse cite = getAsServletResponse(citeCapabilities);
+            assertFalse(citeEtag.equals(cite.getHeader("ETag")));
+
+            // the sf one is still served from the cache
+            long hits = cache.getHits();
+            assertEquals(sfEtag, getAsServletResponse(sfCapabilities).getHeader("ETag"));
+            assertEquals(hits + 1, cache.getHits());
+        } finally {
+            fti.setTitle(title);
+            catalog.save(fti);
+        }
+    }
+}
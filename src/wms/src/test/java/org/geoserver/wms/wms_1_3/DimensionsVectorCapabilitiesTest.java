@@ -19,6 +19,7 @@ import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.DimensionPresentation;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.util.DimensionDomainIndex;
 import org.geoserver.data.test.SystemTestData;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.security.CatalogMode;
@@ -27,6 +28,7 @@ import org.geoserver.security.TestResourceAccessManager;
 import org.geoserver.security.VectorAccessLimits;
 import org.geoserver.security.impl.AbstractUserGroupService;
 import org.geoserver.wms.WMSDimensionsTestSupport;
+import org.geotools.filter.text.ecql.ECQL;
 import org.junit.Test;
 import org.opengis.filter.Filter;
 import org.w3c.dom.Document;
@@ -549,6 +551,47 @@ public class DimensionsVectorCapabilitiesTest extends WMSDimensionsTestSupport {
         assertXpathEvaluatesTo("0.0,1.0,2.0,3.0", "//wms:Layer/wms:Dimension", dom);
     }
 
+    @Test
+    public void testElevationListIndexedWithLimits() throws Exception {
+        DimensionDomainIndex index = applicationContext.getBean(DimensionDomainIndex.class);
+        TestResourceAccessManager tam = getResourceAccessManager();
+        FeatureTypeInfo featureTypeInfo = getCatalog().getFeatureTypeByName("sf:TimeElevation");
+
+        setupVectorDimension(
+                ResourceInfo.ELEVATION,
+                "elevation",
+                DimensionPresentation.LIST,
+                null,
+                UNITS,
+                UNIT_SYMBOL);
+        tam.putLimits(
+                "admin2",
+                featureTypeInfo,
+                new VectorAccessLimits(
+                        CatalogMode.HIDE, null, ECQL.toFilter("elevation < 2"), null, null));
+        index.setEnabled(true);
+        try {
+            // the unrestricted domain gets indexed first
+            setRequestAuth(null, null);
+            Document dom = dom(get("wms?request=getCapabilities&version=1.3.0"), false);
+            assertXpathEvaluatesTo("0.0,1.0,2.0,3.0", "//wms:Layer/wms:Dimension", dom);
+
+            // but is not used for users with limits
+            setRequestAuth("admin2", "geoserver");
+            dom = dom(get("wms?request=getCapabilities&version=1.3.0"), false);
+            assertXpathEvaluatesTo("0.0,1.0", "//wms:Layer/wms:Dimension", dom);
+
+            // and vice versa
+            setRequestAuth(null, null);
+            dom = dom(get("wms?request=getCapabilities&version=1.3.0"), false);
+            assertXpathEvaluatesTo("0.0,1.0,2.0,3.0", "//wms:Layer/wms:Dimension", dom);
+        } finally {
+            index.setEnabled(false);
+            tam.putLimits("admin2", featureTypeInfo, null);
+            setRequestAuth(null, null);
+        }
+    }
+
     protected TestResourceAccessManager getResourceAccessManager() {
         return (TestResourceAccessManager) applicationContext.getBean("testResourceAccessManager");
     }